@@ -95,4 +95,13 @@ public class ExecutionResult implements Iterable<Map<String,Object>>
         inner.dumpToString( writer );
     }
 
+    /**
+     * Releases what the query still holds open, like index hits, when the result is
+     * not read to the end. Results that are read to the end are closed already.
+     */
+    public void close()
+    {
+        inner.close();
+    }
+
 }
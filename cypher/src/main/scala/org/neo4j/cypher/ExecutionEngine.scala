@@ -21,7 +21,7 @@ package org.neo4j.cypher
 
 import internal.commands._
 import internal.executionplan.ExecutionPlanImpl
-import internal.LRUCache
+import internal.{CacheStatistics, ConcurrentLRUCache, GraphStatistics, NoStatistics, SampledGraphStatistics}
 import scala.collection.JavaConverters._
 import java.lang.Error
 import java.util.{Map => JavaMap}
@@ -36,15 +36,17 @@ class ExecutionEngine(graph: GraphDatabaseService) {
 
   val parser = createCorrectParser()
 
-  private def createCorrectParser() = if (graph.isInstanceOf[AbstractGraphDatabase]) {
+  private def configValue(key: String): Option[String] = if (graph.isInstanceOf[AbstractGraphDatabase]) {
     val database = graph.asInstanceOf[AbstractGraphDatabase]
-    database.getConfig.getParams.asScala.get("cypher_parser_version") match {
-      case None => new CypherParser()
-      case Some(v) => new CypherParser(v.toString)
-    }
+    database.getConfig.getParams.asScala.get(key).map(_.toString)
   }
   else {
-    new CypherParser()
+    None
+  }
+
+  private def createCorrectParser() = configValue("cypher_parser_version") match {
+    case None => new CypherParser()
+    case Some(v) => new CypherParser(v)
   }
 
 
@@ -58,7 +60,12 @@ class ExecutionEngine(graph: GraphDatabaseService) {
   def execute(query: String, params: JavaMap[String, Any]): ExecutionResult = execute(query, params.asScala.toMap)
 
   @throws(classOf[SyntaxException])
-  def prepare(query: String): ExecutionPlan = executionPlanCache.getOrElseUpdate(query, new ExecutionPlanImpl(parser.parse(query), graph))
+  def prepare(query: String): ExecutionPlan = {
+    // plans made before the latest statistics were published are made again
+    val version = statistics.version
+    executionPlanCache.getOrElseUpdate(query, new ExecutionPlanImpl(parser.parse(query), graph, statistics),
+      _.statisticsVersion >= version)
+  }
 
   @throws(classOf[SyntaxException])
   @deprecated(message = "You should not parse queries manually any more. Use the execute(String) instead")
@@ -70,7 +77,7 @@ class ExecutionEngine(graph: GraphDatabaseService) {
 
   @throws(classOf[SyntaxException])
   @deprecated(message = "You should not parse queries manually any more. Use the execute(String) instead")
-  def execute(query: Query, params: Map[String, Any]): ExecutionResult = new ExecutionPlanImpl(query, graph).execute(params)
+  def execute(query: Query, params: Map[String, Any]): ExecutionResult = new ExecutionPlanImpl(query, graph, statistics).execute(params)
 
   private def checkScalaVersion() {
     if (util.Properties.versionString.matches("^version 2.9.0")) {
@@ -79,7 +86,27 @@ class ExecutionEngine(graph: GraphDatabaseService) {
     }
   }
 
-  private val cacheSize: Int = 100
-  private val executionPlanCache = new LRUCache[String, ExecutionPlan](cacheSize) {}
+  def planCacheStatistics: CacheStatistics = executionPlanCache.statistics
+
+  private val cacheSize: Int = configValue(ExecutionEngine.QUERY_CACHE_SIZE).map(_.trim.toInt).getOrElse(100)
+  private val executionPlanCache = new ConcurrentLRUCache[String, ExecutionPlanImpl](cacheSize)
+
+  private val statisticsInterval: Int = configValue(ExecutionEngine.STATISTICS_INTERVAL).map(_.trim.toInt).getOrElse(0)
+  val statistics: GraphStatistics = if (statisticsInterval > 0) SampledGraphStatistics.forDatabase(graph, statisticsInterval) else NoStatistics
+}
+
+object ExecutionEngine {
+  /**
+   * The number of parsed and planned queries kept by an execution engine. Defaults to 100.
+   */
+  val QUERY_CACHE_SIZE = "query_cache_size"
+
+  /**
+   * How often, in seconds, the graph is sampled for the statistics the planner uses to pick start points
+   * and expansion order. Zero, the default, turns the sampling off. The engines of a database share one
+   * sampler, which runs at the interval of the engine created first. Cached plans are made again after each
+   * new sample.
+   */
+  val STATISTICS_INTERVAL = "cypher_statistics_interval"
 }
 
@@ -33,5 +33,10 @@ trait ExecutionResult extends Iterator[Map[String, Any]] {
   def javaIterator: java.util.Iterator[java.util.Map[String, Any]]
   def dumpToString(writer: PrintWriter)
   def dumpToString(): String
+
+  /**
+   * Releases what the query still holds open, like index hits. Results read to the end are closed already.
+   */
+  def close()
 }
 
@@ -25,6 +25,7 @@ import org.neo4j.graphdb.{PropertyContainer, Relationship, NotFoundException, No
 import java.io.{StringWriter, PrintWriter}
 import java.lang.String
 import internal.symbols.SymbolTable
+import internal.pipes.Pipe
 
 
 class PipeExecutionResult(result: Traversable[Map[String, Any]], val symbols: SymbolTable, val columns: List[String], val timeTaken: Long)
@@ -39,7 +40,7 @@ class PipeExecutionResult(result: Traversable[Map[String, Any]], val symbols: Sy
     this.map(m => {
       val item: Any = m.getOrElse(column, throw new NotFoundException("No column named '" + column + "' was found. Found: " + m.keys.mkString("(\"", "\", \"", "\")")))
       item.asInstanceOf[T]
-    }).toIterator
+    })
   }
 
   private def makeValueJavaCompatible(value: Any): Any = value match {
@@ -66,7 +67,10 @@ class PipeExecutionResult(result: Traversable[Map[String, Any]], val symbols: Sy
   }
 
   def dumpToString(writer: PrintWriter) {
-    val eagerResult = result.toList
+    // results are produced as they are read, so reading them is part of the time taken
+    val start = System.currentTimeMillis()
+    val eagerResult = remainingRows
+    val readTime = System.currentTimeMillis() - start
 
     val columnSizes = calculateColumnSizes(eagerResult)
 
@@ -74,7 +78,7 @@ class PipeExecutionResult(result: Traversable[Map[String, Any]], val symbols: Sy
     val headerLine: String = createString(columns, columnSizes, headers)
     val lineWidth: Int = headerLine.length - 2
     val --- = "+" + repeat("-", lineWidth) + "+"
-    val footer = "%d rows, %d ms".format(eagerResult.size, timeTaken)
+    val footer = "%d rows, %d ms".format(eagerResult.size, timeTaken + readTime)
 
     writer.println(---)
     writer.println(headerLine)
@@ -121,7 +125,14 @@ class PipeExecutionResult(result: Traversable[Map[String, Any]], val symbols: Sy
     }).mkString("| ", " | ", " |")
   }
 
-  val iterator = result.toIterator
+  val iterator = Pipe.closeWhenDone(Pipe.rows(result), result)
+
+  // reading the results again would execute the query again, so the rows are read once and kept
+  private lazy val remainingRows = iterator.toList
+
+  def close() {
+    Pipe.close(result)
+  }
 
   def hasNext: Boolean = iterator.hasNext
 
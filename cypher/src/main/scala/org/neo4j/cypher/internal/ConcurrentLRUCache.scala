@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal
+
+import java.util.LinkedHashMap
+import java.util.Map.Entry
+import java.util.concurrent.atomic.AtomicLong
+import scala.math._
+
+/**
+ * A thread safe, size bounded LRU cache. The keys are spread over a number of
+ * segments, each guarded by its own monitor, so lookups of different keys from
+ * different threads don't contend with each other. The least recently used
+ * entry is evicted per segment, which makes the eviction order approximate.
+ *
+ * Values are computed outside of any lock, which means that two threads asking
+ * for the same missing key at the same time may both compute it. The first
+ * value to be stored is the one that is kept.
+ */
+class ConcurrentLRUCache[K, V](cacheSize: Int, concurrencyLevel: Int = 16) {
+  require(cacheSize > 0, "The cache size must be positive, was " + cacheSize)
+  require(concurrencyLevel > 0, "The concurrency level must be positive, was " + concurrencyLevel)
+
+  private val hitCount = new AtomicLong()
+  private val missCount = new AtomicLong()
+  private val evictionCount = new AtomicLong()
+
+  private val segments: Array[Segment] = {
+    val count = min(concurrencyLevel, cacheSize)
+    val segmentSize = ceil(cacheSize.toDouble / count).toInt
+    Array.fill(count)(new Segment(segmentSize))
+  }
+
+  /**
+   * The value of key, computed and stored if it is missing. A cached value that isValid rejects counts as
+   * missing, and is replaced by the computed one.
+   */
+  def getOrElseUpdate(key: K, f: => V, isValid: V => Boolean = (_: V) => true): V = {
+    val segment = segmentFor(key)
+    val cached = segment.synchronized(segment.get(key))
+    if (cached != null && isValid(cached)) {
+      hitCount.incrementAndGet()
+      cached
+    } else {
+      missCount.incrementAndGet()
+      val value = f
+      segment.synchronized {
+        val raced = segment.get(key)
+        if (raced != null && isValid(raced)) {
+          raced
+        } else {
+          segment.put(key, value)
+          value
+        }
+      }
+    }
+  }
+
+  def get(key: K): Option[V] = {
+    val segment = segmentFor(key)
+    Option(segment.synchronized(segment.get(key)))
+  }
+
+  def put(key: K, value: V) {
+    val segment = segmentFor(key)
+    segment.synchronized(segment.put(key, value))
+  }
+
+  def containsKey(key: K): Boolean = {
+    val segment = segmentFor(key)
+    segment.synchronized(segment.containsKey(key))
+  }
+
+  def clear() {
+    segments.foreach(segment => segment.synchronized(segment.clear()))
+  }
+
+  def size: Int = segments.map(segment => segment.synchronized(segment.size())).sum
+
+  def statistics: CacheStatistics = CacheStatistics(hitCount.get, missCount.get, evictionCount.get, size)
+
+  private def segmentFor(key: K): Segment = {
+    val h = key.hashCode
+    segments(((h ^ (h >>> 16)) & Int.MaxValue) % segments.length)
+  }
+
+  private class Segment(segmentSize: Int)
+    extends LinkedHashMap[K, V](ceil(segmentSize / 0.75f).asInstanceOf[Int] + 1, 0.75f, true) {
+    override def removeEldestEntry(eldest: Entry[K, V]): Boolean = if (this.size() > segmentSize) {
+      evictionCount.incrementAndGet()
+      true
+    } else {
+      false
+    }
+  }
+}
+
+case class CacheStatistics(hits: Long, misses: Long, evictions: Long, size: Int)
@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal
+
+import java.util.concurrent.{ConcurrentHashMap, Executors, TimeUnit}
+import java.util.concurrent.atomic.AtomicLong
+import scala.collection.JavaConverters._
+import scala.util.Random
+import org.neo4j.graphdb.{Direction, GraphDatabaseService, Node}
+import org.neo4j.graphdb.event.{ErrorState, KernelEventHandler}
+import org.neo4j.helpers.DaemonThreadFactory
+import org.neo4j.kernel.AbstractGraphDatabase
+import org.neo4j.kernel.impl.core.Degrees
+import org.neo4j.tooling.GlobalGraphOperations
+
+/**
+ * Estimates of the shape of the graph, used by the planner to decide in which order to solve a query.
+ * Until the statistics are available the planner keeps the order in which the query was written.
+ */
+trait GraphStatistics {
+  def available: Boolean
+
+  /**
+   * Changes every time new statistics are published, so that plans made from older ones can be told apart.
+   */
+  def version: Long
+
+  def nodeCount: Double
+
+  def averageDegree(relType: Option[String], dir: Direction): Double
+
+  def indexHits(idxName: String, key: Option[String]): Option[Double]
+
+  def recordIndexHits(idxName: String, key: Option[String], hits: Int)
+}
+
+object NoStatistics extends GraphStatistics {
+  def available = false
+
+  def version = 0L
+
+  def nodeCount = 0.0
+
+  def averageDegree(relType: Option[String], dir: Direction) = 0.0
+
+  def indexHits(idxName: String, key: Option[String]) = None
+
+  def recordIndexHits(idxName: String, key: Option[String], hits: Int) {}
+}
+
+/**
+ * Statistics gathered by looking at a random sample of the nodes in the graph, and by keeping
+ * track of how many hits the index lookups of executed queries returned.
+ */
+class SampledGraphStatistics(graph: GraphDatabaseService) extends GraphStatistics {
+  @volatile private var sample: Option[Sample] = None
+  private val samples = new AtomicLong()
+  private val indexCounters = new ConcurrentHashMap[(String, Option[String]), HitCounter]()
+
+  def available = sample.nonEmpty
+
+  def version = samples.get
+
+  def nodeCount = sample.map(_.nodeCount).getOrElse(0.0)
+
+  def averageDegree(relType: Option[String], dir: Direction) = sample.map(_.averageDegree(relType, dir)).getOrElse(0.0)
+
+  def indexHits(idxName: String, key: Option[String]): Option[Double] = Option(indexCounters.get((idxName, key))).map(_.average)
+
+  def recordIndexHits(idxName: String, key: Option[String], hits: Int) {
+    record((idxName, None), hits)
+
+    // Lookups on computed keys would otherwise grow this without bounds
+    if (key.nonEmpty && indexCounters.size < SampledGraphStatistics.MaxTrackedIndexKeys)
+      record((idxName, key), hits)
+  }
+
+  private def record(lookup: (String, Option[String]), hits: Int) {
+    indexCounters.putIfAbsent(lookup, new HitCounter)
+    indexCounters.get(lookup).record(hits)
+  }
+
+  /**
+   * Counts the relationships of a sample of the nodes, per type and direction. Small graphs are looked at in full.
+   * The degrees are read from the store, so that sampling doesn't fill the caches with nodes no query asked for.
+   */
+  def sampleGraph() {
+    val (nodeDegrees, estimatedNodeCount) = sampleDegrees()
+    val degrees = collection.mutable.Map[(Option[String], Direction), Long]().withDefaultValue(0L)
+
+    nodeDegrees.foreach(_.foreach {
+      case ((relType, dir), count) =>
+        degrees((Some(relType), dir)) += count
+        degrees((None, dir)) += count
+    })
+
+    sample = Some(new Sample(nodeDegrees.size, estimatedNodeCount, degrees.toMap))
+    samples.incrementAndGet()
+  }
+
+  private def sampleDegrees(): (Seq[Map[(String, Direction), Int]], Double) = graph match {
+    case db: AbstractGraphDatabase => {
+      val nodeManager = db.getNodeManager
+      val highestId = nodeManager.getHighestPossibleIdInUse(classOf[Node])
+      val ids = if (highestId < SampledGraphStatistics.SampleSize)
+        (0L to highestId)
+      else
+        Seq.fill(SampledGraphStatistics.SampleSize)((Random.nextDouble() * (highestId + 1)).toLong)
+
+      val nodeDegrees = ids.flatMap(id => Option(nodeManager.getStoredDegrees(id)).map(_.asScala.map {
+        case (key, count) => (key.first, key.other) -> count.intValue
+      }.toMap))
+
+      (nodeDegrees, if (ids.isEmpty) 0.0 else (highestId + 1).toDouble * nodeDegrees.size / ids.size)
+    }
+
+    case _ => {
+      val types = GlobalGraphOperations.at(graph).getAllRelationshipTypes.asScala.toList
+      val nodes = GlobalGraphOperations.at(graph).getAllNodes.asScala.take(SampledGraphStatistics.SampleSize).toList
+      val nodeDegrees = nodes.map(node => (for (relType <- types; dir <- Seq(Direction.OUTGOING, Direction.INCOMING))
+        yield (relType.name, dir) -> Degrees.getDegree(node, relType, dir)).toMap)
+      (nodeDegrees, nodes.size.toDouble)
+    }
+  }
+
+  private class Sample(sampledNodes: Int, val nodeCount: Double, degrees: Map[(Option[String], Direction), Long]) {
+    def averageDegree(relType: Option[String], dir: Direction): Double = dir match {
+      case Direction.BOTH => averageDegree(relType, Direction.OUTGOING) + averageDegree(relType, Direction.INCOMING)
+      case _ => if (sampledNodes == 0) 0.0 else degrees.getOrElse((relType, dir), 0L).toDouble / sampledNodes
+    }
+  }
+
+  private class HitCounter {
+    private val lookups = new AtomicLong()
+    private val hits = new AtomicLong()
+
+    def record(count: Int) {
+      hits.addAndGet(count)
+      lookups.incrementAndGet()
+    }
+
+    def average: Double = hits.get.toDouble / math.max(lookups.get, 1)
+  }
+}
+
+object SampledGraphStatistics {
+  val SampleSize = 1000
+  val MaxTrackedIndexKeys = 10000
+
+  private val running = collection.mutable.Map[GraphDatabaseService, SampledGraphStatistics]()
+
+  /**
+   * The statistics of a database, sampled every intervalSeconds starting one interval from now so that
+   * starting up the database isn't slowed down. Every execution engine of the database shares them, sampled
+   * at the interval asked for first, and the sampling stops when the database is shut down.
+   */
+  def forDatabase(graph: GraphDatabaseService, intervalSeconds: Int): SampledGraphStatistics = running.synchronized {
+    running.getOrElseUpdate(graph, start(graph, intervalSeconds))
+  }
+
+  private def start(graph: GraphDatabaseService, intervalSeconds: Int): SampledGraphStatistics = {
+    val statistics = new SampledGraphStatistics(graph)
+    val sampler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Cypher statistics"))
+    sampler.scheduleWithFixedDelay(new SamplingTask(statistics, graph), intervalSeconds, intervalSeconds, TimeUnit.SECONDS)
+
+    graph.registerKernelEventHandler(new KernelEventHandler {
+      def beforeShutdown() {
+        // a sample being taken must not read the store once it's closed
+        sampler.shutdownNow()
+        sampler.awaitTermination(10, TimeUnit.SECONDS)
+        running.synchronized {
+          running.remove(graph)
+        }
+      }
+
+      def kernelPanic(error: ErrorState) {}
+
+      def getResource: AnyRef = null
+
+      def orderComparedTo(other: KernelEventHandler): KernelEventHandler.ExecutionOrder = KernelEventHandler.ExecutionOrder.DOESNT_MATTER
+    })
+    statistics
+  }
+
+  /**
+   * Failing to sample, say while the store is being rotated, leaves the statistics of the last sample in
+   * place until the next one.
+   */
+  private class SamplingTask(statistics: SampledGraphStatistics, graph: GraphDatabaseService) extends Runnable {
+    def run() {
+      try {
+        statistics.sampleGraph()
+      } catch {
+        case e: Exception => graph match {
+          case db: AbstractGraphDatabase => db.getMessageLog.logMessage("Failed to sample the graph for the Cypher statistics", e)
+          case _ =>
+        }
+      }
+    }
+  }
+}
@@ -58,6 +58,26 @@ case class CountStar() extends AggregationExpression {
   override def toString() = "count(*)"
 }
 
+// Stands in for a count of pattern matches, by summing the degrees a DegreePipe has put in the rows
+case class DegreeSum(count: AggregationExpression, degreeName: String) extends AggregationExpression {
+  def name = count.identifier.name
+
+  def typ = count.identifier.typ
+
+  def declareDependencies(extectedType: AnyType) = Seq(Identifier(degreeName, IntegerType()))
+
+  def rewrite(f: (Expression) => Expression) = f(DegreeSum(count, degreeName))
+
+  def createAggregationFunction = new DegreeSumFunction(degreeName)
+
+  def filter(f: (Expression) => Boolean) = if (f(this))
+    Seq(this)
+  else
+    Seq()
+
+  override def toString() = count.toString()
+}
+
 abstract class AggregationWithInnerExpression(inner:Expression) extends AggregationExpression {
   if(inner.containsAggregate)
     throw new SyntaxException("Can't use aggregate functions inside of aggregate functions.")
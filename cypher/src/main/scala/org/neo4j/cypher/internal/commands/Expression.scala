@@ -82,7 +82,7 @@ case class Subtract(a: Expression, b: Expression) extends Arithmetics(a, b) {
 
   def numberWithNumber(a: Number, b: Number) = a.doubleValue() - b.doubleValue()
 
-  def rewrite(f: (Expression) => Expression) = f(Modulo(a.rewrite(f), b.rewrite(f)))
+  def rewrite(f: (Expression) => Expression) = f(Subtract(a.rewrite(f), b.rewrite(f)))
 }
 
 case class Modulo(a: Expression, b: Expression) extends Arithmetics(a, b) {
@@ -216,8 +216,10 @@ case class Nullable(expression: Expression) extends Expression {
 }
 
 case class Property(entity: String, property: String) extends CastableExpression {
-  def apply(m: Map[String, Any]): Any = {
-    m(entity).asInstanceOf[PropertyContainer] match {
+  def apply(m: Map[String, Any]): Any = propertyOf(m(entity))
+
+  protected def propertyOf(value: Any): Any = {
+    value.asInstanceOf[PropertyContainer] match {
       case null => null
       case propertyContainer => try {
         propertyContainer.getProperty(property)
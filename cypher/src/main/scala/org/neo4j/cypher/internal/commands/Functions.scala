@@ -196,7 +196,7 @@ case class LastFunction(collection: Expression) extends NullInNullOutExpression(
 
   def declareDependencies(extectedType: AnyType): Seq[Identifier] = collection.dependencies(AnyIterableType())
 
-  def rewrite(f: (Expression) => Expression) = f(HeadFunction(collection.rewrite(f)))
+  def rewrite(f: (Expression) => Expression) = f(LastFunction(collection.rewrite(f)))
 
   def filter(f: (Expression) => Boolean) = if (f(this))
     Seq(this) ++ collection.filter(f)
@@ -216,7 +216,7 @@ case class TailFunction(collection: Expression) extends NullInNullOutExpression(
 
   def declareDependencies(extectedType: AnyType): Seq[Identifier] = collection.dependencies(AnyIterableType())
 
-  def rewrite(f: (Expression) => Expression) = f(HeadFunction(collection.rewrite(f)))
+  def rewrite(f: (Expression) => Expression) = f(TailFunction(collection.rewrite(f)))
 
   def filter(f: (Expression) => Boolean) = if (f(this))
     Seq(this) ++ collection.filter(f)
@@ -25,8 +25,11 @@ import collection.Seq
 import org.neo4j.cypher.internal.pipes._
 import org.neo4j.cypher._
 import internal.commands._
+import internal.{NoStatistics, GraphStatistics}
 
-class ExecutionPlanImpl(inputQuery: Query, graph: GraphDatabaseService) extends ExecutionPlan {
+class ExecutionPlanImpl(inputQuery: Query, graph: GraphDatabaseService, statistics: GraphStatistics = NoStatistics) extends ExecutionPlan {
+  // taken before planning, so that statistics published meanwhile make the plan out of date
+  val statisticsVersion = statistics.version
   val (executionPlan, executionPlanText) = prepareExecutionPlan()
 
   def execute(params: Map[String, Any]): ExecutionResult = executionPlan(params)
@@ -78,20 +81,22 @@ class ExecutionPlanImpl(inputQuery: Query, graph: GraphDatabaseService) extends
   }
 
   lazy val builders = Seq(
-    new NodeByIdBuilder(graph),
-    new IndexQueryBuilder(graph),
+    new NodeByIdBuilder(graph, statistics),
+    new IndexQueryBuilder(graph, statistics),
     new GraphGlobalStartBuilder(graph),
     new FilterBuilder,
     new NamedPathBuilder,
     new ExtractBuilder,
     new SortedAggregationBuilder,
-    new MatchBuilder,
+    new DegreeBuilder,
+    new MatchBuilder(statistics),
     new SortBuilder,
+    new TopPipeBuilder,
     new ColumnFilterBuilder,
     new SliceBuilder,
     new AggregationBuilder,
     new ShortestPathBuilder,
-    new RelationshipByIdBuilder(graph))
+    new RelationshipByIdBuilder(graph, statistics))
 
   override def toString = executionPlanText
 }
\ No newline at end of file
@@ -34,6 +34,7 @@ trait PlanBuilder extends PartialFunction[(Pipe, PartiallySolvedQuery),(Pipe, Pa
 object PlanBuilder extends Enumeration {
   val Filter = -10
   val NamedPath = -9
+  val Top = -1
   val NodeById = -1
   val RelationshipById = -1
   val IndexQuery = 0
@@ -41,6 +42,7 @@ object PlanBuilder extends Enumeration {
   val Slice = 0
   val ColumnFilter = 0
   val GlobalStart = 1
+  val Degree = 9
   val Match = 10
   val ShortestPath = 20
   val SortedAggregation = 30
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.executionplan.builders
+
+import org.neo4j.cypher.internal.executionplan.{Solved, Unsolved, PartiallySolvedQuery, PlanBuilder}
+import org.neo4j.cypher.internal.pipes.{DegreePipe, Pipe}
+import org.neo4j.cypher.internal.commands._
+import org.neo4j.cypher.internal.symbols.AnyType
+
+/*
+When the only thing done with the matches of a single relationship from a bound node is to count them,
+as in START n=node(1) MATCH n-[:KNOWS]->x RETURN n, count(*), the counts are read from the degree of
+the node instead of matching each relationship. Rows where the node has no such relationships are left
+out, just as matching would.
+ */
+class DegreeBuilder extends PlanBuilder {
+  private val degreeName = "  DEGREE"
+
+  def apply(v1: (Pipe, PartiallySolvedQuery)): (Pipe, PartiallySolvedQuery) = v1 match {
+    case (p, q) => {
+      val pattern = q.patterns.head.token.asInstanceOf[RelatedTo]
+      val (node, direction) = if (p.symbols.keys.contains(pattern.left))
+        (pattern.left, pattern.direction)
+      else
+        (pattern.right, pattern.direction.reverse())
+      val newPipe = new DegreePipe(p, node, pattern.relType, direction, degreeName)
+
+      val returns = q.returns.map(r => {
+        val item = ReturnItem(toDegreeSum(r.token.expression), r.token.name)
+        if (r.solved) Solved(item) else Unsolved(item)
+      })
+
+      (newPipe, q.copy(
+        patterns = q.patterns.map(_.solve),
+        returns = returns,
+        aggregation = q.aggregation.map(x => Unsolved[AggregationExpression](DegreeSum(x.token, degreeName)))
+      ))
+    }
+  }
+
+  private def toDegreeSum(e: Expression): Expression = e.rewrite {
+    case x: AggregationExpression => DegreeSum(x, degreeName)
+    case x => x
+  }
+
+  def isDefinedAt(x: (Pipe, PartiallySolvedQuery)): Boolean = x match {
+    case (p, q) => q.aggregateQuery.token &&
+      q.aggregateQuery.unsolved &&
+      q.start.forall(_.solved) &&
+      q.where.forall(_.solved) &&
+      q.namedPaths.isEmpty &&
+      q.aggregation.nonEmpty &&
+      !p.symbols.keys.contains(degreeName) &&
+      (q.patterns match {
+        case Seq(Unsolved(pattern: RelatedTo)) => countsOnly(pattern, p, q)
+        case _ => false
+      })
+  }
+
+  private def countsOnly(pattern: RelatedTo, p: Pipe, q: PartiallySolvedQuery): Boolean = {
+    val matched = Seq(pattern.left, pattern.right, pattern.relName)
+    val keys = p.symbols.keys
+    val otherExpressions = q.returns.map(_.token.expression) ++ q.sort.map(_.token.expression)
+
+    !pattern.optional &&
+      pattern.predicate == True() &&
+      pattern.left != pattern.right &&
+      keys.contains(pattern.left) != keys.contains(pattern.right) &&
+      !keys.contains(pattern.relName) &&
+      q.aggregation.forall(x => x.token match {
+        case CountStar() => true
+        case Count(Entity(name)) => matched.contains(name)
+        case _ => false
+      }) &&
+      otherExpressions.filterNot(_.containsAggregate).
+        flatMap(_.dependencies(AnyType())).
+        forall(id => keys.contains(id.name))
+  }
+
+  def priority: Int = PlanBuilder.Degree
+}
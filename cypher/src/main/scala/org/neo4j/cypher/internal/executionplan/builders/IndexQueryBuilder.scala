@@ -21,15 +21,17 @@ package org.neo4j.cypher.internal.executionplan.builders
 
 import org.neo4j.cypher.internal.executionplan.{QueryToken, Unsolved, PartiallySolvedQuery, PlanBuilder}
 import org.neo4j.cypher.internal.commands._
-import org.neo4j.cypher.internal.pipes.{RelationshipStartPipe, NodeStartPipe, Pipe}
+import org.neo4j.cypher.internal.pipes.{ClosableSource, RelationshipStartPipe, NodeStartPipe, Pipe}
 import org.neo4j.graphdb.{Relationship, Node, GraphDatabaseService}
+import org.neo4j.graphdb.index.IndexHits
+import org.neo4j.cypher.internal.{NoStatistics, GraphStatistics}
 import collection.JavaConverters._
 import java.lang.{Iterable=>JIterable}
 
-class IndexQueryBuilder(graph: GraphDatabaseService) extends PlanBuilder {
+class IndexQueryBuilder(graph: GraphDatabaseService, statistics: GraphStatistics = NoStatistics) extends PlanBuilder {
   def apply(v1: (Pipe, PartiallySolvedQuery)): (Pipe, PartiallySolvedQuery) = {
     val (pipe, q) = v1
-    val item = q.start.filter(filter).head
+    val item = StartItemCost.cheapest(q.start.filter(filter), statistics)
 
     val newPipe = createStartPipe(pipe, item.token)
 
@@ -49,33 +51,37 @@ class IndexQueryBuilder(graph: GraphDatabaseService) extends PlanBuilder {
       new NodeStartPipe(lastPipe, varName, m => {
         val keyVal = key(m).toString
         val valueVal = value(m)
-        val indexHits: JIterable[Node] = graph.index.forNodes(idxName).get(keyVal, valueVal)
-        indexHits.asScala
+        val indexHits: IndexHits[Node] = graph.index.forNodes(idxName).get(keyVal, valueVal)
+        recordHits(idxName, Some(keyVal), indexHits)
       })
 
     case RelationshipByIndex(varName, idxName, key, value) =>
       new RelationshipStartPipe(lastPipe, varName, m => {
         val keyVal = key(m).toString
         val valueVal = value(m)
-        val indexHits: JIterable[Relationship] = graph.index.forRelationships(idxName).get(keyVal, valueVal)
-        indexHits.asScala
+        val indexHits: IndexHits[Relationship] = graph.index.forRelationships(idxName).get(keyVal, valueVal)
+        recordHits(idxName, Some(keyVal), indexHits)
       })
 
     case NodeByIndexQuery(varName, idxName, query) =>
       new NodeStartPipe(lastPipe, varName, m => {
         val queryText = query(m)
-        val indexHits: JIterable[Node] = graph.index.forNodes(idxName).query(queryText)
-        indexHits.asScala
+        val indexHits: IndexHits[Node] = graph.index.forNodes(idxName).query(queryText)
+        recordHits(idxName, None, indexHits)
       })
 
     case RelationshipByIndexQuery(varName, idxName, query) =>
       new RelationshipStartPipe(lastPipe, varName, m => {
         val queryText = query(m)
-        val indexHits: JIterable[Relationship] = graph.index.forRelationships(idxName).query(queryText)
-        indexHits.asScala
+        val indexHits: IndexHits[Relationship] = graph.index.forRelationships(idxName).query(queryText)
+        recordHits(idxName, None, indexHits)
       })
   }
 
+  private def recordHits[T](idxName: String, key: Option[String], indexHits: IndexHits[T]): Iterable[T] = {
+    statistics.recordIndexHits(idxName, key, indexHits.size())
+    new ClosableSource((indexHits: JIterable[T]).asScala, () => indexHits.close())
+  }
 
   def isDefinedAt(x: (Pipe, PartiallySolvedQuery)): Boolean = {
     val (_, q) = x
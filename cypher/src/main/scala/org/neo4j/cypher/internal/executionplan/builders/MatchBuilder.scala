@@ -22,15 +22,16 @@ package org.neo4j.cypher.internal.executionplan.builders
 import org.neo4j.cypher.internal.executionplan.{Unsolved, QueryToken, PartiallySolvedQuery, PlanBuilder}
 import org.neo4j.cypher.internal.pipes.{MatchPipe, Pipe}
 import org.neo4j.cypher.internal.commands.{ShortestPath, StartItem, Pattern}
+import org.neo4j.cypher.internal.{NoStatistics, GraphStatistics}
 
-class MatchBuilder extends PlanBuilder {
+class MatchBuilder(statistics: GraphStatistics = NoStatistics) extends PlanBuilder {
   def apply(v1: (Pipe, PartiallySolvedQuery)): (Pipe, PartiallySolvedQuery) = v1 match {
     case (p, q) => {
       val items = q.patterns.filter(yesOrNo(_, p, q.start))
       val patterns = items.map(_.token)
       val predicates = q.where.filter(!_.solved).map(_.token)
 
-      val newPipe = new MatchPipe(p, patterns, predicates)
+      val newPipe = new MatchPipe(p, patterns, predicates, statistics)
 
       (newPipe, q.copy(patterns = q.patterns.filterNot(items.contains) ++ items.map(_.solve)))
     }
@@ -25,13 +25,14 @@ import org.neo4j.graphdb.{Node, GraphDatabaseService}
 import org.neo4j.cypher.internal.pipes.{NodeStartPipe, Pipe}
 import GetGraphElements.getElements
 import org.neo4j.cypher.internal.executionplan._
+import org.neo4j.cypher.internal.{NoStatistics, GraphStatistics}
 
-class NodeByIdBuilder(graph: GraphDatabaseService) extends PlanBuilder {
+class NodeByIdBuilder(graph: GraphDatabaseService, statistics: GraphStatistics = NoStatistics) extends PlanBuilder {
   def priority: Int = PlanBuilder.NodeById
 
   def apply(v1: (Pipe, PartiallySolvedQuery)): (Pipe, PartiallySolvedQuery) = v1 match {
     case (inPipe, inQ) => {
-      val startItemToken = interestingStartItems(inQ).head
+      val startItemToken = StartItemCost.cheapest(interestingStartItems(inQ), statistics)
       val Unsolved(NodeById(key, expression)) = startItemToken
 
       val pipe = new NodeStartPipe(inPipe, key, m => getElements[Node](expression(m), key, graph.getNodeById))
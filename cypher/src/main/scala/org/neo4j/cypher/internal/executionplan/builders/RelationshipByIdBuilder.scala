@@ -22,16 +22,17 @@ package org.neo4j.cypher.internal.executionplan.builders
 import collection.Seq
 import GetGraphElements.getElements
 import org.neo4j.cypher.internal.executionplan._
+import org.neo4j.cypher.internal.{NoStatistics, GraphStatistics}
 import org.neo4j.cypher.internal.commands.{RelationshipById, StartItem}
 import org.neo4j.graphdb.{Relationship, GraphDatabaseService}
 import org.neo4j.cypher.internal.pipes.{RelationshipStartPipe, Pipe}
 
-class RelationshipByIdBuilder(graph: GraphDatabaseService) extends PlanBuilder {
+class RelationshipByIdBuilder(graph: GraphDatabaseService, statistics: GraphStatistics = NoStatistics) extends PlanBuilder {
   def priority: Int = PlanBuilder.RelationshipById
 
   def apply(v1: (Pipe, PartiallySolvedQuery)): (Pipe, PartiallySolvedQuery) = v1 match {
     case (inPipe, inQ) => {
-      val startItemToken = interestingStartItems(inQ).head
+      val startItemToken = StartItemCost.cheapest(interestingStartItems(inQ), statistics)
       val Unsolved(RelationshipById(key, expression)) = startItemToken
 
       val pipe = new RelationshipStartPipe(inPipe, key, m => getElements[Relationship](expression(m), key, graph.getRelationshipById))
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.executionplan.builders
+
+import org.neo4j.cypher.internal.executionplan.QueryToken
+import org.neo4j.cypher.internal.commands._
+import org.neo4j.cypher.internal.GraphStatistics
+import org.neo4j.graphdb.Direction
+
+/**
+ * Start items are bound one inside the other, so the item expected to produce the fewest rows is bound first.
+ */
+object StartItemCost {
+  val UnknownIndexHits = 10.0
+
+  def cheapest(items: Seq[QueryToken[StartItem]], statistics: GraphStatistics): QueryToken[StartItem] =
+    if (statistics.available)
+      items.minBy(item => estimatedRows(item.token, statistics))
+    else
+      items.head
+
+  def estimatedRows(item: StartItem, statistics: GraphStatistics): Double = item match {
+    case NodeById(_, expression) => literalSize(expression)
+    case RelationshipById(_, expression) => literalSize(expression)
+    case NodeByIndex(_, idxName, key, _) => indexHits(idxName, key, statistics)
+    case RelationshipByIndex(_, idxName, key, _) => indexHits(idxName, key, statistics)
+    case NodeByIndexQuery(_, idxName, _) => statistics.indexHits(idxName, None).getOrElse(UnknownIndexHits)
+    case RelationshipByIndexQuery(_, idxName, _) => statistics.indexHits(idxName, None).getOrElse(UnknownIndexHits)
+    case AllNodes(_) => statistics.nodeCount
+    case AllRelationships(_) => statistics.nodeCount * statistics.averageDegree(None, Direction.OUTGOING)
+  }
+
+  private def literalSize(expression: Expression): Double = expression match {
+    case Literal(values: Traversable[_]) => values.size
+    case _ => 1.0
+  }
+
+  private def indexHits(idxName: String, key: Expression, statistics: GraphStatistics): Double = {
+    val keyName = key match {
+      case Literal(k) => Some(k.toString)
+      case _ => None
+    }
+
+    statistics.indexHits(idxName, keyName).
+      orElse(statistics.indexHits(idxName, None)).
+      getOrElse(UnknownIndexHits)
+  }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.executionplan.builders
+
+import org.neo4j.cypher.internal.executionplan.{PartiallySolvedQuery, PlanBuilder}
+import org.neo4j.cypher.internal.pipes.{ExtractPipe, TopPipe, Pipe}
+
+/*
+Solves ORDER BY and LIMIT in one go, so that only the rows that end up in the result are kept and sorted.
+ */
+class TopPipeBuilder extends PlanBuilder {
+  def apply(v1: (Pipe, PartiallySolvedQuery)): (Pipe, PartiallySolvedQuery) = v1 match {
+    case (p, q) => {
+      val sortItems = q.sort.map(_.token)
+      val sortExpressions = sortItems.map(_.expression)
+      val returnItems = q.returns.map(_.token.expression)
+      val slice = q.slice.map(_.token).head
+
+      val missing = sortExpressions.filterNot(returnItems.contains)
+
+      val pipe = if (missing.nonEmpty) {
+        new ExtractPipe(p, sortExpressions)
+      } else {
+        p
+      }
+
+      val resultPipe = new TopPipe(pipe, sortItems.toList, slice.from, slice.limit.get)
+
+      (resultPipe, q.copy(sort = q.sort.map(_.solve), slice = q.slice.map(_.solve)))
+    }
+  }
+
+  def isDefinedAt(x: (Pipe, PartiallySolvedQuery)): Boolean = x match {
+    case (p, q) => q.extracted &&
+      q.sort.exists(_.unsolved) &&
+      q.slice.exists(s => s.unsolved && s.token.limit.nonEmpty)
+  }
+
+  def priority: Int = PlanBuilder.Top
+}
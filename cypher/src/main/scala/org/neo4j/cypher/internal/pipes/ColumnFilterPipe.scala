@@ -29,6 +29,8 @@ class ColumnFilterPipe(source: Pipe, val returnItems: Seq[ReturnItem])
   val returnItemNames = returnItems.map(_.columnName)
   val symbols = new SymbolTable(identifiers:_*)
 
+  override def slots = Slots.empty
+
   private lazy val identifiers = source.symbols.identifiers.flatMap {
     // Yay! My first monad!
     case id => returnItems.find(ri=>ri.expression.identifier.name == id.name).map( x => id )
@@ -36,12 +38,12 @@ class ColumnFilterPipe(source: Pipe, val returnItems: Seq[ReturnItem])
     
   def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
     val intermediate = source.createResults(params)
-    intermediate.map(m => {
+    new LazyRows(Pipe.rows(intermediate).map(m => {
       val onlyRelevantValuesBeforeRenaming = m.filterKeys(key => returnItems.exists(ri => ri.expression.identifier.name == key))
       onlyRelevantValuesBeforeRenaming.map {
         case (key, value) => (returnItems.find(ri => ri.expression.identifier.name == key).get.columnName -> value)
       }
-    })
+    }), intermediate)
   }
 
   override def executionPlan(): String =
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import java.lang.String
+import org.neo4j.cypher.internal.symbols.{NodeType, IntegerType, Identifier}
+import org.neo4j.graphdb.{DynamicRelationshipType, Direction, Node}
+import org.neo4j.kernel.impl.core.Degrees
+
+// Puts the number of relationships a pattern would match from a node in each row, leaving out
+// rows for which it is zero. Used instead of matching when only the matches are counted.
+class DegreePipe(source: Pipe, node: String, relType: Option[String], direction: Direction, degreeName: String)
+  extends PipeWithSource(source) {
+  val symbols = source.symbols.add(Identifier(degreeName, IntegerType()))
+
+  def dependencies = Seq(Identifier(node, NodeType()))
+
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] =
+    source.createResults(params).
+      map(m => m + (degreeName -> degreeOf(m(node).asInstanceOf[Node]))).
+      filter(m => m(degreeName) != 0)
+
+  private def degreeOf(n: Node): Int = relType match {
+    case Some(typeName) => Degrees.getDegree(n, DynamicRelationshipType.withName(typeName), direction)
+    case None => Degrees.getDegree(n, direction)
+  }
+
+  override def executionPlan(): String = source.executionPlan() + "\r\n" + "Degree(" + node + ", " + relType.getOrElse("") + ", " + direction + ")"
+}
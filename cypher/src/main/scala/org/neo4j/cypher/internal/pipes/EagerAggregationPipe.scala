@@ -31,6 +31,8 @@ import org.neo4j.cypher.internal.commands.{Expression, AggregationExpression}
 class EagerAggregationPipe(source: Pipe, val keyExpressions: Seq[Expression], aggregations: Seq[AggregationExpression]) extends PipeWithSource(source) {
   val symbols: SymbolTable = createSymbols()
 
+  override def slots = Slots.empty
+
   def dependencies: Seq[Identifier] = keyExpressions.flatMap(_.dependencies(AnyType())) ++ aggregations.flatMap(_.dependencies(AnyType()))
 
   def createSymbols() = {
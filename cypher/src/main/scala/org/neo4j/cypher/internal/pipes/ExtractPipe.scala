@@ -36,12 +36,16 @@ class ExtractPipe(source: Pipe, val expressions: Seq[Expression]) extends PipeWi
 
   val symbols: SymbolTable = source.symbols.add(expressions.map(_.identifier):_*)
 
+  override val slots = source.slots.extend(expressions.map(_.identifier.name))
+
+  private val offsets = expressions.map(exp => slots.offset(exp.identifier.name)).toArray
+
+  private val compiledExpressions = expressions.map(exp => source.slots.compile(exp)).toArray
 
   def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
-    source.createResults(params).map(row => {
-      val projection: Map[String, Any] = expressions.map( exp =>exp.identifier.name -> exp(row) ).toMap
-      projection ++ row
-    })
+    val sourceResults = source.createResults(params)
+    new LazyRows(Pipe.rows(sourceResults).map(row =>
+      SlotRow.extend(row, slots, offsets, compiledExpressions.map(exp => exp(row)), keepExisting = true)), sourceResults)
   }
 
   override def executionPlan(): String = source.executionPlan() + "\r\nExtract([" + source.symbols.keys.mkString(",") + "] => [" + expressions.map(_.identifier.name).mkString(", ") + "])"
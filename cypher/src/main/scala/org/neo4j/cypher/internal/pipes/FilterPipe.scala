@@ -25,8 +25,12 @@ import org.neo4j.cypher.internal.commands.Predicate
 class FilterPipe(source: Pipe, predicate: Predicate) extends PipeWithSource(source) {
   val symbols = source.symbols
 
-  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] =
-    source.createResults(params).filter(predicate isMatch)
+  private val compiledPredicate = source.slots.compile(predicate)
+
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
+    val sourceResults = source.createResults(params)
+    new LazyRows(Pipe.rows(sourceResults).filter(compiledPredicate isMatch), sourceResults)
+  }
 
   override def executionPlan(): String = source.executionPlan() + "\r\n" + "Filter(" + predicate.toString + ")"
 
@@ -23,10 +23,12 @@ import matching.MatchingContext
 import java.lang.String
 import org.neo4j.cypher.internal.commands.{PathPattern, RelatedTo, Predicate, Pattern}
 import org.neo4j.cypher.internal.symbols._
+import org.neo4j.cypher.internal.{NoStatistics, GraphStatistics}
 
-class MatchPipe(source: Pipe, patterns: Seq[Pattern], predicates: Seq[Predicate]) extends Pipe {
-  val matchingContext = new MatchingContext(patterns, source.symbols, predicates)
+class MatchPipe(source: Pipe, patterns: Seq[Pattern], predicates: Seq[Predicate], statistics: GraphStatistics = NoStatistics) extends Pipe {
   val symbols = source.symbols.add(identifiers: _*)
+  override val slots = source.slots.extend(identifiers.map(_.name))
+  val matchingContext = new MatchingContext(patterns, source.symbols, predicates, statistics, slots)
 
   def identifiers = patterns.flatMap(_ match {
     case RelatedTo(left, right, rel, _, _, _, _) => Seq(Identifier(left, NodeType()), Identifier(right, NodeType()), Identifier(rel, RelationshipType()))
@@ -39,8 +41,11 @@ class MatchPipe(source: Pipe, patterns: Seq[Pattern], predicates: Seq[Predicate]
   })
 
 
-  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] =
-    source.createResults(params).flatMap(sourcePipeRow => matchingContext.getMatches(sourcePipeRow))
+  // The pattern matcher pushes its matches, so the matches of one source row are collected before they are returned
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
+    val sourceResults = source.createResults(params)
+    new LazyRows(Pipe.rows(sourceResults).flatMap(sourcePipeRow => Pipe.rows(matchingContext.getMatches(sourcePipeRow))), sourceResults)
+  }
 
   override def executionPlan(): String = source.executionPlan() + "\r\nPatternMatch(" + patterns.mkString(",") + ")"
 }
\ No newline at end of file
@@ -75,5 +75,7 @@ class NamedPathPipe(source: Pipe, path: NamedPath) extends Pipe {
 
   val symbols = source.symbols.add(Identifier(path.pathName, PathType()))
 
+  override def slots = source.slots
+
   override def executionPlan(): String = source.executionPlan() + "\r\nExtractPath(" + path.pathName + " = " + path.pathPattern.mkString(", ") + ")"
 }
\ No newline at end of file
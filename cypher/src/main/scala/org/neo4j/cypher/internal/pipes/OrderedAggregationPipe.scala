@@ -34,6 +34,8 @@ class OrderedAggregationPipe(source: Pipe, val keyExpressions: Seq[Expression],
 
   val symbols: SymbolTable = createSymbols()
 
+  override def slots = Slots.empty
+
   def dependencies: Seq[Identifier] = keyExpressions.flatMap(_.dependencies(AnyType())) ++ aggregations.flatMap(_.dependencies(AnyType()))
 
   def createSymbols() = {
@@ -24,8 +24,14 @@ import org.neo4j.cypher.internal.symbols.{SymbolTable, Identifier}
 import org.neo4j.cypher.internal.commands.ParameterValue
 
 class ParameterPipe() extends Pipe {
-  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = Seq(params.map { case (k,v) => "-=PARAMETER=-"+k+"-=PARAMETER=-" -> ParameterValue(v) } )
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = Seq(ParameterPipe.parameterRow(params))
   val identifiers: Seq[Identifier] = Seq()
   val symbols: SymbolTable = new SymbolTable()
   override def executionPlan(): String = "Parameters()"
-}
\ No newline at end of file
+}
+
+object ParameterPipe {
+  // The row parameter expressions are evaluated against
+  def parameterRow(params: Map[String, Any]): Map[String, Any] =
+    params.map { case (k,v) => "-=PARAMETER=-"+k+"-=PARAMETER=-" -> ParameterValue(v) }
+}
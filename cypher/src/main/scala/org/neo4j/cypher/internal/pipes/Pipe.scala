@@ -32,6 +32,61 @@ trait Pipe {
   def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]]
   def symbols: SymbolTable
   def executionPlan(): String
+
+  /**
+   * The slots of the rows this pipe produces, resolved when the plan is built. Rows without them, like
+   * the maps aggregation produces, are read by name.
+   */
+  def slots: Slots = Slots.empty
+}
+
+object Pipe {
+  /**
+   * Pulls the rows out of the results of a pipe. Pipes returning LazyRows, or any other Iterable, produce
+   * each row when it is asked for. Other results are traversed in full first.
+   */
+  def rows(results: Traversable[Map[String, Any]]): Iterator[Map[String, Any]] = results match {
+    case iterable: Iterable[Map[String, Any]] => iterable.iterator
+    case _ => results.toIterator
+  }
+
+  /**
+   * Closes the results of a pipe that are not read to the end.
+   */
+  def close(results: Traversable[Map[String, Any]]) {
+    results match {
+      case rows: LazyRows => rows.close()
+      case _ =>
+    }
+  }
+
+  /**
+   * Closes the results the rows are read from as soon as there are no more rows.
+   */
+  def closeWhenDone(rows: Iterator[Map[String, Any]], results: Traversable[Map[String, Any]]): Iterator[Map[String, Any]] =
+    new Iterator[Map[String, Any]] {
+      def hasNext: Boolean = rows.hasNext || {
+        close(results)
+        false
+      }
+
+      def next(): Map[String, Any] = rows.next()
+    }
+}
+
+/**
+ * The results of a pipe, produced one row at a time as they are read, so that a consumer reading
+ * only the first few rows only pays for those. Every new iterator executes the pipe again.
+ *
+ * The pipes below may hold resources, like index hits, open until they are read to the end. Closing
+ * the rows closes the results of the source pipe, and with them those resources.
+ */
+class LazyRows(rows: => Iterator[Map[String, Any]], source: Traversable[Map[String, Any]] = Nil) extends Iterable[Map[String, Any]] {
+  def iterator: Iterator[Map[String, Any]] = rows
+
+  def close() {
+    Pipe.close(source)
+  }
 }
 
 class NullPipe extends Pipe {
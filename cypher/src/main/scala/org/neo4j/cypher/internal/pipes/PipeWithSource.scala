@@ -26,6 +26,8 @@ import org.neo4j.cypher.internal.symbols.Identifier
 abstract class PipeWithSource(source: Pipe) extends Pipe with Dependant {
   dependencies.foreach(source.symbols.assertHas(_))
   def dependencies: Seq[Identifier]
+
+  override def slots: Slots = source.slots
 }
 
 trait Dependant {
@@ -26,26 +26,29 @@ import org.neo4j.helpers.ThisShouldNotHappenError
 class SlicePipe(source:Pipe, skip:Option[Expression], limit:Option[Expression]) extends Pipe {
   val symbols = source.symbols
 
-  //TODO: Make this nicer. I'm sure it's expensive and silly.
+  override def slots = source.slots
+
+  /*
+  Skip and limit are evaluated once, and the source is read once. Rows after the limit are never
+  pulled from the source.
+   */
   def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
-    val sourceTraversable = source.createResults(params)
+    if (skip.isEmpty && limit.isEmpty)
+      throw new ThisShouldNotHappenError("Andres Taylor", "A slice pipe that doesn't slice should never exist.")
 
-    if(sourceTraversable.isEmpty)
-      return Seq()
+    val parameters = ParameterPipe.parameterRow(params)
 
-    val first: Map[String, Any] = sourceTraversable.head
+    def asInt(v: Expression) = v(parameters).asInstanceOf[Int]
 
-    def asInt(v:Expression)=v(first).asInstanceOf[Int]
+    val skipped = skip.map(asInt).getOrElse(0)
+    val end = limit.map(skipped + asInt(_))
+    val sourceResults = source.createResults(params)
 
-    (skip, limit) match {
-      case (Some(x), None) => sourceTraversable.drop(asInt(x))
-      case (None, Some(x)) => sourceTraversable.take(asInt(x))
-      case (Some(startAt), Some(count)) => {
-        val start = asInt(startAt)
-        sourceTraversable.slice(start, start + asInt(count))
-      }
-      case (None, None)=>throw new ThisShouldNotHappenError("Andres Taylor", "A slice pipe that doesn't slice should never exist.")
-    }
+    new LazyRows(end match {
+      case Some(e) if e <= skipped => Iterator.empty
+      case Some(e) => Pipe.closeWhenDone(Pipe.rows(sourceResults).drop(skipped).take(e - skipped), sourceResults)
+      case None => Pipe.rows(sourceResults).drop(skipped)
+    }, sourceResults)
   }
 
   override def executionPlan(): String = {
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.neo4j.cypher.internal.commands.{Predicate, Property, Entity, Expression}
+import org.neo4j.graphdb.NotFoundException
+
+/**
+ * Slots are the fixed column offsets of the identifiers in a row. They are resolved when the plan is built:
+ * every pipe producing new identifiers appends them to the slots of its source pipe, so the values of a
+ * source row can be copied into the new row in one go, and the expressions of a pipe read the identifiers
+ * of its rows by offset instead of by name.
+ */
+class Slots private(val names: Array[String], parent: Slots) {
+  private val offsets: Map[String, Int] = names.zipWithIndex.toMap
+
+  def size: Int = names.length
+
+  def offset(name: String): Int = offsets.getOrElse(name, -1)
+
+  def extend(newNames: Seq[String]): Slots = {
+    val added = newNames.filterNot(offsets.contains).distinct
+    if (added.isEmpty) this else new Slots(names ++ added, this)
+  }
+
+  def isExtensionOf(other: Slots): Boolean = (this eq other) || (parent != null && parent.isExtensionOf(other))
+
+  /**
+   * Rewrites the identifiers an expression reads from rows with these slots into reads by offset.
+   */
+  def compile(expression: Expression): Expression = expression.rewrite(compileRead)
+
+  def compile(predicate: Predicate): Predicate = predicate.rewrite(compileRead)
+
+  private def compileRead(expression: Expression): Expression = expression match {
+    case Entity(name) if offset(name) >= 0 => new SlotEntity(name, this, offset(name))
+    case Property(entity, property) if offset(entity) >= 0 => new SlotProperty(entity, property, this, offset(entity))
+    case _ => expression
+  }
+}
+
+object Slots {
+  val empty = new Slots(Array(), null)
+}
+
+class SlotEntity(name: String, slots: Slots, offset: Int) extends Entity(name) {
+  override def apply(m: Map[String, Any]): Any = SlotRow.read(m, slots, offset, name, throw new NotFoundException)
+}
+
+class SlotProperty(entity: String, property: String, slots: Slots, offset: Int) extends Property(entity, property) {
+  override def apply(m: Map[String, Any]): Any =
+    propertyOf(SlotRow.read(m, slots, offset, entity, throw new NoSuchElementException("key not found: " + entity)))
+}
+
+/**
+ * An array backed row. Identifiers with a slot are stored in the array, everything else (parameters and
+ * keys added by name) is kept in an ordinary map. SlotRow is a Map[String, Any] like any other row, so
+ * whatever reads rows by name works on it unchanged.
+ */
+class SlotRow private(val slots: Slots, private val cells: Array[Any], private val others: Map[String, Any])
+  extends Map[String, Any] {
+
+  def get(key: String): Option[Any] = {
+    val offset = slots.offset(key)
+    if (offset < 0 || SlotRow.isUnset(cells(offset))) {
+      others.get(key)
+    } else {
+      Some(cells(offset))
+    }
+  }
+
+  def iterator: Iterator[(String, Any)] =
+    slots.names.iterator.zip(cells.iterator).filterNot(kv => SlotRow.isUnset(kv._2)) ++ others.iterator
+
+  def +[B1 >: Any](kv: (String, B1)): Map[String, B1] = {
+    val key = kv._1
+    val value: Any = kv._2
+    val offset = slots.offset(key)
+    if (offset < 0) {
+      new SlotRow(slots, cells, others + (key -> value))
+    } else {
+      val copy = cells.clone()
+      copy(offset) = value
+      new SlotRow(slots, copy, others - key)
+    }
+  }
+
+  def -(key: String): Map[String, Any] = {
+    val offset = slots.offset(key)
+    if (offset < 0) {
+      new SlotRow(slots, cells, others - key)
+    } else {
+      val copy = cells.clone()
+      copy(offset) = SlotRow.Unset
+      new SlotRow(slots, copy, others - key)
+    }
+  }
+}
+
+object SlotRow {
+  private object Unset
+
+  private def isUnset(value: Any) = value.asInstanceOf[AnyRef] eq Unset
+
+  /**
+   * Reads the identifier at an offset compiled for rows with the given slots. Any other row is read by name.
+   */
+  def read(row: Map[String, Any], slots: Slots, offset: Int, name: String, default: => Any): Any = row match {
+    case r: SlotRow if (r.slots eq slots) && offset >= 0 =>
+      val value = r.cells(offset)
+      if (isUnset(value)) r.others.getOrElse(name, default) else value
+    case _ => row.getOrElse(name, default)
+  }
+
+  def isDefined(row: Map[String, Any], slots: Slots, offset: Int, name: String): Boolean = row match {
+    case r: SlotRow if (r.slots eq slots) && offset >= 0 => !isUnset(r.cells(offset)) || r.others.contains(name)
+    case _ => row.contains(name)
+  }
+
+  /**
+   * Creates a new row with the given slots holding everything in source, plus the values at the offsets.
+   * With keepExisting, identifiers already in the source row keep their old values.
+   */
+  def extend(source: Map[String, Any], slots: Slots, offsets: Array[Int], values: Array[Any], keepExisting: Boolean = false): Map[String, Any] = {
+    val row = new Builder(source, slots)
+    var i = 0
+    while (i < offsets.length) {
+      if (!(keepExisting && row.isSet(offsets(i)))) {
+        row.set(offsets(i), values(i))
+      }
+      i += 1
+    }
+    row.result
+  }
+
+  def newBuilder(source: Map[String, Any], slots: Slots): Builder = new Builder(source, slots)
+
+  /**
+   * Builds a row with the given slots out of a source row, setting identifiers by offset. Source rows whose
+   * slots the given ones extend have their values copied over in one go.
+   */
+  class Builder private[SlotRow](source: Map[String, Any], slots: Slots) {
+    private val cells = new Array[Any](slots.size)
+    private var others: Map[String, Any] = source match {
+      case r: SlotRow if slots.isExtensionOf(r.slots) =>
+        System.arraycopy(r.cells, 0, cells, 0, r.cells.length)
+        fillUnset(r.cells.length)
+        r.others
+      case _ =>
+        fillUnset(0)
+        source
+    }
+
+    private def fillUnset(from: Int) {
+      var i = from
+      while (i < cells.length) {
+        cells(i) = Unset
+        i += 1
+      }
+    }
+
+    def isSet(offset: Int): Boolean = !isUnset(cells(offset)) || (others.nonEmpty && others.contains(slots.names(offset)))
+
+    def set(offset: Int, value: Any) {
+      cells(offset) = value
+      if (others.nonEmpty && others.contains(slots.names(offset))) {
+        others = others - slots.names(offset)
+      }
+    }
+
+    /**
+     * Sets an identifier the slots have no offset for when the plan is built.
+     */
+    def set(name: String, value: Any) {
+      val offset = slots.offset(name)
+      if (offset < 0) {
+        others = others + (name -> value)
+      } else {
+        set(offset, value)
+      }
+    }
+
+    def result: Map[String, Any] = new SlotRow(slots, cells, others)
+  }
+}
@@ -24,30 +24,45 @@ import org.neo4j.cypher.internal.commands.SortItem
 import java.lang.String
 import org.neo4j.cypher.internal.Comparer
 
-class SortPipe(source: Pipe, sortDescription: List[SortItem]) extends Pipe with Comparer {
+class SortPipe(source: Pipe, val sortDescription: List[SortItem]) extends Pipe with SortKeys {
   val symbols = source.symbols
 
+  override def slots = source.slots
+
   assertDependenciesAreMet()
 
-  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = source.createResults(params).toList.sortWith((a, b) => compareBy(a, b, sortDescription))
-
-  def compareBy(a: Map[String, Any], b: Map[String, Any], order: Seq[SortItem]): Boolean = order match {
-    case Nil => false
-    case head :: tail => {
-      val key = head.expression.identifier.name
-      val aVal = a(key)
-      val bVal = b(key)
-      signum(compare(aVal, bVal)) match {
-        case 1 => !head.ascending
-        case -1 => head.ascending
-        case 0 => compareBy(a, b, tail)
-      }
-    }
-  }
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] =
+    source.createResults(params).map(row => (sortKey(row), row)).toList.
+      sortWith((a, b) => lessThan(a._1, b._1)).
+      map(_._2)
 
   override def executionPlan(): String = source.executionPlan() + "\r\nSort(" + sortDescription.mkString(",") + ")"
 
   private def assertDependenciesAreMet() {
     sortDescription.map(_.expression.identifier).foreach( source.symbols.assertHas )
   }
-}
\ No newline at end of file
+}
+
+/**
+ * Sorting pipes look up the values to sort on once per row, instead of once per comparison.
+ */
+trait SortKeys extends Comparer {
+  def sortDescription: List[SortItem]
+
+  private lazy val keyNames: Array[String] = sortDescription.map(_.expression.identifier.name).toArray
+  private lazy val ascending: Array[Boolean] = sortDescription.map(_.ascending).toArray
+
+  def sortKey(row: Map[String, Any]): Array[Any] = keyNames.map(row(_))
+
+  def lessThan(a: Array[Any], b: Array[Any]): Boolean = {
+    var i = 0
+    while (i < a.length) {
+      signum(compare(a(i), b(i))) match {
+        case 1 => return !ascending(i)
+        case -1 => return ascending(i)
+        case 0 => i += 1
+      }
+    }
+    false
+  }
+}
@@ -30,11 +30,22 @@ abstract class StartPipe[T <: PropertyContainer](inner: Pipe, name: String, crea
 
   val symbols = inner.symbols.add(Identifier(name, identifierType))
 
+  override val slots = inner.slots.extend(Seq(name))
+
+  private val offsets = Array(slots.offset(name))
 
   def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
-    inner.createResults(params).flatMap(sourceMap => {
-      createSource(sourceMap).map(x=> sourceMap ++ Map(name -> x))
-    })
+    val innerResults = inner.createResults(params)
+    val openSources = new OpenSources
+
+    new LazyRows(Pipe.rows(innerResults).flatMap(sourceMap => {
+      openSources.iterator(createSource(sourceMap)).map(x => SlotRow.extend(sourceMap, slots, offsets, Array[Any](x)))
+    }), innerResults) {
+      override def close() {
+        openSources.close()
+        super.close()
+      }
+    }
   }
 
   def visibleName: String
@@ -54,4 +65,43 @@ class RelationshipStartPipe(inner: Pipe, name: String, createSource: Map[String,
   def identifierType = RelationshipType()
 
   def visibleName: String = "Rels"
-}
\ No newline at end of file
+}
+/**
+ * A source of start points holding something open, like index hits, until it is read to the end.
+ */
+class ClosableSource[T](source: Iterable[T], closeSource: () => Unit) extends Iterable[T] {
+  def iterator: Iterator[T] = source.iterator
+
+  def close() {
+    closeSource()
+  }
+}
+
+/**
+ * The sources a start pipe is reading from. Sources close themselves when read to the end, the ones
+ * still open when the results are closed early are closed then.
+ */
+private class OpenSources {
+  private val open = collection.mutable.Set[ClosableSource[_]]()
+
+  def iterator[T](source: Iterable[T]): Iterator[T] = source match {
+    case closable: ClosableSource[_] =>
+      open += closable
+      val items = source.iterator
+      new Iterator[T] {
+        def hasNext: Boolean = items.hasNext || {
+          open -= closable
+          false
+        }
+
+        def next(): T = items.next()
+      }
+
+    case _ => source.iterator
+  }
+
+  def close() {
+    open.foreach(_.close())
+    open.clear()
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import scala.collection.mutable.PriorityQueue
+import org.neo4j.cypher.internal.commands.{Expression, SortItem}
+import java.lang.String
+
+/*
+TopPipe solves ORDER BY together with LIMIT. Instead of sorting all rows, it only keeps the best skip + limit
+rows seen so far in a heap, and sorts those at the end.
+ */
+class TopPipe(source: Pipe, val sortDescription: List[SortItem], skip: Option[Expression], limit: Expression)
+  extends Pipe with SortKeys {
+  val symbols = source.symbols
+
+  override def slots = source.slots
+
+  sortDescription.map(_.expression.identifier).foreach(source.symbols.assertHas)
+
+  private case class Candidate(key: Array[Any], position: Long, row: Map[String, Any])
+
+  // Rows comparing equal keep the order they came in, just like when sorting all of them
+  private val ordering = new Ordering[Candidate] {
+    def compare(a: Candidate, b: Candidate): Int =
+      if (lessThan(a.key, b.key)) -1
+      else if (lessThan(b.key, a.key)) 1
+      else if (a.position < b.position) -1
+      else 1
+  }
+
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = {
+    val parameters = ParameterPipe.parameterRow(params)
+
+    def asInt(v: Expression) = v(parameters).asInstanceOf[Int]
+
+    val skipped = skip.map(asInt).getOrElse(0)
+    val limited = asInt(limit)
+    val count = skipped.toLong + limited
+
+    if (count <= 0)
+      return Seq()
+
+    // skip + limit doesn't fit the size of a heap, and no input is that big anyway, so sort all rows
+    if (count > Int.MaxValue)
+      return source.createResults(params).map(row => (sortKey(row), row)).toList.
+        sortWith((a, b) => lessThan(a._1, b._1)).
+        drop(skipped).take(limited).
+        map(_._2)
+
+    // The head of the heap is the worst row kept so far
+    val heap = new PriorityQueue[Candidate]()(ordering)
+    var position = 0L
+
+    def offer(row: Map[String, Any]) {
+      val candidate = Candidate(sortKey(row), position, row)
+      position += 1
+
+      if (heap.size < count) {
+        heap += candidate
+      } else if (ordering.lt(candidate, heap.head)) {
+        heap.dequeue()
+        heap += candidate
+      }
+    }
+
+    source.createResults(params).foreach(offer)
+
+    heap.toList.sorted(ordering).drop(skipped).map(_.row)
+  }
+
+  override def executionPlan(): String = {
+    val info = skip match {
+      case None => "Limit: " + limit.toString()
+      case Some(s) => "Skip: " + s.toString() + ", " + "Limit: " + limit.toString()
+    }
+    source.executionPlan() + "\r\nTop(" + sortDescription.mkString(",") + "; " + info + ")"
+  }
+}
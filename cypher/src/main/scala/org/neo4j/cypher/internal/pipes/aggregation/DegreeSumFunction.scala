@@ -17,21 +17,14 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-package org.neo4j.cypher.internal
+package org.neo4j.cypher.internal.pipes.aggregation
 
-import java.util.LinkedHashMap
-import scala.math._
-import java.util.Map.Entry
+class DegreeSumFunction(degreeName: String) extends AggregationFunction {
+  var count: Long = 0
 
-class LRUCache[K, V](cacheSize: Int) extends LinkedHashMap[K, V](ceil(cacheSize / 0.75f).asInstanceOf[Int] + 1, 0.75f, true) {
-  def getOrElseUpdate(key: K, f: => V) = if (containsKey(key)) {
-    get(key)
-  }
-  else {
-    val value = f
-    put(key, value)
-    value
+  def apply(data: Map[String, Any]) {
+    count += data(degreeName).asInstanceOf[Int]
   }
 
-  override def removeEldestEntry(p1: Entry[K, V]): Boolean = size > cacheSize
-}
\ No newline at end of file
+  def result: Long = count
+}
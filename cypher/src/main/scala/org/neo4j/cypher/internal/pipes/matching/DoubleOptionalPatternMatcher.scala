@@ -22,13 +22,17 @@ package org.neo4j.cypher.internal.pipes.matching
 import org.neo4j.cypher.internal.commands.Predicate
 import collection.immutable.Set
 import collection.Seq
+import org.neo4j.cypher.internal.{NoStatistics, GraphStatistics}
+import org.neo4j.cypher.internal.pipes.Slots
 
 class DoubleOptionalPatternMatcher(bindings: Map[String, MatchingPair],
                                    predicates: Seq[Predicate],
                                    includeOptionals: Boolean,
                                    source: Map[String, Any],
-                                   doubleOptionalPaths: Seq[DoubleOptionalPath])
-  extends PatternMatcher(bindings, predicates, includeOptionals, source) {
+                                   doubleOptionalPaths: Seq[DoubleOptionalPath],
+                                   statistics: GraphStatistics = NoStatistics,
+                                   slots: Slots = Slots.empty)
+  extends PatternMatcher(bindings, predicates, includeOptionals, source, statistics, slots) {
 
   override protected def traverseNextSpecificNode[U](remaining: Set[MatchingPair],
                                                      history: History,
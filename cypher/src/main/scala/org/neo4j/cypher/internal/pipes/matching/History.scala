@@ -20,6 +20,7 @@
 package org.neo4j.cypher.internal.pipes.matching
 
 import org.neo4j.graphdb.Node
+import org.neo4j.cypher.internal.pipes.{SlotRow, Slots}
 
 /**
  * This class is responsible for keeping track of the already visited parts of the pattern, and the matched
@@ -27,7 +28,7 @@ import org.neo4j.graphdb.Node
  *
  * It's also used to emit the subgraph when the whole pattern has been matched (that's the toMap method)
  */
-class History(source:Map[String,Any], seen: Set[MatchingPair]=Set()) {
+class History(source:Map[String,Any], seen: Set[MatchingPair]=Set(), slots: Slots = Slots.empty) {
   def filter(relationships: Set[PatternRelationship]): Set[PatternRelationship] = relationships.filterNot(r => seen.exists(_.matches(r)))
 
   def filter(relationships: Seq[GraphRelationship]): Seq[GraphRelationship] = relationships.filterNot(gr => gr match {
@@ -35,16 +36,26 @@ class History(source:Map[String,Any], seen: Set[MatchingPair]=Set()) {
     case VariableLengthGraphRelationship(p) => seen.exists(h => h.matches(p))
   }).toSeq
 
-  def add(pair: MatchingPair): History = new History(source, seen ++ Seq(pair))
+  def add(pair: MatchingPair): History = new History(source, seen ++ Seq(pair), slots)
 
-  def toMap: Map[String, Any] = source ++ seen.flatMap(_ match {
-      case MatchingPair(pe: PatternNode, entity: Node) => Seq(pe.key -> entity)
-      case MatchingPair(pe: PatternRelationship, entity: SingleGraphRelationship) => Seq(pe.key -> entity.rel)
-      case MatchingPair(pe: PatternRelationship, null) => Seq(pe.key -> null)
-      case MatchingPair(pe: VariableLengthPatternRelationship, entity: VariableLengthGraphRelationship) => Seq(pe.key -> entity.path) ++ relationshipIterable(pe, entity)
-  }).toMap
+  lazy val toMap: Map[String, Any] = {
+    val row = SlotRow.newBuilder(source, slots)
 
-  private def relationshipIterable(pe: VariableLengthPatternRelationship, entity: VariableLengthGraphRelationship):Option[(String, Any)] = pe.relIterable.map(_->entity.relationships)
+    def set(pe: PatternElement, value: Any) {
+      if (pe.slot >= 0) row.set(pe.slot, value) else row.set(pe.key, value)
+    }
+
+    seen.foreach {
+      case MatchingPair(pe: PatternNode, entity: Node) => set(pe, entity)
+      case MatchingPair(pe: PatternRelationship, entity: SingleGraphRelationship) => set(pe, entity.rel)
+      case MatchingPair(pe: PatternRelationship, null) => set(pe, null)
+      case MatchingPair(pe: VariableLengthPatternRelationship, entity: VariableLengthGraphRelationship) =>
+        set(pe, entity.path)
+        pe.relIterable.foreach(name => row.set(name, entity.relationships))
+    }
+
+    row.result
+  }
 
   override def toString: String = "History(%s)".format(seen.mkString("[", "], [", "]"))
 }
\ No newline at end of file
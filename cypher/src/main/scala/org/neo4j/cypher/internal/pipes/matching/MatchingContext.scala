@@ -24,14 +24,21 @@ import collection.immutable.Map
 import collection.{Traversable, Seq}
 import org.neo4j.cypher.internal.symbols.{NodeType, SymbolTable}
 import org.neo4j.cypher.internal.commands._
+import org.neo4j.cypher.internal.{NoStatistics, GraphStatistics}
+import org.neo4j.cypher.internal.pipes.Slots
 
 /**
  * This class is responsible for deciding how to get the parts of the pattern that are not already bound
  *
  * The deciding factor is whether or not the pattern has loops in it. If it does, we have to use the much more
  * expensive pattern matching. If it doesn't, we get away with much simpler methods
+ *
+ * The graph statistics are used by the pattern matcher to decide which part of the pattern to expand first
+ *
+ * The slots are the ones of the rows of the matches, the predicates and pattern elements are compiled to them
  */
-class MatchingContext(patterns: Seq[Pattern], boundIdentifiers: SymbolTable, predicates: Seq[Predicate] = Seq()) {
+class MatchingContext(patterns: Seq[Pattern], boundIdentifiers: SymbolTable, predicates: Seq[Predicate] = Seq(),
+                      statistics: GraphStatistics = NoStatistics, slots: Slots = Slots.empty) {
   val patternGraph = buildPatternGraph()
   val containsHardPatterns = patterns.find(!_.isInstanceOf[RelatedTo]).nonEmpty
   val builder: MatcherBuilder = decideWhichMatcherToUse()
@@ -44,7 +51,7 @@ class MatchingContext(patterns: Seq[Pattern], boundIdentifiers: SymbolTable, pre
 //    if (JoinerBuilder.canHandlePatter(patternGraph)) {
 //      new JoinerBuilder(patternGraph, predicates)
 //    } else {
-      new PatterMatchingBuilder(patternGraph, predicates)
+      new PatterMatchingBuilder(patternGraph, predicates.map(p => slots.compile(p)), statistics, slots)
 //    }
   }
 
@@ -65,16 +72,18 @@ class MatchingContext(patterns: Seq[Pattern], boundIdentifiers: SymbolTable, pre
           throw new SyntaxException("Can't re-use pattern relationship '%s' with different start/end nodes.".format(rel))
         }
 
-        patternRelMap(rel) = leftNode.relateTo(rel, rightNode, relType, dir, optional, predicate)
+        patternRelMap(rel) = leftNode.relateTo(rel, rightNode, relType, dir, optional, slots.compile(predicate))
       }
       case VarLengthRelatedTo(pathName, start, end, minHops, maxHops, relType, dir, iterableRel, optional, predicate) => {
         val startNode: PatternNode = patternNodeMap.getOrElseUpdate(start, new PatternNode(start))
         val endNode: PatternNode = patternNodeMap.getOrElseUpdate(end, new PatternNode(end))
-        patternRelMap(pathName) = startNode.relateViaVariableLengthPathTo(pathName, endNode, minHops, maxHops, relType, dir, iterableRel, optional, predicate)
+        patternRelMap(pathName) = startNode.relateViaVariableLengthPathTo(pathName, endNode, minHops, maxHops, relType, dir, iterableRel, optional, slots.compile(predicate))
       }
       case _ =>
     })
 
+    (patternNodeMap.values ++ patternRelMap.values).foreach(element => element.slot = slots.offset(element.key))
+
     new PatternGraph(patternNodeMap.toMap, patternRelMap.toMap, boundIdentifiers)
   }
 }
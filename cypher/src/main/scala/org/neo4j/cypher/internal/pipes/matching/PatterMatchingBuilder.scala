@@ -24,9 +24,12 @@ import org.neo4j.cypher.internal.commands.Predicate
 import collection.Seq
 import collection.immutable.Map
 import java.lang.String
+import org.neo4j.cypher.internal.{NoStatistics, GraphStatistics}
+import org.neo4j.cypher.internal.pipes.Slots
 
 
-class PatterMatchingBuilder(patternGraph: PatternGraph, predicates: Seq[Predicate]) extends MatcherBuilder {
+class PatterMatchingBuilder(patternGraph: PatternGraph, predicates: Seq[Predicate], statistics: GraphStatistics = NoStatistics,
+                            slots: Slots = Slots.empty) extends MatcherBuilder {
   def getMatches(sourceRow: Map[String, Any]): Traversable[Map[String, Any]] = {
     val bindings: Map[String, Any] = sourceRow.filter(_._2.isInstanceOf[PropertyContainer])
     val boundPairs: Map[String, MatchingPair] = extractBoundMatchingPairs(bindings)
@@ -83,9 +86,9 @@ class PatterMatchingBuilder(patternGraph: PatternGraph, predicates: Seq[Predicat
 
   private def createPatternMatcher(boundPairs: Map[String, MatchingPair], includeOptionals: Boolean, source: Map[String, Any]): Traversable[Map[String, Any]] = {
     val patternMatcher = if (patternGraph.hasDoubleOptionals)
-      new DoubleOptionalPatternMatcher(boundPairs, predicates, includeOptionals, source, patternGraph.doubleOptionalPaths)
+      new DoubleOptionalPatternMatcher(boundPairs, predicates, includeOptionals, source, patternGraph.doubleOptionalPaths, statistics, slots)
     else
-      new PatternMatcher(boundPairs, predicates, includeOptionals, source)
+      new PatternMatcher(boundPairs, predicates, includeOptionals, source, statistics, slots)
 
     if (includeOptionals)
       patternMatcher.map(matchedGraph => matchedGraph ++ createNullValuesForOptionalElements(matchedGraph))
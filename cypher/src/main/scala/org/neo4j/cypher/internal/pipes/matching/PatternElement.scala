@@ -20,6 +20,12 @@
 package org.neo4j.cypher.internal.pipes.matching
 
 abstract class PatternElement(val key: String) {
+  /**
+   * The offset of the key in the rows of the matches, set when the plan is built. -1 when the rows have
+   * no slot for it.
+   */
+  var slot: Int = -1
+
   def traverse[T](shouldFollow: (PatternElement) => Boolean,
                   visitNode: (PatternNode, T) => T,
                   visitRelationship: (PatternRelationship, T) => T,
@@ -21,16 +21,23 @@ package org.neo4j.cypher.internal.pipes.matching
 
 import org.neo4j.graphdb.Node
 import org.neo4j.cypher.internal.commands.{True, Predicate}
+import org.neo4j.cypher.internal.{NoStatistics, GraphStatistics}
+import org.neo4j.cypher.internal.pipes.{SlotRow, Slots}
 
-class PatternMatcher(bindings: Map[String, MatchingPair], predicates: Seq[Predicate], includeOptionals: Boolean, source:Map[String,Any])
+class PatternMatcher(bindings: Map[String, MatchingPair], predicates: Seq[Predicate], includeOptionals: Boolean, source:Map[String,Any],
+                     statistics: GraphStatistics = NoStatistics, slots: Slots = Slots.empty)
   extends Traversable[Map[String, Any]] {
   val boundNodes = bindings.filter(_._2.patternElement.isInstanceOf[PatternNode])
   val boundRels = bindings.filter(_._2.patternElement.isInstanceOf[PatternRelationship])
 
+  // The predicates with the offsets and names of the identifiers they depend on
+  private val predicateDependencies = predicates.filterNot(_.containsIsNull).map(predicate =>
+    (predicate, predicate.dependencies.map(id => (slots.offset(id.name), id.name)).toArray))
+
   def foreach[U](f: (Map[String, Any]) => U) {
     debug("startPatternMatching")
 
-    traverseNode(boundNodes.values.toSet, new History(source), f)
+    traverseNode(boundNodes.values.toSet, new History(source, Set(), slots), f)
   }
 
   protected def traverseNextSpecificNode[U](remaining: Set[MatchingPair],
@@ -57,7 +64,7 @@ class PatternMatcher(bindings: Map[String, MatchingPair], predicates: Seq[Predic
     notYetVisited match {
       case List() => traverseNextNodeOrYield(leftToDoAfterThisOne, newHistory, yielder)
       case List(single) => traverseRelationship(current, single, newHistory, leftToDoAfterThisOne, yielder)
-      case _ => traverseRelationship(current, notYetVisited.head, newHistory, remaining, yielder)
+      case _ => traverseRelationship(current, cheapestRelationship(current.patternNode, notYetVisited), newHistory, remaining, yielder)
     }
   }
 
@@ -65,12 +72,33 @@ class PatternMatcher(bindings: Map[String, MatchingPair], predicates: Seq[Predic
                               history: History,
                               yielder: Map[String, Any] => U): Boolean = {
 
-    val current = remaining.head
-    val leftToDoAfterThisOne = remaining.tail
+    val current = cheapestNode(remaining, history)
+    val leftToDoAfterThisOne = remaining - current
 
     traverseNextSpecificNode(remaining, history, yielder, current, leftToDoAfterThisOne, false)
   }
 
+  /*
+   Every order of expansion finds the same subgraphs, but starting where the fewest relationships are expected
+   keeps the number of dead ends down. Optional parts are matched in the order the pattern was written.
+   */
+  private def useStatistics = statistics.available && !includeOptionals
+
+  private def cheapestNode(remaining: Set[MatchingPair], history: History): MatchingPair =
+    if (useStatistics && remaining.size > 1)
+      remaining.minBy(pair => expansionCost(pair.patternNode, history))
+    else
+      remaining.head
+
+  private def cheapestRelationship(pNode: PatternNode, relationships: List[PatternRelationship]): PatternRelationship =
+    if (useStatistics)
+      relationships.minBy(_.expectedFanOut(pNode, statistics))
+    else
+      relationships.head
+
+  private def expansionCost(pNode: PatternNode, history: History): Double =
+    getPatternRelationshipsNotYetVisited(pNode, history).map(_.expectedFanOut(pNode, statistics)).sum
+
   private def traverseNextNodeFromRelationship[U](rel: GraphRelationship, gNode: Node, nextPNode: PatternNode, currentRel: PatternRelationship, history: History, remaining: Set[MatchingPair], yielder: (Map[String, Any]) => U): Boolean = {
     debug(rel, gNode, nextPNode, currentRel, history, remaining)
     val current = MatchingPair(currentRel, rel)
@@ -157,8 +185,10 @@ class PatternMatcher(bindings: Map[String, MatchingPair], predicates: Seq[Predic
 
   private def isMatchSoFar(history: History): Boolean = {
     val m = history.toMap
-    val predicate = predicates.filter(predicate=> !predicate.containsIsNull && predicate.dependencies.map(_.name).forall(m contains)).toList
-    predicate.forall(_.isMatch(m))
+    predicateDependencies.forall {
+      case (predicate, dependencies) =>
+        !dependencies.forall { case (offset, name) => SlotRow.isDefined(m, slots, offset, name) } || predicate.isMatch(m)
+    }
   }
 
   private def traverseNextNodeOrYield[U](remaining: Set[MatchingPair], history: History, yielder: Map[String, Any] => U): Boolean = {
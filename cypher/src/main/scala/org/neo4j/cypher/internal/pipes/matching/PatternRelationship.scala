@@ -24,6 +24,7 @@ import org.neo4j.graphdb.traversal.{TraversalDescription, Evaluators}
 import org.neo4j.graphdb._
 import org.neo4j.kernel.{Uniqueness, Traversal}
 import org.neo4j.cypher.internal.commands.Predicate
+import org.neo4j.cypher.internal.GraphStatistics
 
 class PatternRelationship(key: String,
                           val startNode: PatternNode,
@@ -50,6 +51,11 @@ class PatternRelationship(key: String,
       result
   }
 
+  /**
+   * The number of relationships expected to be found when this relationship is expanded from the given node.
+   */
+  def expectedFanOut(node: PatternNode, statistics: GraphStatistics): Double = statistics.averageDegree(relType, getDirection(node))
+
   protected def getDirection(node: PatternNode): Direction = {
     dir match {
       case Direction.OUTGOING => if (node == startNode) Direction.OUTGOING else Direction.INCOMING
@@ -103,6 +109,10 @@ class VariableLengthPatternRelationship(pathName: String,
                                         predicate: Predicate)
   extends PatternRelationship(pathName, start, end, relType, dir, optional, predicate) {
 
+  // Every hop multiplies the number of paths. Paths without an upper bound are assumed to end after a few hops
+  override def expectedFanOut(node: PatternNode, statistics: GraphStatistics): Double =
+    math.pow(math.max(super.expectedFanOut(node, statistics), 1.0), maxHops.getOrElse(5))
+
   override def getGraphRelationships(node: PatternNode, realNode: Node): Seq[GraphRelationship] = {
 
     val depthEval = (minHops, maxHops) match {
@@ -20,6 +20,7 @@
 package org.neo4j.cypher
 
 import internal.commands._
+import internal.{GraphStatistics, SampledGraphStatistics}
 import org.junit.Assert._
 import java.lang.String
 import scala.collection.JavaConverters._
@@ -449,6 +450,32 @@ class ExecutionEngineTest extends ExecutionEngineHelper {
     assertEquals(List(Map("a" -> refNode, "count(*)" -> 2)), result.toList)
   }
 
+  @Test def shouldCountRelationshipsOfTypeAndDirection() {
+    val a = createNode()
+    val b = createNode()
+    val c = createNode()
+    relate(a, b, "KNOWS")
+    relate(a, c, "KNOWS")
+    relate(c, a, "KNOWS")
+    relate(a, c, "LIKES")
+
+    val result = parseAndExecute("start n=node(%d,%d,%d) match n-[:KNOWS]->x return n, count(*)".format(a.getId, b.getId, c.getId))
+
+    assertEquals(Set(Map("n" -> a, "count(*)" -> 2), Map("n" -> c, "count(*)" -> 1)), result.toSet)
+  }
+
+  @Test def shouldCountRelationshipsFromTheBoundEnd() {
+    val a = createNode()
+    val b = createNode()
+    relate(a, b, "KNOWS")
+    relate(refNode, b, "KNOWS")
+    relate(b, a, "LIKES")
+
+    val result = parseAndExecute("start n=node(%d) match x-[r]->n return count(r)".format(b.getId))
+
+    assertEquals(List(Map("count(r)" -> 2)), result.toList)
+  }
+
   @Test def shouldReturnTwoSubgraphsWithBoundUndirectedRelationship() {
     val a = createNode("a")
     val b = createNode("b")
@@ -1767,4 +1794,24 @@ RETURN x0.name?
       db.shutdown()
     }
   }
+
+  @Test def shouldPlanCachedQueriesAgainOnceTheGraphHasBeenSampled() {
+    val a = createNode()
+    val b = createNode()
+    val c = createNode()
+    val sampled = new SampledGraphStatistics(graph)
+    val sampledEngine = new ExecutionEngine(graph) {
+      override val statistics: GraphStatistics = sampled
+    }
+    val query = "start s=node(" + a.getId + "," + b.getId + "), x=node(" + c.getId + ") return s, x"
+
+    val before = sampledEngine.prepare(query).toString
+    sampled.sampleGraph()
+    val after = sampledEngine.prepare(query).toString
+
+    assertTrue(before, before.indexOf("Nodes(s)") < before.indexOf("Nodes(x)"))
+    assertTrue(after, after.indexOf("Nodes(x)") < after.indexOf("Nodes(s)"))
+    assertEquals(List(Map("s" -> a, "x" -> c), Map("s" -> b, "x" -> c)),
+      sampledEngine.execute(query).toList)
+  }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal
+
+import org.scalatest.Assertions
+import org.junit.Test
+import org.junit.Assert._
+
+class ConcurrentLRUCacheTest extends Assertions {
+  @Test def shouldStoreSingleValue() {
+    val cache = new ConcurrentLRUCache[String, String](5)
+    cache.put("hello", "world")
+
+    assert(cache.get("hello") === Some("world"))
+  }
+
+  @Test def shouldOnlyComputeMissingValues() {
+    val cache = new ConcurrentLRUCache[String, String](5)
+    var computed = 0
+
+    cache.getOrElseUpdate("a", { computed += 1; "A" })
+    cache.getOrElseUpdate("a", { computed += 1; "A" })
+
+    assert(computed === 1)
+    assert(cache.statistics === CacheStatistics(hits = 1, misses = 1, evictions = 0, size = 1))
+  }
+
+  @Test def shouldReplaceValuesThatAreNoLongerValid() {
+    val cache = new ConcurrentLRUCache[String, String](5)
+
+    cache.getOrElseUpdate("a", "old")
+
+    assert(cache.getOrElseUpdate("a", "new", _ != "old") === "new")
+    assert(cache.get("a") === Some("new"))
+    assert(cache.statistics === CacheStatistics(hits = 0, misses = 2, evictions = 0, size = 1))
+  }
+
+  @Test def shouldLooseTheLeastUsedItem() {
+    val cache = new ConcurrentLRUCache[String, String](5, concurrencyLevel = 1)
+    (1 to 5).foreach(i => cache.put(i.toString, i.toString))
+
+    cache.get("1")
+    cache.get("3")
+    cache.get("4")
+    cache.get("5")
+
+    cache.put("6", "6")
+
+    assertFalse(cache.containsKey("2"))
+    assert(cache.statistics.evictions === 1)
+  }
+
+  @Test def shouldNeverGrowBeyondItsSize() {
+    val cache = new ConcurrentLRUCache[String, String](10)
+    (1 to 1000).foreach(i => cache.getOrElseUpdate(i.toString, i.toString))
+
+    assertTrue(cache.size <= 10)
+  }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.Assertions
+import org.neo4j.cypher.GraphDatabaseTestBase
+import org.neo4j.graphdb.Direction
+import org.neo4j.tooling.GlobalGraphOperations
+import scala.collection.JavaConverters._
+
+class SampledGraphStatisticsTest extends GraphDatabaseTestBase with Assertions {
+  @Test def isNotAvailableBeforeTheGraphHasBeenSampled() {
+    val statistics = new SampledGraphStatistics(graph)
+
+    assertFalse(statistics.available)
+    assert(statistics.averageDegree(None, Direction.BOTH) === 0.0)
+  }
+
+  @Test def smallGraphsAreSampledInFull() {
+    val a = createNode()
+    val b = createNode()
+    val c = createNode()
+    relate(a, b, "KNOWS")
+    relate(a, c, "KNOWS")
+    relate(b, c, "LIKES")
+
+    val statistics = new SampledGraphStatistics(graph)
+    statistics.sampleGraph()
+
+    val nodes = GlobalGraphOperations.at(graph).getAllNodes.asScala.size.toDouble
+
+    assertTrue(statistics.available)
+    assertEquals(nodes, statistics.nodeCount, 0.001)
+    assertEquals(2 / nodes, statistics.averageDegree(Some("KNOWS"), Direction.OUTGOING), 0.001)
+    assertEquals(1 / nodes, statistics.averageDegree(Some("LIKES"), Direction.INCOMING), 0.001)
+    assertEquals(6 / nodes, statistics.averageDegree(None, Direction.BOTH), 0.001)
+  }
+
+  @Test def enginesOfADatabaseShareItsStatistics() {
+    val statistics = SampledGraphStatistics.forDatabase(graph, 3600)
+
+    assertSame(statistics, SampledGraphStatistics.forDatabase(graph, 60))
+  }
+
+  @Test def averagesTheHitsOfIndexLookups() {
+    val statistics = new SampledGraphStatistics(graph)
+
+    statistics.recordIndexHits("people", Some("name"), 1)
+    statistics.recordIndexHits("people", Some("name"), 3)
+    statistics.recordIndexHits("people", None, 8)
+
+    assert(statistics.indexHits("people", Some("name")) === Some(2.0))
+    assert(statistics.indexHits("people", None) === Some(4.0))
+    assert(statistics.indexHits("places", None) === None)
+  }
+}
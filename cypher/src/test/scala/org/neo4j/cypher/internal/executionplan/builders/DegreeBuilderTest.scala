@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.executionplan.builders
+
+import org.scalatest.Assertions
+import org.junit.Test
+import org.neo4j.graphdb.Direction
+import org.junit.Assert._
+import org.neo4j.cypher.internal.executionplan.{Solved, Unsolved, PartiallySolvedQuery}
+import org.neo4j.cypher.internal.commands._
+
+class DegreeBuilderTest extends Assertions with PipeBuilder {
+
+  val builder = new DegreeBuilder
+
+  private def countQuery(pattern: RelatedTo, aggregation: AggregationExpression, returns: ReturnItem*) =
+    PartiallySolvedQuery().copy(
+      start = Seq(Solved(NodeById("l", 0))),
+      patterns = Seq(Unsolved(pattern)),
+      aggregation = Seq(Unsolved(aggregation)),
+      returns = returns.map(Unsolved(_)),
+      aggregateQuery = Unsolved(true))
+
+  private val pattern = RelatedTo("l", "r", "rel", Some("KNOWS"), Direction.OUTGOING, false, True())
+
+  @Test
+  def should_take_on_counted_match() {
+    val q = countQuery(pattern, CountStar(), ReturnItem(Entity("l"), "l"), ReturnItem(CountStar(), "count(*)"))
+
+    val p = createPipe(nodes = Seq("l"))
+
+    assertTrue(builder.isDefinedAt((p, q)))
+
+    val (_, resultQ) = builder((p, q))
+
+    assert(resultQ.patterns === Seq(Solved(pattern)))
+    assert(resultQ.aggregation.map(_.token.identifier.name) === Seq("count(*)"))
+    assertTrue(resultQ.aggregation.forall(_.token.isInstanceOf[DegreeSum]))
+  }
+
+  @Test
+  def should_not_take_on_match_when_other_end_is_returned() {
+    val q = countQuery(pattern, CountStar(), ReturnItem(Entity("r"), "r"), ReturnItem(CountStar(), "count(*)"))
+
+    val p = createPipe(nodes = Seq("l"))
+
+    assertFalse(builder.isDefinedAt((p, q)))
+  }
+
+  @Test
+  def should_not_take_on_other_aggregations() {
+    val q = countQuery(pattern, Collect(Entity("r")), ReturnItem(Collect(Entity("r")), "collect(r)"))
+
+    val p = createPipe(nodes = Seq("l"))
+
+    assertFalse(builder.isDefinedAt((p, q)))
+  }
+
+  @Test
+  def should_not_take_on_optional_match() {
+    val optional = RelatedTo("l", "r", "rel", None, Direction.OUTGOING, true, True())
+    val q = countQuery(optional, CountStar(), ReturnItem(CountStar(), "count(*)"))
+
+    val p = createPipe(nodes = Seq("l"))
+
+    assertFalse(builder.isDefinedAt((p, q)))
+  }
+}
@@ -25,6 +25,8 @@ import org.neo4j.cypher.internal.pipes.NullPipe
 import org.neo4j.cypher.internal.executionplan.{Solved, Unsolved, PartiallySolvedQuery}
 import org.junit.{Ignore, Test}
 import org.neo4j.cypher.internal.commands.{RelationshipById, Parameter, NodeById}
+import org.neo4j.cypher.internal.GraphStatistics
+import org.neo4j.graphdb.Direction
 
 class NodeByIdBuilderTest extends Assertions {
 
@@ -62,6 +64,40 @@ class NodeByIdBuilderTest extends Assertions {
     assert(result.start.toSet === expected)
   }
 
+  @Test
+  def binds_the_start_item_with_the_fewest_nodes_first() {
+    val q = PartiallySolvedQuery().
+      copy(start = Seq(Unsolved(NodeById("s", 0, 1, 2)), Unsolved(NodeById("x", 3))))
+
+    val (_, result) = new NodeByIdBuilder(null, sampledStatistics)((new NullPipe(), q))
+
+    assert(result.start.toSet === Set(Unsolved(NodeById("s", 0, 1, 2)), Solved(NodeById("x", 3))))
+  }
+
+  @Test
+  def keeps_the_written_order_until_the_graph_has_been_sampled() {
+    val q = PartiallySolvedQuery().
+      copy(start = Seq(Unsolved(NodeById("s", 0, 1, 2)), Unsolved(NodeById("x", 3))))
+
+    val (_, result) = builder((new NullPipe(), q))
+
+    assert(result.start.toSet === Set(Solved(NodeById("s", 0, 1, 2)), Unsolved(NodeById("x", 3))))
+  }
+
+  val sampledStatistics = new GraphStatistics {
+    def available = true
+
+    def version = 1L
+
+    def nodeCount = 100.0
+
+    def averageDegree(relType: Option[String], dir: Direction) = 1.0
+
+    def indexHits(idxName: String, key: Option[String]) = None
+
+    def recordIndexHits(idxName: String, key: Option[String], hits: Int) {}
+  }
+
   @Test
   def says_no_to_already_solved_node_by_id_queries() {
     val q = PartiallySolvedQuery().
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.executionplan.builders
+
+import org.junit.Test
+import org.junit.Assert._
+import org.neo4j.cypher.internal.executionplan.{Unsolved, PartiallySolvedQuery}
+import org.neo4j.cypher.internal.commands.{Literal, Property, Slice, SortItem}
+import org.neo4j.cypher.internal.pipes.TopPipe
+import org.scalatest.Assertions
+
+class TopPipeBuilderTest extends PipeBuilder with Assertions {
+
+  val builder = new TopPipeBuilder
+
+  @Test def should_solve_sort_and_limit_together() {
+    val q = PartiallySolvedQuery().copy(
+      sort = Seq(Unsolved(SortItem(Property("x", "foo"), true))),
+      slice = Seq(Unsolved(Slice(Some(Literal(10)), Some(Literal(10))))),
+      extracted = true
+    )
+
+    val p = createPipe(nodes = Seq("x"))
+
+    assertTrue("Builder should accept this", builder.isDefinedAt((p, q)))
+
+    val (resultPipe, resultQ) = builder((p, q))
+
+    assertTrue(resultPipe.isInstanceOf[TopPipe])
+    assert(resultQ.sort === q.sort.map(_.solve))
+    assert(resultQ.slice === q.slice.map(_.solve))
+  }
+
+  @Test def should_not_accept_skip_without_limit() {
+    val q = PartiallySolvedQuery().copy(
+      sort = Seq(Unsolved(SortItem(Property("x", "foo"), true))),
+      slice = Seq(Unsolved(Slice(Some(Literal(10)), None))),
+      extracted = true
+    )
+
+    val p = createPipe(nodes = Seq("x"))
+
+    assertFalse("Builder should not accept this", builder.isDefinedAt((p, q)))
+  }
+
+  @Test def should_not_accept_if_not_yet_extracted() {
+    val q = PartiallySolvedQuery().copy(
+      sort = Seq(Unsolved(SortItem(Property("x", "foo"), true))),
+      slice = Seq(Unsolved(Slice(None, Some(Literal(10))))),
+      extracted = false
+    )
+
+    val p = createPipe(nodes = Seq("x"))
+
+    assertFalse("Builder should not accept this", builder.isDefinedAt((p, q)))
+  }
+}
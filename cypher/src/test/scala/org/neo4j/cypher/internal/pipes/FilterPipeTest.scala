@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.JUnitSuite
+import org.neo4j.cypher.internal.commands.{Entity, GreaterThan, Literal}
+
+class FilterPipeTest extends JUnitSuite {
+  @Test def filtersRows() {
+    val source = new CountingPipe(100)
+    val filterPipe = new FilterPipe(source, GreaterThan(Entity("x"), Literal(10)))
+
+    assertEquals((11 until 100).toList, filterPipe.createResults(Map()).toList.map(_("x")))
+  }
+
+  @Test def onlyReadsTheRowsThatAreAskedFor() {
+    val source = new CountingPipe(100)
+    val filterPipe = new FilterPipe(source, GreaterThan(Entity("x"), Literal(10)))
+    val rows = Pipe.rows(filterPipe.createResults(Map()))
+
+    assertEquals(11, rows.next()("x"))
+    assertEquals(12, source.rowsRead)
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.JUnitSuite
+import org.neo4j.cypher.internal.commands.{Parameter, Literal}
+import org.neo4j.graphdb.Node
+
+class SlicePipeTest extends JUnitSuite {
+  @Test def limit() {
+    val source = new CountingPipe(10)
+    val slicePipe = new SlicePipe(source, None, Some(Literal(3)))
+
+    assertEquals(List(0, 1, 2), slicePipe.createResults(Map()).toList.map(_("x")))
+    assertEquals(1, source.traversals)
+    assertEquals("Should stop reading once the limit is reached", 3, source.rowsRead)
+  }
+
+  @Test def skip() {
+    val source = new CountingPipe(10)
+    val slicePipe = new SlicePipe(source, Some(Literal(7)), None)
+
+    assertEquals(List(7, 8, 9), slicePipe.createResults(Map()).toList.map(_("x")))
+    assertEquals(1, source.traversals)
+  }
+
+  @Test def skipAndLimitFromParameters() {
+    val source = new CountingPipe(10)
+    val slicePipe = new SlicePipe(source, Some(Parameter("s")), Some(Parameter("l")))
+
+    assertEquals(List(2, 3), slicePipe.createResults(Map("s" -> 2, "l" -> 2)).toList.map(_("x")))
+    assertEquals(1, source.traversals)
+    assertEquals(4, source.rowsRead)
+  }
+
+  @Test def limitZeroReadsNothing() {
+    val source = new CountingPipe(10)
+    val slicePipe = new SlicePipe(source, None, Some(Literal(0)))
+
+    assertEquals(List(), slicePipe.createResults(Map()).toList)
+    assertEquals(0, source.rowsRead)
+  }
+
+  @Test def closesTheSourceOnceTheLimitIsReached() {
+    val source = new CountingPipe(10)
+    val rows = new SlicePipe(source, None, Some(Literal(3))).createResults(Map()).toIterator
+
+    (1 to 3).foreach(i => rows.next())
+    assertFalse(source.closed)
+    assertFalse(rows.hasNext)
+    assertTrue(source.closed)
+  }
+
+  @Test def closesOpenStartPointsWhenStoppingEarly() {
+    var closed = false
+    val startPoints = new ClosableSource[Node](Seq(null, null, null), () => closed = true)
+    val startPipe = new NodeStartPipe(new NullPipe, "n", m => startPoints)
+
+    assertEquals(1, new SlicePipe(startPipe, None, Some(Literal(1))).createResults(Map()).toList.size)
+    assertTrue(closed)
+  }
+
+  @Test def emptySource() {
+    val source = new CountingPipe(0)
+    val slicePipe = new SlicePipe(source, Some(Literal(1)), Some(Literal(1)))
+
+    assertEquals(List(), slicePipe.createResults(Map()).toList)
+  }
+}
+
+class CountingPipe(rows: Int) extends Pipe {
+  var traversals = 0
+  var rowsRead = 0
+  var closed = false
+
+  def createResults[U](params: Map[String, Any]): Traversable[Map[String, Any]] = new LazyRows({
+    traversals += 1
+    (0 until rows).iterator.map(i => {
+      rowsRead += 1
+      Map("x" -> i)
+    })
+  }) {
+    override def close() {
+      closed = true
+    }
+  }
+
+  val symbols = new FakeSymbolTable()
+
+  def executionPlan(): String = "COUNTING"
+}
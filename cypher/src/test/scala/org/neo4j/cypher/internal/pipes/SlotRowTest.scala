@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.JUnitSuite
+import org.neo4j.cypher.internal.commands.{Property, Entity}
+
+class SlotRowTest extends JUnitSuite {
+  val a = Slots.empty.extend(Seq("a"))
+  val abc = a.extend(Seq("b", "c"))
+
+  @Test def extendsPlainMaps() {
+    val row = SlotRow.extend(Map("x" -> 1), a, Array(0), Array(2))
+
+    assertEquals(Map("x" -> 1, "a" -> 2), row)
+    assertEquals(Some(2), row.get("a"))
+    assertEquals(None, row.get("b"))
+  }
+
+  @Test def extendsSlotRowsWithoutRebuildingThem() {
+    val first = SlotRow.extend(Map(), a, Array(0), Array(1))
+    val second = SlotRow.extend(first, abc, Array(1, 2), Array(2, 3))
+
+    assertEquals(Map("a" -> 1, "b" -> 2, "c" -> 3), second)
+    assertEquals(Map("a" -> 1), first)
+    assertEquals(2, abc.offset("c"))
+  }
+
+  @Test def newValuesReplaceOldOnesUnlessKeepingExisting() {
+    val row = SlotRow.extend(Map("b" -> 0), a, Array(0), Array(1))
+
+    assertEquals(Map("a" -> 1, "b" -> 2, "c" -> 3), SlotRow.extend(row, abc, Array(1, 2), Array(2, 3)))
+    assertEquals(Map("a" -> 1, "b" -> 0, "c" -> 3), SlotRow.extend(row, abc, Array(1, 2), Array(2, 3), keepExisting = true))
+  }
+
+  @Test def nullIsAValue() {
+    val row = SlotRow.extend(Map(), a, Array(0), Array(null))
+
+    assertTrue(row.contains("a"))
+    assertEquals(Map("a" -> null), row)
+  }
+
+  @Test def addingAndRemovingKeysLeavesTheOriginalRowAlone() {
+    val row = SlotRow.extend(Map("x" -> 1), a, Array(0), Array(2))
+
+    assertEquals(Map("x" -> 1, "a" -> 3), row + ("a" -> 3))
+    assertEquals(Map("x" -> 1, "a" -> 2, "y" -> 4), row + ("y" -> 4))
+    assertEquals(Map("x" -> 1), row - "a")
+    assertEquals(Map("a" -> 2), row - "x")
+    assertEquals(Map("x" -> 1, "a" -> 2), row)
+  }
+
+  @Test def buildsRowsBySlotAndByName() {
+    val row = SlotRow.newBuilder(SlotRow.extend(Map("x" -> 1), a, Array(0), Array(1)), abc)
+    row.set(1, 2)
+    row.set("c", 3)
+    row.set("y", 4)
+
+    assertEquals(Map("x" -> 1, "a" -> 1, "b" -> 2, "c" -> 3, "y" -> 4), row.result)
+  }
+
+  @Test def compiledIdentifiersReadSlotsAndFallBackToNames() {
+    val entity = abc.compile(Entity("b"))
+    val row = SlotRow.extend(Map(), abc, Array(0, 1, 2), Array(1, 2, 3))
+
+    assertTrue(entity.isInstanceOf[SlotEntity])
+    assertEquals(2, entity(row))
+    assertEquals(5, entity(Map("b" -> 5)))
+    assertEquals(6, entity(SlotRow.extend(Map("b" -> 6), a, Array(0), Array(1))))
+  }
+
+  @Test def compiledPropertiesStayProperties() {
+    assertTrue(abc.compile(Property("c", "name")).isInstanceOf[SlotProperty])
+    assertEquals(Property("x", "name"), abc.compile(Property("x", "name")))
+  }
+}
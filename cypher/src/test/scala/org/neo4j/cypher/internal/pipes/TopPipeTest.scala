@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.JUnitSuite
+import org.neo4j.cypher.internal.commands.{Literal, Entity, SortItem}
+
+class TopPipeTest extends JUnitSuite {
+  @Test def emptyInIsEmptyOut() {
+    val source = new FakePipe(List())
+    val topPipe = new TopPipe(source, List(SortItem(Entity("x"), true)), None, Literal(10))
+
+    assertEquals(List(), topPipe.createResults(Map()).toList)
+  }
+
+  @Test def keepsTheFirstRowsInOrder() {
+    val source = new FakePipe((1 to 100).reverse.map(i => Map("x" -> i)))
+    val topPipe = new TopPipe(source, List(SortItem(Entity("x"), true)), None, Literal(3))
+
+    assertEquals(List(Map("x" -> 1), Map("x" -> 2), Map("x" -> 3)), topPipe.createResults(Map()).toList)
+  }
+
+  @Test def descendingWithSkip() {
+    val source = new FakePipe((1 to 100).map(i => Map("x" -> i)))
+    val topPipe = new TopPipe(source, List(SortItem(Entity("x"), false)), Some(Literal(2)), Literal(2))
+
+    assertEquals(List(Map("x" -> 98), Map("x" -> 97)), topPipe.createResults(Map()).toList)
+  }
+
+  @Test def equalRowsKeepTheirOrder() {
+    val source = new FakePipe(List(
+      Map("x" -> "B", "y" -> 1),
+      Map("x" -> "A", "y" -> 2),
+      Map("x" -> "B", "y" -> 3),
+      Map("x" -> "A", "y" -> 4)))
+    val topPipe = new TopPipe(source, List(SortItem(Entity("x"), true)), None, Literal(3))
+
+    assertEquals(List(
+      Map("x" -> "A", "y" -> 2),
+      Map("x" -> "A", "y" -> 4),
+      Map("x" -> "B", "y" -> 1)), topPipe.createResults(Map()).toList)
+  }
+
+  @Test def skipAndLimitAddingUpToMoreThanAnInt() {
+    val source = new FakePipe((1 to 10).reverse.map(i => Map("x" -> i)))
+    val topPipe = new TopPipe(source, List(SortItem(Entity("x"), true)), Some(Literal(7)), Literal(Int.MaxValue))
+
+    assertEquals(List(Map("x" -> 8), Map("x" -> 9), Map("x" -> 10)), topPipe.createResults(Map()).toList)
+  }
+
+  @Test def limitLargerThanInput() {
+    val source = new FakePipe(List(Map("x" -> 2), Map("x" -> null), Map("x" -> 1)))
+    val topPipe = new TopPipe(source, List(SortItem(Entity("x"), true)), None, Literal(10))
+
+    assertEquals(List(Map("x" -> 1), Map("x" -> 2), Map("x" -> null)), topPipe.createResults(Map()).toList)
+  }
+}
@@ -25,6 +25,7 @@ import org.neo4j.graphdb.{Node, Direction}
 import org.neo4j.cypher.internal.commands._
 import org.junit.{Before, Test}
 import org.neo4j.cypher.internal.symbols.{NodeType, RelationshipType, Identifier, SymbolTable}
+import org.neo4j.cypher.internal.SampledGraphStatistics
 
 class MatchingContextTest extends GraphDatabaseTestBase with Assertions {
   var a: Node = null
@@ -197,6 +198,29 @@ class MatchingContextTest extends GraphDatabaseTestBase with Assertions {
       Map("a" -> a, "b" -> b, "c" -> c, "d" -> d, "r1" -> r1, "r2" -> r2, "r3" -> r3, "r4" -> r4))
   }
 
+  @Test def expansionOrderFromStatisticsFindsTheSameMatches() {
+    val r1 = relate(a, b, "x")
+    val r2 = relate(a, c, "y")
+    val r3 = relate(b, d, "x")
+    val r4 = relate(c, d, "y")
+    relate(c, a, "y")
+    relate(d, c, "y")
+
+    val statistics = new SampledGraphStatistics(graph)
+    statistics.sampleGraph()
+
+    val patterns: Seq[Pattern] = Seq(
+      RelatedTo("a", "b", "r1", "x", Direction.OUTGOING, false),
+      RelatedTo("a", "c", "r2", "y", Direction.OUTGOING, false),
+      RelatedTo("b", "d", "r3", "x", Direction.OUTGOING, false),
+      RelatedTo("c", "d", "r4", "y", Direction.OUTGOING, false)
+    )
+    val matchingContext = new MatchingContext(patterns, bind("a"), Seq(), statistics)
+
+    assertMatches(matchingContext.getMatches(Map("a" -> a)), 1,
+      Map("a" -> a, "b" -> b, "c" -> c, "d" -> d, "r1" -> r1, "r2" -> r2, "r3" -> r3, "r4" -> r4))
+  }
+
   @Test def directionConstraintFiltersMatches() {
     val r1 = relate(a, b, "rel")
     val r2 = relate(c, a, "rel")
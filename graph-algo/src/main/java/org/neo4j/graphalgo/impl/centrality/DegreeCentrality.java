@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.centrality;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.impl.core.Degrees;
+
+/**
+ * Implementation of degree centrality, the number of relationships of the
+ * given types and direction a node has. Degrees are read with
+ * {@link Degrees#getDegree(Node, RelationshipType, Direction)}, so no
+ * relationships of database nodes are loaded to count them.
+ * @complexity O(n * t) for n nodes and t relationship types.
+ */
+public class DegreeCentrality
+{
+    protected Set<Node> nodeSet;
+    protected Direction direction;
+    protected RelationshipType[] types;
+    protected Map<Node,Integer> centralities = new HashMap<Node,Integer>();
+
+    /**
+     * Default constructor.
+     * @param nodeSet
+     *            A set containing the nodes for which centrality values should
+     *            be computed.
+     * @param direction
+     *            The direction of the relationships to count.
+     * @param types
+     *            The types of the relationships to count, or none to count
+     *            relationships of any type.
+     */
+    public DegreeCentrality( Set<Node> nodeSet, Direction direction, RelationshipType... types )
+    {
+        this.nodeSet = nodeSet;
+        this.direction = direction;
+        this.types = types;
+    }
+
+    /**
+     * This resets the calculation if we for some reason would like to redo it.
+     */
+    public void reset()
+    {
+        centralities = new HashMap<Node,Integer>();
+    }
+
+    /**
+     * This can be used to retrieve the result for every node. Will return
+     * null if the node is not contained in the node set initially given.
+     * @param node
+     *            The node for which we would like the value.
+     * @return the centrality value for the given node.
+     */
+    public Integer getCentrality( Node node )
+    {
+        if ( !nodeSet.contains( node ) )
+        {
+            return null;
+        }
+        Integer centrality = centralities.get( node );
+        if ( centrality == null )
+        {
+            centrality = degree( node );
+            centralities.put( node, centrality );
+        }
+        return centrality;
+    }
+
+    private int degree( Node node )
+    {
+        if ( types.length == 0 )
+        {
+            return Degrees.getDegree( node, direction );
+        }
+        int degree = 0;
+        for ( RelationshipType type : types )
+        {
+            degree += Degrees.getDegree( node, type, direction );
+        }
+        return degree;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.centrality;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.neo4j.graphalgo.impl.centrality.DegreeCentrality;
+import org.neo4j.graphdb.Direction;
+
+import common.Neo4jAlgoTestCase;
+
+public class DegreeCentralityTest extends Neo4jAlgoTestCase
+{
+    @Test
+    public void testPlusShape()
+    {
+        graph.makeEdgeChain( "a,b,c" );
+        graph.makeEdgeChain( "d,b,e" );
+        DegreeCentrality outgoing = new DegreeCentrality( graph.getAllNodes(), Direction.OUTGOING, MyRelTypes.R1 );
+        assertEquals( Integer.valueOf( 2 ), outgoing.getCentrality( graph.getNode( "b" ) ) );
+        assertEquals( Integer.valueOf( 1 ), outgoing.getCentrality( graph.getNode( "a" ) ) );
+        assertEquals( Integer.valueOf( 0 ), outgoing.getCentrality( graph.getNode( "c" ) ) );
+        DegreeCentrality both = new DegreeCentrality( graph.getAllNodes(), Direction.BOTH );
+        assertEquals( Integer.valueOf( 4 ), both.getCentrality( graph.getNode( "b" ) ) );
+        assertEquals( Integer.valueOf( 1 ), both.getCentrality( graph.getNode( "e" ) ) );
+        DegreeCentrality other = new DegreeCentrality( graph.getAllNodes(), Direction.BOTH, MyRelTypes.R2 );
+        assertEquals( Integer.valueOf( 0 ), other.getCentrality( graph.getNode( "b" ) ) );
+    }
+
+    @Test
+    public void testNodeOutsideSet()
+    {
+        graph.makeEdgeChain( "a,b" );
+        DegreeCentrality degree = new DegreeCentrality( graph.getAllNodes(), Direction.BOTH );
+        assertNull( degree.getCentrality( graphDb.createNode() ) );
+    }
+}
@@ -51,6 +51,7 @@ import org.neo4j.graphdb.index.IndexProvider;
 import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.Service;
 import org.neo4j.kernel.impl.cache.AdaptiveCacheManager;
+import org.neo4j.kernel.impl.core.CacheWarmup;
 import org.neo4j.kernel.impl.core.DefaultRelationshipTypeCreator;
 import org.neo4j.kernel.impl.core.KernelPanicEventGenerator;
 import org.neo4j.kernel.impl.core.LastCommittedTxIdSetter;
@@ -354,6 +355,9 @@ public abstract class AbstractGraphDatabase
 
         life.add( new StuffToDoAfterRecovery() );
 
+        life.add( new CacheWarmup( ConfigProxy.config( params, CacheWarmup.Configuration.class ), storeDir,
+                fileSystem, nodeManager, neoDataSource, msgLog, readOnly ) );
+
         // This is how we lock the entire database to avoid threads using it during lifecycle events
         life.add( new DatabaseAvailability() );
 
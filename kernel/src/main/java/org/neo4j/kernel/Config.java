@@ -60,6 +60,19 @@ public class Config implements DiagnosticsProvider
      */
     @Documented
     public static final String KEEP_LOGICAL_LOGS = "keep_logical_logs";
+    /**
+     * Let concurrently committing transactions share one force of the logical
+     * log instead of forcing it once each. Defaults to false.
+     */
+    @Documented
+    public static final String GROUP_COMMIT = "group_commit";
+    /**
+     * Rotate the logical log in a thread of its own once it reaches its
+     * target size, flushing the store before transactions are held up for the
+     * switch to the new log. Defaults to false.
+     */
+    @Documented
+    public static final String BACKGROUND_LOG_ROTATION = "background_log_rotation";
     /** Enable a remote shell server which shell clients can log in to */
     @Documented
     public static final String ENABLE_REMOTE_SHELL = "enable_remote_shell";
@@ -110,6 +123,16 @@ public class Config implements DiagnosticsProvider
     /** The size to allocate for memory mapping the relationship store */
     @Documented
     public static final String RELATIONSHIP_STORE_MMAP_SIZE = "neostore.relationshipstore.db.mapped_memory";
+    /** The size to allocate for memory mapping the relationship group store */
+    @Documented
+    public static final String RELATIONSHIP_GROUP_STORE_MMAP_SIZE = "neostore.relationshipgroupstore.db.mapped_memory";
+    /**
+     * The number of relationships a node may have before its relationships
+     * are grouped by type and direction, letting typed and directed lookups
+     * skip the others. Defaults to 50.
+     */
+    @Documented
+    public static final String DENSE_NODE_THRESHOLD = "dense_node_threshold";
     /** Relative path for where the Neo4j logical log is located */
     @Documented
     public static final String LOGICAL_LOG = "logical_log";
@@ -119,11 +142,25 @@ public class Config implements DiagnosticsProvider
 
     /**
      * The type of cache to use for nodes and relationships, one of [weak, soft,
-     * none]
+     * strong, old, clock, offheap, none]
      */
     @Documented
     public static final String CACHE_TYPE = "cache_type";
 
+    /**
+     * The amount of direct memory the offheap cache type may use for nodes,
+     * f.ex. 512M or 4G. Defaults to 128M.
+     */
+    @Documented
+    public static final String NODE_CACHE_OFFHEAP_SIZE = "node_cache_offheap_size";
+
+    /**
+     * The amount of direct memory the offheap cache type may use for
+     * relationships, f.ex. 512M or 4G. Defaults to 128M.
+     */
+    @Documented
+    public static final String RELATIONSHIP_CACHE_OFFHEAP_SIZE = "relationship_cache_offheap_size";
+
     /**
      * The name of the Transaction Manager service to use as defined in the TM
      * service provider constructor, defaults to native.
@@ -139,6 +176,42 @@ public class Config implements DiagnosticsProvider
     @Documented
     public static final String INTERCEPT_COMMITTING_TRANSACTIONS = "intercept_committing_transactions";
 
+    /**
+     * Determines whether the node, relationship, relationship group and
+     * property records of transactions recovered from the logical log on
+     * startup are written by one thread per store, in parallel with reading
+     * the log. Defaults to true.
+     */
+    @Documented
+    public static final String PARALLEL_RECOVERY = "parallel_recovery";
+
+    /**
+     * The number of node, relationship, relationship group or property
+     * records of one kind a transaction keeps in memory before writing them
+     * to a temporary file, from where they are read back when needed again
+     * and when the transaction commits. 0 keeps them all in memory. Not used
+     * for transactions that are intercepted. Defaults to 100000.
+     */
+    @Documented
+    public static final String TX_STATE_SPILL_THRESHOLD = "tx_state_spill_threshold";
+
+    /**
+     * Whether or not to keep a snapshot of the hot set, i.e. the cached nodes
+     * and relationships and the memory mapped store regions, in the store
+     * directory and to preload it in the background on startup. Defaults to
+     * true.
+     */
+    @Documented
+    public static final String CACHE_WARMUP = "cache_warmup";
+
+    /**
+     * The interval, in seconds, between writes of the hot set snapshot used
+     * for cache warm-up. The snapshot is also written on shutdown. 0 only
+     * writes it on shutdown. Defaults to 600.
+     */
+    @Documented
+    public static final String CACHE_WARMUP_SNAPSHOT_INTERVAL = "cache_warmup_snapshot_interval";
+
     /**
      * Determines whether any TransactionInterceptors loaded will intercept
      * externally received transactions (e.g. in HA) before they reach the
@@ -206,6 +279,23 @@ public class Config implements DiagnosticsProvider
     @Documented
     public static final String LUCENE_WRITER_CACHE_SIZE = "lucene_writer_cache_size";
 
+    /**
+     * The longest time, in milliseconds, lucene index queries may go without
+     * seeing changes committed to the index. Searchers are reopened in the
+     * background, a query only reopens one itself when it's older than this.
+     * The default is 0, every query sees all committed changes.
+     */
+    @Documented
+    public static final String LUCENE_SEARCHER_MAX_STALENESS = "lucene_searcher_max_staleness";
+
+    /**
+     * The number of commits to an index after which its searcher is reopened
+     * in the background right away, rather than when the oldest of them
+     * approaches lucene_searcher_max_staleness. The default is 1.
+     */
+    @Documented
+    public static final String LUCENE_SEARCHER_REOPEN_COMMITS = "lucene_searcher_reopen_commits";
+
     static final String LOAD_EXTENSIONS = "load_kernel_extensions";
 
     private Map<String, String> params;
@@ -23,6 +23,8 @@ public enum IdType
 {
     NODE( 35, false ),
     RELATIONSHIP( 35, false ),
+    RELATIONSHIP_GROUP( 35, false ),
+    NODE_EXTENSION( 35, false ),
     PROPERTY( 36, true ), // This one
     STRING_BLOCK( 36, true ), // This one
     ARRAY_BLOCK( 36, true ), // This one
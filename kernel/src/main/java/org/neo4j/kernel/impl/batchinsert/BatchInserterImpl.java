@@ -43,7 +43,6 @@ import org.neo4j.kernel.impl.index.IndexStore;
 import org.neo4j.kernel.impl.nioneo.store.DynamicRecord;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.nioneo.store.IdGeneratorImpl;
-import org.neo4j.kernel.impl.nioneo.store.InvalidRecordException;
 import org.neo4j.kernel.impl.nioneo.store.NameData;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
@@ -57,6 +56,7 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGrouper;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
@@ -75,6 +75,7 @@ public class BatchInserterImpl implements BatchInserter
     private static final long MAX_RELATIONSHIP_ID = IdType.RELATIONSHIP.getMaxValue();
 
     private final NeoStore neoStore;
+    private final RelationshipGrouper relationshipGrouper;
     private final IndexStore indexStore;
     private final String storeDir;
 
@@ -122,6 +123,7 @@ public class BatchInserterImpl implements BatchInserter
             throw new IllegalStateException( storeDir + " store is not cleanly shutdown." );
         }
         neoStore.makeStoreOk();
+        relationshipGrouper = new RelationshipGrouper( neoStore );
         NameData[] indexes = getPropertyIndexStore().getNames( 10000 );
         indexHolder = new PropertyIndexHolder( indexes );
         NameData[] types = getRelationshipTypeStore().getNames( Integer.MAX_VALUE );
@@ -405,6 +407,10 @@ public class BatchInserterImpl implements BatchInserter
         NodeRecord nodeRecord = new NodeRecord( nodeId, Record.NO_NEXT_RELATIONSHIP.intValue(), Record.NO_NEXT_PROPERTY.intValue() );
         nodeRecord.setInUse(true);
         nodeRecord.setCreated();
+        if ( relationshipGrouper.isSupported() )
+        {
+            nodeRecord.setRelCount( 0 );
+        }
         nodeRecord.setNextProp( createPropertyChain( properties ) );
         getNodeStore().updateRecord( nodeRecord );
         return nodeId;
@@ -438,7 +444,7 @@ public class BatchInserterImpl implements BatchInserter
         type, Map<String,Object> properties )
     {
         NodeRecord firstNode = getNodeRecord( node1 );
-        NodeRecord secondNode = getNodeRecord( node2 );
+        NodeRecord secondNode = node1 == node2 ? firstNode : getNodeRecord( node2 );
         int typeId = typeHolder.getTypeId( type.name() );
         if ( typeId == -1 )
         {
@@ -450,7 +456,10 @@ public class BatchInserterImpl implements BatchInserter
         record.setCreated();
         connectRelationship( firstNode, secondNode, record );
         getNodeStore().updateRecord( firstNode );
-        getNodeStore().updateRecord( secondNode );
+        if ( secondNode != firstNode )
+        {
+            getNodeStore().updateRecord( secondNode );
+        }
         record.setNextProp( createPropertyChain( properties ) );
         getRelationshipStore().updateRecord( record );
         return id;
@@ -461,35 +470,10 @@ public class BatchInserterImpl implements BatchInserter
     {
         assert firstNode.getNextRel() != rel.getId();
         assert secondNode.getNextRel() != rel.getId();
-        rel.setFirstNextRel( firstNode.getNextRel() );
-        rel.setSecondNextRel( secondNode.getNextRel() );
-        connect( firstNode, rel );
-        connect( secondNode, rel );
-        firstNode.setNextRel(rel.getId());
-        secondNode.setNextRel(rel.getId());
-    }
-
-    private void connect( NodeRecord node, RelationshipRecord rel )
-    {
-        if ( node.getNextRel() != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        relationshipGrouper.connect( firstNode, rel );
+        if ( secondNode != firstNode )
         {
-            RelationshipRecord nextRel = getRelationshipStore().getRecord( node.getNextRel() );
-            boolean changed = false;
-            if ( nextRel.getFirstNode() == node.getId() )
-            {
-                nextRel.setFirstPrevRel( rel.getId() );
-                changed = true;
-            }
-            if ( nextRel.getSecondNode() == node.getId() )
-            {
-                nextRel.setSecondPrevRel( rel.getId() );
-                changed = true;
-            }
-            if ( !changed )
-            {
-                throw new InvalidRecordException( node + " dont match " + nextRel );
-            }
-            getRelationshipStore().updateRecord( nextRel );
+            relationshipGrouper.connect( secondNode, rel );
         }
     }
 
@@ -550,61 +534,23 @@ public class BatchInserterImpl implements BatchInserter
 
     public Iterable<Long> getRelationshipIds( long nodeId )
     {
-        NodeRecord nodeRecord = getNodeRecord(nodeId);
-        long nextRel = nodeRecord.getNextRel();
         List<Long> ids = new ArrayList<Long>();
-        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        for ( RelationshipRecord relRecord : relationshipGrouper.getRelationships( getNodeRecord( nodeId ) ) )
         {
-            RelationshipRecord relRecord = getRelationshipRecord( nextRel );
             ids.add( relRecord.getId() );
-            long firstNode = relRecord.getFirstNode();
-            long secondNode = relRecord.getSecondNode();
-            if ( firstNode == nodeId )
-            {
-                nextRel = relRecord.getFirstNextRel();
-            }
-            else if ( secondNode == nodeId )
-            {
-                nextRel = relRecord.getSecondNextRel();
-            }
-            else
-            {
-                throw new InvalidRecordException( "Node[" + nodeId +
-                    "] not part of firstNode[" + firstNode +
-                    "] or secondNode[" + secondNode + "]" );
-            }
         }
         return ids;
     }
 
     public Iterable<SimpleRelationship> getRelationships( long nodeId )
     {
-        NodeRecord nodeRecord = getNodeRecord(nodeId);
-        long nextRel = nodeRecord.getNextRel();
         List<SimpleRelationship> rels = new ArrayList<SimpleRelationship>();
-        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        for ( RelationshipRecord relRecord : relationshipGrouper.getRelationships( getNodeRecord( nodeId ) ) )
         {
-            RelationshipRecord relRecord = getRelationshipRecord( nextRel );
             RelationshipType type = new RelationshipTypeImpl(
                 typeHolder.getName( relRecord.getType() ) );
             rels.add( new SimpleRelationship( relRecord.getId(),
                 relRecord.getFirstNode(), relRecord.getSecondNode(), type ) );
-            long firstNode = relRecord.getFirstNode();
-            long secondNode = relRecord.getSecondNode();
-            if ( firstNode == nodeId )
-            {
-                nextRel = relRecord.getFirstNextRel();
-            }
-            else if ( secondNode == nodeId )
-            {
-                nextRel = relRecord.getSecondNextRel();
-            }
-            else
-            {
-                throw new InvalidRecordException( "Node[" + nodeId +
-                    "] not part of firstNode[" + firstNode +
-                    "] or secondNode[" + secondNode + "]" );
-            }
         }
         return rels;
     }
@@ -816,6 +762,31 @@ public class BatchInserterImpl implements BatchInserter
         return id;
     }
 
+    NeoStore getNeoStore()
+    {
+        return neoStore;
+    }
+
+    synchronized int getOrCreatePropertyKeyId( String key )
+    {
+        int keyId = indexHolder.getKeyId( key );
+        if ( keyId == -1 )
+        {
+            keyId = createNewPropertyIndex( key );
+        }
+        return keyId;
+    }
+
+    synchronized int getOrCreateRelationshipTypeId( String name )
+    {
+        int typeId = typeHolder.getTypeId( name );
+        if ( typeId == -1 )
+        {
+            typeId = createNewRelationshipType( name );
+        }
+        return typeId;
+    }
+
     private NodeStore getNodeStore()
     {
         return neoStore.getNodeStore();
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.batchinsert;
+
+import java.util.Map;
+
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * A relationship to import with {@link ParallelBatchImporter}, between nodes
+ * already in the store.
+ */
+public class ImportRelationship
+{
+    private final long startNodeId;
+    private final long endNodeId;
+    private final RelationshipType type;
+    private final Map<String,Object> properties;
+
+    public ImportRelationship( long startNodeId, long endNodeId, RelationshipType type,
+        Map<String,Object> properties )
+    {
+        this.startNodeId = startNodeId;
+        this.endNodeId = endNodeId;
+        this.type = type;
+        this.properties = properties;
+    }
+
+    public long getStartNode()
+    {
+        return startNodeId;
+    }
+
+    public long getEndNode()
+    {
+        return endNodeId;
+    }
+
+    public RelationshipType getType()
+    {
+        return type;
+    }
+
+    public Map<String,Object> getProperties()
+    {
+        return properties;
+    }
+}
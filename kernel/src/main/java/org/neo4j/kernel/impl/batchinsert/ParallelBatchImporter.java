@@ -0,0 +1,624 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.batchinsert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.helpers.DaemonThreadFactory;
+import org.neo4j.kernel.IdType;
+import org.neo4j.kernel.impl.nioneo.store.IdGeneratorImpl;
+import org.neo4j.kernel.impl.nioneo.store.IdRange;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.PropertyBlock;
+import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
+import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
+import org.neo4j.kernel.impl.nioneo.store.PropertyType;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGrouper;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
+
+/**
+ * Imports streams of nodes and relationships through a {@link
+ * BatchInserterImpl}, using several threads.
+ * <p>
+ * Input is read in batches by the calling thread. Worker threads encode the
+ * properties of each batch into property records, with ids allocated a batch
+ * at a time. A single writer thread then writes the batches, in input order,
+ * so that records are mostly written sequentially.
+ * <p>
+ * Relationships are written with only the pointers to the next
+ * relationship of each node, keeping the head of each node's chain in
+ * memory. The pointers to the previous relationship are set in a separate,
+ * backward, pass over the written relationships, after which the node
+ * records get their new chain heads, and their relationship counts. This
+ * takes 12 bytes of heap per node in the store. The relationships imported onto dense nodes are linked in
+ * a chain of their own, which is then moved into the groups of the node,
+ * and nodes that got more relationships than the dense node threshold are
+ * grouped at the end of the import.
+ * <p>
+ * The batch inserter must not be used by other threads during an import.
+ */
+public class ParallelBatchImporter
+{
+    private static final int BATCH_SIZE = 10000;
+    private static final long MAX_NODE_ID = IdType.NODE.getMaxValue();
+
+    private static final Future<Object> END_OF_INPUT = new FutureTask<Object>( new Callable<Object>()
+    {
+        public Object call()
+        {
+            return null;
+        }
+    } );
+
+    private final BatchInserterImpl inserter;
+    private final RelationshipGrouper grouper;
+    private final int workerCount;
+    private final ConcurrentMap<String,Integer> propertyKeys = new ConcurrentHashMap<String,Integer>();
+    private final ConcurrentMap<String,Integer> relationshipTypes = new ConcurrentHashMap<String,Integer>();
+
+    /**
+     * @param inserter the batch inserter to import through
+     * @param workerCount the number of threads encoding properties
+     */
+    public ParallelBatchImporter( BatchInserterImpl inserter, int workerCount )
+    {
+        if ( workerCount < 1 )
+        {
+            throw new IllegalArgumentException( "workerCount=" + workerCount );
+        }
+        this.inserter = inserter;
+        this.grouper = new RelationshipGrouper( inserter.getNeoStore() );
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Creates the nodes, with the ids and properties given. The ids must be
+     * unique and not below the high id of the node store, since lower ids may
+     * be handed out again by its id generator.
+     */
+    public void importNodes( Iterator<ImportNode> nodes )
+    {
+        final NodeStore nodeStore = inserter.getNeoStore().getNodeStore();
+        final long initialHighId = nodeStore.getHighId();
+        final boolean countRelationships = grouper.isSupported();
+        runStage( nodes, new Encoder<ImportNode,NodeBatch>()
+        {
+            public NodeBatch encode( List<ImportNode> input )
+            {
+                NodeBatch batch = new NodeBatch( input.size() );
+                List<Map<String,Object>> properties = new ArrayList<Map<String,Object>>( input.size() );
+                for ( int i = 0; i < input.size(); i++ )
+                {
+                    long id = input.get( i ).getId();
+                    if ( id < 0 || id > MAX_NODE_ID || id == IdGeneratorImpl.INTEGER_MINUS_ONE )
+                    {
+                        throw new IllegalArgumentException( "id=" + id );
+                    }
+                    if ( id < initialHighId )
+                    {
+                        throw new IllegalArgumentException( "id=" + id + " is below the high id "
+                            + initialHighId + " of the node store" );
+                    }
+                    batch.ids[i] = id;
+                    properties.add( input.get( i ).getProperties() );
+                }
+                batch.firstProperties = encodeProperties( properties, batch.propertyRecords );
+                return batch;
+            }
+        }, new Writer<NodeBatch>()
+        {
+            public void write( NodeBatch batch )
+            {
+                assertNotImported( batch.ids );
+                writePropertyRecords( batch.propertyRecords );
+                for ( int i = 0; i < batch.ids.length; i++ )
+                {
+                    long id = batch.ids[i];
+                    if ( id >= nodeStore.getHighId() )
+                    {
+                        nodeStore.setHighId( id + 1 );
+                    }
+                    NodeRecord record = new NodeRecord( id, Record.NO_NEXT_RELATIONSHIP.intValue(),
+                        batch.firstProperties[i] );
+                    record.setInUse( true );
+                    record.setCreated();
+                    if ( countRelationships )
+                    {
+                        record.setRelCount( 0 );
+                    }
+                    nodeStore.updateRecord( record );
+                }
+            }
+
+            // before anything of the batch is written, so that a rejected
+            // batch leaves no nodes or properties behind
+            private void assertNotImported( long[] ids )
+            {
+                long[] sorted = ids.clone();
+                Arrays.sort( sorted );
+                long highId = nodeStore.getHighId();
+                for ( int i = 0; i < sorted.length; i++ )
+                {
+                    long id = sorted[i];
+                    // every id written so far is below the high id, so only an
+                    // id below it can be a duplicate of an earlier batch
+                    if ( ( i > 0 && sorted[i - 1] == id ) ||
+                        ( id < highId && nodeStore.loadLightNode( id ) != null ) )
+                    {
+                        throw new IllegalArgumentException( "id=" + id + " imported more than once" );
+                    }
+                }
+            }
+        } );
+    }
+
+    /**
+     * Creates the relationships, between nodes already in the store.
+     */
+    public void importRelationships( Iterator<ImportRelationship> relationships )
+    {
+        final NodeStore nodeStore = inserter.getNeoStore().getNodeStore();
+        final RelationshipStore relStore = inserter.getNeoStore().getRelationshipStore();
+        long nodeHighId = nodeStore.getHighId();
+        if ( nodeHighId > Integer.MAX_VALUE )
+        {
+            throw new IllegalStateException( "Too many nodes, " + nodeHighId + ", to link in memory" );
+        }
+        final int nodeCount = (int) nodeHighId;
+        final BitSet existingNodes = new BitSet( nodeCount );
+        final long[] heads = new long[nodeCount];
+        // the number of relationships imported for each node, loops counted once
+        final int[] added = new int[nodeCount];
+        for ( int id = 0; id < nodeCount; id++ )
+        {
+            NodeRecord node = nodeStore.loadLightNode( id );
+            if ( node != null )
+            {
+                existingNodes.set( id );
+                // dense nodes get a chain of their own, grouped once imported
+                heads[id] = node.isDense() ? Record.NO_NEXT_RELATIONSHIP.intValue() : node.getNextRel();
+            }
+        }
+
+        final BitSet touchedNodes = new BitSet( nodeCount );
+        final List<IdRange> writtenIds = new ArrayList<IdRange>();
+        // relationships that were at the head of a chain before the import,
+        // as { relationship, node, new relationship before it }
+        final List<long[]> oldHeads = new ArrayList<long[]>();
+        runStage( relationships, new Encoder<ImportRelationship,RelationshipBatch>()
+        {
+            public RelationshipBatch encode( List<ImportRelationship> input )
+            {
+                RelationshipBatch batch = new RelationshipBatch( input.size() );
+                List<Map<String,Object>> properties = new ArrayList<Map<String,Object>>( input.size() );
+                for ( int i = 0; i < input.size(); i++ )
+                {
+                    ImportRelationship relationship = input.get( i );
+                    batch.startNodes[i] = assertNodeExists( relationship.getStartNode() );
+                    batch.endNodes[i] = assertNodeExists( relationship.getEndNode() );
+                    batch.types[i] = relationshipTypeId( relationship.getType().name() );
+                    properties.add( relationship.getProperties() );
+                }
+                batch.firstProperties = encodeProperties( properties, batch.propertyRecords );
+                return batch;
+            }
+
+            private int assertNodeExists( long id )
+            {
+                if ( id < 0 || id >= nodeCount || !existingNodes.get( (int) id ) )
+                {
+                    throw new IllegalArgumentException( "Node[" + id + "] not found" );
+                }
+                return (int) id;
+            }
+        }, new Writer<RelationshipBatch>()
+        {
+            public void write( RelationshipBatch batch )
+            {
+                writePropertyRecords( batch.propertyRecords );
+                IdRange ids = relStore.nextIdBatch( batch.types.length );
+                writtenIds.add( ids );
+                for ( int i = 0; i < batch.types.length; i++ )
+                {
+                    long id = idAt( ids, i );
+                    int start = batch.startNodes[i];
+                    int end = batch.endNodes[i];
+                    RelationshipRecord record = new RelationshipRecord( id, start, end, batch.types[i] );
+                    record.setInUse( true );
+                    record.setCreated();
+                    record.setNextProp( batch.firstProperties[i] );
+                    record.setFirstNextRel( heads[start] );
+                    record.setSecondNextRel( heads[end] );
+                    touch( start, id );
+                    touch( end, id );
+                    added[start]++;
+                    if ( end != start )
+                    {
+                        added[end]++;
+                    }
+                    heads[start] = id;
+                    heads[end] = id;
+                    relStore.updateRecord( record );
+                }
+            }
+
+            private void touch( int node, long relationship )
+            {
+                if ( !touchedNodes.get( node ) )
+                {
+                    touchedNodes.set( node );
+                    if ( heads[node] != Record.NO_NEXT_RELATIONSHIP.intValue() )
+                    {
+                        oldHeads.add( new long[] { heads[node], node, relationship } );
+                    }
+                }
+            }
+        } );
+
+        Map<Integer,Long> denseHeads = new HashMap<Integer,Long>();
+        for ( int node = touchedNodes.nextSetBit( 0 ); node >= 0; node = touchedNodes.nextSetBit( node + 1 ) )
+        {
+            NodeRecord record = nodeStore.getRecord( node );
+            if ( record.isDense() )
+            {
+                denseHeads.put( node, heads[node] );
+                continue;
+            }
+            record.setNextRel( heads[node] );
+            nodeStore.updateRecord( record );
+        }
+        linkPreviousRelationships( relStore, writtenIds, heads );
+        for ( long[] oldHead : oldHeads )
+        {
+            RelationshipRecord record = relStore.getRecord( oldHead[0] );
+            if ( record.getFirstNode() == oldHead[1] )
+            {
+                record.setFirstPrevRel( oldHead[2] );
+            }
+            if ( record.getSecondNode() == oldHead[1] )
+            {
+                record.setSecondPrevRel( oldHead[2] );
+            }
+            relStore.updateRecord( record );
+        }
+        groupRelationships( nodeStore, touchedNodes, denseHeads, added );
+    }
+
+    /**
+     * Adds the imported relationships to the relationship counts of the
+     * nodes, moves the ones imported onto dense nodes into their groups,
+     * which keeps the group counts, and groups the relationships of the
+     * nodes that now have more than the dense node threshold. The chains
+     * must be linked both ways first.
+     */
+    private void groupRelationships( NodeStore nodeStore, BitSet touchedNodes, Map<Integer,Long> denseHeads,
+        int[] added )
+    {
+        for ( int node = touchedNodes.nextSetBit( 0 ); node >= 0; node = touchedNodes.nextSetBit( node + 1 ) )
+        {
+            NodeRecord record = nodeStore.getRecord( node );
+            if ( record.getRelCount() != NodeRecord.UNKNOWN_REL_COUNT )
+            {
+                record.setRelCount( record.getRelCount() + added[node] );
+            }
+            Long denseHead = denseHeads.get( node );
+            if ( denseHead != null )
+            {
+                grouper.moveIntoGroups( record, denseHead );
+            }
+            else
+            {
+                grouper.update( record );
+            }
+            nodeStore.updateRecord( record );
+        }
+    }
+
+    /**
+     * Goes through the relationships backwards, in the reverse of the order
+     * they were written in, setting the pointers to the previous relationship
+     * in each chain.
+     */
+    private void linkPreviousRelationships( RelationshipStore relStore, List<IdRange> writtenIds,
+        long[] previous )
+    {
+        Arrays.fill( previous, Record.NO_PREV_RELATIONSHIP.intValue() );
+        for ( int batch = writtenIds.size() - 1; batch >= 0; batch-- )
+        {
+            IdRange ids = writtenIds.get( batch );
+            for ( int i = ids.getDefragIds().length + ids.getRangeLength() - 1; i >= 0; i-- )
+            {
+                RelationshipRecord record = relStore.getRecord( idAt( ids, i ) );
+                int first = (int) record.getFirstNode();
+                int second = (int) record.getSecondNode();
+                record.setFirstPrevRel( previous[first] );
+                record.setSecondPrevRel( previous[second] );
+                previous[first] = record.getId();
+                previous[second] = record.getId();
+                relStore.updateRecord( record );
+            }
+        }
+    }
+
+    private static long idAt( IdRange ids, int index )
+    {
+        long[] defragIds = ids.getDefragIds();
+        return index < defragIds.length ? defragIds[index] : ids.getRangeStart() + index - defragIds.length;
+    }
+
+    /**
+     * Encodes the property maps into property records, added to
+     * <code>records</code>.
+     *
+     * @return the id of the first property record for each map.
+     */
+    private long[] encodeProperties( List<Map<String,Object>> propertyMaps, List<PropertyRecord> records )
+    {
+        PropertyStore propStore = inserter.getNeoStore().getPropertyStore();
+        // blocks for each record, and the number of records for each map
+        List<List<PropertyBlock>> recordBlocks = new ArrayList<List<PropertyBlock>>();
+        int[] recordCounts = new int[propertyMaps.size()];
+        for ( int i = 0; i < propertyMaps.size(); i++ )
+        {
+            Map<String,Object> properties = propertyMaps.get( i );
+            if ( properties == null )
+            {
+                continue;
+            }
+            List<PropertyBlock> current = null;
+            int size = 0;
+            for ( Map.Entry<String,Object> entry : properties.entrySet() )
+            {
+                PropertyBlock block = new PropertyBlock();
+                propStore.encodeValue( block, propertyKeyId( entry.getKey() ), entry.getValue() );
+                if ( current == null || size + block.getSize() > PropertyType.getPayloadSize() )
+                {
+                    current = new ArrayList<PropertyBlock>();
+                    recordBlocks.add( current );
+                    recordCounts[i]++;
+                    size = 0;
+                }
+                current.add( block );
+                size += block.getSize();
+            }
+        }
+
+        long[] firstProperties = new long[propertyMaps.size()];
+        IdRange ids = recordBlocks.isEmpty() ? null : propStore.nextIdBatch( recordBlocks.size() );
+        int next = 0;
+        for ( int i = 0; i < propertyMaps.size(); i++ )
+        {
+            firstProperties[i] = Record.NO_NEXT_PROPERTY.intValue();
+            PropertyRecord previous = null;
+            for ( int j = 0; j < recordCounts[i]; j++ )
+            {
+                PropertyRecord record = new PropertyRecord( idAt( ids, next ) );
+                record.setInUse( true );
+                record.setCreated();
+                for ( PropertyBlock block : recordBlocks.get( next++ ) )
+                {
+                    record.addPropertyBlock( block );
+                }
+                if ( previous == null )
+                {
+                    firstProperties[i] = record.getId();
+                }
+                else
+                {
+                    previous.setNextProp( record.getId() );
+                    record.setPrevProp( previous.getId() );
+                }
+                records.add( record );
+                previous = record;
+            }
+        }
+        return firstProperties;
+    }
+
+    private void writePropertyRecords( List<PropertyRecord> records )
+    {
+        PropertyStore propStore = inserter.getNeoStore().getPropertyStore();
+        // the record with the largest id first, to expand the property store
+        // file only once, then the rest in the order the ids were handed out
+        // in, reused ids first
+        int largest = -1;
+        for ( int i = 0; i < records.size(); i++ )
+        {
+            if ( largest == -1 || records.get( i ).getId() > records.get( largest ).getId() )
+            {
+                largest = i;
+            }
+        }
+        if ( largest != -1 )
+        {
+            propStore.updateRecord( records.get( largest ) );
+        }
+        for ( int i = 0; i < records.size(); i++ )
+        {
+            if ( i != largest )
+            {
+                propStore.updateRecord( records.get( i ) );
+            }
+        }
+    }
+
+    private int propertyKeyId( String key )
+    {
+        Integer keyId = propertyKeys.get( key );
+        if ( keyId == null )
+        {
+            keyId = inserter.getOrCreatePropertyKeyId( key );
+            propertyKeys.put( key, keyId );
+        }
+        return keyId;
+    }
+
+    private int relationshipTypeId( String name )
+    {
+        Integer typeId = relationshipTypes.get( name );
+        if ( typeId == null )
+        {
+            typeId = inserter.getOrCreateRelationshipTypeId( name );
+            relationshipTypes.put( name, typeId );
+        }
+        return typeId;
+    }
+
+    /**
+     * Reads <code>input</code> in batches, encodes the batches on the worker
+     * threads and writes them, in order, on a writer thread.
+     */
+    private <I,B> void runStage( Iterator<I> input, final Encoder<I,B> encoder, final Writer<B> writer )
+    {
+        ExecutorService workers = Executors.newFixedThreadPool( workerCount,
+            new DaemonThreadFactory( "Batch import worker" ) );
+        ExecutorService writerThread = Executors.newSingleThreadExecutor(
+            new DaemonThreadFactory( "Batch import writer" ) );
+        final BlockingQueue<Future<?>> encoded = new ArrayBlockingQueue<Future<?>>( workerCount * 2 );
+        try
+        {
+            Future<?> writing = writerThread.submit( new Callable<Object>()
+            {
+                @SuppressWarnings( "unchecked" )
+                public Object call() throws Exception
+                {
+                    for ( Future<?> batch = encoded.take(); batch != END_OF_INPUT; batch = encoded.take() )
+                    {
+                        writer.write( ((Future<B>) batch).get() );
+                    }
+                    return null;
+                }
+            } );
+            while ( input.hasNext() )
+            {
+                final List<I> batch = new ArrayList<I>( BATCH_SIZE );
+                while ( input.hasNext() && batch.size() < BATCH_SIZE )
+                {
+                    batch.add( input.next() );
+                }
+                enqueue( encoded, workers.submit( new Callable<B>()
+                {
+                    public B call()
+                    {
+                        return encoder.encode( batch );
+                    }
+                } ), writing );
+            }
+            enqueue( encoded, END_OF_INPUT, writing );
+            writing.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted during import", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause() instanceof ExecutionException ? e.getCause().getCause() : e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new RuntimeException( cause );
+        }
+        finally
+        {
+            workers.shutdownNow();
+            writerThread.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for room in the queue, giving up if the writer has failed.
+     */
+    private static void enqueue( BlockingQueue<Future<?>> queue, Future<?> batch, Future<?> writing )
+        throws InterruptedException, ExecutionException
+    {
+        while ( !queue.offer( batch, 100, TimeUnit.MILLISECONDS ) )
+        {
+            if ( writing.isDone() )
+            {
+                writing.get();
+            }
+        }
+    }
+
+    private interface Encoder<I,B>
+    {
+        B encode( List<I> input );
+    }
+
+    private interface Writer<B>
+    {
+        void write( B batch );
+    }
+
+    private static class NodeBatch
+    {
+        final long[] ids;
+        final List<PropertyRecord> propertyRecords = new ArrayList<PropertyRecord>();
+        long[] firstProperties;
+
+        NodeBatch( int size )
+        {
+            ids = new long[size];
+        }
+    }
+
+    private static class RelationshipBatch
+    {
+        final int[] startNodes;
+        final int[] endNodes;
+        final int[] types;
+        final List<PropertyRecord> propertyRecords = new ArrayList<PropertyRecord>();
+        long[] firstProperties;
+
+        RelationshipBatch( int size )
+        {
+            startNodes = new int[size];
+            endNodes = new int[size];
+            types = new int[size];
+        }
+    }
+}
@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.cache;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -74,6 +75,20 @@ public interface Cache<K,V>
      */
     public V get( K key );
 
+    /**
+     * Returns the cached element for <CODE>key</CODE> without counting it as
+     * a hit or miss and without bringing it back from wherever the cache keeps
+     * less used elements. Meant for identity checks against an instance at
+     * hand: an element that isn't readily available as a live instance can't
+     * be that instance, so <CODE>null</CODE> is returned for it.
+     *
+     * @param key
+     *            the key for the element
+     * @return the cached element or <CODE>null</CODE> if there is no live
+     *         instance of it in cache
+     */
+    public V peek( K key );
+
     /**
      * Removing all cached elements.
      */
@@ -86,6 +101,16 @@ public interface Cache<K,V>
      */
     public int size();
 
+    /**
+     * Returns a copy of at most <CODE>max</CODE> of the keys in the cache.
+     * Caches keeping track of how recently elements were used return the
+     * most recently used ones.
+     *
+     * @param max the maximum number of keys to return
+     * @return keys of cached elements
+     */
+    public List<K> keys( int max );
+
     void elementCleaned( V value );
 
     public int maxSize();
@@ -0,0 +1,346 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent approximation of a least-recently-used cache, using the CLOCK
+ * algorithm.
+ *
+ * Lookups and inserts go through a {@link ConcurrentHashMap} and never block
+ * each other. Instead of moving an element on every access, as
+ * {@link LruCache} does, a lookup only sets a reference bit on the element.
+ * When the number of cached elements exceeds <CODE>maxSize</CODE> elements
+ * are taken in insertion order from the clock: those with the reference bit
+ * set get it cleared and a second chance, the others are evicted. Only one
+ * thread at a time evicts, others passing the limit meanwhile carry on
+ * without waiting for it. Removed elements are left in the clock and dropped
+ * when the hand passes them, or in a sweep once the clock has grown to twice
+ * the size of the cache.
+ */
+public class ClockCache<K,E> implements Cache<K,E>
+{
+    private final String name;
+    private volatile int maxSize;
+    private volatile boolean adaptive = false;
+
+    private final AdaptiveCacheManager cacheManager;
+
+    private final ConcurrentHashMap<K,Element<K,E>> cache = new ConcurrentHashMap<K,Element<K,E>>();
+    private final Queue<Element<K,E>> clock = new ConcurrentLinkedQueue<Element<K,E>>();
+    private final AtomicInteger clockSize = new AtomicInteger();
+    private final Lock evictionLock = new ReentrantLock();
+
+    private final HitCounter counter = new HitCounter();
+
+    /**
+     * Creates a CLOCK cache. If <CODE>maxSize < 1</CODE> an
+     * IllegalArgumentException is thrown.
+     *
+     * @param name
+     *            name of cache
+     * @param maxSize
+     *            maximum size of this cache
+     * @param cacheManager
+     *            adaptive cache manager or null if adaptive caching not needed
+     */
+    public ClockCache( String name, int maxSize, AdaptiveCacheManager cacheManager )
+    {
+        if ( name == null || maxSize < 1 )
+        {
+            throw new IllegalArgumentException( "maxSize=" + maxSize
+                + ", name=" + name );
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.cacheManager = cacheManager;
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    public void put( K key, E element )
+    {
+        if ( key == null || element == null )
+        {
+            throw new IllegalArgumentException( "key=" + key + ", element="
+                + element );
+        }
+        Element<K,E> newElement = new Element<K,E>( key, element );
+        cache.put( key, newElement );
+        offer( newElement );
+        if ( cache.size() > maxSize || clockSize.get() > 2 * maxSize )
+        {
+            makeRoom();
+        }
+    }
+
+    public E remove( K key )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException( "Null parameter" );
+        }
+        // the element is left in the clock and skipped once the hand gets there
+        Element<K,E> element = cache.remove( key );
+        if ( clockSize.get() > 2 * maxSize )
+        {
+            makeRoom();
+        }
+        return element != null ? element.value : null;
+    }
+
+    public E get( K key )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException();
+        }
+        Element<K,E> element = cache.get( key );
+        if ( element == null )
+        {
+            return counter.count( null );
+        }
+        element.referenced = true;
+        return counter.count( element.value );
+    }
+
+    public E peek( K key )
+    {
+        Element<K,E> element = cache.get( key );
+        return element != null ? element.value : null;
+    }
+
+    public void clear()
+    {
+        evictionLock.lock();
+        try
+        {
+            evict( 0 );
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    public int size()
+    {
+        return cache.size();
+    }
+
+    public List<K> keys( int max )
+    {
+        List<K> keys = new ArrayList<K>( Math.min( max, cache.size() ) );
+        for ( Iterator<K> iterator = cache.keySet().iterator(); iterator.hasNext() && keys.size() < max; )
+        {
+            keys.add( iterator.next() );
+        }
+        return keys;
+    }
+
+    public int maxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Changes the max size of the cache. If <CODE>newMaxSize</CODE> is less
+     * than <CODE>size()</CODE> elements are evicted, in clock order, until it
+     * isn't. For each element removed the {@link #elementCleaned} method is
+     * invoked.
+     * <p>
+     * If <CODE>newMaxSize</CODE> is less then <CODE>1</CODE> an
+     * {@link IllegalArgumentException} is thrown.
+     *
+     * @param newMaxSize
+     *            the new maximum size of the cache
+     */
+    public void resize( int newMaxSize )
+    {
+        if ( newMaxSize < 1 )
+        {
+            throw new IllegalArgumentException( "newMaxSize=" + newMaxSize );
+        }
+        evictionLock.lock();
+        try
+        {
+            maxSize = newMaxSize;
+            evict( newMaxSize );
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    private void makeRoom()
+    {
+        if ( !evictionLock.tryLock() )
+        {
+            // someone else is already evicting
+            return;
+        }
+        try
+        {
+            if ( isAdaptive() && cacheManager != null )
+            {
+                // may resize this cache, which evicts if needed
+                cacheManager.adaptCache( this );
+            }
+            evict( maxSize );
+            if ( clockSize.get() > 2 * maxSize )
+            {
+                sweepRemoved();
+            }
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Moves the clock hand until at most <CODE>targetSize</CODE> elements
+     * remain. Must be called holding the eviction lock.
+     */
+    private void evict( int targetSize )
+    {
+        Element<K,E> element;
+        while ( cache.size() > targetSize && ( element = poll() ) != null )
+        {
+            if ( cache.get( element.key ) != element )
+            {
+                // removed or replaced since it was put
+                continue;
+            }
+            if ( element.referenced && targetSize > 0 )
+            {
+                element.referenced = false;
+                offer( element );
+            }
+            else if ( cache.remove( element.key, element ) )
+            {
+                elementEvicted( element.key, element.value );
+            }
+        }
+    }
+
+    /**
+     * Turns the clock hand one full round, dropping elements no longer in the
+     * cache and leaving reference bits untouched. Must be called holding the
+     * eviction lock.
+     */
+    private void sweepRemoved()
+    {
+        Element<K,E> element;
+        for ( int i = clockSize.get(); i > 0 && ( element = poll() ) != null; i-- )
+        {
+            if ( cache.get( element.key ) == element )
+            {
+                offer( element );
+            }
+        }
+    }
+
+    private void offer( Element<K,E> element )
+    {
+        clockSize.incrementAndGet();
+        clock.offer( element );
+    }
+
+    private Element<K,E> poll()
+    {
+        Element<K,E> element = clock.poll();
+        if ( element != null )
+        {
+            clockSize.decrementAndGet();
+        }
+        return element;
+    }
+
+    /**
+     * Called for each element evicted, holding the eviction lock. Invokes
+     * {@link #elementCleaned} unless overridden.
+     */
+    protected void elementEvicted( K key, E element )
+    {
+        elementCleaned( element );
+    }
+
+    public void elementCleaned( E element )
+    {
+    }
+
+    public boolean isAdaptive()
+    {
+        return adaptive;
+    }
+
+    public void setAdaptiveStatus( boolean status )
+    {
+        this.adaptive = status;
+    }
+
+    public void putAll( Map<K,E> map )
+    {
+        for ( Map.Entry<K,E> entry : map.entrySet() )
+        {
+            put( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    @Override
+    public long hitCount()
+    {
+        return counter.getHitsCount();
+    }
+
+    @Override
+    public long missCount()
+    {
+        return counter.getMissCount();
+    }
+
+    private static class Element<K,E>
+    {
+        final K key;
+        final E value;
+        volatile boolean referenced;
+
+        Element( K key, E value )
+        {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts cached elements to and from bytes, for caches keeping elements
+ * outside of the java heap.
+ */
+public interface ElementCodec<E>
+{
+    /**
+     * Writes <CODE>element</CODE> to <CODE>target</CODE>.
+     *
+     * @throws java.nio.BufferOverflowException if <CODE>target</CODE> is too
+     * small, the caller may then retry with a larger buffer.
+     */
+    void encode( E element, ByteBuffer target );
+
+    /**
+     * Creates a new element from bytes written by {@link #encode}.
+     */
+    E decode( long key, ByteBuffer source );
+}
@@ -19,8 +19,10 @@
  */
 package org.neo4j.kernel.impl.cache;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -130,6 +132,12 @@ public class LruCache<K,E> implements Cache<K,E>
         return counter.count( cache.get( key ) );
     }
 
+    public synchronized E peek( K key )
+    {
+        // access ordered, so this counts as a use but not as a hit
+        return cache.get( key );
+    }
+
     public synchronized void clear()
     {
         resizeInternal( 0 );
@@ -140,6 +148,13 @@ public class LruCache<K,E> implements Cache<K,E>
         return cache.size();
     }
 
+    public synchronized List<K> keys( int max )
+    {
+        // iterated from least recently used
+        List<K> keys = new ArrayList<K>( cache.keySet() );
+        return keys.size() > max ? new ArrayList<K>( keys.subList( keys.size() - max, keys.size() ) ) : keys;
+    }
+
     public synchronized Set<K> keySet()
     {
         return cache.keySet();
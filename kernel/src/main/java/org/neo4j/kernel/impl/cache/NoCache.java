@@ -19,6 +19,8 @@
  */
 package org.neo4j.kernel.impl.cache;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
@@ -48,6 +50,11 @@ public class NoCache<K,V> implements Cache<K,V>
         return null;
     }
 
+    public V peek( K key )
+    {
+        return null;
+    }
+
     public V remove( K key )
     {
         return null;
@@ -70,6 +77,11 @@ public class NoCache<K,V> implements Cache<K,V>
         return 0;
     }
 
+    public List<K> keys( int max )
+    {
+        return Collections.emptyList();
+    }
+
     public void clear()
     {
     }
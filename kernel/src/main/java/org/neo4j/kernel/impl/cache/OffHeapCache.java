@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A two level cache keeping a bounded number of elements on the java heap and
+ * the elements evicted from there, encoded with an {@link ElementCodec}, in an
+ * {@link OffHeapStore}.
+ * <p>
+ * Looking up an element found only off heap decodes it into a new instance,
+ * moves it back to the heap level and removes it from the store, so there's
+ * only ever one live instance of a cached element. The size and max size of
+ * this cache as seen by {@link AdaptiveCacheManager} are those of the heap
+ * level.
+ * <p>
+ * Changes made to an element after it has been encoded are lost, so a user
+ * of this cache that modifies cached elements in place must check, once done,
+ * that the instance it modified is still the one cached, and otherwise remove
+ * the element from the cache.
+ */
+public class OffHeapCache<E> implements Cache<Long,E>
+{
+    private static final int INITIAL_ENCODE_BUFFER_SIZE = 4 * 1024;
+
+    private final String name;
+    private final ClockCache<Long,E> heap;
+    private final OffHeapStore store;
+    private final ElementCodec<E> codec;
+    private final HitCounter counter = new HitCounter();
+
+    private volatile boolean clearing;
+    // only used by the thread evicting from the heap level, see ClockCache
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate( INITIAL_ENCODE_BUFFER_SIZE );
+
+    /**
+     * @param name name of cache
+     * @param maxHeapSize maximum number of elements kept on the heap
+     * @param offHeapCapacity number of bytes of direct memory to use for
+     * elements evicted from the heap
+     * @param codec codec for elements kept off heap
+     * @param cacheManager adaptive cache manager or null if adaptive caching
+     * not needed
+     */
+    public OffHeapCache( String name, int maxHeapSize, long offHeapCapacity, ElementCodec<E> codec,
+            AdaptiveCacheManager cacheManager )
+    {
+        this.name = name;
+        this.codec = codec;
+        this.store = new OffHeapStore( offHeapCapacity, Runtime.getRuntime().availableProcessors() * 4 );
+        this.heap = new ClockCache<Long,E>( name, maxHeapSize, cacheManager )
+        {
+            @Override
+            protected void elementEvicted( Long key, E element )
+            {
+                if ( !clearing )
+                {
+                    moveOffHeap( key, element );
+                }
+            }
+        };
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void put( Long key, E element )
+    {
+        store.remove( key );
+        heap.put( key, element );
+    }
+
+    public void putAll( Map<Long,E> map )
+    {
+        for ( Map.Entry<Long,E> entry : map.entrySet() )
+        {
+            put( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    public E get( Long key )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException();
+        }
+        E element = heap.get( key );
+        if ( element == null )
+        {
+            ByteBuffer record = store.take( key );
+            if ( record != null )
+            {
+                element = codec.decode( key, record );
+                heap.put( key, element );
+            }
+        }
+        return counter.count( element );
+    }
+
+    public E peek( Long key )
+    {
+        // an element kept off heap has no live instance
+        return heap.peek( key );
+    }
+
+    public E remove( Long key )
+    {
+        E element = heap.remove( key );
+        store.remove( key );
+        return element;
+    }
+
+    public void clear()
+    {
+        clearing = true;
+        try
+        {
+            heap.clear();
+            store.clear();
+        }
+        finally
+        {
+            clearing = false;
+        }
+    }
+
+    public int size()
+    {
+        return heap.size();
+    }
+
+    public List<Long> keys( int max )
+    {
+        // the elements moved off heap are the less used ones
+        return heap.keys( max );
+    }
+
+    public int maxSize()
+    {
+        return heap.maxSize();
+    }
+
+    public void resize( int newMaxSize )
+    {
+        heap.resize( newMaxSize );
+    }
+
+    public boolean isAdaptive()
+    {
+        return heap.isAdaptive();
+    }
+
+    public void setAdaptiveStatus( boolean status )
+    {
+        heap.setAdaptiveStatus( status );
+    }
+
+    public void elementCleaned( E element )
+    {
+    }
+
+    @Override
+    public long hitCount()
+    {
+        return counter.getHitsCount();
+    }
+
+    @Override
+    public long missCount()
+    {
+        return counter.getMissCount();
+    }
+
+    /**
+     * @return the number of elements kept off heap.
+     */
+    public long offHeapSize()
+    {
+        return store.size();
+    }
+
+    /**
+     * @return the number of bytes of direct memory used for elements kept off
+     * heap, when full.
+     */
+    public long offHeapCapacity()
+    {
+        return store.capacity();
+    }
+
+    /**
+     * @return the number of elements evicted off heap that later were evicted
+     * from there too, to make room for others.
+     */
+    public long offHeapEvictionCount()
+    {
+        return store.evictionCount();
+    }
+
+    private void moveOffHeap( long key, E element )
+    {
+        // Encode while holding the element monitor, which is what modifications
+        // to cached elements synchronize on, so that the record is consistent
+        // and is in the store before any later modification is made.
+        synchronized ( element )
+        {
+            ByteBuffer record = encode( element );
+            if ( record == null || !store.put( key, record ) )
+            {
+                // too large, make sure no older record for it is left behind
+                store.remove( key );
+            }
+        }
+    }
+
+    private ByteBuffer encode( E element )
+    {
+        while ( true )
+        {
+            encodeBuffer.clear();
+            try
+            {
+                codec.encode( element, encodeBuffer );
+                encodeBuffer.flip();
+                return encodeBuffer;
+            }
+            catch ( BufferOverflowException e )
+            {
+                if ( encodeBuffer.capacity() >= store.maxRecordSize() )
+                {
+                    // doesn't fit, the element is simply evicted
+                    return null;
+                }
+                encodeBuffer = ByteBuffer.allocate( Math.min( encodeBuffer.capacity() * 2,
+                        store.maxRecordSize() ) );
+            }
+        }
+    }
+}
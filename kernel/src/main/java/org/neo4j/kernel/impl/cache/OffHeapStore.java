@@ -0,0 +1,400 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores byte records keyed by non-negative longs outside of the java heap.
+ * <p>
+ * The store is split into segments by key, each with its own monitor. A
+ * segment appends records to a circular log of direct {@link ByteBuffer}
+ * slabs and keeps a primitive open addressing index from key to position in
+ * the log. When the log wraps around, the records in the oldest slab are
+ * dropped from the index before the slab is written over, so the oldest
+ * records are evicted first. Records larger than a slab aren't stored.
+ * <p>
+ * Neither the records nor the index create any objects per record for the
+ * garbage collector to trace, which is the point of this store. The direct
+ * memory used is limited by <CODE>-XX:MaxDirectMemorySize</CODE>.
+ */
+public class OffHeapStore
+{
+    private static final int HEADER_SIZE = 8 + 4;
+    private static final int MIN_SLAB_SIZE = 64 * 1024;
+    private static final int MAX_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private final Segment[] segments;
+    private final long capacity;
+
+    /**
+     * @param capacity the maximum number of bytes to use for records.
+     * @param segmentCount number of independently locked segments.
+     */
+    public OffHeapStore( long capacity, int segmentCount )
+    {
+        if ( capacity < 1 || segmentCount < 1 )
+        {
+            throw new IllegalArgumentException( "capacity=" + capacity + ", segmentCount=" + segmentCount );
+        }
+        long segmentCapacity = Math.max( capacity / segmentCount, MIN_SLAB_SIZE );
+        int slabSize = (int) Math.max( MIN_SLAB_SIZE, Math.min( MAX_SLAB_SIZE, segmentCapacity / 8 ) );
+        int slabCount = (int) Math.max( 1, segmentCapacity / slabSize );
+        this.segments = new Segment[segmentCount];
+        for ( int i = 0; i < segmentCount; i++ )
+        {
+            segments[i] = new Segment( slabSize, slabCount );
+        }
+        this.capacity = (long) slabSize * slabCount * segmentCount;
+    }
+
+    /**
+     * Stores the remaining bytes of <CODE>record</CODE> for <CODE>key</CODE>,
+     * replacing any record previously stored for it.
+     *
+     * @return <CODE>false</CODE> if the record was too large to store.
+     */
+    public boolean put( long key, ByteBuffer record )
+    {
+        return segmentFor( key ).put( key, record );
+    }
+
+    /**
+     * Removes the record stored for <CODE>key</CODE> and returns a copy of
+     * it in a heap buffer, or <CODE>null</CODE> if there wasn't any.
+     */
+    public ByteBuffer take( long key )
+    {
+        return segmentFor( key ).take( key );
+    }
+
+    public boolean remove( long key )
+    {
+        return segmentFor( key ).remove( key );
+    }
+
+    public boolean containsKey( long key )
+    {
+        return segmentFor( key ).containsKey( key );
+    }
+
+    public void clear()
+    {
+        for ( Segment segment : segments )
+        {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return the number of records currently stored.
+     */
+    public long size()
+    {
+        long size = 0;
+        for ( Segment segment : segments )
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of bytes records can take up.
+     */
+    public long capacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return the number of records evicted to make room for new ones.
+     */
+    public long evictionCount()
+    {
+        long evictions = 0;
+        for ( Segment segment : segments )
+        {
+            evictions += segment.evictions();
+        }
+        return evictions;
+    }
+
+    /**
+     * @return the largest record this store will accept.
+     */
+    public int maxRecordSize()
+    {
+        return segments[0].slabSize - HEADER_SIZE;
+    }
+
+    private Segment segmentFor( long key )
+    {
+        if ( key < 0 )
+        {
+            throw new IllegalArgumentException( "Negative key " + key );
+        }
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return segments[(int) ( ( hash >>> 32 ) % segments.length )];
+    }
+
+    private static class Segment
+    {
+        private final int slabSize;
+        private final ByteBuffer[] slabs;
+        private final int[] slabFill;
+        private final LongLongIndex index = new LongLongIndex();
+        private long writePosition;
+        private long evictions;
+
+        Segment( int slabSize, int slabCount )
+        {
+            this.slabSize = slabSize;
+            this.slabs = new ByteBuffer[slabCount];
+            this.slabFill = new int[slabCount];
+        }
+
+        synchronized boolean put( long key, ByteBuffer record )
+        {
+            int length = record.remaining();
+            if ( length + HEADER_SIZE > slabSize )
+            {
+                index.remove( key );
+                return false;
+            }
+            int offset = (int) ( writePosition % slabSize );
+            if ( offset + HEADER_SIZE + length > slabSize )
+            {
+                writePosition += slabSize - offset;
+                offset = 0;
+            }
+            int slabIndex = (int) ( ( writePosition / slabSize ) % slabs.length );
+            if ( offset == 0 )
+            {
+                recycle( slabIndex );
+            }
+            ByteBuffer slab = slabs[slabIndex].duplicate();
+            slab.position( offset );
+            slab.putLong( key );
+            slab.putInt( length );
+            slab.put( record.duplicate() );
+            slabFill[slabIndex] = slab.position();
+            index.put( key, writePosition );
+            writePosition += HEADER_SIZE + length;
+            return true;
+        }
+
+        private void recycle( int slabIndex )
+        {
+            ByteBuffer slab = slabs[slabIndex];
+            if ( slab == null )
+            {
+                slabs[slabIndex] = ByteBuffer.allocateDirect( slabSize );
+                return;
+            }
+            long slabStart = writePosition - (long) slabs.length * slabSize;
+            int offset = 0;
+            while ( offset < slabFill[slabIndex] )
+            {
+                long key = slab.getLong( offset );
+                int length = slab.getInt( offset + 8 );
+                if ( index.get( key ) == slabStart + offset )
+                {
+                    index.remove( key );
+                    evictions++;
+                }
+                offset += HEADER_SIZE + length;
+            }
+            slabFill[slabIndex] = 0;
+        }
+
+        synchronized ByteBuffer take( long key )
+        {
+            long position = index.remove( key );
+            if ( position == LongLongIndex.NO_VALUE )
+            {
+                return null;
+            }
+            ByteBuffer slab = slabs[(int) ( ( position / slabSize ) % slabs.length )];
+            int offset = (int) ( position % slabSize );
+            assert slab.getLong( offset ) == key;
+            int length = slab.getInt( offset + 8 );
+            ByteBuffer source = slab.duplicate();
+            source.limit( offset + HEADER_SIZE + length );
+            source.position( offset + HEADER_SIZE );
+            ByteBuffer copy = ByteBuffer.allocate( length );
+            copy.put( source );
+            copy.flip();
+            return copy;
+        }
+
+        synchronized boolean remove( long key )
+        {
+            return index.remove( key ) != LongLongIndex.NO_VALUE;
+        }
+
+        synchronized boolean containsKey( long key )
+        {
+            return index.get( key ) != LongLongIndex.NO_VALUE;
+        }
+
+        synchronized void clear()
+        {
+            index.clear();
+            Arrays.fill( slabFill, 0 );
+            // start over at a slab boundary, the slabs are kept for reuse
+            writePosition = 0;
+        }
+
+        synchronized long size()
+        {
+            return index.size();
+        }
+
+        synchronized long evictions()
+        {
+            return evictions;
+        }
+    }
+
+    /**
+     * Open addressing hash map from non-negative long keys to long values,
+     * using linear probing and backward shift deletion.
+     */
+    static class LongLongIndex
+    {
+        static final long NO_VALUE = -1;
+        private static final long FREE = -1;
+
+        private long[] keys;
+        private long[] values;
+        private int size;
+
+        LongLongIndex()
+        {
+            allocate( 16 );
+        }
+
+        private void allocate( int capacity )
+        {
+            keys = new long[capacity];
+            values = new long[capacity];
+            Arrays.fill( keys, FREE );
+        }
+
+        private int slot( long key )
+        {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) ( hash ^ ( hash >>> 32 ) ) & ( keys.length - 1 );
+        }
+
+        long get( long key )
+        {
+            for ( int i = slot( key ); keys[i] != FREE; i = ( i + 1 ) & ( keys.length - 1 ) )
+            {
+                if ( keys[i] == key )
+                {
+                    return values[i];
+                }
+            }
+            return NO_VALUE;
+        }
+
+        void put( long key, long value )
+        {
+            int i = slot( key );
+            for ( ; keys[i] != FREE; i = ( i + 1 ) & ( keys.length - 1 ) )
+            {
+                if ( keys[i] == key )
+                {
+                    values[i] = value;
+                    return;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            if ( ++size > keys.length * 3 / 4 )
+            {
+                rehash( keys.length * 2 );
+            }
+        }
+
+        long remove( long key )
+        {
+            int mask = keys.length - 1;
+            int i = slot( key );
+            for ( ; keys[i] != key; i = ( i + 1 ) & mask )
+            {
+                if ( keys[i] == FREE )
+                {
+                    return NO_VALUE;
+                }
+            }
+            long value = values[i];
+            size--;
+            // shift following entries of the probe sequence back into the gap
+            int gap = i;
+            for ( int j = ( i + 1 ) & mask; keys[j] != FREE; j = ( j + 1 ) & mask )
+            {
+                int home = slot( keys[j] );
+                boolean movable = gap <= j ? ( home <= gap || home > j ) : ( home <= gap && home > j );
+                if ( movable )
+                {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = FREE;
+            if ( size < keys.length / 8 && keys.length > 16 )
+            {
+                rehash( keys.length / 2 );
+            }
+            return value;
+        }
+
+        private void rehash( int capacity )
+        {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            allocate( capacity );
+            size = 0;
+            for ( int i = 0; i < oldKeys.length; i++ )
+            {
+                if ( oldKeys[i] != FREE )
+                {
+                    put( oldKeys[i], oldValues[i] );
+                }
+            }
+        }
+
+        void clear()
+        {
+            allocate( 16 );
+            size = 0;
+        }
+
+        int size()
+        {
+            return size;
+        }
+    }
+}
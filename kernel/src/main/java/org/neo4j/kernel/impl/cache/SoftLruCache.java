@@ -21,7 +21,10 @@ package org.neo4j.kernel.impl.cache;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -75,6 +78,12 @@ public class SoftLruCache<K,V> extends ReferenceCache<K,V>
         return counter.<V>count( null );
     }
 
+    public V peek( K key )
+    {
+        SoftReference<V> ref = cache.get( key );
+        return ref != null ? ref.get() : null;
+    }
+
     public V remove( K key )
     {
         SoftReference<V> ref = cache.remove( key );
@@ -101,6 +110,16 @@ public class SoftLruCache<K,V> extends ReferenceCache<K,V>
         return cache.size();
     }
 
+    public List<K> keys( int max )
+    {
+        List<K> keys = new ArrayList<K>( Math.min( max, cache.size() ) );
+        for ( Iterator<K> iterator = cache.keySet().iterator(); iterator.hasNext() && keys.size() < max; )
+        {
+            keys.add( iterator.next() );
+        }
+        return keys;
+    }
+
     public void clear()
     {
         cache.clear();
@@ -19,6 +19,9 @@
  */
 package org.neo4j.kernel.impl.cache;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -46,6 +49,11 @@ public class StrongReferenceCache<K,V> implements Cache<K,V>
         return counter.count( cache.get( key ) );
     }
 
+    public V peek( K key )
+    {
+        return cache.get( key );
+    }
+
     public String getName()
     {
         return name;
@@ -102,4 +110,14 @@ public class StrongReferenceCache<K,V> implements Cache<K,V>
     {
         return cache.size();
     }
+
+    public List<K> keys( int max )
+    {
+        List<K> keys = new ArrayList<K>( Math.min( max, cache.size() ) );
+        for ( Iterator<K> iterator = cache.keySet().iterator(); iterator.hasNext() && keys.size() < max; )
+        {
+            keys.add( iterator.next() );
+        }
+        return keys;
+    }
 }
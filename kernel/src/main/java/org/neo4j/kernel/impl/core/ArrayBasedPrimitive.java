@@ -65,6 +65,12 @@ abstract class ArrayBasedPrimitive extends Primitive
         this.properties = toPropertyArray( properties );
     }
 
+    // used when rebuilding a primitive kept in an off-heap cache, see OffHeapCodecs
+    void setPropertyArray( PropertyData[] properties )
+    {
+        this.properties = properties;
+    }
+
     @Override
     protected PropertyData[] allProperties()
     {
@@ -0,0 +1,473 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.helpers.DaemonThreadFactory;
+import org.neo4j.kernel.Lifecycle;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+import org.neo4j.kernel.impl.nioneo.store.WindowPoolStats;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Keeps a snapshot of the hot set of the database, i.e. the ids of the
+ * cached nodes and relationships and the regions of the store files that
+ * are memory mapped, in the store directory. The snapshot is written
+ * periodically and on shutdown. On startup the previous snapshot is
+ * preloaded in the background so that the database doesn't have to warm
+ * up its caches from the first requests it serves.
+ */
+public class CacheWarmup implements Lifecycle
+{
+    public interface Configuration
+    {
+        boolean cache_warmup(boolean def);
+
+        int cache_warmup_snapshot_interval(int def);
+    }
+
+    public static final String SNAPSHOT_FILE_NAME = "hotset.snapshot";
+    static final int DEFAULT_SNAPSHOT_INTERVAL = 600;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_IDS_PER_CACHE = 100000;
+    private static final int IDS_PER_TASK = 1000;
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+
+    private final Configuration config;
+    private final String storeDir;
+    private final FileSystemAbstraction fileSystem;
+    private final NodeManager nodeManager;
+    private final NeoStoreXaDataSource dataSource;
+    private final StringLogger msgLog;
+    private final boolean readOnly;
+
+    private ExecutorService warmupExecutor;
+    private ScheduledExecutorService snapshotExecutor;
+    private volatile boolean stopped;
+
+    public CacheWarmup( Configuration config, String storeDir, FileSystemAbstraction fileSystem,
+            NodeManager nodeManager, NeoStoreXaDataSource dataSource, StringLogger msgLog, boolean readOnly )
+    {
+        this.config = config;
+        this.storeDir = storeDir;
+        this.fileSystem = fileSystem;
+        this.nodeManager = nodeManager;
+        this.dataSource = dataSource;
+        this.msgLog = msgLog;
+        this.readOnly = readOnly;
+    }
+
+    @Override
+    public void init() throws Throwable
+    {
+    }
+
+    @Override
+    public void start() throws Throwable
+    {
+        if ( !config.cache_warmup( true ) )
+        {
+            return;
+        }
+        stopped = false;
+        Snapshot snapshot = readSnapshot();
+        if ( snapshot != null )
+        {
+            warmUp( snapshot );
+        }
+        int interval = config.cache_warmup_snapshot_interval( DEFAULT_SNAPSHOT_INTERVAL );
+        if ( !readOnly && interval > 0 )
+        {
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new DaemonThreadFactory( "Hot set snapshot writer" ) );
+            snapshotExecutor.scheduleWithFixedDelay( new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    writeSnapshot();
+                }
+            }, interval, interval, TimeUnit.SECONDS );
+        }
+    }
+
+    @Override
+    public void stop() throws Throwable
+    {
+        if ( !config.cache_warmup( true ) )
+        {
+            return;
+        }
+        stopped = true;
+        if ( warmupExecutor != null )
+        {
+            warmupExecutor.shutdownNow();
+            warmupExecutor.awaitTermination( 10, TimeUnit.SECONDS );
+            warmupExecutor = null;
+        }
+        if ( snapshotExecutor != null )
+        {
+            snapshotExecutor.shutdownNow();
+            snapshotExecutor.awaitTermination( 10, TimeUnit.SECONDS );
+            snapshotExecutor = null;
+        }
+        if ( !readOnly )
+        {
+            writeSnapshot();
+        }
+    }
+
+    @Override
+    public void shutdown() throws Throwable
+    {
+    }
+
+    synchronized void writeSnapshot()
+    {
+        String file = new File( storeDir, SNAPSHOT_FILE_NAME ).getPath();
+        String tempFile = file + ".tmp";
+        try
+        {
+            // opening an existing file doesn't truncate it
+            if ( fileSystem.fileExists( tempFile ) && !fileSystem.deleteFile( tempFile ) )
+            {
+                throw new IOException( "Unable to delete old " + tempFile );
+            }
+            DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+                    Channels.newOutputStream( fileSystem.create( tempFile ) ) ) );
+            try
+            {
+                out.writeInt( FORMAT_VERSION );
+                writeIds( out, nodeManager.getCachedNodeIds( MAX_IDS_PER_CACHE ) );
+                writeIds( out, nodeManager.getCachedRelationshipIds( MAX_IDS_PER_CACHE ) );
+                List<WindowPoolStats> stats = dataSource.getWindowPoolStats();
+                out.writeInt( stats.size() );
+                for ( WindowPoolStats stat : stats )
+                {
+                    out.writeUTF( new File( stat.getName() ).getName() );
+                    out.writeInt( stat.getWindowSize() );
+                    long[] regions = stat.getMappedRegions();
+                    out.writeInt( regions.length );
+                    for ( long region : regions )
+                    {
+                        out.writeLong( region );
+                    }
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            if ( fileSystem.fileExists( file ) && !fileSystem.deleteFile( file ) )
+            {
+                throw new IOException( "Unable to delete old " + file );
+            }
+            if ( !fileSystem.renameFile( tempFile, file ) )
+            {
+                throw new IOException( "Unable to rename " + tempFile + " to " + file );
+            }
+        }
+        catch ( IOException e )
+        {
+            msgLog.logMessage( "Unable to write hot set snapshot " + file, e );
+        }
+    }
+
+    private static void writeIds( DataOutputStream out, List<Long> ids ) throws IOException
+    {
+        out.writeInt( ids.size() );
+        for ( Long id : ids )
+        {
+            out.writeLong( id );
+        }
+    }
+
+    private Snapshot readSnapshot()
+    {
+        String file = new File( storeDir, SNAPSHOT_FILE_NAME ).getPath();
+        if ( !fileSystem.fileExists( file ) )
+        {
+            return null;
+        }
+        try
+        {
+            DataInputStream in = new DataInputStream( new BufferedInputStream(
+                    Channels.newInputStream( fileSystem.open( file, "r" ) ) ) );
+            try
+            {
+                if ( in.readInt() != FORMAT_VERSION )
+                {
+                    msgLog.logMessage( "Ignoring hot set snapshot " + file + " of unknown format" );
+                    return null;
+                }
+                Snapshot snapshot = new Snapshot( readIds( in ), readIds( in ) );
+                int storeCount = in.readInt();
+                for ( int i = 0; i < storeCount; i++ )
+                {
+                    String name = in.readUTF();
+                    int windowSize = in.readInt();
+                    long[] regions = new long[in.readInt()];
+                    for ( int j = 0; j < regions.length; j++ )
+                    {
+                        regions[j] = in.readLong();
+                    }
+                    if ( regions.length > 0 && windowSize > 0 )
+                    {
+                        snapshot.stores.add( new StoreRegions( new File( storeDir, name ).getPath(),
+                                windowSize, regions ) );
+                    }
+                }
+                return snapshot;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            msgLog.logMessage( "Unable to read hot set snapshot " + file + ", skipping cache warm-up", e );
+            return null;
+        }
+    }
+
+    private static long[] readIds( DataInputStream in ) throws IOException
+    {
+        long[] ids = new long[in.readInt()];
+        for ( int i = 0; i < ids.length; i++ )
+        {
+            ids[i] = in.readLong();
+        }
+        // ascending ids gives sequential reads from the stores
+        Arrays.sort( ids );
+        return ids;
+    }
+
+    private void warmUp( Snapshot snapshot )
+    {
+        Collection<Runnable> tasks = new ArrayList<Runnable>();
+        // store regions first, so that loading the records hits the OS page cache
+        for ( StoreRegions store : snapshot.stores )
+        {
+            tasks.add( store );
+        }
+        for ( int i = 0; i < snapshot.nodeIds.length; i += IDS_PER_TASK )
+        {
+            tasks.add( new LoadPrimitives( snapshot.nodeIds, i, true ) );
+        }
+        for ( int i = 0; i < snapshot.relationshipIds.length; i += IDS_PER_TASK )
+        {
+            tasks.add( new LoadPrimitives( snapshot.relationshipIds, i, false ) );
+        }
+        if ( tasks.isEmpty() )
+        {
+            return;
+        }
+
+        msgLog.logMessage( "Warming up caches from hot set snapshot: " + snapshot.nodeIds.length +
+                " nodes, " + snapshot.relationshipIds.length + " relationships, " +
+                snapshot.stores.size() + " store files" );
+        Progress progress = new Progress( tasks.size(), System.currentTimeMillis() );
+        int threads = Math.min( 4, Runtime.getRuntime().availableProcessors() );
+        warmupExecutor = Executors.newFixedThreadPool( threads, new DaemonThreadFactory( "Cache warm-up" ) );
+        for ( Runnable task : tasks )
+        {
+            warmupExecutor.execute( progress.track( task ) );
+        }
+        warmupExecutor.shutdown();
+    }
+
+    private static class Snapshot
+    {
+        private final long[] nodeIds;
+        private final long[] relationshipIds;
+        private final List<StoreRegions> stores = new ArrayList<StoreRegions>();
+
+        Snapshot( long[] nodeIds, long[] relationshipIds )
+        {
+            this.nodeIds = nodeIds;
+            this.relationshipIds = relationshipIds;
+        }
+    }
+
+    private class Progress
+    {
+        private final int total;
+        private final long startTime;
+        private final AtomicInteger done = new AtomicInteger();
+
+        Progress( int total, long startTime )
+        {
+            this.total = total;
+            this.startTime = startTime;
+        }
+
+        Runnable track( final Runnable task )
+        {
+            return new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    if ( stopped )
+                    {
+                        return;
+                    }
+                    try
+                    {
+                        task.run();
+                    }
+                    catch ( RuntimeException e )
+                    {
+                        if ( !stopped )
+                        {
+                            msgLog.logMessage( "Cache warm-up task failed", e );
+                        }
+                    }
+                    completed();
+                }
+            };
+        }
+
+        private void completed()
+        {
+            int count = done.incrementAndGet();
+            if ( count == total )
+            {
+                msgLog.logMessage( "Cache warm-up completed in " +
+                        (System.currentTimeMillis() - startTime) + "ms" );
+            }
+            else if ( count * 10 / total != (count - 1) * 10 / total )
+            {
+                msgLog.logMessage( "Cache warm-up " + (count * 100 / total) + "% done" );
+            }
+        }
+    }
+
+    private class StoreRegions implements Runnable
+    {
+        private final String file;
+        private final int windowSize;
+        private final long[] regions;
+
+        StoreRegions( String file, int windowSize, long[] regions )
+        {
+            this.file = file;
+            this.windowSize = windowSize;
+            this.regions = regions;
+        }
+
+        @Override
+        public void run()
+        {
+            if ( !fileSystem.fileExists( file ) )
+            {
+                return;
+            }
+            Arrays.sort( regions );
+            ByteBuffer buffer = ByteBuffer.allocate( READ_CHUNK_SIZE );
+            try
+            {
+                FileChannel channel = fileSystem.open( file, "r" );
+                try
+                {
+                    for ( long region : regions )
+                    {
+                        long end = Math.min( region + windowSize, channel.size() );
+                        for ( long position = region; position < end && !stopped; )
+                        {
+                            buffer.clear();
+                            int read = channel.read( buffer, position );
+                            if ( read <= 0 )
+                            {
+                                break;
+                            }
+                            position += read;
+                        }
+                    }
+                }
+                finally
+                {
+                    channel.close();
+                }
+            }
+            catch ( IOException e )
+            {
+                msgLog.logMessage( "Unable to warm up " + file, e );
+            }
+        }
+    }
+
+    private class LoadPrimitives implements Runnable
+    {
+        private final long[] ids;
+        private final int start;
+        private final boolean nodes;
+
+        LoadPrimitives( long[] ids, int start, boolean nodes )
+        {
+            this.ids = ids;
+            this.start = start;
+            this.nodes = nodes;
+        }
+
+        @Override
+        public void run()
+        {
+            int end = Math.min( start + IDS_PER_TASK, ids.length );
+            for ( int i = start; i < end && !stopped; i++ )
+            {
+                try
+                {
+                    PropertyContainer entity = nodes ? nodeManager.getNodeById( ids[i] ) :
+                            nodeManager.getRelationshipById( ids[i] );
+                    // loads the properties into the cached primitive
+                    entity.getPropertyKeys().iterator().hasNext();
+                }
+                catch ( NotFoundException e )
+                {
+                    // deleted since the snapshot was written
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.helpers.collection.IteratorUtil;
+
+/**
+ * The number of relationships of a node, as given by {@link HasDegree} for
+ * the nodes of the database and counted by iterating over the relationships
+ * of any other node.
+ */
+public class Degrees
+{
+    private Degrees()
+    {
+    }
+
+    /**
+     * @see HasDegree#getDegree()
+     */
+    public static int getDegree( Node node )
+    {
+        if ( node instanceof HasDegree )
+        {
+            return ((HasDegree) node).getDegree();
+        }
+        return IteratorUtil.count( node.getRelationships() );
+    }
+
+    /**
+     * @see HasDegree#getDegree(RelationshipType)
+     */
+    public static int getDegree( Node node, RelationshipType type )
+    {
+        if ( node instanceof HasDegree )
+        {
+            return ((HasDegree) node).getDegree( type );
+        }
+        return IteratorUtil.count( node.getRelationships( type ) );
+    }
+
+    /**
+     * @see HasDegree#getDegree(Direction)
+     */
+    public static int getDegree( Node node, Direction direction )
+    {
+        if ( node instanceof HasDegree )
+        {
+            return ((HasDegree) node).getDegree( direction );
+        }
+        return IteratorUtil.count( node.getRelationships( direction ) );
+    }
+
+    /**
+     * @see HasDegree#getDegree(RelationshipType, Direction)
+     */
+    public static int getDegree( Node node, RelationshipType type, Direction direction )
+    {
+        if ( node instanceof HasDegree )
+        {
+            return ((HasDegree) node).getDegree( type, direction );
+        }
+        return IteratorUtil.count( node.getRelationships( type, direction ) );
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.helpers.Pair;
+import org.neo4j.helpers.collection.PrefetchingIterator;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.util.RelIdArray;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+import org.neo4j.kernel.impl.util.RelIdIterator;
+
+/**
+ * Iterates over the relationships of some types in one direction of a node
+ * with its relationships grouped, reading the chains of those types and that
+ * direction in batches instead of loading all relationships of the node.
+ * Relationships added in the current transaction follow those of the chains.
+ */
+class GroupedRelationshipIterator extends PrefetchingIterator<Relationship> implements Iterable<Relationship>
+{
+    private static final DirectionWrapper[] OUTGOING_CHAINS = new DirectionWrapper[] {
+            DirectionWrapper.OUTGOING, DirectionWrapper.BOTH };
+    private static final DirectionWrapper[] INCOMING_CHAINS = new DirectionWrapper[] {
+            DirectionWrapper.INCOMING, DirectionWrapper.BOTH };
+    private static final DirectionWrapper[] ALL_CHAINS = new DirectionWrapper[] {
+            DirectionWrapper.OUTGOING, DirectionWrapper.INCOMING, DirectionWrapper.BOTH };
+
+    private final NodeImpl fromNode;
+    private final NodeManager nodeManager;
+    private final DirectionWrapper direction;
+    private final RelationshipType[] types;
+    // chains of a relationship group to read, loops being in the BOTH chain
+    private final DirectionWrapper[] chains;
+    private final boolean hasModifications;
+
+    private int typeIndex = -1;
+    private Integer typeId;
+    private Collection<Long> removed;
+    private int chainIndex;
+    private long position = Record.NO_NEXT_RELATIONSHIP.intValue();
+    private Iterator<Long> batch = Collections.<Long>emptyList().iterator();
+
+    GroupedRelationshipIterator( NodeImpl fromNode, DirectionWrapper direction, NodeManager nodeManager,
+            RelationshipType[] types )
+    {
+        this.fromNode = fromNode;
+        this.direction = direction;
+        this.nodeManager = nodeManager;
+        this.types = types;
+        this.hasModifications = nodeManager.getLockReleaser().hasRelationshipModifications( fromNode );
+        switch ( direction )
+        {
+        case OUTGOING:
+            chains = OUTGOING_CHAINS;
+            break;
+        case INCOMING:
+            chains = INCOMING_CHAINS;
+            break;
+        default:
+            chains = ALL_CHAINS;
+        }
+    }
+
+    public Iterator<Relationship> iterator()
+    {
+        return this;
+    }
+
+    @Override
+    protected Relationship fetchNextOrNull()
+    {
+        while ( true )
+        {
+            if ( batch.hasNext() )
+            {
+                long id = batch.next();
+                if ( removed == null || !removed.contains( id ) )
+                {
+                    return nodeManager.newRelationshipProxyById( id );
+                }
+            }
+            else if ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+            {
+                Pair<List<Long>,Long> rels = nodeManager.getMoreRelationships( fromNode, position, typeId,
+                        chains[chainIndex] );
+                batch = rels.first().iterator();
+                // an unchanged position means the rest of the chain can't be read
+                position = rels.first().isEmpty() && rels.other() == position ?
+                        Record.NO_NEXT_RELATIONSHIP.intValue() : rels.other();
+            }
+            else if ( !nextChain() )
+            {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Moves on to the next chain to read, or to the relationships added in
+     * this transaction once all chains of a type have been read.
+     */
+    private boolean nextChain()
+    {
+        while ( true )
+        {
+            chainIndex++;
+            if ( typeIndex >= 0 && chainIndex < chains.length )
+            {
+                if ( typeId != null )
+                {
+                    position = nodeManager.getRelationshipChainPosition( fromNode, typeId, chains[chainIndex] );
+                    return true;
+                }
+            }
+            else if ( typeIndex >= 0 && chainIndex == chains.length )
+            {
+                batch = addedInTransaction( types[typeIndex] );
+                return true;
+            }
+            else if ( ++typeIndex < types.length )
+            {
+                typeId = nodeManager.getRelationshipTypeIdIfExists( types[typeIndex] );
+                removed = hasModifications ?
+                        nodeManager.getCowRelationshipRemoveMap( fromNode, types[typeIndex].name() ) : null;
+                chainIndex = -1;
+            }
+            else
+            {
+                return false;
+            }
+        }
+    }
+
+    private Iterator<Long> addedInTransaction( RelationshipType type )
+    {
+        RelIdArray added = hasModifications ? nodeManager.getCowRelationshipAddMap( fromNode, type.name() ) : null;
+        if ( added == null )
+        {
+            return Collections.<Long>emptyList().iterator();
+        }
+        List<Long> ids = new ArrayList<Long>();
+        for ( RelIdIterator iterator = added.iterator( direction ); iterator.hasNext(); )
+        {
+            ids.add( iterator.next() );
+        }
+        return ids.iterator();
+    }
+}
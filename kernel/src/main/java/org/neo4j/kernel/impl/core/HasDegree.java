@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * Implemented by {@link Node nodes} that can tell their number of
+ * relationships without iterating over them. Use {@link Degrees} to get the
+ * degree of any node.
+ */
+public interface HasDegree
+{
+    /**
+     * Returns the number of relationships attached to this node, a loop
+     * counting once. This is the number of relationships
+     * {@link Node#getRelationships()} would return, but for nodes with many
+     * relationships it is read from counters kept by the database instead of
+     * by iterating over them.
+     *
+     * @return the number of relationships attached to this node
+     */
+    public int getDegree();
+
+    /**
+     * Returns the number of relationships of the given type attached to this
+     * node, regardless of direction.
+     *
+     * @param type the type of relationships to count
+     * @return the number of relationships of the given type attached to this
+     *         node
+     */
+    public int getDegree( RelationshipType type );
+
+    /**
+     * Returns the number of relationships attached to this node in the given
+     * direction, a loop counting for both directions.
+     *
+     * @param direction the direction of relationships to count
+     * @return the number of relationships attached to this node in the given
+     *         direction
+     */
+    public int getDegree( Direction direction );
+
+    /**
+     * Returns the number of relationships of the given type attached to this
+     * node in the given direction, a loop counting for both directions.
+     *
+     * @param type the type of relationships to count
+     * @param direction the direction of relationships to count
+     * @return the number of relationships of the given type attached to this
+     *         node in the given direction
+     */
+    public int getDegree( RelationshipType type, Direction direction );
+}
@@ -149,6 +149,7 @@ public class LockReleaser
 
         private long firstRel = Record.NO_NEXT_RELATIONSHIP.intValue();
         private long firstProp = Record.NO_NEXT_PROPERTY.intValue();
+        private boolean dense;
 
         private ArrayMap<String,RelIdArray> relationshipAddMap;
         private ArrayMap<String,Collection<Long>> relationshipRemoveMap;
@@ -351,11 +352,12 @@ public class LockReleaser
         return getPrimitiveElement( true ).nodeElement( node.getId(), true ).getRelationshipRemoveMap( type, true );
     }
 
-    public void setFirstIds( long nodeId, long firstRel, long firstProp )
+    public void setFirstIds( long nodeId, long firstRel, long firstProp, boolean dense )
     {
         CowNodeElement nodeElement = getPrimitiveElement( true ).nodeElement( nodeId, true );
         nodeElement.firstRel = firstRel;
         nodeElement.firstProp = firstProp;
+        nodeElement.dense = dense;
     }
 
     public ArrayMap<String,RelIdArray> getCowRelationshipAddMap( NodeImpl node )
@@ -426,6 +428,21 @@ public class LockReleaser
         }
     }
 
+    /*
+     * A node that got its relationships grouped has its chain position point
+     * into a chain that no longer exists. For a node with groups, added
+     * relationships may be in chains not loaded yet and would then be loaded
+     * a second time. Either way it is reloaded.
+     */
+    private boolean relationshipsRegrouped( NodeImpl node, CowNodeElement element )
+    {
+        if ( element.relationshipAddMap == null && element.relationshipRemoveMap == null )
+        {
+            return false;
+        }
+        return element.dense != node.isDense() || ( node.isDense() && node.hasMoreRelationshipsToLoad() );
+    }
+
     void releaseCows( Transaction cowTxId, int param )
     {
         PrimitiveElement element = cowMap.remove( cowTxId );
@@ -442,12 +459,17 @@ public class LockReleaser
             if ( node != null )
             {
                 CowNodeElement nodeElement = entry.getValue();
-                if ( param == Status.STATUS_COMMITTED )
+                if ( param == Status.STATUS_COMMITTED && relationshipsRegrouped( node, nodeElement ) )
+                {
+                    nodeManager.removeNodeFromCache( node.getId() );
+                }
+                else if ( param == Status.STATUS_COMMITTED )
                 {
                     node.commitRelationshipMaps( nodeElement.relationshipAddMap,
                         nodeElement.relationshipRemoveMap, nodeElement.firstRel );
                     node.commitPropertyMaps( nodeElement.propertyAddMap,
                         nodeElement.propertyRemoveMap, nodeElement.firstProp );
+                    nodeManager.committedToCachedNode( node );
                 }
                 else if ( param != Status.STATUS_ROLLEDBACK )
                 {
@@ -469,6 +491,7 @@ public class LockReleaser
                 {
                     rel.commitPropertyMaps( relElement.propertyAddMap,
                         relElement.propertyRemoveMap, Record.NO_NEXT_PROPERTY.intValue() );
+                    nodeManager.committedToCachedRelationship( rel );
                 }
                 else if ( param != Status.STATUS_ROLLEDBACK )
                 {
@@ -54,6 +54,10 @@ public class NodeImpl extends ArrayBasedPrimitive
 
     private long relChainPosition = Record.NO_NEXT_RELATIONSHIP.intValue();
     private final long id;
+    // relationships grouped by type and direction in the store
+    private boolean dense;
+    // properties looked up one by one before the full chain has been loaded
+    private volatile PropertyData[] lazyProperties;
 
     NodeImpl( long id, long firstRel, long firstProp )
     {
@@ -117,6 +121,98 @@ public class NodeImpl extends ArrayBasedPrimitive
         return nodeManager.loadProperties( this, light );
     }
 
+    /**
+     * Until the full property chain has been loaded a property is looked up
+     * on its own in the store, skipping the other blocks in the chain, and
+     * kept in a small array next to the (not yet loaded) property array. If
+     * the property isn't there the whole chain has been walked anyway, so
+     * then it is all loaded and cached to make later misses cheap.
+     */
+    @Override
+    protected PropertyData getCommittedProperty( NodeManager nodeManager, int keyId )
+    {
+        if ( allProperties() == null )
+        {
+            PropertyData property = getLazyProperty( keyId );
+            if ( property != null )
+            {
+                return property;
+            }
+            synchronized ( this )
+            {
+                if ( allProperties() == null )
+                {
+                    property = getLazyProperty( keyId );
+                    if ( property == null )
+                    {
+                        property = nodeManager.loadProperty( this, keyId );
+                    }
+                    if ( property != null )
+                    {
+                        addLazyProperty( property );
+                        return property;
+                    }
+                }
+            }
+        }
+        return super.getCommittedProperty( nodeManager, keyId );
+    }
+
+    private PropertyData getLazyProperty( int keyId )
+    {
+        PropertyData[] properties = lazyProperties;
+        if ( properties != null )
+        {
+            for ( PropertyData property : properties )
+            {
+                if ( property.getIndex() == keyId )
+                {
+                    return property;
+                }
+            }
+        }
+        return null;
+    }
+
+    // must be called holding the monitor of this node
+    private void addLazyProperty( PropertyData property )
+    {
+        PropertyData[] properties = lazyProperties;
+        if ( properties == null )
+        {
+            lazyProperties = new PropertyData[] { property };
+        }
+        else
+        {
+            PropertyData[] newProperties = new PropertyData[properties.length + 1];
+            System.arraycopy( properties, 0, newProperties, 0, properties.length );
+            newProperties[properties.length] = property;
+            lazyProperties = newProperties;
+        }
+    }
+
+    @Override
+    public void setProperties( ArrayMap<Integer, PropertyData> properties )
+    {
+        super.setProperties( properties );
+        lazyProperties = null;
+    }
+
+    @Override
+    protected void commitPropertyMaps( ArrayMap<Integer,PropertyData> cowPropertyAddMap,
+            ArrayMap<Integer,PropertyData> cowPropertyRemoveMap, long firstProp )
+    {
+        synchronized ( this )
+        {
+            if ( lazyProperties != null && ( cowPropertyAddMap != null || cowPropertyRemoveMap != null ) )
+            {
+                // simpler to look them up again than to patch them
+                lazyProperties = null;
+            }
+        }
+        super.commitPropertyMaps( cowPropertyAddMap, cowPropertyRemoveMap, firstProp );
+    }
+
     List<RelIdIterator> getAllRelationships( NodeManager nodeManager, DirectionWrapper direction )
     {
         ensureRelationshipMapNotNull( nodeManager );
@@ -208,6 +304,10 @@ public class NodeImpl extends ArrayBasedPrimitive
     public Iterable<Relationship> getRelationships( NodeManager nodeManager, RelationshipType type )
     {
         RelationshipType types[] = new RelationshipType[] { type };
+        if ( readsRelationshipGroups() )
+        {
+            return new GroupedRelationshipIterator( this, DirectionWrapper.BOTH, nodeManager, types );
+        }
         return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, DirectionWrapper.BOTH, types ),
             this, DirectionWrapper.BOTH, nodeManager, types, !hasMoreRelationshipsToLoad() );
     }
@@ -215,6 +315,10 @@ public class NodeImpl extends ArrayBasedPrimitive
     public Iterable<Relationship> getRelationships( NodeManager nodeManager,
             RelationshipType... types )
     {
+        if ( readsRelationshipGroups() )
+        {
+            return new GroupedRelationshipIterator( this, DirectionWrapper.BOTH, nodeManager, types );
+        }
         return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, DirectionWrapper.BOTH, types ),
             this, DirectionWrapper.BOTH, nodeManager, types, !hasMoreRelationshipsToLoad() );
     }
@@ -223,6 +327,10 @@ public class NodeImpl extends ArrayBasedPrimitive
             Direction direction, RelationshipType... types )
     {
         DirectionWrapper dir = RelIdArray.wrap( direction );
+        if ( readsRelationshipGroups() )
+        {
+            return new GroupedRelationshipIterator( this, dir, nodeManager, types );
+        }
         return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, dir, types ),
             this, dir, nodeManager, types, !hasMoreRelationshipsToLoad() );
     }
@@ -232,7 +340,9 @@ public class NodeImpl extends ArrayBasedPrimitive
     {
         DirectionWrapper direction = RelIdArray.wrap( dir );
         RelationshipType types[] = new RelationshipType[] { type };
-        Iterator<Relationship> rels = new IntArrayIterator( getAllRelationshipsOfType( nodeManager,
+        Iterator<Relationship> rels = readsRelationshipGroups() ?
+                new GroupedRelationshipIterator( this, direction, nodeManager, types ) :
+                new IntArrayIterator( getAllRelationshipsOfType( nodeManager,
                 direction, types ), this, direction, nodeManager, types, !hasMoreRelationshipsToLoad() );
         if ( !rels.hasNext() )
         {
@@ -252,6 +362,10 @@ public class NodeImpl extends ArrayBasedPrimitive
     {
         RelationshipType types[] = new RelationshipType[] { type };
         DirectionWrapper direction = RelIdArray.wrap( dir );
+        if ( readsRelationshipGroups() )
+        {
+            return new GroupedRelationshipIterator( this, direction, nodeManager, types );
+        }
         return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, direction, types ),
             this, direction, nodeManager, types, !hasMoreRelationshipsToLoad() );
     }
@@ -400,6 +514,25 @@ public class NodeImpl extends ArrayBasedPrimitive
         // nodeManager.putAllInRelCache( pair.other() );
     }
 
+    /*
+     * Relationships of some types of a dense node are read from the chains of
+     * those types, unless all relationships of the node are loaded already.
+     */
+    private boolean readsRelationshipGroups()
+    {
+        return dense && ( relationships == null || hasMoreRelationshipsToLoad() );
+    }
+
+    boolean isDense()
+    {
+        return dense;
+    }
+
+    void setDense( boolean dense )
+    {
+        this.dense = dense;
+    }
+
     boolean hasMoreRelationshipsToLoad()
     {
         return getRelChainPosition() != Record.NO_NEXT_RELATIONSHIP.intValue();
@@ -549,6 +682,64 @@ public class NodeImpl extends ArrayBasedPrimitive
         return getRelationships( nodeManager, type, dir ).iterator().hasNext();
     }
 
+    public int getDegree( NodeManager nodeManager, Direction dir )
+    {
+        DirectionWrapper direction = RelIdArray.wrap( dir );
+        if ( dense )
+        {
+            int count = nodeManager.getRelationshipCount( this, -1, direction );
+            if ( count != -1 )
+            {
+                return count;
+            }
+        }
+        loadAllRelationships( nodeManager );
+        return count( getAllRelationships( nodeManager, direction ) );
+    }
+
+    public int getDegree( NodeManager nodeManager, RelationshipType type, Direction dir )
+    {
+        DirectionWrapper direction = RelIdArray.wrap( dir );
+        if ( dense )
+        {
+            Integer typeId = nodeManager.getRelationshipTypeIdIfExists( type );
+            if ( typeId == null )
+            {
+                return 0;
+            }
+            int count = nodeManager.getRelationshipCount( this, typeId, direction );
+            if ( count != -1 )
+            {
+                return count;
+            }
+        }
+        loadAllRelationships( nodeManager );
+        return count( getAllRelationshipsOfType( nodeManager, direction, type ) );
+    }
+
+    private void loadAllRelationships( NodeManager nodeManager )
+    {
+        ensureRelationshipMapNotNull( nodeManager );
+        while ( getMoreRelationships( nodeManager ) )
+        {
+            // each round loads another batch of the chain
+        }
+    }
+
+    private static int count( List<RelIdIterator> iterators )
+    {
+        int count = 0;
+        for ( RelIdIterator iterator : iterators )
+        {
+            while ( iterator.hasNext() )
+            {
+                iterator.next();
+                count++;
+            }
+        }
+        return count;
+    }
+
     protected void commitRelationshipMaps(
         ArrayMap<String,RelIdArray> cowRelationshipAddMap,
         ArrayMap<String,Collection<Long>> cowRelationshipRemoveMap, long firstRel )
@@ -615,6 +806,13 @@ public class NodeImpl extends ArrayBasedPrimitive
         }
     }
 
+    // used when rebuilding a node kept in an off-heap cache, see OffHeapCodecs
+    void setLoadedRelationships( RelIdArray[] relationships, long relChainPosition )
+    {
+        this.relChainPosition = relChainPosition;
+        this.relationships = relationships;
+    }
+
     RelIdArray getRelationshipIds( String type )
     {
         return getRelIdArray( type );
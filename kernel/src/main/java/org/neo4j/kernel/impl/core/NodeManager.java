@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.core;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -32,6 +33,7 @@ import java.util.logging.Logger;
 
 import javax.transaction.TransactionManager;
 
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.NotFoundException;
@@ -47,8 +49,10 @@ import org.neo4j.kernel.Lifecycle;
 import org.neo4j.kernel.PropertyTracker;
 import org.neo4j.kernel.impl.cache.AdaptiveCacheManager;
 import org.neo4j.kernel.impl.cache.Cache;
+import org.neo4j.kernel.impl.cache.ClockCache;
 import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.cache.NoCache;
+import org.neo4j.kernel.impl.cache.OffHeapCache;
 import org.neo4j.kernel.impl.cache.SoftLruCache;
 import org.neo4j.kernel.impl.cache.StrongReferenceCache;
 import org.neo4j.kernel.impl.cache.WeakLruCache;
@@ -81,6 +85,10 @@ public class NodeManager
         int max_node_cache_size(int def);
 
         int max_relationship_cache_size(int def);
+
+        String node_cache_offheap_size(String def);
+
+        String relationship_cache_offheap_size(String def);
     }
     
     private static Logger log = Logger.getLogger( NodeManager.class.getName() );
@@ -137,8 +145,8 @@ public class NodeManager
         this.relTypeHolder = relationshipTypeHolder;
 
         this.cacheType = cacheType;
-        this.nodeCache = cacheType.node( cacheManager );
-        this.relCache = cacheType.relationship( cacheManager );
+        this.nodeCache = cacheType.node( cacheManager, config );
+        this.relCache = cacheType.relationship( cacheManager, config );
         for ( int i = 0; i < loadLocks.length; i++ )
         {
             loadLocks[i] = new ReentrantLock();
@@ -217,7 +225,7 @@ public class NodeManager
 
     public Node createNode()
     {
-        long id = idGenerator.nextId( Node.class );
+        long id = persistenceManager.nextId( Node.class );
         NodeImpl node = new NodeImpl( id, Record.NO_NEXT_RELATIONSHIP.intValue(), Record.NO_NEXT_PROPERTY.intValue(), true );
         NodeProxy proxy = new NodeProxy( id, nodeLookup );
         acquireLock( proxy, LockType.WRITE );
@@ -266,7 +274,7 @@ public class NodeManager
             throw new NotFoundException( "Second node[" + endNode.getId()
                 + "] deleted" );
         }
-        long id = idGenerator.nextId( Relationship.class );
+        long id = persistenceManager.nextId( Relationship.class );
         int typeId = getRelationshipTypeIdFor( type );
         RelationshipImpl rel = newRelationshipImpl( id, startNodeId, endNodeId, type, typeId, true );
         boolean firstNodeTaken = false;
@@ -380,6 +388,7 @@ public class NodeManager
             NodeRecord record = persistenceManager.loadLightNode( nodeId );
             if ( record == null ) return null;
             node = new NodeImpl( nodeId, record.getCommittedNextRel(), record.getCommittedNextProp() );
+            node.setDense( record.isDense() );
             nodeCache.put( nodeId, node );
             return new NodeProxy( nodeId, nodeLookup );
         }
@@ -453,6 +462,7 @@ public class NodeManager
             NodeRecord record = persistenceManager.loadLightNode( nodeId );
             if ( record == null ) return null;
             node = new NodeImpl( nodeId, record.getCommittedNextRel(), record.getCommittedNextProp() );
+            node.setDense( record.isDense() );
             nodeCache.put( nodeId, node );
             return node;
         }
@@ -653,6 +663,115 @@ public class NodeManager
         return Triplet.of( newRelationshipMap, relsMap, rels.other() );
     }
 
+    long getRelationshipChainPosition( NodeImpl node, int typeId, DirectionWrapper direction )
+    {
+        return persistenceManager.getRelationshipChainPosition( node.getId(), typeId, direction );
+    }
+
+    /**
+     * Reads the next batch of relationships of one type and direction of a
+     * node, without loading them into the node.
+     *
+     * @return the ids read, and the chain position after them.
+     */
+    Pair<List<Long>,Long> getMoreRelationships( NodeImpl node, long position, int typeId,
+            DirectionWrapper direction )
+    {
+        Pair<Iterable<RelationshipRecord>, Long> rels =
+            persistenceManager.getMoreRelationships( node.getId(), position, typeId, direction );
+        List<Long> ids = new ArrayList<Long>();
+        for ( RelationshipRecord rel : rels.first() )
+        {
+            long relId = rel.getId();
+            if ( relCache.get( relId ) == null )
+            {
+                RelationshipType type = getRelationshipTypeById( rel.getType() );
+                relCache.put( relId, newRelationshipImpl( relId, rel.getFirstNode(), rel.getSecondNode(), type,
+                        rel.getType(), false ) );
+            }
+            ids.add( relId );
+        }
+        return Pair.of( ids, rels.other() );
+    }
+
+    /**
+     * @return the number of relationships of <CODE>node</CODE> of the given
+     *         type, or any type if <CODE>typeId</CODE> is negative, as kept
+     *         with its relationship groups, or <CODE>-1</CODE> if the node
+     *         has none.
+     */
+    int getRelationshipCount( NodeImpl node, int typeId, DirectionWrapper direction )
+    {
+        return persistenceManager.getRelationshipCount( node.getId(), typeId, direction );
+    }
+
+    /**
+     * Counts the relationships of a node per type and direction as they are
+     * in the store, without loading the node or its relationships into the
+     * cache. Changes of transactions not yet committed aren't seen, which
+     * makes this fit for sampling the graph in the background.
+     *
+     * @return the number of relationships per type name and direction, loops
+     *         counting for both directions, or <CODE>null</CODE> if there is
+     *         no node with the id.
+     */
+    public Map<Pair<String,Direction>,Integer> getStoredDegrees( long nodeId )
+    {
+        NodeRecord node = persistenceManager.loadLightNode( nodeId );
+        if ( node == null )
+        {
+            return null;
+        }
+        Map<Pair<String,Direction>,Integer> degrees = new HashMap<Pair<String,Direction>,Integer>();
+        if ( node.isDense() )
+        {
+            for ( RelationshipType type : relTypeHolder.getRelationshipTypes() )
+            {
+                int typeId = relTypeHolder.getIdFor( type.name() );
+                addDegree( degrees, type.name(), Direction.OUTGOING,
+                        persistenceManager.getRelationshipCount( nodeId, typeId, DirectionWrapper.OUTGOING ) );
+                addDegree( degrees, type.name(), Direction.INCOMING,
+                        persistenceManager.getRelationshipCount( nodeId, typeId, DirectionWrapper.INCOMING ) );
+            }
+            return degrees;
+        }
+        long position = node.getNextRel();
+        while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> rels =
+                persistenceManager.getMoreRelationships( nodeId, position );
+            for ( Map.Entry<DirectionWrapper, Iterable<RelationshipRecord>> chain : rels.first().entrySet() )
+            {
+                for ( RelationshipRecord rel : chain.getValue() )
+                {
+                    String type = getRelationshipTypeById( rel.getType() ).name();
+                    if ( chain.getKey() != DirectionWrapper.INCOMING )
+                    {
+                        addDegree( degrees, type, Direction.OUTGOING, 1 );
+                    }
+                    if ( chain.getKey() != DirectionWrapper.OUTGOING )
+                    {
+                        addDegree( degrees, type, Direction.INCOMING, 1 );
+                    }
+                }
+            }
+            position = rels.other();
+        }
+        return degrees;
+    }
+
+    private static void addDegree( Map<Pair<String,Direction>,Integer> degrees, String type,
+            Direction direction, int count )
+    {
+        if ( count <= 0 )
+        {
+            return;
+        }
+        Pair<String,Direction> key = Pair.of( type, direction );
+        Integer soFar = degrees.get( key );
+        degrees.put( key, soFar == null ? count : soFar + count );
+    }
+
     private void receiveRelationships(
             Iterable<RelationshipRecord> rels, ArrayMap<String, RelIdArray> newRelationshipMap,
             Map<Long, RelationshipImpl> relsMap, DirectionWrapper dir, boolean hasLoops )
@@ -700,6 +819,11 @@ public class NodeManager
         return persistenceManager.loadNodeProperties( node.getId(), light );
     }
 
+    PropertyData loadProperty( NodeImpl node, int keyId )
+    {
+        return persistenceManager.loadNodeProperty( node.getId(), keyId );
+    }
+
     ArrayMap<Integer,PropertyData> loadProperties(
             RelationshipImpl relationship, boolean light )
     {
@@ -924,6 +1048,12 @@ public class NodeManager
         return relTypeHolder.getIdFor( type );
     }
 
+    // null if no relationship of the type has been created
+    Integer getRelationshipTypeIdIfExists( RelationshipType type )
+    {
+        return relTypeHolder.getIdFor( type.name() );
+    }
+
     void addRawRelationshipTypes( NameData[] relTypes )
     {
         relTypeHolder.addRawRelationshipTypes( relTypes );
@@ -1090,6 +1220,40 @@ public class NodeManager
         return relCache.get( nodeId );
     }
 
+    List<Long> getCachedNodeIds( int max )
+    {
+        return nodeCache.keys( max );
+    }
+
+    List<Long> getCachedRelationshipIds( int max )
+    {
+        return relCache.keys( max );
+    }
+
+    /**
+     * Called after committed changes have been applied to a cached node. If
+     * the cache has evicted the node and rebuilt it from a copy meanwhile the
+     * changes may be missing from the cached instance, which is then removed.
+     */
+    void committedToCachedNode( NodeImpl node )
+    {
+        if ( cacheType.rebuildsEvicted() && nodeCache.peek( node.getId() ) != node )
+        {
+            nodeCache.remove( node.getId() );
+        }
+    }
+
+    /**
+     * Same as {@link #committedToCachedNode(NodeImpl)}, for relationships.
+     */
+    void committedToCachedRelationship( RelationshipImpl relationship )
+    {
+        if ( cacheType.rebuildsEvicted() && relCache.peek( relationship.getId() ) != relationship )
+        {
+            relCache.remove( relationship.getId() );
+        }
+    }
+
     public ArrayMap<Integer,PropertyData> getCowPropertyRemoveMap(
         Primitive primitive )
     {
@@ -1175,13 +1339,13 @@ public class NodeManager
         weak( false, "weak reference cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Configuration config )
             {
                 return new WeakLruCache<Long,NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Configuration config )
             {
                 return new WeakLruCache<Long,RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
@@ -1189,13 +1353,13 @@ public class NodeManager
         soft( false, "soft reference cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Configuration config )
             {
                 return new SoftLruCache<Long,NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Configuration config )
             {
                 return new SoftLruCache<Long,RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
@@ -1203,28 +1367,66 @@ public class NodeManager
         old( true, "lru cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Configuration config )
             {
                 return new LruCache<Long,NodeImpl>( NODE_CACHE_NAME, 1500, cacheManager );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Configuration config )
             {
                 return new LruCache<Long,RelationshipImpl>(
                         RELATIONSHIP_CACHE_NAME, 3500, cacheManager );
             }
         },
+        clock( true, "concurrent clock (approximate lru) cache" )
+        {
+            @Override
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Configuration config )
+            {
+                return new ClockCache<Long,NodeImpl>( NODE_CACHE_NAME, 1500, cacheManager );
+            }
+
+            @Override
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Configuration config )
+            {
+                return new ClockCache<Long,RelationshipImpl>(
+                        RELATIONSHIP_CACHE_NAME, 3500, cacheManager );
+            }
+        },
+        offheap( true, "lru cache in front of an off-heap cache" )
+        {
+            @Override
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Configuration config )
+            {
+                return new OffHeapCache<NodeImpl>( NODE_CACHE_NAME, 1500,
+                        parseSize( config.node_cache_offheap_size( "128M" ) ), OffHeapCodecs.NODE, cacheManager );
+            }
+
+            @Override
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Configuration config )
+            {
+                return new OffHeapCache<RelationshipImpl>( RELATIONSHIP_CACHE_NAME, 3500,
+                        parseSize( config.relationship_cache_offheap_size( "128M" ) ), OffHeapCodecs.RELATIONSHIP,
+                        cacheManager );
+            }
+
+            @Override
+            boolean rebuildsEvicted()
+            {
+                return true;
+            }
+        },
         none( false, "no cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Configuration config )
             {
                 return new NoCache<Long, NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Configuration config )
             {
                 return new NoCache<Long, RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
@@ -1232,13 +1434,13 @@ public class NodeManager
         strong( false, "strong reference cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Configuration config )
             {
                 return new StrongReferenceCache<Long,NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Configuration config )
             {
                 return new StrongReferenceCache<Long,RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
@@ -1256,14 +1458,55 @@ public class NodeManager
             this.description = description;
         }
 
-        abstract Cache<Long,NodeImpl> node( AdaptiveCacheManager cacheManager );
+        abstract Cache<Long,NodeImpl> node( AdaptiveCacheManager cacheManager, Configuration config );
+
+        abstract Cache<Long,RelationshipImpl> relationship( AdaptiveCacheManager cacheManager,
+                Configuration config );
 
-        abstract Cache<Long,RelationshipImpl> relationship( AdaptiveCacheManager cacheManager );
+        /**
+         * Whether an element evicted from the cache can come back as a new
+         * instance rebuilt from a copy of it, so that changes made to the
+         * evicted instance after it was copied are lost.
+         */
+        boolean rebuildsEvicted()
+        {
+            return false;
+        }
 
         public String getDescription()
         {
             return this.description;
         }
+
+        private static long parseSize( String size )
+        {
+            String value = size.trim().toLowerCase();
+            long multiplier = 1;
+            if ( value.endsWith( "k" ) )
+            {
+                multiplier = 1024;
+            }
+            else if ( value.endsWith( "m" ) )
+            {
+                multiplier = 1024 * 1024;
+            }
+            else if ( value.endsWith( "g" ) )
+            {
+                multiplier = 1024 * 1024 * 1024;
+            }
+            if ( multiplier != 1 )
+            {
+                value = value.substring( 0, value.length() - 1 );
+            }
+            try
+            {
+                return Long.parseLong( value ) * multiplier;
+            }
+            catch ( NumberFormatException e )
+            {
+                throw new IllegalArgumentException( "Unable to parse size '" + size + "'", e );
+            }
+        }
     }
 
     public void addNodePropertyTracker(
@@ -32,7 +32,7 @@ import org.neo4j.graphdb.Traverser.Order;
 import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.traversal.OldTraverserWrapper;
 
-public class NodeProxy implements Node
+public class NodeProxy implements Node, HasDegree
 {
     public interface NodeLookup
     {
@@ -125,6 +125,26 @@ public class NodeProxy implements Node
         return nodeLookup.lookup(nodeId).getSingleRelationship( nodeLookup.getNodeManager(), type, dir );
     }
 
+    public int getDegree()
+    {
+        return nodeLookup.lookup( nodeId ).getDegree( nodeLookup.getNodeManager(), Direction.BOTH );
+    }
+
+    public int getDegree( RelationshipType type )
+    {
+        return nodeLookup.lookup( nodeId ).getDegree( nodeLookup.getNodeManager(), type, Direction.BOTH );
+    }
+
+    public int getDegree( Direction direction )
+    {
+        return nodeLookup.lookup( nodeId ).getDegree( nodeLookup.getNodeManager(), direction );
+    }
+
+    public int getDegree( RelationshipType type, Direction direction )
+    {
+        return nodeLookup.lookup( nodeId ).getDegree( nodeLookup.getNodeManager(), type, direction );
+    }
+
     public void setProperty( String key, Object value )
     {
         nodeLookup.lookup(nodeId, LockType.WRITE).setProperty( nodeLookup.getNodeManager(), this, key, value );
@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.nio.ByteBuffer;
+
+import org.neo4j.kernel.impl.cache.ElementCodec;
+import org.neo4j.kernel.impl.cache.OffHeapCache;
+import org.neo4j.kernel.impl.nioneo.store.PropertyData;
+import org.neo4j.kernel.impl.nioneo.store.PropertyDatas;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.util.RelIdArray;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+import org.neo4j.kernel.impl.util.RelIdArrayWithLoops;
+import org.neo4j.kernel.impl.util.RelIdIterator;
+
+/**
+ * Codecs for keeping nodes and relationships in an {@link OffHeapCache}.
+ * <p>
+ * What has been loaded of a node is kept: the relationship ids per type and
+ * direction together with the position in the relationship chain to continue
+ * loading from, and the properties. Property values other than primitives and
+ * strings are left out and will be loaded again when asked for, the same way
+ * as after loading the properties "light".
+ */
+class OffHeapCodecs
+{
+    private static final byte NOT_LOADED = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte BYTE = 2;
+    private static final byte SHORT = 3;
+    private static final byte CHAR = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte STRING = 9;
+
+    // loops first, so that the right kind of RelIdArray can be created up front
+    private static final DirectionWrapper[] DIRECTIONS = new DirectionWrapper[] {
+            DirectionWrapper.BOTH, DirectionWrapper.OUTGOING, DirectionWrapper.INCOMING };
+
+    private OffHeapCodecs()
+    {
+    }
+
+    static final ElementCodec<NodeImpl> NODE = new ElementCodec<NodeImpl>()
+    {
+        public void encode( NodeImpl node, ByteBuffer target )
+        {
+            target.put( node.isDense() ? (byte) 1 : (byte) 0 );
+            RelIdArray[] relationships = node.getRelationshipIds();
+            if ( relationships == null )
+            {
+                target.putInt( -1 );
+            }
+            else
+            {
+                target.putInt( relationships.length );
+                target.putLong( node.getRelChainPosition() );
+                for ( RelIdArray ids : relationships )
+                {
+                    encodeString( ids.getType(), target );
+                    for ( DirectionWrapper direction : DIRECTIONS )
+                    {
+                        encodeIds( ids.iteratorOfAddedDirection( direction ), target );
+                    }
+                }
+            }
+            encodeProperties( node.allProperties(), target );
+        }
+
+        public NodeImpl decode( long id, ByteBuffer source )
+        {
+            NodeImpl node = new NodeImpl( id, Record.NO_NEXT_RELATIONSHIP.intValue(),
+                    Record.NO_NEXT_PROPERTY.intValue() );
+            node.setDense( source.get() == 1 );
+            int typeCount = source.getInt();
+            if ( typeCount != -1 )
+            {
+                long relChainPosition = source.getLong();
+                RelIdArray[] relationships = new RelIdArray[typeCount];
+                for ( int i = 0; i < typeCount; i++ )
+                {
+                    String type = decodeString( source );
+                    RelIdArray ids = null;
+                    for ( DirectionWrapper direction : DIRECTIONS )
+                    {
+                        int count = source.getInt();
+                        if ( ids == null )
+                        {
+                            ids = count > 0 ? new RelIdArrayWithLoops( type ) : new RelIdArray( type );
+                        }
+                        for ( int c = 0; c < count; c++ )
+                        {
+                            ids.add( source.getLong(), direction );
+                        }
+                    }
+                    relationships[i] = relChainPosition == Record.NO_NEXT_RELATIONSHIP.intValue() ?
+                            ids.shrink() : ids;
+                }
+                node.setLoadedRelationships( relationships, relChainPosition );
+            }
+            node.setPropertyArray( decodeProperties( source ) );
+            return node;
+        }
+    };
+
+    static final ElementCodec<RelationshipImpl> RELATIONSHIP = new ElementCodec<RelationshipImpl>()
+    {
+        public void encode( RelationshipImpl relationship, ByteBuffer target )
+        {
+            target.putLong( relationship.getStartNodeId() );
+            target.putLong( relationship.getEndNodeId() );
+            target.putInt( relationship.getTypeId() );
+            encodeProperties( relationship.allProperties(), target );
+        }
+
+        public RelationshipImpl decode( long id, ByteBuffer source )
+        {
+            long startNodeId = source.getLong();
+            long endNodeId = source.getLong();
+            int typeId = source.getInt();
+            RelationshipImpl relationship = new RelationshipImpl( id, startNodeId, endNodeId, typeId, false );
+            relationship.setPropertyArray( decodeProperties( source ) );
+            return relationship;
+        }
+    };
+
+    private static void encodeIds( RelIdIterator ids, ByteBuffer target )
+    {
+        int countPosition = target.position();
+        target.putInt( 0 );
+        int count = 0;
+        while ( ids.hasNext() )
+        {
+            target.putLong( ids.next() );
+            count++;
+        }
+        target.putInt( countPosition, count );
+    }
+
+    private static void encodeProperties( PropertyData[] properties, ByteBuffer target )
+    {
+        if ( properties == null )
+        {
+            target.putInt( -1 );
+            return;
+        }
+        target.putInt( properties.length );
+        for ( PropertyData property : properties )
+        {
+            target.putInt( property.getIndex() );
+            target.putLong( property.getId() );
+            encodeValue( property.getValue(), target );
+        }
+    }
+
+    private static void encodeValue( Object value, ByteBuffer target )
+    {
+        if ( value instanceof String )
+        {
+            target.put( STRING );
+            encodeString( (String) value, target );
+        }
+        else if ( value instanceof Integer )
+        {
+            target.put( INT ).putInt( (Integer) value );
+        }
+        else if ( value instanceof Long )
+        {
+            target.put( LONG ).putLong( (Long) value );
+        }
+        else if ( value instanceof Boolean )
+        {
+            target.put( BOOLEAN ).put( (byte) ( ( (Boolean) value ) ? 1 : 0 ) );
+        }
+        else if ( value instanceof Double )
+        {
+            target.put( DOUBLE ).putDouble( (Double) value );
+        }
+        else if ( value instanceof Float )
+        {
+            target.put( FLOAT ).putFloat( (Float) value );
+        }
+        else if ( value instanceof Byte )
+        {
+            target.put( BYTE ).put( (Byte) value );
+        }
+        else if ( value instanceof Short )
+        {
+            target.put( SHORT ).putShort( (Short) value );
+        }
+        else if ( value instanceof Character )
+        {
+            target.put( CHAR ).putChar( (Character) value );
+        }
+        else
+        {
+            // not loaded yet or an array
+            target.put( NOT_LOADED );
+        }
+    }
+
+    private static PropertyData[] decodeProperties( ByteBuffer source )
+    {
+        int count = source.getInt();
+        if ( count == -1 )
+        {
+            return null;
+        }
+        PropertyData[] properties = new PropertyData[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            int index = source.getInt();
+            long id = source.getLong();
+            properties[i] = decodeProperty( index, id, source );
+        }
+        return properties;
+    }
+
+    private static PropertyData decodeProperty( int index, long id, ByteBuffer source )
+    {
+        byte type = source.get();
+        switch ( type )
+        {
+        case STRING: return PropertyDatas.forStringOrArray( index, id, decodeString( source ) );
+        case INT: return PropertyDatas.forInt( index, id, source.getInt() );
+        case LONG: return PropertyDatas.forLong( index, id, source.getLong() );
+        case BOOLEAN: return PropertyDatas.forBoolean( index, id, source.get() != 0 );
+        case DOUBLE: return PropertyDatas.forDouble( index, id, source.getDouble() );
+        case FLOAT: return PropertyDatas.forFloat( index, id, source.getFloat() );
+        case BYTE: return PropertyDatas.forByte( index, id, source.get() );
+        case SHORT: return PropertyDatas.forShort( index, id, source.getShort() );
+        case CHAR: return PropertyDatas.forChar( index, id, source.getChar() );
+        case NOT_LOADED: return PropertyDatas.forStringOrArray( index, id, null );
+        default: throw new IllegalStateException( "Unknown property type " + type );
+        }
+    }
+
+    private static void encodeString( String string, ByteBuffer target )
+    {
+        int length = string.length();
+        target.putInt( length );
+        for ( int i = 0; i < length; i++ )
+        {
+            target.putChar( string.charAt( i ) );
+        }
+    }
+
+    private static String decodeString( ByteBuffer source )
+    {
+        char[] chars = new char[source.getInt()];
+        for ( int i = 0; i < chars.length; i++ )
+        {
+            chars[i] = source.getChar();
+        }
+        return new String( chars );
+    }
+}
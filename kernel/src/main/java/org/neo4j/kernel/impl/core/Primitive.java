@@ -149,7 +149,6 @@ abstract class Primitive
         ArrayMap<Integer,PropertyData> addMap =
             nodeManager.getCowPropertyAddMap( this );
 
-        ensureFullProperties( nodeManager );
         for ( PropertyIndex index : nodeManager.index( key ) )
         {
             if ( skipMap != null && skipMap.get( index.getKeyId() ) != null )
@@ -164,7 +163,7 @@ abstract class Primitive
                     return getPropertyValue( nodeManager, property );
                 }
             }
-            PropertyData property = getPropertyForIndex( index.getKeyId() );
+            PropertyData property = getCommittedProperty( nodeManager, index.getKeyId() );
             if ( property != null )
             {
                 return getPropertyValue( nodeManager, property );
@@ -215,6 +214,7 @@ abstract class Primitive
                 }
             }
         }
+        ensureFullProperties( nodeManager );
         for ( PropertyData property : allProperties() )
         {
             int keyId = property.getIndex();
@@ -249,7 +249,6 @@ abstract class Primitive
         ArrayMap<Integer,PropertyData> addMap =
             nodeManager.getCowPropertyAddMap( this );
 
-        ensureFullProperties( nodeManager );
         for ( PropertyIndex index : nodeManager.index( key ) )
         {
             if ( skipMap != null && skipMap.get( index.getKeyId() ) != null )
@@ -264,7 +263,7 @@ abstract class Primitive
                     return getPropertyValue( nodeManager, property );
                 }
             }
-            PropertyData property = getPropertyForIndex( index.getKeyId() );
+            PropertyData property = getCommittedProperty( nodeManager, index.getKeyId() );
             if ( property != null )
             {
                 return getPropertyValue( nodeManager, property );
@@ -290,7 +289,6 @@ abstract class Primitive
         ArrayMap<Integer,PropertyData> addMap =
             nodeManager.getCowPropertyAddMap( this );
 
-        ensureFullProperties( nodeManager );
         for ( PropertyIndex index : nodeManager.index( key ) )
         {
             if ( skipMap != null && skipMap.get( index.getKeyId() ) != null )
@@ -305,7 +303,7 @@ abstract class Primitive
                     return true;
                 }
             }
-            PropertyData property = getPropertyForIndex( index.getKeyId() );
+            PropertyData property = getCommittedProperty( nodeManager, index.getKeyId() );
             if ( property != null )
             {
                 return true;
@@ -561,7 +559,18 @@ abstract class Primitive
         return value;
     }
 
-    private void ensureFullProperties( NodeManager nodeManager )
+    /**
+     * Returns the committed property with the given key id, or
+     * <code>null</code> if there is none. Loads and caches the whole property
+     * chain the first time, subclasses may look it up more lazily.
+     */
+    protected PropertyData getCommittedProperty( NodeManager nodeManager, int keyId )
+    {
+        ensureFullProperties( nodeManager );
+        return getPropertyForIndex( keyId );
+    }
+
+    void ensureFullProperties( NodeManager nodeManager )
     {
         // double checked locking
         if ( allProperties() == null ) synchronized ( this )
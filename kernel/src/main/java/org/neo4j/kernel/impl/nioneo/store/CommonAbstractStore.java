@@ -54,7 +54,7 @@ public abstract class CommonAbstractStore
         String store_dir();
     }
 
-    public static final String ALL_STORES_VERSION = "v0.A.0";
+    public static final String ALL_STORES_VERSION = "v0.A.1";
     public static final String UNKNOWN_VERSION = "Uknown";
 
     protected static final Logger logger = Logger
@@ -107,7 +107,16 @@ public abstract class CommonAbstractStore
         grabFileLock = configuration.grab_file_lock(true);
 
         checkStorage();
-        checkVersion(); // Overriden in NeoStore
+        try
+        {
+            checkVersion(); // Overriden in NeoStore
+        }
+        catch ( NotCurrentStoreVersionException e )
+        {
+            // let an upgrade, or another attempt once upgrades are allowed, lock the store
+            releaseFileLockAndCloseFileChannel();
+            throw e;
+        }
         loadStorage();
     }
 
@@ -359,6 +368,28 @@ public abstract class CommonAbstractStore
         return idGenerator.nextId();
     }
 
+    /**
+     * Returns a batch of ids from this store's {@link IdGenerator}.
+     *
+     * @param size The number of ids
+     * @return The ids, reused ones first
+     */
+    public IdRange nextIdBatch( int size )
+    {
+        return idGenerator.nextIdBatch( size );
+    }
+
+    /**
+     * Hands back the unused part of a batch from {@link #nextIdBatch(int)}
+     * to this store's {@link IdGenerator}.
+     *
+     * @param ids The ids that were never used
+     */
+    public void returnIdBatch( IdRange ids )
+    {
+        idGenerator.returnIdBatch( ids );
+    }
+
     /**
      * Frees an id for this store's {@link IdGenerator}.
      *
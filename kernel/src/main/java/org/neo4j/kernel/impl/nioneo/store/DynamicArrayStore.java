@@ -42,7 +42,7 @@ public class DynamicArrayStore extends AbstractDynamicStore
     }
     
     // store version, each store ends with this string (byte encoded)
-    public static final String VERSION = "ArrayPropertyStore v0.A.0";
+    public static final String VERSION = "ArrayPropertyStore v0.A.1";
     public static final String TYPE_DESCRIPTOR = "ArrayPropertyStore";
 
     public DynamicArrayStore(String fileName, Configuration configuration, IdType idType, IdGeneratorFactory idGeneratorFactory, FileSystemAbstraction fileSystemAbstraction, StringLogger stringLogger)
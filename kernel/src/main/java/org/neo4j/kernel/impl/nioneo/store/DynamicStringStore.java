@@ -35,7 +35,7 @@ public class DynamicStringStore extends AbstractDynamicStore
     }
 
     // store version, each store ends with this string (byte encoded)
-    public static final String VERSION = "StringPropertyStore v0.A.0";
+    public static final String VERSION = "StringPropertyStore v0.A.1";
     public static final String TYPE_DESCRIPTOR = "StringPropertyStore";
 
     public DynamicStringStore( String fileName, Configuration configuration, IdType idType,
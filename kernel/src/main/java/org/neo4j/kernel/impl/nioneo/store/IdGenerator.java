@@ -23,6 +23,12 @@ public interface IdGenerator
 {
     long nextId();
     IdRange nextIdBatch( int size );
+
+    /**
+     * Hands back the part of a batch from {@link #nextIdBatch(int)} that was
+     * never used, so that those ids can be handed out again.
+     */
+    void returnIdBatch( IdRange ids );
     void setHighId( long id );
     long getHighId();
     void freeId( long id );
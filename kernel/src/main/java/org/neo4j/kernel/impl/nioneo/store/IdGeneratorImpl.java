@@ -22,7 +22,9 @@ package org.neo4j.kernel.impl.nioneo.store;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.neo4j.kernel.impl.util.FileUtils.truncateFile;
@@ -55,6 +57,13 @@ import static org.neo4j.kernel.impl.util.FileUtils.truncateFile;
  * "sticky" and unusable next time you try to initialize a generator using the
  * same file. There can only be one id generator instance per id generator file.
  * <p>
+ * Handing out and freeing ids doesn't lock the generator. High ids are
+ * claimed with a compare-and-set and the in memory lists of defragged ids are
+ * concurrent queues, only reading and writing batches of them from/to the
+ * file is done holding the monitor of the generator. Ranges claimed with
+ * {@link #nextIdBatch(int)} that were not used up can be handed back with
+ * {@link #returnIdBatch(IdRange)} and are then reused right away.
+ * <p>
  * In case of disk/file I/O failure an <CODE>IOException</CODE> is thrown.
  */
 public class IdGeneratorImpl implements IdGenerator
@@ -75,21 +84,26 @@ public class IdGeneratorImpl implements IdGenerator
     // total bytes read from file, used in writeIdBatch() and close()
     private long totalBytesRead = 0;
     // true if more defragged ids can be read from file
-    private boolean haveMore = true;
+    private volatile boolean haveMore = true;
     // marks where this sessions released ids will be written
     private long readBlocksTo = HEADER_SIZE;
     // used to calculate number of ids actually in use
-    private long defraggedIdCount = -1;
+    private final AtomicLong defraggedIdCount = new AtomicLong( -1 );
 
     private final String fileName;
     private final FileSystemAbstraction fs;
-    private FileChannel fileChannel = null;
+    private volatile FileChannel fileChannel = null;
     // in memory defragged ids read from file (and from freeId)
-    private final LinkedList<Long> defragedIdList =
-        new LinkedList<Long>();
+    private final Queue<Long> defragedIdList =
+        new ConcurrentLinkedQueue<Long>();
     // in memory newly free defragged ids that havn't been flushed to disk yet
-    private final LinkedList<Long> releasedIdList =
-        new LinkedList<Long>();
+    private final Queue<Long> releasedIdList =
+        new ConcurrentLinkedQueue<Long>();
+    // size of releasedIdList, which is expensive to ask the queue for
+    private final AtomicInteger releasedIdCount = new AtomicInteger();
+    // ids handed out in a batch but never used, see returnIdBatch()
+    private final Queue<Long> returnedIdList =
+        new ConcurrentLinkedQueue<Long>();
 
     private final long max;
     private final boolean aggressiveReuse;
@@ -144,22 +158,52 @@ public class IdGeneratorImpl implements IdGenerator
      *             If the capacity is exceeded
      * @throws IllegalStateException if this id generator has been closed
      */
-    public synchronized long nextId()
+    public long nextId()
     {
         assertStillOpen();
         long nextDefragId = nextIdFromDefragList();
         if ( nextDefragId != -1 ) return nextDefragId;
 
-        long id = nextFreeId.get();
-        if ( id == INTEGER_MINUS_ONE )
+        return claimHighIds( 1 );
+    }
+
+    /*
+     * Moves the high id past count new ids and returns the first of them.
+     * The range never covers the integer -1 (0xFFFFFFFF) because it
+     * represents special values, f.ex. the end of a relationships/property
+     * chain. A range that would cover it ends right before it instead, which
+     * the caller can tell from the returned start, see
+     * claimedBeforeIntegerMinusOne.
+     */
+    private long claimHighIds( int count )
+    {
+        while ( true )
         {
-            // Skip the integer -1 (0xFFFFFFFF) because it represents
-            // special values, f.ex. the end of a relationships/property chain.
-            id = nextFreeId.incrementAndGet();
+            long current = nextFreeId.get();
+            if ( current == INTEGER_MINUS_ONE )
+            {
+                nextFreeId.compareAndSet( current, current + 1 );
+                continue;
+            }
+            long end = current + count;
+            if ( current < INTEGER_MINUS_ONE && end > INTEGER_MINUS_ONE )
+            {
+                end = INTEGER_MINUS_ONE;
+            }
+            if ( count > 0 )
+            {
+                assertIdWithinCapacity( end - 1 );
+            }
+            if ( nextFreeId.compareAndSet( current, end ) )
+            {
+                return current;
+            }
         }
-        assertIdWithinCapacity( id );
-        nextFreeId.incrementAndGet();
-        return id;
+    }
+
+    private static boolean claimedBeforeIntegerMinusOne( long start, int count )
+    {
+        return start < INTEGER_MINUS_ONE && start + count > INTEGER_MINUS_ONE;
     }
 
     private void assertIdWithinCapacity( long id )
@@ -172,25 +216,40 @@ public class IdGeneratorImpl implements IdGenerator
 
     private long nextIdFromDefragList()
     {
+        Long id = returnedIdList.poll();
+        if ( id != null )
+        {
+            defraggedIdCount.decrementAndGet();
+            return id.longValue();
+        }
+
         if ( aggressiveReuse )
         {
-            Long id = releasedIdList.poll();
+            id = releasedIdList.poll();
             if ( id != null )
             {
-                defraggedIdCount--;
+                releasedIdCount.decrementAndGet();
+                defraggedIdCount.decrementAndGet();
                 return id.longValue();
             }
         }
 
-        if ( defragedIdList.size() > 0 )
+        id = defragedIdList.poll();
+        if ( id == null && haveMore )
         {
-            long id = defragedIdList.removeFirst();
-            if ( haveMore && defragedIdList.size() == 0 )
+            synchronized ( this )
             {
-                readIdBatch();
+                if ( defragedIdList.isEmpty() )
+                {
+                    readIdBatch();
+                }
             }
-            defraggedIdCount--;
-            return id;
+            id = defragedIdList.poll();
+        }
+        if ( id != null )
+        {
+            defraggedIdCount.decrementAndGet();
+            return id.longValue();
         }
         return -1;
     }
@@ -203,7 +262,7 @@ public class IdGeneratorImpl implements IdGenerator
         }
     }
 
-    public synchronized IdRange nextIdBatch( int size )
+    public IdRange nextIdBatch( int size )
     {
         assertStillOpen();
 
@@ -220,19 +279,55 @@ public class IdGeneratorImpl implements IdGenerator
             defragIds[count++] = id;
         }
 
+        int sizeLeftForRange = size-count;
+        long start = claimHighIds( sizeLeftForRange );
+        if ( claimedBeforeIntegerMinusOne( start, sizeLeftForRange ) )
+        {
+            // only the ids before the integer -1 were claimed, they go with
+            // the defragged ids and the range starts after it
+            for ( long id = start; id < INTEGER_MINUS_ONE; id++ )
+            {
+                defragIds[count++] = id;
+            }
+            sizeLeftForRange = size-count;
+            start = claimHighIds( sizeLeftForRange );
+        }
+
         // Shrink the array to actual size
         long[] tmpArray = defragIds;
         defragIds = new long[count];
         System.arraycopy( tmpArray, 0, defragIds, 0, count );
 
-        int sizeLeftForRange = size-count;
-        long start = nextFreeId.get();
-        long newHighId = start + sizeLeftForRange;
-        assertIdWithinCapacity( newHighId );
-        nextFreeId.set( newHighId );
         return new IdRange( defragIds, start, sizeLeftForRange );
     }
 
+    /**
+     * Hands back ids from a range returned by {@link #nextIdBatch(int)} that
+     * were never used. Unlike ids passed to {@link #freeId(long)} these are
+     * handed out again right away, or if the range is at the top of the
+     * claimed ids the high id is simply moved back.
+     *
+     * @param ids the unused part of a batch of ids
+     */
+    public void returnIdBatch( IdRange ids )
+    {
+        for ( long id : ids.getDefragIds() )
+        {
+            returnedIdList.add( id );
+            defraggedIdCount.incrementAndGet();
+        }
+        long start = ids.getRangeStart();
+        int length = ids.getRangeLength();
+        if ( length > 0 && !nextFreeId.compareAndSet( start + length, start ) )
+        {
+            for ( long id = start; id < start + length; id++ )
+            {
+                returnedIdList.add( id );
+                defraggedIdCount.incrementAndGet();
+            }
+        }
+    }
+
     /**
      * Sets the next free "high" id. This method should be called when an id
      * generator has been rebuilt. {@code id} must not be higher than {@code max}.
@@ -272,7 +367,7 @@ public class IdGeneratorImpl implements IdGenerator
      * @throws IOException
      *             If id is negative or greater than the highest returned id
      */
-    public synchronized void freeId( long id )
+    public void freeId( long id )
     {
         if ( id == INTEGER_MINUS_ONE )
         {
@@ -288,10 +383,17 @@ public class IdGeneratorImpl implements IdGenerator
             throw new IllegalArgumentException( "Illegal id[" + id + "]" );
         }
         releasedIdList.add( id );
-        defraggedIdCount++;
-        if ( releasedIdList.size() >= grabSize )
+        defraggedIdCount.incrementAndGet();
+        if ( releasedIdCount.incrementAndGet() >= grabSize )
         {
-            writeIdBatch( ByteBuffer.allocate( grabSize*8 ) );
+            synchronized ( this )
+            {
+                // someone else may have written the batch while we waited
+                if ( releasedIdCount.get() >= grabSize && fileChannel != null )
+                {
+                    writeIdBatch( ByteBuffer.allocate( grabSize*8 ) );
+                }
+            }
         }
     }
 
@@ -316,15 +418,23 @@ public class IdGeneratorImpl implements IdGenerator
 
         // write out lists
         ByteBuffer writeBuffer = ByteBuffer.allocate( grabSize*8 );
-        if ( releasedIdList.size() > 0 )
+        Long returnedId;
+        while ( ( returnedId = returnedIdList.poll() ) != null )
+        {
+            releasedIdList.add( returnedId );
+            releasedIdCount.incrementAndGet();
+        }
+        if ( !releasedIdList.isEmpty() )
         {
             writeIdBatch( writeBuffer );
         }
-        if ( defragedIdList.size() > 0 )
+        if ( !defragedIdList.isEmpty() )
         {
-            while ( defragedIdList.size() > 0 )
+            Long defragId;
+            while ( ( defragId = defragedIdList.poll() ) != null )
             {
-                releasedIdList.add( defragedIdList.removeFirst() );
+                releasedIdList.add( defragId );
+                releasedIdCount.incrementAndGet();
             }
             writeIdBatch( writeBuffer );
         }
@@ -465,7 +575,7 @@ public class IdGeneratorImpl implements IdGenerator
             fileChannel.write( buffer );
             fileChannel.position( HEADER_SIZE );
             readBlocksTo = fileChannel.size();
-            defraggedIdCount = (int) (readBlocksTo - HEADER_SIZE) / 8;
+            defraggedIdCount.set( (int) (readBlocksTo - HEADER_SIZE) / 8 );
             readIdBatch();
         }
         catch ( IOException e )
@@ -506,7 +616,7 @@ public class IdGeneratorImpl implements IdGenerator
             readBuffer.flip();
             assert (bytesRead % 8) == 0;
             int idsRead = bytesRead / 8;
-            defraggedIdCount -= idsRead;
+            defraggedIdCount.addAndGet( -idsRead );
             for ( int i = 0; i < idsRead; i++ )
             {
                 long id = readBuffer.getLong();
@@ -531,9 +641,11 @@ public class IdGeneratorImpl implements IdGenerator
         {
             fileChannel.position( fileChannel.size() );
             writeBuffer.clear();
-            while ( releasedIdList.size() > 0 )
+            Long releasedId;
+            while ( ( releasedId = releasedIdList.poll() ) != null )
             {
-                long id = releasedIdList.removeFirst();
+                releasedIdCount.decrementAndGet();
+                long id = releasedId.longValue();
                 if ( id == INTEGER_MINUS_ONE )
                 {
                     continue;
@@ -584,19 +696,21 @@ public class IdGeneratorImpl implements IdGenerator
 
     public synchronized long getNumberOfIdsInUse()
     {
-        return nextFreeId.get() - defraggedIdCount;
+        return nextFreeId.get() - defraggedIdCount.get();
     }
 
     public long getDefragCount()
     {
-        return defraggedIdCount;
+        return defraggedIdCount.get();
     }
 
-    public void clearFreeIds()
+    public synchronized void clearFreeIds()
     {
         releasedIdList.clear();
+        releasedIdCount.set( 0 );
         defragedIdList.clear();
-        defraggedIdCount = -1;
+        returnedIdList.clear();
+        defraggedIdCount.set( -1 );
         try
         {
             truncateFile( fileChannel, HEADER_SIZE );
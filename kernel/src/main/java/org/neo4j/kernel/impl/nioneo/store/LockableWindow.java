@@ -21,6 +21,7 @@ package org.neo4j.kernel.impl.nioneo.store;
 
 import java.nio.channels.FileChannel;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.neo4j.kernel.impl.transaction.LockException;
 
@@ -48,7 +49,10 @@ abstract class LockableWindow implements PersistenceWindow
     private final LinkedList<LockElement> waitingThreadList = 
         new LinkedList<LockElement>();
     private int lockCount = 0;
-    private int marked = 0;
+    // threads that have acquired this window and not yet released it,
+    // CLOSED once the pool has decided to drop it
+    private final AtomicInteger marked = new AtomicInteger();
+    private static final int CLOSED = -1;
 
     LockableWindow( FileChannel fileChannel )
     {
@@ -77,14 +81,48 @@ abstract class LockableWindow implements PersistenceWindow
         this.type = type;
     }
 
-    synchronized void mark()
+    /**
+     * Marks this window as in use by the calling thread, which must call
+     * {@link #unmark()} once done with it.
+     *
+     * @return <CODE>false</CODE> if the window has been closed for use by
+     * {@link #markAsClosed()} and must not be used.
+     */
+    boolean mark()
     {
-        this.marked++;
+        while ( true )
+        {
+            int count = marked.get();
+            if ( count == CLOSED )
+            {
+                return false;
+            }
+            if ( marked.compareAndSet( count, count + 1 ) )
+            {
+                return true;
+            }
+        }
+    }
+
+    void unmark()
+    {
+        marked.decrementAndGet();
+    }
+
+    boolean isMarked()
+    {
+        return marked.get() > 0;
     }
 
-    synchronized boolean isMarked()
+    /**
+     * Prevents this window from being marked again, if it isn't currently in
+     * use.
+     *
+     * @return <CODE>true</CODE> if no thread was using the window.
+     */
+    boolean markAsClosed()
     {
-        return marked > 0;
+        return marked.compareAndSet( 0, CLOSED );
     }
 
     private static class LockElement
@@ -117,7 +155,6 @@ abstract class LockableWindow implements PersistenceWindow
         lockCount++;
         lockingThread = currentThread;
         le.movedOn = true;
-        marked--;
     }
 
     synchronized void unLock()
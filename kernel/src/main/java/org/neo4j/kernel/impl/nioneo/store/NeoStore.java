@@ -47,6 +47,8 @@ public class NeoStore extends AbstractStore
         extends AbstractStore.Configuration
     {
         int relationship_grab_size(int defaultRelGrabSize);
+
+        int dense_node_threshold(int def, int min, int max);
     }
 
     public static final String TYPE_DESCRIPTOR = "NeoStore";
@@ -56,18 +58,21 @@ public class NeoStore extends AbstractStore
      */
     public static final int RECORD_SIZE = 9;
     private static final int DEFAULT_REL_GRAB_SIZE = 100;
+    private static final int DEFAULT_DENSE_NODE_THRESHOLD = 50;
 
     public static final String DEFAULT_NAME = "neostore";
 
     private NodeStore nodeStore;
     private PropertyStore propStore;
     private RelationshipStore relStore;
+    private RelationshipGroupStore relGroupStore;
     private RelationshipTypeStore relTypeStore;
     private final TxHook txHook;
     private boolean isStarted;
     private long lastCommittedTx = -1;
 
     private final int REL_GRAB_SIZE;
+    private final int DENSE_NODE_THRESHOLD;
     private final String fileName;
     private final Configuration conf;
     private final LastCommittedTxIdSetter lastCommittedTxIdSetter;
@@ -77,6 +82,17 @@ public class NeoStore extends AbstractStore
                     IdGeneratorFactory idGeneratorFactory, FileSystemAbstraction fileSystemAbstraction,
                     StringLogger stringLogger, TxHook txHook,
                     RelationshipTypeStore relTypeStore, PropertyStore propStore, RelationshipStore relStore, NodeStore nodeStore)
+    {
+        this( fileName, conf, lastCommittedTxIdSetter, idGeneratorFactory, fileSystemAbstraction, stringLogger, txHook,
+                relTypeStore, propStore, relStore, null, nodeStore );
+    }
+
+    public NeoStore(String fileName, Configuration conf,
+                    LastCommittedTxIdSetter lastCommittedTxIdSetter,
+                    IdGeneratorFactory idGeneratorFactory, FileSystemAbstraction fileSystemAbstraction,
+                    StringLogger stringLogger, TxHook txHook,
+                    RelationshipTypeStore relTypeStore, PropertyStore propStore, RelationshipStore relStore,
+                    RelationshipGroupStore relGroupStore, NodeStore nodeStore)
     {
         super( fileName, conf, IdType.NEOSTORE_BLOCK, idGeneratorFactory, fileSystemAbstraction, stringLogger);
         this.fileName = fileName;
@@ -85,8 +101,10 @@ public class NeoStore extends AbstractStore
         this.relTypeStore = relTypeStore;
         this.propStore = propStore;
         this.relStore = relStore;
+        this.relGroupStore = relGroupStore;
         this.nodeStore = nodeStore;
         REL_GRAB_SIZE = conf.relationship_grab_size(DEFAULT_REL_GRAB_SIZE);
+        DENSE_NODE_THRESHOLD = conf.dense_node_threshold( DEFAULT_DENSE_NODE_THRESHOLD, 1, Integer.MAX_VALUE );
         this.txHook = txHook;
 
         /* [MP:2012-01-03] Fix for the problem in 1.5.M02 where store version got upgraded but
@@ -230,6 +248,11 @@ public class NeoStore extends AbstractStore
             relStore.close();
             relStore = null;
         }
+        if ( relGroupStore != null )
+        {
+            relGroupStore.close();
+            relGroupStore = null;
+        }
         if ( nodeStore != null )
         {
             nodeStore.close();
@@ -248,6 +271,10 @@ public class NeoStore extends AbstractStore
         relTypeStore.flushAll();
         propStore.flushAll();
         relStore.flushAll();
+        if ( relGroupStore != null )
+        {
+            relGroupStore.flushAll();
+        }
         nodeStore.flushAll();
     }
 
@@ -520,6 +547,18 @@ public class NeoStore extends AbstractStore
         return relStore;
     }
 
+    /**
+     * Returns the relationship group store, holding the relationships of
+     * dense nodes grouped by type.
+     *
+     * @return The relationship group store, or <CODE>null</CODE> if this
+     *         store has none
+     */
+    public RelationshipGroupStore getRelationshipGroupStore()
+    {
+        return relGroupStore;
+    }
+
     /**
      * Returns the relationship type store.
      *
@@ -546,6 +585,10 @@ public class NeoStore extends AbstractStore
         relTypeStore.makeStoreOk();
         propStore.makeStoreOk();
         relStore.makeStoreOk();
+        if ( relGroupStore != null )
+        {
+            relGroupStore.makeStoreOk();
+        }
         nodeStore.makeStoreOk();
         super.makeStoreOk();
         isStarted = true;
@@ -557,6 +600,10 @@ public class NeoStore extends AbstractStore
         relTypeStore.rebuildIdGenerators();
         propStore.rebuildIdGenerators();
         relStore.rebuildIdGenerators();
+        if ( relGroupStore != null )
+        {
+            relGroupStore.rebuildIdGenerators();
+        }
         nodeStore.rebuildIdGenerators();
         super.rebuildIdGenerators();
     }
@@ -567,6 +614,10 @@ public class NeoStore extends AbstractStore
         relTypeStore.updateIdGenerators();
         propStore.updateIdGenerators();
         relStore.updateHighId();
+        if ( relGroupStore != null )
+        {
+            relGroupStore.updateHighId();
+        }
         nodeStore.updateHighId();
     }
 
@@ -575,6 +626,15 @@ public class NeoStore extends AbstractStore
         return REL_GRAB_SIZE;
     }
 
+    /**
+     * @return the number of relationships above which a node gets its
+     *         relationships grouped by type and direction.
+     */
+    public int getDenseNodeThreshold()
+    {
+        return DENSE_NODE_THRESHOLD;
+    }
+
     @Override
     public List<WindowPoolStats> getAllWindowPoolStats()
     {
@@ -582,6 +642,10 @@ public class NeoStore extends AbstractStore
         list.addAll( nodeStore.getAllWindowPoolStats() );
         list.addAll( propStore.getAllWindowPoolStats() );
         list.addAll( relStore.getAllWindowPoolStats() );
+        if ( relGroupStore != null )
+        {
+            list.addAll( relGroupStore.getAllWindowPoolStats() );
+        }
         list.addAll( relTypeStore.getAllWindowPoolStats() );
         return list;
     }
@@ -589,7 +653,8 @@ public class NeoStore extends AbstractStore
     public boolean isStoreOk()
     {
         return getStoreOk() && relTypeStore.getStoreOk() &&
-            propStore.getStoreOk() && relStore.getStoreOk() && nodeStore.getStoreOk();
+            propStore.getStoreOk() && relStore.getStoreOk() && nodeStore.getStoreOk() &&
+            ( relGroupStore == null || relGroupStore.getStoreOk() );
     }
 
     @Override
@@ -600,6 +665,10 @@ public class NeoStore extends AbstractStore
         super.logVersions( msgLog );
         nodeStore.logVersions( msgLog );
         relStore.logVersions( msgLog );
+        if ( relGroupStore != null )
+        {
+            relGroupStore.logVersions( msgLog );
+        }
         relTypeStore.logVersions( msgLog );
         propStore.logVersions(msgLog  );
 
@@ -612,6 +681,10 @@ public class NeoStore extends AbstractStore
         msgLog.logLine( "Id usage:" );
         nodeStore.logIdUsage(msgLog );
         relStore.logIdUsage(msgLog );
+        if ( relGroupStore != null )
+        {
+            relGroupStore.logIdUsage( msgLog );
+        }
         relTypeStore.logIdUsage( msgLog);
         propStore.logIdUsage( msgLog );
         stringLogger.flush();
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.IdType;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Extends the records of the {@link NodeStore} with the relationship count of
+ * the node and, for dense nodes, the first {@link RelationshipGroupRecord
+ * relationship group}. Records are addressed by node id and never allocated
+ * on their own. A record not in use means the count isn't known, which is
+ * the case for nodes written before this store existed.
+ */
+public class NodeExtensionStore extends AbstractStore implements Store
+{
+    public interface Configuration
+        extends AbstractStore.Configuration
+    {
+
+    }
+
+    public static final String TYPE_DESCRIPTOR = "NodeExtensionStore";
+
+    // in_use(byte)+first_group(int)+rel_count(int)
+    public static final int RECORD_SIZE = 9;
+
+    public NodeExtensionStore( String fileName, Configuration configuration, IdGeneratorFactory idGeneratorFactory,
+            FileSystemAbstraction fileSystemAbstraction, StringLogger stringLogger )
+    {
+        super( fileName, configuration, IdType.NODE_EXTENSION, idGeneratorFactory, fileSystemAbstraction, stringLogger );
+    }
+
+    @Override
+    public String getTypeDescriptor()
+    {
+        return TYPE_DESCRIPTOR;
+    }
+
+    @Override
+    public int getRecordSize()
+    {
+        return RECORD_SIZE;
+    }
+
+    /**
+     * Reads the extension of <CODE>record</CODE> into it, leaving it as is if
+     * there is none.
+     */
+    void loadInto( NodeRecord record )
+    {
+        PersistenceWindow window = null;
+        try
+        {
+            window = acquireWindow( record.getId(), OperationType.READ );
+        }
+        catch ( InvalidRecordException e )
+        {
+            // never written
+            return;
+        }
+        try
+        {
+            Buffer buffer = window.getOffsettedBuffer( record.getId() );
+            long inUseByte = buffer.get();
+            if ( (inUseByte & 0x1) != Record.IN_USE.intValue() )
+            {
+                return;
+            }
+            record.setFirstGroup( longFromIntAndMod( buffer.getUnsignedInt(), (inUseByte & 0xEL) << 31 ) );
+            record.setRelCount( buffer.getInt() );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    void update( NodeRecord record )
+    {
+        long id = record.getId();
+        boolean inUse = record.inUse() && record.getRelCount() != NodeRecord.UNKNOWN_REL_COUNT;
+        if ( isInRecoveryMode() )
+        {
+            registerIdFromUpdateRecord( id );
+        }
+        else if ( id >= getHighId() )
+        {
+            if ( !inUse )
+            {
+                // nothing written for this node so far
+                return;
+            }
+            ensureHighId( id + 1 );
+        }
+        PersistenceWindow window = acquireWindow( id, OperationType.WRITE );
+        try
+        {
+            Buffer buffer = window.getOffsettedBuffer( id );
+            if ( inUse )
+            {
+                long firstGroup = record.getFirstGroup();
+                long groupModifier = firstGroup == Record.NO_NEXT_RELATIONSHIP.intValue() ? 0
+                        : (firstGroup & 0x700000000L) >> 31;
+
+                // [    ,   x] in use bit
+                // [    ,xxx ] higher bits for first group id
+                buffer.put( (byte) (Record.IN_USE.byteValue() | groupModifier) ).putInt( (int) firstGroup )
+                    .putInt( record.getRelCount() );
+            }
+            else
+            {
+                buffer.put( Record.NOT_IN_USE.byteValue() );
+            }
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    private synchronized void ensureHighId( long highId )
+    {
+        if ( highId > getHighId() )
+        {
+            setHighId( highId );
+        }
+    }
+
+    @Override
+    public List<WindowPoolStats> getAllWindowPoolStats()
+    {
+        List<WindowPoolStats> list = new ArrayList<WindowPoolStats>();
+        list.add( getWindowPoolStats() );
+        return list;
+    }
+}
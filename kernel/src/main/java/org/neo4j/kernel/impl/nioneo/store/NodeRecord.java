@@ -21,8 +21,12 @@ package org.neo4j.kernel.impl.nioneo.store;
 
 public class NodeRecord extends PrimitiveRecord
 {
+    public static final int UNKNOWN_REL_COUNT = -1;
+
     private final long committedNextRel;
     private long nextRel;
+    private long firstGroup = Record.NO_NEXT_RELATIONSHIP.intValue();
+    private int relCount = UNKNOWN_REL_COUNT;
 
     public NodeRecord( long id, long nextRel, long nextProp )
     {
@@ -45,11 +49,45 @@ public class NodeRecord extends PrimitiveRecord
         return isCreated() ? Record.NO_NEXT_RELATIONSHIP.intValue() : committedNextRel;
     }
 
+    /**
+     * @return the first relationship group of this node if it is dense, in
+     *         which case {@link #getNextRel()} is unused.
+     */
+    public long getFirstGroup()
+    {
+        return firstGroup;
+    }
+
+    public void setFirstGroup( long firstGroup )
+    {
+        this.firstGroup = firstGroup;
+    }
+
+    public boolean isDense()
+    {
+        return firstGroup != Record.NO_NEXT_RELATIONSHIP.intValue();
+    }
+
+    /**
+     * @return the number of relationships of this node, loops counted once,
+     *         or {@link #UNKNOWN_REL_COUNT} if it hasn't been recorded.
+     */
+    public int getRelCount()
+    {
+        return relCount;
+    }
+
+    public void setRelCount( int relCount )
+    {
+        this.relCount = relCount;
+    }
+
     @Override
     public String toString()
     {
         return new StringBuilder( "Node[" ).append( getId() ).append( ",used=" ).append( inUse() ).append( ",rel=" ).append(
-                nextRel ).append( ",prop=" ).append( getNextProp() ).append( "]" ).toString();
+                nextRel ).append( ",prop=" ).append( getNextProp() ).append( ",group=" ).append( firstGroup ).append( ",relCount=" ).append(
+                relCount ).append( "]" ).toString();
     }
 
     @Override
@@ -25,6 +25,7 @@ import java.util.List;
 import org.neo4j.kernel.IdGeneratorFactory;
 import org.neo4j.kernel.IdType;
 import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.kernel.impl.util.StringLogger.LineLogger;
 
 /**
  * Implementation of the node store.
@@ -42,10 +43,119 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
     // in_use(byte)+next_rel_id(int)+next_prop_id(int)
     public static final int RECORD_SIZE = 9;
 
+    private NodeExtensionStore extensionStore;
+
     public NodeStore(String fileName, Configuration config,
                      IdGeneratorFactory idGeneratorFactory, FileSystemAbstraction fileSystemAbstraction, StringLogger stringLogger)
+    {
+        this( fileName, config, idGeneratorFactory, fileSystemAbstraction, stringLogger, null );
+    }
+
+    public NodeStore(String fileName, Configuration config,
+                     IdGeneratorFactory idGeneratorFactory, FileSystemAbstraction fileSystemAbstraction, StringLogger stringLogger,
+                     NodeExtensionStore extensionStore)
     {
         super(fileName, config, IdType.NODE, idGeneratorFactory, fileSystemAbstraction, stringLogger);
+        this.extensionStore = extensionStore;
+    }
+
+    /**
+     * @return the store holding relationship counts and groups of the nodes,
+     *         or <CODE>null</CODE> if this node store has none.
+     */
+    public NodeExtensionStore getExtensionStore()
+    {
+        return extensionStore;
+    }
+
+    @Override
+    protected void setRecovered()
+    {
+        super.setRecovered();
+        if ( extensionStore != null )
+        {
+            extensionStore.setRecovered();
+        }
+    }
+
+    @Override
+    protected void unsetRecovered()
+    {
+        super.unsetRecovered();
+        if ( extensionStore != null )
+        {
+            extensionStore.unsetRecovered();
+        }
+    }
+
+    @Override
+    protected void closeStorage()
+    {
+        if ( extensionStore != null )
+        {
+            extensionStore.close();
+            extensionStore = null;
+        }
+    }
+
+    @Override
+    public void flushAll()
+    {
+        if ( extensionStore != null )
+        {
+            extensionStore.flushAll();
+        }
+        super.flushAll();
+    }
+
+    @Override
+    public void makeStoreOk()
+    {
+        if ( extensionStore != null )
+        {
+            extensionStore.makeStoreOk();
+        }
+        super.makeStoreOk();
+    }
+
+    @Override
+    public void rebuildIdGenerators()
+    {
+        if ( extensionStore != null )
+        {
+            extensionStore.rebuildIdGenerators();
+        }
+        super.rebuildIdGenerators();
+    }
+
+    @Override
+    protected void updateHighId()
+    {
+        if ( extensionStore != null )
+        {
+            extensionStore.updateHighId();
+        }
+        super.updateHighId();
+    }
+
+    @Override
+    public void logVersions( LineLogger logger )
+    {
+        super.logVersions( logger );
+        if ( extensionStore != null )
+        {
+            extensionStore.logVersions( logger );
+        }
+    }
+
+    @Override
+    public void logIdUsage( LineLogger logger )
+    {
+        super.logIdUsage( logger );
+        if ( extensionStore != null )
+        {
+            extensionStore.logIdUsage( logger );
+        }
     }
 
     @Override
@@ -211,6 +321,10 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
 
         NodeRecord nodeRecord = new NodeRecord( id, longFromIntAndMod( nextRel, relModifier ), longFromIntAndMod( nextProp, propModifier ) );
         nodeRecord.setInUse( inUse );
+        if ( inUse && extensionStore != null )
+        {
+            extensionStore.loadInto( nodeRecord );
+        }
         return nodeRecord;
     }
 
@@ -241,12 +355,20 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
                 freeId( id );
             }
         }
+        if ( extensionStore != null )
+        {
+            extensionStore.update( record );
+        }
     }
 
     @Override
     public List<WindowPoolStats> getAllWindowPoolStats()
     {
         List<WindowPoolStats> list = new ArrayList<WindowPoolStats>();
+        if ( extensionStore != null )
+        {
+            list.add( extensionStore.getWindowPoolStats() );
+        }
         list.add( getWindowPoolStats() );
         return list;
     }
@@ -24,13 +24,18 @@ import java.io.Serializable;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.neo4j.helpers.DaemonThreadFactory;
+
 /**
  * Manages {@link PersistenceWindow persistence windows} for a store. Each store
  * can configure how much memory it has for
@@ -53,14 +58,20 @@ public class PersistenceWindowPool
     private long memUsed = 0;
     private int brickCount = 0;
     private int brickSize = 0;
-    private BrickElement brickArray[] = new BrickElement[0];
+    private volatile BrickElement brickArray[] = new BrickElement[0];
+    // number of row windows in activeRowWindows per brick
+    private int activeRowsInBrick[] = new int[0];
     private int brickMiss = 0;
+    private boolean refreshScheduled = false;
 
     private static Logger log = Logger.getLogger( PersistenceWindowPool.class
         .getName() );
     private static final int REFRESH_BRICK_COUNT = 50000;
+    // maps and unmaps bricks off the acquire path, started on first refresh
+    private ExecutorService brickRefresher;
     private final FileChannel.MapMode mapMode;
 
+    // updated without synchronization, only approximate
     private int hit = 0;
     private int miss = 0;
     private int switches = 0;
@@ -114,41 +125,35 @@ public class PersistenceWindowPool
     {
         LockableWindow window = null;
         boolean readPos = false;
-//        synchronized ( activeRowWindows )
-//        {
-            if ( brickMiss >= REFRESH_BRICK_COUNT )
+        if ( brickSize > 0 )
+        {
+            int brickIndex = (int) (position * blockSize / brickSize);
+            if ( brickIndex >= brickArray.length )
             {
-//                brickMiss = 0;
-                refreshBricks();
+                expandBricks( brickIndex + 1 );
             }
-            if ( brickSize > 0 )
+            window = markBrickWindow( brickIndex );
+            // assert window == null || window.encapsulates( position );
+            brickArray[brickIndex].setHit();
+        }
+        if ( window == null )
+        {
+            synchronized ( this )
             {
-                int brickIndex = (int) (position * blockSize / brickSize);
-                if ( brickIndex < brickArray.length )
-                {
-                    synchronized ( this )
-                    {
-                        window = brickArray[brickIndex].getWindow();
-                        if ( window != null )
-                        {
-                            window.mark();
-                        }
-                    }
-                    // assert window == null || window.encapsulates( position );
-                    brickArray[brickIndex].setHit();
-                }
-                else
+                // the brick may have been mapped while waiting for the
+                // monitor, a row must not be used alongside its window
+                if ( brickSize > 0 )
                 {
-                    expandBricks( brickIndex + 1 );
-                    window = brickArray[brickIndex].getWindow();
+                    window = markBrickWindow( (int) (position * blockSize / brickSize) );
                 }
-            }
-            if ( window == null )
-            {
-                synchronized ( this )
+                if ( window == null )
                 {
                     miss++;
                     brickMiss++;
+                    if ( brickMiss >= REFRESH_BRICK_COUNT )
+                    {
+                        scheduleRefreshBricks();
+                    }
 
                     PersistenceRow dpw = activeRowWindows.get( (int) position );
 
@@ -156,6 +161,7 @@ public class PersistenceWindowPool
                     {
                         dpw = new PersistenceRow( position, blockSize,
                             fileChannel );
+                        countActiveRow( position, 1 );
                     }
                     if ( operationType == OperationType.READ )
                     {
@@ -166,11 +172,11 @@ public class PersistenceWindowPool
                     window.mark();
                 }
             }
-            else
-            {
-                hit++;
-            }
-//        }
+        }
+        if ( !(window instanceof PersistenceRow) )
+        {
+            hit++;
+        }
         window.lock();
         if ( readPos )
         {
@@ -180,6 +186,49 @@ public class PersistenceWindowPool
         return window;
     }
 
+    /**
+     * @return the window mapped for <CODE>brickIndex</CODE>, marked, or
+     * <CODE>null</CODE> if there is none or it's being unmapped.
+     */
+    private LockableWindow markBrickWindow( int brickIndex )
+    {
+        LockableWindow window = brickArray[brickIndex].getWindow();
+        if ( window != null && !window.mark() )
+        {
+            // closed by refreshBricks, go for a row instead
+            return null;
+        }
+        return window;
+    }
+
+    /**
+     * @return whether any row window is in use for a position in the brick,
+     * in which case the brick can't be mapped without risking a stale window.
+     * Must be called holding the pool monitor.
+     */
+    private boolean hasActiveRows( int brickIndex )
+    {
+        return brickIndex < activeRowsInBrick.length && activeRowsInBrick[brickIndex] > 0;
+    }
+
+    /**
+     * Keeps track of the row windows in {@link #activeRowWindows} per brick.
+     * Must be called holding the pool monitor.
+     */
+    private void countActiveRow( long position, int delta )
+    {
+        if ( brickSize <= 0 )
+        {
+            return;
+        }
+        int brickIndex = (int) (position * blockSize / brickSize);
+        if ( brickIndex >= activeRowsInBrick.length )
+        {
+            activeRowsInBrick = Arrays.copyOf( activeRowsInBrick, brickIndex + 1 );
+        }
+        activeRowsInBrick[brickIndex] += delta;
+    }
+
     void dumpStatistics()
     {
         log.finest( storeName + " hit=" + hit + " miss=" + miss + " switches="
@@ -203,17 +252,21 @@ public class PersistenceWindowPool
             dpw.writeOut();
             synchronized ( this )
             {
-                if ( dpw.getWaitingThreadsCount() == 0 && !dpw.isMarked() )
+                dpw.unmark();
+                if ( !dpw.isMarked() )
                 {
                     int key = (int) dpw.position();
                     activeRowWindows.remove( key );
+                    countActiveRow( dpw.position(), -1 );
                 }
             }
             dpw.unLock();
         }
         else
         {
-            ((LockableWindow) window).unLock();
+            LockableWindow lockableWindow = (LockableWindow) window;
+            lockableWindow.unLock();
+            lockableWindow.unmark();
         }
     }
 
@@ -232,7 +285,14 @@ public class PersistenceWindowPool
             }
             fileChannel = null;
             activeRowWindows.clear();
+            Arrays.fill( activeRowsInBrick, 0 );
 //        }
+        if ( brickRefresher != null )
+        {
+            // a refresh already queued finds the pool closed and does nothing
+            brickRefresher.shutdown();
+            brickRefresher = null;
+        }
         // activeRowWindows = null;
         dumpStatistics();
     }
@@ -241,17 +301,39 @@ public class PersistenceWindowPool
     {
         if ( readOnly ) return;
 
-        //        synchronized ( activeRowWindows )
-//        {
-            for ( BrickElement element : brickArray )
+        for ( int i = 0; i < brickArray.length; i++ )
+        {
+            LockableWindow window = markBrickWindow( i );
+            if ( window == null )
+            {
+                continue;
+            }
+            try
             {
-                PersistenceWindow window = element.getWindow();
-                if ( window != null )
+                if ( window instanceof MappedPersistenceWindow )
                 {
                     window.force();
                 }
+                else
+                {
+                    // writing out a plain window uses its buffer position, which
+                    // a thread committing at the same time may be moving
+                    window.lock();
+                    try
+                    {
+                        window.force();
+                    }
+                    finally
+                    {
+                        window.unLock();
+                    }
+                }
             }
-//        }
+            finally
+            {
+                window.unmark();
+            }
+        }
         try
         {
             fileChannel.force( false );
@@ -267,7 +349,7 @@ public class PersistenceWindowPool
     {
         private final int index;
         private int hitCount;
-        private LockableWindow window = null;
+        private volatile LockableWindow window = null;
 
         BrickElement( int index )
         {
@@ -406,6 +488,7 @@ public class PersistenceWindowPool
             brickSize = (brickSize / blockSize) * blockSize;
         }
         brickArray = new BrickElement[brickCount];
+        activeRowsInBrick = new int[brickCount];
         for ( int i = 0; i < brickCount; i++ )
         {
             BrickElement element = new BrickElement( i );
@@ -434,7 +517,7 @@ public class PersistenceWindowPool
         {
             BrickElement mappedBrick = mappedBricks.get( i );
             LockableWindow window = mappedBrick.getWindow();
-            if ( window.getWaitingThreadsCount() == 0 && !window.isMarked() )
+            if ( window.markAsClosed() )
             {
                 if ( !readOnly ) window.writeOut();
                 mappedBrick.setWindow( null );
@@ -443,10 +526,37 @@ public class PersistenceWindowPool
         }
     }
 
+    /**
+     * Hands {@link #refreshBricks()} to the background refresher, unless
+     * already done and not yet run. Must be called holding the pool monitor.
+     */
+    private void scheduleRefreshBricks()
+    {
+        if ( refreshScheduled || brickSize <= 0 || fileChannel == null )
+        {
+            return;
+        }
+        if ( brickRefresher == null )
+        {
+            brickRefresher = Executors.newSingleThreadExecutor( new DaemonThreadFactory(
+                "Persistence window pool brick refresher [" + storeName + "]" ) );
+        }
+        refreshScheduled = true;
+        brickRefresher.execute( new Runnable()
+        {
+            public void run()
+            {
+                refreshBricks();
+            }
+        } );
+    }
+
     private synchronized void refreshBricks()
     {
-        if ( brickMiss < REFRESH_BRICK_COUNT )
+        refreshScheduled = false;
+        if ( brickMiss < REFRESH_BRICK_COUNT || fileChannel == null )
         {
+            // already refreshed, or closed
             return;
         }
         brickMiss = 0;
@@ -483,6 +593,10 @@ public class PersistenceWindowPool
             {
                 return;
             }
+            if ( hasActiveRows( nonMappedBrick.index() ) )
+            {
+                continue;
+            }
             try
             {
                 nonMappedBrick.setWindow(
@@ -511,8 +625,12 @@ public class PersistenceWindowPool
             {
                 break;
             }
+            if ( hasActiveRows( nonMappedBrick.index() ) )
+            {
+                continue;
+            }
             LockableWindow window = mappedBrick.getWindow();
-            if ( window.getWaitingThreadsCount() == 0 && !window.isMarked() )
+            if ( window.markAsClosed() )
             {
                 if ( !readOnly ) window.writeOut();
                 mappedBrick.setWindow( null );
@@ -552,7 +670,7 @@ public class PersistenceWindowPool
             {
                 BrickElement be = new BrickElement( i );
                 tmpArray[i] = be;
-                if ( memUsed + brickSize <= availableMem )
+                if ( memUsed + brickSize <= availableMem && !hasActiveRows( i ) )
                 {
                     try
                     {
@@ -644,6 +762,21 @@ public class PersistenceWindowPool
     WindowPoolStats getStats()
     {
         return new WindowPoolStats( storeName, availableMem, memUsed, brickCount,
-                brickSize, hit, miss, ooe );
+                brickSize, hit, miss, ooe, mappedRegions() );
+    }
+
+    private long[] mappedRegions()
+    {
+        BrickElement[] bricks = brickArray;
+        long[] regions = new long[bricks.length];
+        int count = 0;
+        for ( BrickElement brick : bricks )
+        {
+            if ( brick.getWindow() != null )
+            {
+                regions[count++] = (long) brick.index() * brickSize;
+            }
+        }
+        return Arrays.copyOf( regions, count );
     }
 }
\ No newline at end of file
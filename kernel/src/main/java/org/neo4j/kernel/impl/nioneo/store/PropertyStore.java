@@ -304,6 +304,70 @@ public class PropertyStore extends AbstractStore implements Store, RecordStore<P
         }
     }
 
+    /**
+     * Walks the property record chain starting at <code>firstProp</code>
+     * looking for the block with the given key id. Only the block headers are
+     * decoded on the way, and the value of the matching block is not made
+     * heavy, so dynamic string and array records are left to be loaded
+     * through {@link #makeHeavy(PropertyBlock)} if the value is asked for.
+     *
+     * @return the property data for <code>keyId</code>, or <code>null</code>
+     *         if the chain holds no such property.
+     */
+    public PropertyData findLightProperty( long firstProp, int keyId )
+    {
+        long nextProp = firstProp;
+        while ( nextProp != Record.NO_NEXT_PROPERTY.intValue() )
+        {
+            long id = nextProp;
+            PersistenceWindow window = acquireWindow( id, OperationType.READ );
+            try
+            {
+                Buffer buffer = window.getOffsettedBuffer( id );
+                int offsetAtBeggining = buffer.getOffset();
+                byte modifiers = buffer.get();
+                long nextMod = ( ( modifiers & 0x0FL ) << 32 );
+                buffer.getUnsignedInt(); // previous, not needed
+                nextProp = longFromIntAndMod( buffer.getUnsignedInt(), nextMod );
+                boolean inUse = false;
+                while ( buffer.getOffset() - offsetAtBeggining < RECORD_SIZE )
+                {
+                    long header = buffer.getLong();
+                    PropertyType type = PropertyType.getPropertyType( header, true );
+                    if ( type == null )
+                    {
+                        break;
+                    }
+                    inUse = true;
+                    int numBlocks = type.calculateNumberOfBlocksUsed( header );
+                    // [][][][][][kkkk,kkkk][kkkk,kkkk][kkkk,kkkk]
+                    if ( (int) ( header & 0xFFFFFF ) == keyId )
+                    {
+                        long[] blockData = new long[numBlocks];
+                        blockData[0] = header;
+                        for ( int i = 1; i < numBlocks; i++ )
+                        {
+                            blockData[i] = buffer.getLong();
+                        }
+                        PropertyBlock block = new PropertyBlock();
+                        block.setValueBlocks( blockData );
+                        return type.newPropertyData( block, id, null );
+                    }
+                    buffer.setOffset( buffer.getOffset() + ( numBlocks - 1 ) * 8 );
+                }
+                if ( !inUse )
+                {
+                    throw new InvalidRecordException( "PropertyRecord[" + id + "] not in use" );
+                }
+            }
+            finally
+            {
+                releaseWindow( window );
+            }
+        }
+        return null;
+    }
+
     /*
      * This will add the value records without checking if they are already
      * in the block - so make sure to call this after checking isHeavy() or
@@ -41,6 +41,11 @@ public class ReadOnlyIdGenerator implements IdGenerator
     {
         throw new ReadOnlyDbException();
     }
+
+    public void returnIdBatch( IdRange ids )
+    {
+        throw new ReadOnlyDbException();
+    }
     
     public void setHighId( long id )
     {
@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.IdType;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Implementation of the relationship group store, holding the per type and
+ * direction relationship chains of dense nodes.
+ */
+public class RelationshipGroupStore extends AbstractStore implements Store, RecordStore<RelationshipGroupRecord>
+{
+    public interface Configuration
+        extends AbstractStore.Configuration
+    {
+
+    }
+
+    public static final String TYPE_DESCRIPTOR = "RelationshipGroupStore";
+
+    // in_use(byte)+type(int)+next_group(int)+first_out(int)+first_in(int)+
+    // first_loop(int)+owning_node(int)+out_count(int)+in_count(int)+
+    // loop_count(int)
+    public static final int RECORD_SIZE = 37;
+
+    public RelationshipGroupStore( String fileName, Configuration configuration, IdGeneratorFactory idGeneratorFactory,
+            FileSystemAbstraction fileSystemAbstraction, StringLogger stringLogger )
+    {
+        super( fileName, configuration, IdType.RELATIONSHIP_GROUP, idGeneratorFactory, fileSystemAbstraction, stringLogger );
+    }
+
+    @Override
+    public void accept( RecordStore.Processor processor, RelationshipGroupRecord record )
+    {
+        processor.processRelationshipGroup( this, record );
+    }
+
+    @Override
+    public String getTypeDescriptor()
+    {
+        return TYPE_DESCRIPTOR;
+    }
+
+    @Override
+    public int getRecordSize()
+    {
+        return RECORD_SIZE;
+    }
+
+    @Override
+    public int getRecordHeaderSize()
+    {
+        return getRecordSize();
+    }
+
+    public RelationshipGroupRecord getRecord( long id )
+    {
+        PersistenceWindow window = acquireWindow( id, OperationType.READ );
+        try
+        {
+            return getRecord( id, window, RecordLoad.NORMAL );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    @Override
+    public RelationshipGroupRecord forceGetRecord( long id )
+    {
+        PersistenceWindow window = null;
+        try
+        {
+            window = acquireWindow( id, OperationType.READ );
+        }
+        catch ( InvalidRecordException e )
+        {
+            return new RelationshipGroupRecord( id, -1, -1 );
+        }
+
+        try
+        {
+            return getRecord( id, window, RecordLoad.FORCE );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    @Override
+    public RelationshipGroupRecord forceGetRaw( long id )
+    {
+        return forceGetRecord( id );
+    }
+
+    public void updateRecord( RelationshipGroupRecord record, boolean recovered )
+    {
+        assert recovered;
+        setRecovered();
+        try
+        {
+            updateRecord( record );
+            registerIdFromUpdateRecord( record.getId() );
+        }
+        finally
+        {
+            unsetRecovered();
+        }
+    }
+
+    public void updateRecord( RelationshipGroupRecord record )
+    {
+        PersistenceWindow window = acquireWindow( record.getId(), OperationType.WRITE );
+        try
+        {
+            updateRecord( record, window, false );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    @Override
+    public void forceUpdateRecord( RelationshipGroupRecord record )
+    {
+        PersistenceWindow window = acquireWindow( record.getId(), OperationType.WRITE );
+        try
+        {
+            updateRecord( record, window, true );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    private void updateRecord( RelationshipGroupRecord record, PersistenceWindow window, boolean force )
+    {
+        long id = record.getId();
+        Buffer buffer = window.getOffsettedBuffer( id );
+        if ( record.inUse() || force )
+        {
+            long next = record.getNext();
+            long owningNode = record.getOwningNode();
+            long firstOut = record.getFirstOut();
+            long firstIn = record.getFirstIn();
+            long firstLoop = record.getFirstLoop();
+
+            // [    ,   x] in use flag
+            // [    ,xxx ] next group high order bits
+            // [ xxx,    ] owning node high order bits
+            short inUseUnsignedByte = (short) ( ( record.inUse() ? Record.IN_USE : Record.NOT_IN_USE ).byteValue()
+                    | highBits( next ) << 1 | highBits( owningNode ) << 4 );
+
+            // [    ,    ][    , xxx][    ,    ][    ,    ] first out high order bits,  0x70000
+            // [    ,    ][  xx,x   ][    ,    ][    ,    ] first in high order bits,   0x380000
+            // [    ,   x][xx  ,    ][    ,    ][    ,    ] first loop high order bits, 0x1C00000
+            // [    ,    ][    ,    ][xxxx,xxxx][xxxx,xxxx] type
+            int typeInt = (int) ( record.getType() | highBits( firstOut ) << 16 | highBits( firstIn ) << 19
+                    | highBits( firstLoop ) << 22 );
+
+            buffer.put( (byte) inUseUnsignedByte ).putInt( typeInt )
+                .putInt( (int) next ).putInt( (int) firstOut ).putInt( (int) firstIn ).putInt( (int) firstLoop )
+                .putInt( (int) owningNode ).putInt( record.getCount( DirectionWrapper.OUTGOING ) )
+                .putInt( record.getCount( DirectionWrapper.INCOMING ) ).putInt( record.getCount( DirectionWrapper.BOTH ) );
+        }
+        else
+        {
+            buffer.put( Record.NOT_IN_USE.byteValue() );
+            if ( !isInRecoveryMode() )
+            {
+                freeId( id );
+            }
+        }
+    }
+
+    private static long highBits( long id )
+    {
+        return id == Record.NO_NEXT_RELATIONSHIP.intValue() ? 0 : ( id & 0x700000000L ) >> 32;
+    }
+
+    private RelationshipGroupRecord getRecord( long id, PersistenceWindow window, RecordLoad load )
+    {
+        Buffer buffer = window.getOffsettedBuffer( id );
+
+        long inUseByte = buffer.get();
+        boolean inUse = (inUseByte & 0x1) == Record.IN_USE.intValue();
+        if ( !inUse )
+        {
+            switch ( load )
+            {
+            case NORMAL:
+                throw new InvalidRecordException( "RelationshipGroupRecord[" + id + "] not in use" );
+            case CHECK:
+                return null;
+            }
+        }
+
+        long typeInt = buffer.getInt();
+        int type = (int) ( typeInt & 0xFFFF );
+        long next = longFromIntAndMod( buffer.getUnsignedInt(), ( inUseByte & 0xEL ) << 31 );
+        long firstOut = longFromIntAndMod( buffer.getUnsignedInt(), ( typeInt & 0x70000L ) << 16 );
+        long firstIn = longFromIntAndMod( buffer.getUnsignedInt(), ( typeInt & 0x380000L ) << 13 );
+        long firstLoop = longFromIntAndMod( buffer.getUnsignedInt(), ( typeInt & 0x1C00000L ) << 10 );
+        long owningNode = longFromIntAndMod( buffer.getUnsignedInt(), ( inUseByte & 0x70L ) << 28 );
+
+        RelationshipGroupRecord record = new RelationshipGroupRecord( id, type, owningNode );
+        record.setInUse( inUse );
+        record.setNext( next );
+        record.setFirstOut( firstOut );
+        record.setFirstIn( firstIn );
+        record.setFirstLoop( firstLoop );
+        record.setCount( DirectionWrapper.OUTGOING, buffer.getInt() );
+        record.setCount( DirectionWrapper.INCOMING, buffer.getInt() );
+        record.setCount( DirectionWrapper.BOTH, buffer.getInt() );
+        return record;
+    }
+
+    @Override
+    public List<WindowPoolStats> getAllWindowPoolStats()
+    {
+        List<WindowPoolStats> list = new ArrayList<WindowPoolStats>();
+        list.add( getWindowPoolStats() );
+        return list;
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+
+/**
+ * Groups the relationships of dense nodes by type and direction, writing
+ * directly to the stores. For use where there are no transactions, like in
+ * batch insertion and store migration, node records are left for the caller
+ * to write.
+ */
+public class RelationshipGrouper
+{
+    private final NeoStore neoStore;
+
+    public RelationshipGrouper( NeoStore neoStore )
+    {
+        this.neoStore = neoStore;
+    }
+
+    /**
+     * @return whether the store has the files needed to group relationships,
+     *         which read only stores created before grouping existed lack.
+     */
+    public boolean isSupported()
+    {
+        return neoStore.getRelationshipGroupStore() != null && neoStore.getNodeStore().getExtensionStore() != null;
+    }
+
+    /**
+     * Sets the relationship count of <CODE>node</CODE> if it isn't known
+     * and groups its relationships if there are more than the dense node
+     * threshold.
+     */
+    public void update( NodeRecord node )
+    {
+        if ( node.isDense() || !isSupported() )
+        {
+            return;
+        }
+        if ( node.getRelCount() == NodeRecord.UNKNOWN_REL_COUNT )
+        {
+            node.setRelCount( getRelationships( node ).size() );
+        }
+        if ( node.getRelCount() >= neoStore.getDenseNodeThreshold() )
+        {
+            convertToDense( node );
+        }
+    }
+
+    /**
+     * Puts <CODE>rel</CODE> first in the chain of <CODE>node</CODE> it
+     * belongs to, after {@link #update(NodeRecord) updating} the node. The
+     * relationship record itself is left for the caller to write.
+     */
+    public void connect( NodeRecord node, RelationshipRecord rel )
+    {
+        update( node );
+        RelationshipStore relStore = neoStore.getRelationshipStore();
+        RelationshipGroupRecord group = null;
+        DirectionWrapper direction = chainOf( rel, node.getId() );
+        long first = node.getNextRel();
+        if ( node.isDense() )
+        {
+            group = getOrCreateGroup( node, rel.getType() );
+            first = group.getFirst( direction );
+        }
+        setNextRel( rel, node.getId(), first );
+        if ( first != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipRecord nextRel = relStore.getRecord( first );
+            if ( !setPrevRel( nextRel, node.getId(), rel.getId() ) )
+            {
+                throw new InvalidRecordException( node + " dont match " + nextRel );
+            }
+            relStore.updateRecord( nextRel );
+        }
+        if ( group != null )
+        {
+            group.setFirst( direction, rel.getId() );
+            group.setCount( direction, group.getCount( direction ) + 1 );
+            neoStore.getRelationshipGroupStore().updateRecord( group );
+        }
+        else
+        {
+            node.setNextRel( rel.getId() );
+        }
+        if ( node.getRelCount() != NodeRecord.UNKNOWN_REL_COUNT )
+        {
+            node.setRelCount( node.getRelCount() + 1 );
+        }
+    }
+
+    /**
+     * @return the relationships of <CODE>node</CODE>, for a dense node group
+     *         by group.
+     */
+    public List<RelationshipRecord> getRelationships( NodeRecord node )
+    {
+        List<RelationshipRecord> rels = new ArrayList<RelationshipRecord>();
+        if ( !node.isDense() )
+        {
+            addChain( node.getId(), node.getNextRel(), rels );
+            return rels;
+        }
+        long groupId = node.getFirstGroup();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = neoStore.getRelationshipGroupStore().getRecord( groupId );
+            addChain( node.getId(), group.getFirstOut(), rels );
+            addChain( node.getId(), group.getFirstIn(), rels );
+            addChain( node.getId(), group.getFirstLoop(), rels );
+            groupId = group.getNext();
+        }
+        return rels;
+    }
+
+    private void addChain( long nodeId, long nextRel, List<RelationshipRecord> rels )
+    {
+        RelationshipStore relStore = neoStore.getRelationshipStore();
+        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipRecord relRecord = relStore.getRecord( nextRel );
+            rels.add( relRecord );
+            long firstNode = relRecord.getFirstNode();
+            long secondNode = relRecord.getSecondNode();
+            if ( firstNode == nodeId )
+            {
+                nextRel = relRecord.getFirstNextRel();
+            }
+            else if ( secondNode == nodeId )
+            {
+                nextRel = relRecord.getSecondNextRel();
+            }
+            else
+            {
+                throw new InvalidRecordException( "Node[" + nodeId +
+                    "] not part of firstNode[" + firstNode +
+                    "] or secondNode[" + secondNode + "]" );
+            }
+        }
+    }
+
+    // moves the relationships of a node into one chain per type and direction, keeping their order
+    private void convertToDense( NodeRecord node )
+    {
+        long firstRel = node.getNextRel();
+        node.setNextRel( Record.NO_NEXT_RELATIONSHIP.intValue() );
+        moveIntoGroups( node, firstRel );
+    }
+
+    /**
+     * Moves the relationships of the chain starting at <CODE>firstRel</CODE>,
+     * linked the way the relationships of a node that isn't dense are, in
+     * front of the chains of their type and direction of <CODE>node</CODE>,
+     * keeping their order. The node is made dense if it isn't already, and
+     * left for the caller to write.
+     */
+    public void moveIntoGroups( NodeRecord node, long firstRel )
+    {
+        List<RelationshipRecord> chain = new ArrayList<RelationshipRecord>();
+        addChain( node.getId(), firstRel, chain );
+        Map<Long,RelationshipRecord> moved = new HashMap<Long,RelationshipRecord>();
+        for ( int i = chain.size() - 1; i >= 0; i-- )
+        {
+            RelationshipRecord rel = chain.get( i );
+            moved.put( rel.getId(), rel );
+            RelationshipGroupRecord group = getOrCreateGroup( node, rel.getType() );
+            DirectionWrapper direction = chainOf( rel, node.getId() );
+            long first = group.getFirst( direction );
+            setNextRel( rel, node.getId(), first );
+            setPrevRel( rel, node.getId(), Record.NO_PREV_RELATIONSHIP.intValue() );
+            if ( first != Record.NO_NEXT_RELATIONSHIP.intValue() )
+            {
+                RelationshipRecord next = moved.get( first );
+                if ( next == null )
+                {
+                    // the head of the chain from before the move
+                    next = neoStore.getRelationshipStore().getRecord( first );
+                    setPrevRel( next, node.getId(), rel.getId() );
+                    neoStore.getRelationshipStore().updateRecord( next );
+                }
+                else
+                {
+                    setPrevRel( next, node.getId(), rel.getId() );
+                }
+            }
+            group.setFirst( direction, rel.getId() );
+            group.setCount( direction, group.getCount( direction ) + 1 );
+            neoStore.getRelationshipGroupStore().updateRecord( group );
+        }
+        for ( RelationshipRecord rel : chain )
+        {
+            neoStore.getRelationshipStore().updateRecord( rel );
+        }
+    }
+
+    private RelationshipGroupRecord getOrCreateGroup( NodeRecord node, int type )
+    {
+        RelationshipGroupStore groupStore = neoStore.getRelationshipGroupStore();
+        RelationshipGroupRecord previous = null;
+        long groupId = node.getFirstGroup();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = groupStore.getRecord( groupId );
+            if ( group.getType() == type )
+            {
+                return group;
+            }
+            if ( group.getType() > type )
+            {
+                break;
+            }
+            previous = group;
+            groupId = group.getNext();
+        }
+        RelationshipGroupRecord group = new RelationshipGroupRecord( groupStore.nextId(), type, node.getId() );
+        group.setInUse( true );
+        group.setCreated();
+        group.setNext( groupId );
+        groupStore.updateRecord( group );
+        if ( previous == null )
+        {
+            node.setFirstGroup( group.getId() );
+        }
+        else
+        {
+            previous.setNext( group.getId() );
+            groupStore.updateRecord( previous );
+        }
+        return group;
+    }
+
+    private static DirectionWrapper chainOf( RelationshipRecord rel, long nodeId )
+    {
+        if ( rel.getFirstNode() == rel.getSecondNode() )
+        {
+            return DirectionWrapper.BOTH;
+        }
+        return rel.getFirstNode() == nodeId ? DirectionWrapper.OUTGOING : DirectionWrapper.INCOMING;
+    }
+
+    private static void setNextRel( RelationshipRecord rel, long nodeId, long nextRel )
+    {
+        if ( rel.getFirstNode() == nodeId )
+        {
+            rel.setFirstNextRel( nextRel );
+        }
+        if ( rel.getSecondNode() == nodeId )
+        {
+            rel.setSecondNextRel( nextRel );
+        }
+    }
+
+    private static boolean setPrevRel( RelationshipRecord rel, long nodeId, long prevRel )
+    {
+        boolean changed = false;
+        if ( rel.getFirstNode() == nodeId )
+        {
+            rel.setFirstPrevRel( prevRel );
+            changed = true;
+        }
+        if ( rel.getSecondNode() == nodeId )
+        {
+            rel.setSecondPrevRel( prevRel );
+            changed = true;
+        }
+        return changed;
+    }
+}
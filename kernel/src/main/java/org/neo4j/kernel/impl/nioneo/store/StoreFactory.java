@@ -28,6 +28,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.neo4j.helpers.UTF8;
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.ConfigProxy;
 import org.neo4j.kernel.IdGeneratorFactory;
 import org.neo4j.kernel.IdType;
@@ -88,9 +89,21 @@ public class StoreFactory
                 newRelationshipTypeStore(fileName + ".relationshiptypestore.db"),
                 newPropertyStore(fileName + ".propertystore.db"),
                 newRelationshipStore(fileName + ".relationshipstore.db"),
+                newRelationshipGroupStore(fileName + ".relationshipgroupstore.db"),
                 newNodeStore(fileName + ".nodestore.db"));
     }
 
+    /**
+     * Stores of the version before relationships of dense nodes were grouped
+     * lack the group and node extension stores, they get them through an
+     * upgrade. Opened read only they go without them, they can't have any
+     * dense nodes.
+     */
+    private boolean readOnlyStoreLacks( String fileName )
+    {
+        return Boolean.parseBoolean( config.get( Config.READ_ONLY ) ) && !fileSystemAbstraction.fileExists( fileName );
+    }
+
     private void tryToUpgradeStores( String fileName )
     {
         new StoreUpgrader(config, new ConfigMapUpgradeConfiguration(config),
@@ -134,9 +147,28 @@ public class StoreFactory
         return new DynamicArrayStore( s, ConfigProxy.config(config, DynamicArrayStore.Configuration.class), IdType.ARRAY_BLOCK, idGeneratorFactory, fileSystemAbstraction, stringLogger);
     }
 
+    private RelationshipGroupStore newRelationshipGroupStore(String s)
+    {
+        if ( readOnlyStoreLacks( s ) )
+        {
+            return null;
+        }
+        return new RelationshipGroupStore( s, ConfigProxy.config(config, RelationshipGroupStore.Configuration.class), idGeneratorFactory, fileSystemAbstraction, stringLogger);
+    }
+
+    private NodeExtensionStore newNodeExtensionStore(String s)
+    {
+        if ( readOnlyStoreLacks( s ) )
+        {
+            return null;
+        }
+        return new NodeExtensionStore( s, ConfigProxy.config(config, NodeExtensionStore.Configuration.class), idGeneratorFactory, fileSystemAbstraction, stringLogger);
+    }
+
     private NodeStore newNodeStore(String s)
     {
-        return new NodeStore( s, ConfigProxy.config(config, NodeStore.Configuration.class), idGeneratorFactory, fileSystemAbstraction, stringLogger );
+        NodeExtensionStore extensionStore = newNodeExtensionStore(s + ".extensions");
+        return new NodeStore( s, ConfigProxy.config(config, NodeStore.Configuration.class), idGeneratorFactory, fileSystemAbstraction, stringLogger, extensionStore );
     }
 
     public NeoStore createNeoStore(String fileName)
@@ -149,6 +181,7 @@ public class StoreFactory
         createEmptyStore( fileName, buildTypeDescriptorAndVersion( NeoStore.TYPE_DESCRIPTOR ) );
         createNodeStore(fileName + ".nodestore.db");
         createRelationshipStore(fileName + ".relationshipstore.db");
+        createRelationshipGroupStore(fileName + ".relationshipgroupstore.db");
         createPropertyStore(fileName + ".propertystore.db");
         createRelationshipTypeStore(fileName + ".relationshiptypestore.db");
 /*
@@ -185,6 +218,7 @@ public class StoreFactory
     private void createNodeStore( String fileName )
     {
         createEmptyStore( fileName, buildTypeDescriptorAndVersion( NodeStore.TYPE_DESCRIPTOR ) );
+        createEmptyStore( fileName + ".extensions", buildTypeDescriptorAndVersion( NodeExtensionStore.TYPE_DESCRIPTOR ) );
         NodeStore store = newNodeStore( fileName );
         NodeRecord nodeRecord = new NodeRecord( store.nextId(), Record.NO_NEXT_RELATIONSHIP.intValue(), Record.NO_NEXT_PROPERTY.intValue() );
         nodeRecord.setInUse( true );
@@ -207,6 +241,32 @@ public class StoreFactory
         createEmptyStore( fileName, buildTypeDescriptorAndVersion( RelationshipStore.TYPE_DESCRIPTOR )  );
     }
 
+    /**
+     * Adds empty relationship group and node extension stores to the store
+     * contained in <CODE>fileName</CODE>, for an upgrade of a store from
+     * before relationships of dense nodes were grouped.
+     *
+     * @param fileName
+     *            File name of the neo store to add them to
+     */
+    public void createRelationshipGroupStores( String fileName )
+    {
+        createEmptyStore( fileName + ".nodestore.db.extensions", buildTypeDescriptorAndVersion( NodeExtensionStore.TYPE_DESCRIPTOR ) );
+        createRelationshipGroupStore( fileName + ".relationshipgroupstore.db" );
+    }
+
+    /**
+     * Creates a new relationship group store contained in
+     * <CODE>fileName</CODE>.
+     *
+     * @param fileName
+     *            File name of the new relationship group store
+     */
+    private void createRelationshipGroupStore( String fileName )
+    {
+        createEmptyStore( fileName, buildTypeDescriptorAndVersion( RelationshipGroupStore.TYPE_DESCRIPTOR ) );
+    }
+
     /**
      * Creates a new property store contained in <CODE>fileName</CODE> If
      * filename is <CODE>null</CODE> or the file already exists an
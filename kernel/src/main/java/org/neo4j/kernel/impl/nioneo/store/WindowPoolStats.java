@@ -32,9 +32,17 @@ public class WindowPoolStats
     private final int hitCount;
     private final int missCount;
     private final int oomCount;
+
+    private final long[] mappedRegions;
     
     public WindowPoolStats( String name, long memAvail, long memUsed, int windowCount,
             int windowSize, int hitCount, int missCount, int oomCount )
+    {
+        this( name, memAvail, memUsed, windowCount, windowSize, hitCount, missCount, oomCount, new long[0] );
+    }
+
+    public WindowPoolStats( String name, long memAvail, long memUsed, int windowCount,
+            int windowSize, int hitCount, int missCount, int oomCount, long[] mappedRegions )
     {
         this.name = name;
         this.memAvail = memAvail;
@@ -44,6 +52,7 @@ public class WindowPoolStats
         this.hitCount = hitCount;
         this.missCount = missCount;
         this.oomCount = oomCount;
+        this.mappedRegions = mappedRegions;
     }
     
     public String getName()
@@ -85,4 +94,13 @@ public class WindowPoolStats
     {
         return oomCount;
     }
+
+    /**
+     * @return the file positions, in bytes, of the windows currently mapped
+     * into memory, each spanning {@link #getWindowSize()} bytes.
+     */
+    public long[] getMappedRegions()
+    {
+        return mappedRegions;
+    }
 }
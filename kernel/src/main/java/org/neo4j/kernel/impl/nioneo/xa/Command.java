@@ -37,12 +37,15 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeStore;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
 import org.neo4j.kernel.impl.transaction.xaframework.XaCommand;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 
 /**
  * Command implementations for all the commands that can be performed on a Neo
@@ -286,6 +289,11 @@ public abstract class Command extends XaCommand
     private static final byte REL_TYPE_COMMAND = (byte) 4;
     private static final byte PROP_INDEX_COMMAND = (byte) 5;
     private static final byte NEOSTORE_COMMAND = (byte) 6;
+    private static final byte REL_GROUP_COMMAND = (byte) 7;
+
+    // set in the in use byte of a node command followed by the node's first
+    // relationship group and relationship count
+    private static final byte NODE_EXTENSION = (byte) 2;
 
     static class NodeCommand extends Command
     {
@@ -342,6 +350,11 @@ public abstract class Command extends XaCommand
         {
             byte inUse = record.inUse() ? Record.IN_USE.byteValue()
                 : Record.NOT_IN_USE.byteValue();
+            boolean extension = record.inUse() && record.getRelCount() != NodeRecord.UNKNOWN_REL_COUNT;
+            if ( extension )
+            {
+                inUse |= NODE_EXTENSION;
+            }
             buffer.put( NODE_COMMAND );
             buffer.putLong( record.getId() );
             buffer.put( inUse );
@@ -350,6 +363,10 @@ public abstract class Command extends XaCommand
                 buffer.putLong( record.getNextRel() ).putLong(
                     record.getNextProp() );
             }
+            if ( extension )
+            {
+                buffer.putLong( record.getFirstGroup() ).putInt( record.getRelCount() );
+            }
         }
 
         public static Command readCommand( NeoStore neoStore,
@@ -366,11 +383,16 @@ public abstract class Command extends XaCommand
             long id = buffer.getLong();
             byte inUseFlag = buffer.get();
             boolean inUse = false;
+            boolean extension = ( inUseFlag & NODE_EXTENSION ) != 0;
+            if ( extension )
+            {
+                inUseFlag &= ~NODE_EXTENSION;
+            }
             if ( inUseFlag == Record.IN_USE.byteValue() )
             {
                 inUse = true;
             }
-            else if ( inUseFlag != Record.NOT_IN_USE.byteValue() )
+            else if ( inUseFlag != Record.NOT_IN_USE.byteValue() || extension )
             {
                 throw new IOException( "Illegal in use flag: " + inUseFlag );
             }
@@ -378,13 +400,18 @@ public abstract class Command extends XaCommand
             if ( inUse )
             {
                 buffer.clear();
-                buffer.limit( 16 );
+                buffer.limit( extension ? 28 : 16 );
                 if ( byteChannel.read( buffer ) != buffer.limit() )
                 {
                     return null;
                 }
                 buffer.flip();
                 record = new NodeRecord( id, buffer.getLong(), buffer.getLong() );
+                if ( extension )
+                {
+                    record.setFirstGroup( buffer.getLong() );
+                    record.setRelCount( buffer.getInt() );
+                }
             }
             else record = new NodeRecord( id, Record.NO_NEXT_RELATIONSHIP.intValue(), Record.NO_NEXT_PROPERTY.intValue() );
             record.setInUse( inUse );
@@ -550,6 +577,135 @@ public abstract class Command extends XaCommand
         }
     }
     
+    static class RelationshipGroupCommand extends Command
+    {
+        private final RelationshipGroupRecord record;
+        private final RelationshipGroupStore store;
+
+        RelationshipGroupCommand( RelationshipGroupStore store, RelationshipGroupRecord record )
+        {
+            super( record.getId() );
+            this.record = record;
+            this.store = store;
+        }
+
+        @Override
+        public void accept( CommandRecordVisitor visitor )
+        {
+            visitor.visitRelationshipGroup( record );
+        }
+
+        @Override
+        boolean isCreated()
+        {
+            return record.isCreated();
+        }
+
+        @Override
+        boolean isDeleted()
+        {
+            return !record.inUse();
+        }
+
+        @Override
+        public void execute()
+        {
+            if ( isRecovered() )
+            {
+                logger.fine( this.toString() );
+                store.updateRecord( record, true );
+            }
+            else
+            {
+                store.updateRecord( record );
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return record.toString();
+        }
+
+        @Override
+        public void writeToFile( LogBuffer buffer ) throws IOException
+        {
+            byte inUse = record.inUse() ? Record.IN_USE.byteValue()
+                : Record.NOT_IN_USE.byteValue();
+            buffer.put( REL_GROUP_COMMAND );
+            buffer.putLong( record.getId() );
+            buffer.put( inUse );
+            if ( record.inUse() )
+            {
+                buffer.putInt( record.getType() ).putLong( record.getOwningNode() ).putLong( record.getNext() )
+                    .putLong( record.getFirstOut() ).putLong( record.getFirstIn() ).putLong( record.getFirstLoop() )
+                    .putInt( record.getCount( DirectionWrapper.OUTGOING ) )
+                    .putInt( record.getCount( DirectionWrapper.INCOMING ) )
+                    .putInt( record.getCount( DirectionWrapper.BOTH ) );
+            }
+        }
+
+        public static Command readCommand( NeoStore neoStore,
+            ReadableByteChannel byteChannel, ByteBuffer buffer )
+            throws IOException
+        {
+            buffer.clear();
+            buffer.limit( 9 );
+            if ( byteChannel.read( buffer ) != buffer.limit() )
+            {
+                return null;
+            }
+            buffer.flip();
+            long id = buffer.getLong();
+            byte inUseFlag = buffer.get();
+            boolean inUse = false;
+            if ( inUseFlag == Record.IN_USE.byteValue() )
+            {
+                inUse = true;
+            }
+            else if ( inUseFlag != Record.NOT_IN_USE.byteValue() )
+            {
+                throw new IOException( "Illegal in use flag: " + inUseFlag );
+            }
+            RelationshipGroupRecord record;
+            if ( inUse )
+            {
+                buffer.clear();
+                buffer.limit( 56 );
+                if ( byteChannel.read( buffer ) != buffer.limit() )
+                {
+                    return null;
+                }
+                buffer.flip();
+                record = new RelationshipGroupRecord( id, buffer.getInt(), buffer.getLong() );
+                record.setNext( buffer.getLong() );
+                record.setFirstOut( buffer.getLong() );
+                record.setFirstIn( buffer.getLong() );
+                record.setFirstLoop( buffer.getLong() );
+                record.setCount( DirectionWrapper.OUTGOING, buffer.getInt() );
+                record.setCount( DirectionWrapper.INCOMING, buffer.getInt() );
+                record.setCount( DirectionWrapper.BOTH, buffer.getInt() );
+            }
+            else
+            {
+                record = new RelationshipGroupRecord( id, -1, -1 );
+            }
+            record.setInUse( inUse );
+            return new RelationshipGroupCommand( neoStore == null ? null : neoStore.getRelationshipGroupStore(),
+                record );
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( !(o instanceof RelationshipGroupCommand) )
+            {
+                return false;
+            }
+            return getKey() == ((Command) o).getKey();
+        }
+    }
+
     static class NeoStoreCommand extends Command
     {
         private final NeoStoreRecord record;
@@ -1100,6 +1256,8 @@ public abstract class Command extends XaCommand
                     byteChannel, buffer );
             case NEOSTORE_COMMAND:
                 return NeoStoreCommand.readCommand( neoStore, byteChannel, buffer );
+            case REL_GROUP_COMMAND:
+                return RelationshipGroupCommand.readCommand( neoStore, byteChannel, buffer );
             case NONE: return null;
             default:
                 throw new IOException( "Unknown command type[" + commandType
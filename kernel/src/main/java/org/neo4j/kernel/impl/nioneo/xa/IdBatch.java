@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.xa;
+
+import java.util.Arrays;
+
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
+import org.neo4j.kernel.impl.nioneo.store.IdRange;
+
+/**
+ * Hands out ids of one store to a single transaction from batches claimed
+ * with {@link CommonAbstractStore#nextIdBatch(int)}, so that a transaction
+ * creating many records goes to the shared id generator once per batch
+ * instead of once per record. The first id is claimed on its own and the
+ * batches then double in size up to {@link #MAX_BATCH_SIZE}, so that a
+ * transaction creating a record or two doesn't claim more than it uses. Ids
+ * left when the transaction ends are handed back with {@link #returnUnused()}.
+ */
+class IdBatch
+{
+    static final int MAX_BATCH_SIZE = 1024;
+
+    private final CommonAbstractStore store;
+    private int batchSize = 1;
+    private long[] defragIds;
+    private int defragCursor;
+    private long nextInRange;
+    private long rangeEnd;
+
+    IdBatch( CommonAbstractStore store )
+    {
+        this.store = store;
+    }
+
+    long nextId()
+    {
+        while ( true )
+        {
+            if ( defragIds != null && defragCursor < defragIds.length )
+            {
+                return defragIds[defragCursor++];
+            }
+            if ( nextInRange < rangeEnd )
+            {
+                return nextInRange++;
+            }
+            if ( batchSize == 1 )
+            {
+                batchSize = 2;
+                return store.nextId();
+            }
+            IdRange range = store.nextIdBatch( batchSize );
+            batchSize = Math.min( batchSize * 2, MAX_BATCH_SIZE );
+            defragIds = range.getDefragIds();
+            defragCursor = 0;
+            nextInRange = range.getRangeStart();
+            rangeEnd = nextInRange + range.getRangeLength();
+        }
+    }
+
+    void returnUnused()
+    {
+        long[] unusedDefragIds = defragIds == null ? new long[0] :
+                Arrays.copyOfRange( defragIds, defragCursor, defragIds.length );
+        int unusedInRange = (int) ( rangeEnd - nextInRange );
+        if ( unusedDefragIds.length > 0 || unusedInRange > 0 )
+        {
+            store.returnIdBatch( new IdRange( unusedDefragIds, nextInRange, unusedInRange ) );
+        }
+        batchSize = 1;
+        defragIds = null;
+        nextInRange = rangeEnd = 0;
+    }
+}
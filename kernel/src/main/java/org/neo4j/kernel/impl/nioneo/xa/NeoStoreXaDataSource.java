@@ -93,10 +93,15 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         String logical_log();
 
         boolean intercept_committing_transactions(boolean def);
+
+        boolean parallel_recovery(boolean def);
+
+        int tx_state_spill_threshold(int def);
     }
 
     public static final byte BRANCH_ID[] = UTF8.encode( "414141" );
     public static final String LOGICAL_LOG_DEFAULT_NAME = "nioneo_logical.log";
+    private static final int DEFAULT_TX_STATE_SPILL_THRESHOLD = 100000;
 
     private static Logger logger = Logger.getLogger(
         NeoStoreXaDataSource.class.getName() );
@@ -108,12 +113,17 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
     private final LockManager lockManager;
     private final LockReleaser lockReleaser;
     private final String storeDir;
+    private final FileSystemAbstraction fileSystem;
     private final boolean readOnly;
+    private final int txStateSpillThreshold;
 
     private final List<Pair<TransactionInterceptorProvider, Object>> providers;
 
     private boolean logApplied = false;
 
+    // set while the logical log is recovered on startup
+    private volatile RecoveryApplier recoveryApplier;
+
     private final StringLogger msgLog;
 
     private enum Diagnostics implements DiagnosticsExtractor<NeoStoreXaDataSource>
@@ -188,8 +198,10 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         this.providers = providers;
 
         readOnly = conf.read_only(false);
+        txStateSpillThreshold = conf.tx_state_spill_threshold( DEFAULT_TX_STATE_SPILL_THRESHOLD );
         this.lockManager = lockManager;
         this.lockReleaser = lockReleaser;
+        this.fileSystem = fileSystem;
         msgLog = stringLogger;
         storeDir = conf.store_dir();
         String store = conf.neo_store();
@@ -219,13 +231,20 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         {
             if ( !readOnly )
             {
+                SpillingRecordMap.deleteLeftOverFiles( new File( storeDir ) );
+                if ( conf.parallel_recovery( true ) )
+                {
+                    recoveryApplier = new RecoveryApplier();
+                }
                 neoStore.setRecoveredStatus( true );
                 try
                 {
                     xaContainer.openLogicalLog();
+                    closeRecoveryApplier();
                 }
                 finally
                 {
+                    stopRecoveryApplier();
                     neoStore.setRecoveredStatus( false );
                 }
             }
@@ -354,8 +373,49 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
 
             TransactionInterceptor first = TransactionInterceptorProvider.resolveChain(
                     providers, NeoStoreXaDataSource.this, dependencyResolver );
-            return new InterceptingWriteTransaction( identifier,
+            WriteTransaction tx = new InterceptingWriteTransaction( identifier,
                     getLogicalLog(), neoStore, lockReleaser, lockManager, first );
+            tx.setRecoveryApplier( recoveryApplier );
+            return tx;
+        }
+    }
+
+    /**
+     * Waits for the records of transactions recovered so far to be written
+     * and brings the id generators up to date with them. Transactions
+     * recovered after this are applied as they are read.
+     */
+    private void closeRecoveryApplier()
+    {
+        RecoveryApplier applier = recoveryApplier;
+        if ( applier == null )
+        {
+            return;
+        }
+        recoveryApplier = null;
+        applier.close();
+        neoStore.updateIdGenerators();
+    }
+
+    /**
+     * Stops the lanes of the recovery applier if recovery failed before it
+     * got closed, without hiding that failure.
+     */
+    private void stopRecoveryApplier()
+    {
+        RecoveryApplier applier = recoveryApplier;
+        if ( applier == null )
+        {
+            return;
+        }
+        recoveryApplier = null;
+        try
+        {
+            applier.close();
+        }
+        catch ( RuntimeException e )
+        {
+            msgLog.logMessage( "Failed to apply recovered transactions after recovery failed", e );
         }
     }
 
@@ -364,13 +424,17 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         @Override
         public XaTransaction create( int identifier )
         {
-            return new WriteTransaction( identifier, getLogicalLog(), neoStore,
+            WriteTransaction tx = new WriteTransaction( identifier, getLogicalLog(), neoStore,
                 lockReleaser, lockManager );
+            tx.setRecoveryApplier( recoveryApplier );
+            tx.setRecordSpillThreshold( txStateSpillThreshold, new File( storeDir ), fileSystem );
+            return tx;
         }
 
         @Override
         public void recoveryComplete()
         {
+            closeRecoveryApplier();
             logger.fine( "Recovery complete, "
                 + "all transactions have been resolved" );
             logger.fine( "Rebuilding id generators as needed. "
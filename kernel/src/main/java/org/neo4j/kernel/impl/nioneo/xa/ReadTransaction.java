@@ -20,6 +20,7 @@
 package org.neo4j.kernel.impl.nioneo.xa;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumMap;
 import java.util.LinkedList;
@@ -43,6 +44,8 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyIndexStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.persistence.NeoStoreTransaction;
@@ -95,19 +98,187 @@ class ReadTransaction implements NeoStoreTransaction
     @Override
     public long getRelationshipChainPosition( long nodeId )
     {
-        return getNodeStore().getRecord( nodeId ).getNextRel();
+        return getRelationshipChainPosition( getNodeStore().getRecord( nodeId ), neoStore );
     }
 
     @Override
     public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
             long nodeId, long position )
     {
-        return getMoreRelationships( nodeId, position, getRelGrabSize(), getRelationshipStore() );
+        return getMoreRelationships( nodeId, position, getRelGrabSize(), neoStore );
+    }
+
+    @Override
+    public long getRelationshipChainPosition( long nodeId, int type, DirectionWrapper direction )
+    {
+        return getRelationshipChainPosition( getNodeStore().getRecord( nodeId ), type, direction, neoStore );
+    }
+
+    @Override
+    public Pair<Iterable<RelationshipRecord>, Long> getMoreRelationships( long nodeId, long position, int type,
+            DirectionWrapper direction )
+    {
+        return getMoreRelationships( nodeId, position, type, direction, getRelGrabSize(), getRelationshipStore() );
+    }
+
+    @Override
+    public int getRelationshipCount( long nodeId, int type, DirectionWrapper direction )
+    {
+        NodeRecord node = getNodeStore().loadLightNode( nodeId );
+        if ( node == null || !node.isDense() )
+        {
+            return -1;
+        }
+        if ( type < 0 && direction == DirectionWrapper.BOTH )
+        {
+            return node.getRelCount();
+        }
+        RelationshipGroupStore groupStore = neoStore.getRelationshipGroupStore();
+        int count = 0;
+        long groupId = node.getFirstGroup();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = groupStore.forceGetRecord( groupId );
+            if ( group.getOwningNode() != nodeId || ( type >= 0 && group.inUse() && group.getType() > type ) )
+            {
+                break;
+            }
+            if ( group.inUse() && ( type < 0 || group.getType() == type ) )
+            {
+                count += getRelationshipCount( group, direction );
+            }
+            groupId = group.getNext();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of relationships in <CODE>group</CODE> in the given
+     *         direction, loops counting for both directions.
+     */
+    static int getRelationshipCount( RelationshipGroupRecord group, DirectionWrapper direction )
+    {
+        int loops = group.getCount( DirectionWrapper.BOTH );
+        switch ( direction )
+        {
+        case OUTGOING:
+            return group.getCount( DirectionWrapper.OUTGOING ) + loops;
+        case INCOMING:
+            return group.getCount( DirectionWrapper.INCOMING ) + loops;
+        default:
+            return group.getCount( DirectionWrapper.OUTGOING ) + group.getCount( DirectionWrapper.INCOMING ) + loops;
+        }
+    }
+
+    // the order in which the chains of a relationship group are read
+    private static final DirectionWrapper[] GROUP_CHAINS = new DirectionWrapper[] {
+            DirectionWrapper.OUTGOING, DirectionWrapper.INCOMING, DirectionWrapper.BOTH };
+
+    static long getRelationshipChainPosition( NodeRecord node, NeoStore neoStore )
+    {
+        if ( !node.isDense() )
+        {
+            return node.getNextRel();
+        }
+        return firstChainFrom( node.getId(), node.getFirstGroup(), -1, null,
+                neoStore.getRelationshipGroupStore() );
+    }
+
+    static long getRelationshipChainPosition( NodeRecord node, int type, DirectionWrapper direction,
+            NeoStore neoStore )
+    {
+        if ( !node.isDense() )
+        {
+            // the whole chain, which getMoreRelationships filters
+            return node.getNextRel();
+        }
+        RelationshipGroupStore groupStore = neoStore.getRelationshipGroupStore();
+        long groupId = node.getFirstGroup();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = groupStore.forceGetRecord( groupId );
+            if ( group.getOwningNode() != node.getId() || ( group.inUse() && group.getType() > type ) )
+            {
+                break;
+            }
+            if ( group.inUse() && group.getType() == type )
+            {
+                return group.getFirst( direction );
+            }
+            groupId = group.getNext();
+        }
+        return Record.NO_NEXT_RELATIONSHIP.intValue();
+    }
+
+    /**
+     * Returns the first relationship of the first non-empty chain in the
+     * groups starting at <CODE>groupId</CODE>, skipping the chains up to and
+     * including the one for <CODE>afterType</CODE> and
+     * <CODE>afterDirection</CODE> if that is non-null.
+     */
+    private static long firstChainFrom( long nodeId, long groupId, int afterType,
+            DirectionWrapper afterDirection, RelationshipGroupStore groupStore )
+    {
+        int afterChain = afterDirection == null ? -1 : Arrays.asList( GROUP_CHAINS ).indexOf( afterDirection );
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            // groups unlinked meanwhile are not in use, but still point onwards
+            RelationshipGroupRecord group = groupStore.forceGetRecord( groupId );
+            if ( group.getOwningNode() != nodeId )
+            {
+                break;
+            }
+            for ( int i = 0; group.inUse() && i < GROUP_CHAINS.length; i++ )
+            {
+                if ( group.getType() < afterType || ( group.getType() == afterType && i <= afterChain ) )
+                {
+                    continue;
+                }
+                long first = group.getFirst( GROUP_CHAINS[i] );
+                if ( first != Record.NO_NEXT_RELATIONSHIP.intValue() )
+                {
+                    return first;
+                }
+            }
+            groupId = group.getNext();
+        }
+        return Record.NO_NEXT_RELATIONSHIP.intValue();
+    }
+
+    /**
+     * @return the chain of <CODE>nodeId</CODE> which <CODE>rel</CODE> belongs
+     *         to if the node is dense, {@link DirectionWrapper#BOTH} meaning
+     *         loops.
+     */
+    static DirectionWrapper directionOf( RelationshipRecord rel, long nodeId )
+    {
+        if ( rel.getFirstNode() == rel.getSecondNode() )
+        {
+            return DirectionWrapper.BOTH;
+        }
+        return rel.getFirstNode() == nodeId ? DirectionWrapper.OUTGOING : DirectionWrapper.INCOMING;
+    }
+
+    static long nextRelOf( RelationshipRecord rel, long nodeId )
+    {
+        if ( rel.getFirstNode() == nodeId )
+        {
+            return rel.getFirstNextRel();
+        }
+        else if ( rel.getSecondNode() == nodeId )
+        {
+            return rel.getSecondNextRel();
+        }
+        throw new InvalidRecordException( "Node[" + nodeId +
+            "] is neither firstNode[" + rel.getFirstNode() +
+            "] nor secondNode[" + rel.getSecondNode() + "] for Relationship[" + rel.getId() + "]" );
     }
 
     static Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
-            long nodeId, long position, int grabSize, RelationshipStore relStore )
+            long nodeId, long position, int grabSize, NeoStore neoStore )
     {
+        RelationshipStore relStore = neoStore.getRelationshipStore();
+        RelationshipGroupStore groupStore = neoStore.getRelationshipGroupStore();
         // initialCapacity=grabSize saves the lists the trouble of resizing
         List<RelationshipRecord> out = new ArrayList<RelationshipRecord>();
         List<RelationshipRecord> in = new ArrayList<RelationshipRecord>();
@@ -154,22 +325,45 @@ class ReadTransaction implements NeoStoreTransaction
                 i--;
             }
 
-            if ( firstNode == nodeId )
+            position = nextRelOf( relRecord, nodeId );
+            if ( position == Record.NO_NEXT_RELATIONSHIP.intValue() && groupStore != null )
             {
-                position = relRecord.getFirstNextRel();
+                // the chains of a dense node follow one another in group order
+                NodeRecord node = neoStore.getNodeStore().loadLightNode( nodeId );
+                if ( node != null && node.isDense() )
+                {
+                    position = firstChainFrom( nodeId, node.getFirstGroup(), relRecord.getType(),
+                            directionOf( relRecord, nodeId ), groupStore );
+                }
             }
-            else if ( secondNode == nodeId )
+        }
+        return Pair.of( result, position );
+    }
+
+    /**
+     * Reads relationships of one type and direction, {@link DirectionWrapper#BOTH}
+     * meaning loops, from the chain at <CODE>position</CODE>. That is all of
+     * them for a dense node, the chain of a sparse node is filtered.
+     */
+    static Pair<Iterable<RelationshipRecord>, Long> getMoreRelationships( long nodeId, long position,
+            int type, DirectionWrapper direction, int grabSize, RelationshipStore relStore )
+    {
+        List<RelationshipRecord> result = new ArrayList<RelationshipRecord>();
+        while ( result.size() < grabSize && position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipRecord relRecord = relStore.getChainRecord( position );
+            if ( relRecord == null )
             {
-                position = relRecord.getSecondNextRel();
+                // return what we got so far
+                return Pair.<Iterable<RelationshipRecord>, Long>of( result, position );
             }
-            else
+            if ( relRecord.inUse() && relRecord.getType() == type && directionOf( relRecord, nodeId ) == direction )
             {
-                throw new InvalidRecordException( "Node[" + nodeId +
-                    "] is neither firstNode[" + firstNode +
-                    "] nor secondNode[" + secondNode + "] for Relationship[" + relRecord.getId() + "]" );
+                result.add( relRecord );
             }
+            position = nextRelOf( relRecord, nodeId );
         }
-        return Pair.of( result, position );
+        return Pair.<Iterable<RelationshipRecord>, Long>of( result, position );
     }
 
     static List<PropertyRecord> getPropertyRecordChain(
@@ -239,6 +433,18 @@ class ReadTransaction implements NeoStoreTransaction
         return loadProperties( getPropertyStore(), getNodeStore().getRecord( nodeId ).getNextProp() );
     }
     
+    @Override
+    public long nextId( Class<?> clazz )
+    {
+        throw readOnlyException();
+    }
+
+    @Override
+    public PropertyData nodeLoadProperty( long nodeId, int keyId )
+    {
+        return getPropertyStore().findLightProperty( getNodeStore().getRecord( nodeId ).getNextProp(), keyId );
+    }
+
     @Override
     public ArrayMap<Integer, PropertyData> graphLoadProperties( boolean light )
     {
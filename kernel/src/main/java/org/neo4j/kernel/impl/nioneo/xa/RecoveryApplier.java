@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.xa;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.neo4j.kernel.impl.nioneo.store.UnderlyingStorageException;
+
+/**
+ * Applies the record commands of recovered transactions on one thread per
+ * store while the logical log is still being read. Node, relationship,
+ * relationship group and property commands (the latter including their
+ * string and array records) each go to their own lane, so every lane writes
+ * to a single store and applies its commands in log order, which keeps the
+ * order of writes to any one record. Once the log has been scanned
+ * {@link #close()} waits for all lanes to catch up.
+ * <p>
+ * This may only be used while recovering on startup, nothing may read from
+ * the stores before the lanes are drained.
+ */
+class RecoveryApplier
+{
+    private static final int LANE_CAPACITY = 4096;
+
+    private final Lane nodes = new Lane( "node" );
+    private final Lane relationships = new Lane( "relationship" );
+    private final Lane relationshipGroups = new Lane( "relationship group" );
+    private final Lane properties = new Lane( "property" );
+    private final Lane[] lanes = { nodes, relationships, relationshipGroups, properties };
+    private volatile boolean open = true;
+
+    boolean isOpen()
+    {
+        return open;
+    }
+
+    void apply( Command.NodeCommand command )
+    {
+        nodes.add( command );
+    }
+
+    void apply( Command.RelationshipCommand command )
+    {
+        relationships.add( command );
+    }
+
+    void apply( Command.RelationshipGroupCommand command )
+    {
+        relationshipGroups.add( command );
+    }
+
+    void apply( Command.PropertyCommand command )
+    {
+        properties.add( command );
+    }
+
+    /**
+     * Waits for all commands handed out so far to be applied.
+     *
+     * @throws UnderlyingStorageException if a command failed to apply.
+     */
+    void awaitApplied()
+    {
+        for ( Lane lane : lanes )
+        {
+            lane.await();
+        }
+        for ( Lane lane : lanes )
+        {
+            lane.checkFailure();
+        }
+    }
+
+    /**
+     * Waits for all commands to be applied and stops the lanes.
+     *
+     * @throws UnderlyingStorageException if a command failed to apply.
+     */
+    void close()
+    {
+        if ( !open )
+        {
+            return;
+        }
+        open = false;
+        try
+        {
+            awaitApplied();
+        }
+        finally
+        {
+            for ( Lane lane : lanes )
+            {
+                lane.stop();
+            }
+        }
+    }
+
+    private static class Lane implements Runnable
+    {
+        private static final Object STOP = new Object();
+
+        private final String name;
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>( LANE_CAPACITY );
+        private Thread thread;
+        private volatile Throwable failure;
+
+        Lane( String name )
+        {
+            this.name = name;
+        }
+
+        void add( Command command )
+        {
+            if ( thread == null )
+            {
+                thread = new Thread( this, "Recovery " + name + " applier" );
+                thread.setDaemon( true );
+                thread.start();
+            }
+            put( command );
+        }
+
+        void await()
+        {
+            if ( thread == null )
+            {
+                return;
+            }
+            CountDownLatch applied = new CountDownLatch( 1 );
+            put( applied );
+            try
+            {
+                applied.await();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new UnderlyingStorageException( "Interrupted while waiting for recovery of " + name + "s", e );
+            }
+        }
+
+        void checkFailure()
+        {
+            if ( failure != null )
+            {
+                throw new UnderlyingStorageException( "Unable to apply recovered " + name + " record", failure );
+            }
+        }
+
+        void stop()
+        {
+            if ( thread != null )
+            {
+                put( STOP );
+                thread = null;
+            }
+        }
+
+        private void put( Object item )
+        {
+            try
+            {
+                queue.put( item );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new UnderlyingStorageException( "Interrupted while recovering " + name + "s", e );
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            while ( true )
+            {
+                Object item;
+                try
+                {
+                    item = queue.take();
+                }
+                catch ( InterruptedException e )
+                {
+                    failure = e;
+                    continue;
+                }
+                if ( item == STOP )
+                {
+                    return;
+                }
+                if ( item instanceof CountDownLatch )
+                {
+                    ((CountDownLatch) item).countDown();
+                }
+                else if ( failure == null )
+                {
+                    try
+                    {
+                        ((Command) item).execute();
+                    }
+                    catch ( Throwable e )
+                    {
+                        // keep taking commands so that recovery doesn't block, the
+                        // failure is thrown when the lane is waited for
+                        failure = e;
+                    }
+                }
+            }
+        }
+    }
+}
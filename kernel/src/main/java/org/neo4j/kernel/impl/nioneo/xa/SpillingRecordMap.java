@@ -0,0 +1,623 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.xa;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.helpers.collection.CombiningIterable;
+import org.neo4j.helpers.collection.IterableWrapper;
+import org.neo4j.helpers.collection.PrefetchingIterator;
+import org.neo4j.kernel.impl.nioneo.store.Abstract64BitRecord;
+import org.neo4j.kernel.impl.nioneo.store.DynamicRecord;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.PropertyBlock;
+import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.UnderlyingStorageException;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+
+/**
+ * The records of one kind changed by a {@link WriteTransaction}, keyed by id.
+ * Once more than a threshold of them are held in memory {@link #spill()}
+ * writes them to a temporary file in the store directory, keeping only their
+ * offsets. A spilled record asked for with {@link #get(long)} is read back
+ * into memory, so it can be changed again, while {@link #values()} reads
+ * spilled records one at a time without keeping them. Once more of the file
+ * is taken by records read back or replaced than by those still spilled, the
+ * next spill moves the latter to a new file. The file is deleted by
+ * {@link #clear()} and if writing to it fails.
+ * <p>
+ * Spilling drops the map's references to its records, so it may only be done
+ * when the transaction holds no records outside of its maps, i.e. in between
+ * operations.
+ */
+class SpillingRecordMap<R extends Abstract64BitRecord>
+{
+    private static final int WRITE_CHUNK_SIZE = 64 * 1024;
+    private static final String FILE_PREFIX = "tx-state-";
+    private static final String FILE_SUFFIX = ".tmp";
+    private static final AtomicLong nextFileNumber = new AtomicLong();
+
+    private final Map<Long,R> records = new HashMap<Long,R>();
+    private final Map<Long,Long> spilled = new HashMap<Long,Long>();
+    private final RecordFormat<R> format;
+    private int threshold;
+    private File directory;
+    private FileSystemAbstraction fileSystem;
+
+    private File file;
+    private FileChannel channel;
+    private long position;
+    // records in the file that have been read back or replaced since
+    private int garbage;
+
+    SpillingRecordMap( RecordFormat<R> format )
+    {
+        this.format = format;
+    }
+
+    /**
+     * @param threshold the number of records to keep in memory before they
+     * are spilled, 0 meaning never.
+     * @param directory the directory to spill to.
+     * @param fileSystem the file system to spill through.
+     */
+    void setThreshold( int threshold, File directory, FileSystemAbstraction fileSystem )
+    {
+        this.threshold = threshold;
+        this.directory = directory;
+        this.fileSystem = fileSystem;
+    }
+
+    /**
+     * Deletes spill files left in <CODE>directory</CODE> by transactions
+     * that never finished, f.ex. because of a crash.
+     */
+    static void deleteLeftOverFiles( File directory )
+    {
+        File[] files = directory.listFiles();
+        if ( files == null )
+        {
+            return;
+        }
+        for ( File candidate : files )
+        {
+            String name = candidate.getName();
+            if ( name.startsWith( FILE_PREFIX ) && name.endsWith( FILE_SUFFIX ) )
+            {
+                candidate.delete();
+            }
+        }
+    }
+
+    R get( long id )
+    {
+        R record = records.get( id );
+        if ( record == null && !spilled.isEmpty() )
+        {
+            Long offset = spilled.remove( id );
+            if ( offset != null )
+            {
+                record = read( channel, offset );
+                records.put( id, record );
+                garbage++;
+            }
+        }
+        return record;
+    }
+
+    void put( R record )
+    {
+        records.put( record.getId(), record );
+        if ( !spilled.isEmpty() && spilled.remove( record.getId() ) != null ) garbage++;
+    }
+
+    int size()
+    {
+        return records.size() + spilled.size();
+    }
+
+    int spilledSize()
+    {
+        return spilled.size();
+    }
+
+    Collection<R> inMemoryValues()
+    {
+        return records.values();
+    }
+
+    /**
+     * @return the spilled records in id order, each one read when reached
+     * and not kept.
+     */
+    Iterable<R> spilledValues()
+    {
+        if ( spilled.isEmpty() )
+        {
+            return java.util.Collections.emptyList();
+        }
+        final long[] ids = new long[spilled.size()];
+        int i = 0;
+        for ( Long id : spilled.keySet() )
+        {
+            ids[i++] = id;
+        }
+        Arrays.sort( ids );
+        return new Iterable<R>()
+        {
+            @Override
+            public Iterator<R> iterator()
+            {
+                return new PrefetchingIterator<R>()
+                {
+                    private int next;
+
+                    @Override
+                    protected R fetchNextOrNull()
+                    {
+                        return next < ids.length ? read( channel, spilled.get( ids[next++] ) ) : null;
+                    }
+                };
+            }
+        };
+    }
+
+    @SuppressWarnings( "unchecked" )
+    Iterable<R> values()
+    {
+        if ( spilled.isEmpty() )
+        {
+            return records.values();
+        }
+        return new CombiningIterable<R>( Arrays.<Iterable<R>>asList( records.values(), spilledValues() ) );
+    }
+
+    boolean spillIfNeeded()
+    {
+        if ( threshold > 0 && records.size() > threshold )
+        {
+            spill();
+            return true;
+        }
+        return false;
+    }
+
+    void spill()
+    {
+        boolean success = false;
+        try
+        {
+            if ( channel == null )
+            {
+                openFile();
+            }
+            else if ( garbage > spilled.size() )
+            {
+                compact();
+            }
+            append( records.values() );
+            records.clear();
+            success = true;
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( "Unable to spill transaction state to "
+                + (file != null ? file : directory), e );
+        }
+        finally
+        {
+            if ( !success )
+            {
+                // spilled records can no longer be read, which fails the transaction
+                deleteFile();
+            }
+        }
+    }
+
+    private void openFile() throws IOException
+    {
+        do
+        {
+            file = new File( directory, FILE_PREFIX + nextFileNumber.incrementAndGet() + FILE_SUFFIX );
+        }
+        while ( fileSystem.fileExists( file.getPath() ) );
+        channel = fileSystem.open( file.getPath(), "rw" );
+        position = 0;
+        garbage = 0;
+    }
+
+    /**
+     * Moves the records still spilled to a new file, leaving behind the
+     * space of those read back or replaced.
+     */
+    private void compact() throws IOException
+    {
+        File oldFile = file;
+        final FileChannel oldChannel = channel;
+        Map<Long,Long> offsets = new HashMap<Long,Long>( spilled );
+        spilled.clear();
+        try
+        {
+            openFile();
+            append( new IterableWrapper<R,Long>( offsets.values() )
+            {
+                @Override
+                protected R underlyingObjectToObject( Long offset )
+                {
+                    return read( oldChannel, offset );
+                }
+            } );
+        }
+        finally
+        {
+            oldChannel.close();
+            fileSystem.deleteFile( oldFile.getPath() );
+        }
+    }
+
+    /**
+     * Writes the records at the end of the file, keeping their offsets.
+     */
+    private void append( Iterable<R> values ) throws IOException
+    {
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream( WRITE_CHUNK_SIZE + 1024 );
+        DataOutputStream chunkOut = new DataOutputStream( chunk );
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream( 256 );
+        DataOutputStream recordOut = new DataOutputStream( recordBytes );
+        for ( R record : values )
+        {
+            recordBytes.reset();
+            format.write( record, recordOut );
+            spilled.put( record.getId(), position + chunk.size() );
+            chunkOut.writeInt( recordBytes.size() );
+            recordBytes.writeTo( chunkOut );
+            if ( chunk.size() >= WRITE_CHUNK_SIZE )
+            {
+                write( chunk );
+            }
+        }
+        write( chunk );
+    }
+
+    private void write( ByteArrayOutputStream chunk ) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap( chunk.toByteArray() );
+        while ( buffer.hasRemaining() )
+        {
+            position += channel.write( buffer, position );
+        }
+        chunk.reset();
+    }
+
+    private R read( FileChannel from, long offset )
+    {
+        if ( from == null )
+        {
+            throw new UnderlyingStorageException( "Spilled transaction state lost after failing to write it" );
+        }
+        try
+        {
+            ByteBuffer length = ByteBuffer.allocate( 4 );
+            readFully( from, length, offset );
+            ByteBuffer data = ByteBuffer.allocate( length.getInt( 0 ) );
+            readFully( from, data, offset + 4 );
+            return format.read( new DataInputStream( new ByteArrayInputStream( data.array() ) ) );
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( "Unable to read spilled transaction state from " + file, e );
+        }
+    }
+
+    private void readFully( FileChannel from, ByteBuffer buffer, long offset ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            int read = from.read( buffer, offset + buffer.position() );
+            if ( read == -1 )
+            {
+                throw new IOException( "Unexpected end of " + file + " at " + offset );
+            }
+        }
+    }
+
+    void clear()
+    {
+        records.clear();
+        spilled.clear();
+        deleteFile();
+    }
+
+    private void deleteFile()
+    {
+        if ( channel != null )
+        {
+            try
+            {
+                channel.close();
+            }
+            catch ( IOException e )
+            {
+                // the file is deleted below anyway
+            }
+            channel = null;
+        }
+        if ( file != null )
+        {
+            fileSystem.deleteFile( file.getPath() );
+            file = null;
+        }
+        position = 0;
+        garbage = 0;
+    }
+
+    /**
+     * Writes and reads every part of a record that a transaction may have
+     * changed, which unlike the logical log format includes what is only
+     * needed before the record is committed.
+     */
+    static abstract class RecordFormat<R>
+    {
+        abstract void write( R record, DataOutput out ) throws IOException;
+
+        abstract R read( DataInput in ) throws IOException;
+    }
+
+    static final RecordFormat<NodeRecord> NODES = new RecordFormat<NodeRecord>()
+    {
+        @Override
+        void write( NodeRecord record, DataOutput out ) throws IOException
+        {
+            out.writeLong( record.getId() );
+            out.writeBoolean( record.inUse() );
+            out.writeBoolean( record.isCreated() );
+            out.writeLong( record.getCommittedNextRel() );
+            out.writeLong( record.getCommittedNextProp() );
+            out.writeLong( record.getNextRel() );
+            out.writeLong( record.getNextProp() );
+            out.writeLong( record.getFirstGroup() );
+            out.writeInt( record.getRelCount() );
+        }
+
+        @Override
+        NodeRecord read( DataInput in ) throws IOException
+        {
+            long id = in.readLong();
+            boolean inUse = in.readBoolean();
+            boolean created = in.readBoolean();
+            NodeRecord record = new NodeRecord( id, in.readLong(), in.readLong() );
+            record.setInUse( inUse );
+            if ( created ) record.setCreated();
+            record.setNextRel( in.readLong() );
+            record.setNextProp( in.readLong() );
+            record.setFirstGroup( in.readLong() );
+            record.setRelCount( in.readInt() );
+            return record;
+        }
+    };
+
+    static final RecordFormat<RelationshipRecord> RELATIONSHIPS = new RecordFormat<RelationshipRecord>()
+    {
+        @Override
+        void write( RelationshipRecord record, DataOutput out ) throws IOException
+        {
+            out.writeLong( record.getId() );
+            out.writeBoolean( record.inUse() );
+            out.writeBoolean( record.isCreated() );
+            out.writeLong( record.getFirstNode() );
+            out.writeLong( record.getSecondNode() );
+            out.writeInt( record.getType() );
+            out.writeLong( record.getFirstPrevRel() );
+            out.writeLong( record.getFirstNextRel() );
+            out.writeLong( record.getSecondPrevRel() );
+            out.writeLong( record.getSecondNextRel() );
+            out.writeLong( record.getNextProp() );
+        }
+
+        @Override
+        RelationshipRecord read( DataInput in ) throws IOException
+        {
+            long id = in.readLong();
+            boolean inUse = in.readBoolean();
+            boolean created = in.readBoolean();
+            RelationshipRecord record = new RelationshipRecord( id, in.readLong(), in.readLong(), in.readInt() );
+            record.setInUse( inUse );
+            if ( created ) record.setCreated();
+            record.setFirstPrevRel( in.readLong() );
+            record.setFirstNextRel( in.readLong() );
+            record.setSecondPrevRel( in.readLong() );
+            record.setSecondNextRel( in.readLong() );
+            record.setNextProp( in.readLong() );
+            return record;
+        }
+    };
+
+    static final RecordFormat<RelationshipGroupRecord> RELATIONSHIP_GROUPS = new RecordFormat<RelationshipGroupRecord>()
+    {
+        @Override
+        void write( RelationshipGroupRecord record, DataOutput out ) throws IOException
+        {
+            out.writeLong( record.getId() );
+            out.writeBoolean( record.inUse() );
+            out.writeBoolean( record.isCreated() );
+            out.writeInt( record.getType() );
+            out.writeLong( record.getOwningNode() );
+            out.writeLong( record.getNext() );
+            for ( DirectionWrapper direction : DirectionWrapper.values() )
+            {
+                out.writeLong( record.getFirst( direction ) );
+                out.writeInt( record.getCount( direction ) );
+            }
+        }
+
+        @Override
+        RelationshipGroupRecord read( DataInput in ) throws IOException
+        {
+            long id = in.readLong();
+            boolean inUse = in.readBoolean();
+            boolean created = in.readBoolean();
+            RelationshipGroupRecord record = new RelationshipGroupRecord( id, in.readInt(), in.readLong() );
+            record.setInUse( inUse );
+            if ( created ) record.setCreated();
+            record.setNext( in.readLong() );
+            for ( DirectionWrapper direction : DirectionWrapper.values() )
+            {
+                record.setFirst( direction, in.readLong() );
+                record.setCount( direction, in.readInt() );
+            }
+            return record;
+        }
+    };
+
+    static final RecordFormat<PropertyRecord> PROPERTIES = new RecordFormat<PropertyRecord>()
+    {
+        @Override
+        void write( PropertyRecord record, DataOutput out ) throws IOException
+        {
+            out.writeLong( record.getId() );
+            out.writeBoolean( record.inUse() );
+            out.writeBoolean( record.isCreated() );
+            out.writeBoolean( record.isChanged() );
+            out.writeLong( record.getNodeId() );
+            out.writeLong( record.getRelId() );
+            out.writeLong( record.getNextProp() );
+            out.writeLong( record.getPrevProp() );
+            out.writeInt( record.getPropertyBlocks().size() );
+            for ( PropertyBlock block : record.getPropertyBlocks() )
+            {
+                out.writeBoolean( block.isCreated() );
+                long[] valueBlocks = block.getValueBlocks();
+                out.writeInt( valueBlocks == null ? -1 : valueBlocks.length );
+                if ( valueBlocks != null ) for ( long valueBlock : valueBlocks )
+                {
+                    out.writeLong( valueBlock );
+                }
+                writeDynamicRecords( block.getValueRecords(), out );
+            }
+            writeDynamicRecords( record.getDeletedRecords(), out );
+        }
+
+        private void writeDynamicRecords( Collection<DynamicRecord> records, DataOutput out ) throws IOException
+        {
+            out.writeInt( records.size() );
+            for ( DynamicRecord record : records )
+            {
+                out.writeLong( record.getId() );
+                out.writeBoolean( record.inUse() );
+                out.writeBoolean( record.isCreated() );
+                out.writeInt( record.getType() );
+                out.writeLong( record.getNextBlock() );
+                out.writeInt( record.getLength() );
+                byte[] data = record.getData();
+                out.writeInt( data == null ? -1 : data.length );
+                if ( data != null ) out.write( data );
+            }
+        }
+
+        @Override
+        PropertyRecord read( DataInput in ) throws IOException
+        {
+            PropertyRecord record = new PropertyRecord( in.readLong() );
+            record.setInUse( in.readBoolean() );
+            if ( in.readBoolean() ) record.setCreated();
+            boolean changed = in.readBoolean();
+            long nodeId = in.readLong();
+            long relId = in.readLong();
+            if ( nodeId != -1 ) record.setNodeId( nodeId );
+            else record.setRelId( relId );
+            if ( changed )
+            {
+                // only to get the flag set, the owner's id is the one already set
+                record.setChanged( nodeId != -1 ? new NodeRecord( nodeId, -1, -1 )
+                        : new RelationshipRecord( relId, -1, -1, -1 ) );
+            }
+            record.setNextProp( in.readLong() );
+            record.setPrevProp( in.readLong() );
+            int blocks = in.readInt();
+            for ( int i = 0; i < blocks; i++ )
+            {
+                PropertyBlock block = new PropertyBlock();
+                if ( in.readBoolean() ) block.setCreated();
+                int length = in.readInt();
+                if ( length != -1 )
+                {
+                    long[] valueBlocks = new long[length];
+                    for ( int j = 0; j < length; j++ )
+                    {
+                        valueBlocks[j] = in.readLong();
+                    }
+                    block.setValueBlocks( valueBlocks );
+                }
+                for ( DynamicRecord valueRecord : readDynamicRecords( in ) )
+                {
+                    block.addValueRecord( valueRecord );
+                }
+                record.addPropertyBlock( block );
+            }
+            for ( DynamicRecord deleted : readDynamicRecords( in ) )
+            {
+                record.addDeletedRecord( deleted );
+            }
+            return record;
+        }
+
+        private DynamicRecord[] readDynamicRecords( DataInput in ) throws IOException
+        {
+            DynamicRecord[] records = new DynamicRecord[in.readInt()];
+            for ( int i = 0; i < records.length; i++ )
+            {
+                DynamicRecord record = new DynamicRecord( in.readLong() );
+                record.setInUse( in.readBoolean() );
+                if ( in.readBoolean() ) record.setCreated();
+                record.setType( in.readInt() );
+                record.setNextBlock( in.readLong() );
+                int length = in.readInt();
+                int dataLength = in.readInt();
+                if ( dataLength != -1 )
+                {
+                    byte[] data = new byte[dataLength];
+                    in.readFully( data );
+                    record.setData( data );
+                }
+                record.setLength( length );
+                records[i] = record;
+            }
+            return records;
+        }
+    };
+}
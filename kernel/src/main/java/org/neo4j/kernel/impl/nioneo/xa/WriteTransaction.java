@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.nioneo.xa;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -38,9 +39,12 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.helpers.Pair;
+import org.neo4j.helpers.collection.CombiningIterable;
+import org.neo4j.helpers.collection.IterableWrapper;
 import org.neo4j.kernel.impl.core.LockReleaser;
 import org.neo4j.kernel.impl.core.PropertyIndex;
 import org.neo4j.kernel.impl.nioneo.store.DynamicRecord;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.nioneo.store.InvalidRecordException;
 import org.neo4j.kernel.impl.nioneo.store.NameData;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
@@ -56,11 +60,13 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeStore;
 import org.neo4j.kernel.impl.nioneo.xa.Command.PropertyCommand;
+import org.neo4j.kernel.impl.persistence.IdGenerationFailedException;
 import org.neo4j.kernel.impl.persistence.NeoStoreTransaction;
 import org.neo4j.kernel.impl.transaction.LockManager;
 import org.neo4j.kernel.impl.transaction.LockType;
@@ -80,9 +86,15 @@ import static org.neo4j.kernel.impl.nioneo.store.PropertyStore.encodeString;
  */
 public class WriteTransaction extends XaTransaction implements NeoStoreTransaction
 {
-    private final Map<Long,NodeRecord> nodeRecords = new HashMap<Long,NodeRecord>();
-    private final Map<Long,PropertyRecord> propertyRecords = new HashMap<Long,PropertyRecord>();
-    private final Map<Long,RelationshipRecord> relRecords = new HashMap<Long,RelationshipRecord>();
+    // spilled to disk past a threshold, see setRecordSpillThreshold
+    private final SpillingRecordMap<NodeRecord> nodeRecords =
+        new SpillingRecordMap<NodeRecord>( SpillingRecordMap.NODES );
+    private final SpillingRecordMap<PropertyRecord> propertyRecords =
+        new SpillingRecordMap<PropertyRecord>( SpillingRecordMap.PROPERTIES );
+    private final SpillingRecordMap<RelationshipRecord> relRecords =
+        new SpillingRecordMap<RelationshipRecord>( SpillingRecordMap.RELATIONSHIPS );
+    private final SpillingRecordMap<RelationshipGroupRecord> relGroupRecords =
+        new SpillingRecordMap<RelationshipGroupRecord>( SpillingRecordMap.RELATIONSHIP_GROUPS );
     private Map<Integer,RelationshipTypeRecord> relTypeRecords;
     private Map<Integer,PropertyIndexRecord> propIndexRecords;
     private NeoStoreRecord neoStoreRecord;
@@ -90,6 +102,8 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     private final ArrayList<Command.NodeCommand> nodeCommands = new ArrayList<Command.NodeCommand>();
     private final ArrayList<Command.PropertyCommand> propCommands = new ArrayList<Command.PropertyCommand>();
     private final ArrayList<Command.RelationshipCommand> relCommands = new ArrayList<Command.RelationshipCommand>();
+    private final ArrayList<Command.RelationshipGroupCommand> relGroupCommands =
+        new ArrayList<Command.RelationshipGroupCommand>();
     private ArrayList<Command.RelationshipTypeCommand> relTypeCommands;
     private ArrayList<Command.PropertyIndexCommand> propIndexCommands;
     private Command.NeoStoreCommand neoStoreCommand;
@@ -102,6 +116,15 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     private final LockManager lockManager;
     private XaConnection xaConnection;
 
+    // ids for records created in this transaction, unused ones are given back in clear()
+    private IdBatch nodeIds;
+    private IdBatch relIds;
+    private IdBatch propertyIds;
+    private IdBatch relGroupIds;
+
+    // applies recovered record commands in parallel while the log is scanned on startup
+    private RecoveryApplier recoveryApplier;
+
     WriteTransaction( int identifier, XaLogicalLog log, NeoStore neoStore,
             LockReleaser lockReleaser, LockManager lockManager )
     {
@@ -111,16 +134,48 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         this.lockManager = lockManager;
     }
 
+    void setRecoveryApplier( RecoveryApplier recoveryApplier )
+    {
+        this.recoveryApplier = recoveryApplier;
+    }
+
+    /**
+     * Lets node, relationship, relationship group and property records
+     * changed by this transaction be written through <CODE>fileSystem</CODE>
+     * to a temporary file in <CODE>directory</CODE> once more than
+     * <CODE>threshold</CODE> of one kind are held in memory, 0 meaning never. Spilled records are read back
+     * as they are needed, also while the transaction is prepared and
+     * committed. Must not be used when the commands are to be intercepted
+     * since those get all of them at once.
+     */
+    void setRecordSpillThreshold( int threshold, File directory, FileSystemAbstraction fileSystem )
+    {
+        nodeRecords.setThreshold( threshold, directory, fileSystem );
+        propertyRecords.setThreshold( threshold, directory, fileSystem );
+        relRecords.setThreshold( threshold, directory, fileSystem );
+        relGroupRecords.setThreshold( threshold, directory, fileSystem );
+    }
+
+    // called first in each operation, when no records are referenced outside of the maps
+    private void spillRecordsIfNeeded()
+    {
+        nodeRecords.spillIfNeeded();
+        propertyRecords.spillIfNeeded();
+        relRecords.spillIfNeeded();
+        relGroupRecords.spillIfNeeded();
+    }
+
     @Override
     public boolean isReadOnly()
     {
         if ( isRecovered() )
         {
             return nodeCommands.size() == 0 && propCommands.size() == 0 &&
-                relCommands.size() == 0 && relTypeCommands == null &&
-                propIndexCommands == null;
+                relCommands.size() == 0 && relGroupCommands.size() == 0 &&
+                relTypeCommands == null && propIndexCommands == null;
         }
         return nodeRecords.size() == 0 && relRecords.size() == 0 &&
+            relGroupRecords.size() == 0 &&
             propertyRecords.size() == 0 && relTypeRecords == null &&
             propIndexRecords == null;
     }
@@ -134,9 +189,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     protected void doPrepare() throws XAException
     {
-        int noOfCommands = nodeRecords.size() +
-                           relRecords.size() +
-                           propertyRecords.size() +
+        int noOfCommands = nodeRecords.inMemoryValues().size() +
+                           relRecords.inMemoryValues().size() +
+                           relGroupRecords.inMemoryValues().size() +
+                           propertyRecords.inMemoryValues().size() +
                            (propIndexRecords != null ? propIndexRecords.size() : 0) +
                            (relTypeRecords != null ? relTypeRecords.size() : 0);
         List<Command> commands = new ArrayList<Command>( noOfCommands );
@@ -167,10 +223,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 commands.add( command );
             }
         }
-        for ( NodeRecord record : nodeRecords.values() )
+        for ( NodeRecord record : nodeRecords.inMemoryValues() )
         {
-            if ( !record.inUse() && record.getNextRel() !=
-                Record.NO_NEXT_RELATIONSHIP.intValue() )
+            if ( !record.inUse() && ( record.getNextRel() !=
+                Record.NO_NEXT_RELATIONSHIP.intValue() || record.isDense() ) )
             {
                 throw new InvalidRecordException( "Node record " + record
                     + " still has relationships" );
@@ -184,7 +240,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             }
             commands.add( command );
         }
-        for ( RelationshipRecord record : relRecords.values() )
+        for ( RelationshipRecord record : relRecords.inMemoryValues() )
         {
             Command.RelationshipCommand command =
                 new Command.RelationshipCommand(
@@ -196,6 +252,14 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             }
             commands.add( command );
         }
+        for ( RelationshipGroupRecord record : relGroupRecords.inMemoryValues() )
+        {
+            Command.RelationshipGroupCommand command =
+                new Command.RelationshipGroupCommand(
+                    neoStore.getRelationshipGroupStore(), record );
+            relGroupCommands.add( command );
+            commands.add( command );
+        }
         if ( neoStoreRecord != null )
         {
             neoStoreCommand = new Command.NeoStoreCommand( neoStore, neoStoreRecord );
@@ -213,7 +277,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 commands.add( command );
             }
         }
-        for ( PropertyRecord record : propertyRecords.values() )
+        for ( PropertyRecord record : propertyRecords.inMemoryValues() )
         {
             Command.PropertyCommand command = new Command.PropertyCommand(
                     neoStore.getPropertyStore(), record );
@@ -229,6 +293,70 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         {
             addCommand(command);
         }
+        // spilled records are read back and logged one at a time, their commands not kept
+        for ( Command command : spilledCommands() )
+        {
+            if ( command.isDeleted() )
+            {
+                if ( command instanceof Command.NodeCommand )
+                {
+                    removeNodeFromCache( command.getKey() );
+                }
+                else if ( command instanceof Command.RelationshipCommand )
+                {
+                    removeRelationshipFromCache( command.getKey() );
+                }
+            }
+            addCommand( command );
+        }
+    }
+
+    /**
+     * @return commands for the spilled property, relationship, relationship
+     * group and node records, in that order, each record read when reached.
+     */
+    @SuppressWarnings( "unchecked" )
+    private Iterable<Command> spilledCommands()
+    {
+        return new CombiningIterable<Command>( Arrays.<Iterable<Command>>asList(
+            new IterableWrapper<Command,PropertyRecord>( propertyRecords.spilledValues() )
+            {
+                @Override
+                protected Command underlyingObjectToObject( PropertyRecord record )
+                {
+                    return new Command.PropertyCommand( neoStore.getPropertyStore(), record );
+                }
+            },
+            new IterableWrapper<Command,RelationshipRecord>( relRecords.spilledValues() )
+            {
+                @Override
+                protected Command underlyingObjectToObject( RelationshipRecord record )
+                {
+                    return new Command.RelationshipCommand( neoStore.getRelationshipStore(), record );
+                }
+            },
+            new IterableWrapper<Command,RelationshipGroupRecord>( relGroupRecords.spilledValues() )
+            {
+                @Override
+                protected Command underlyingObjectToObject( RelationshipGroupRecord record )
+                {
+                    return new Command.RelationshipGroupCommand( neoStore.getRelationshipGroupStore(), record );
+                }
+            },
+            new IterableWrapper<Command,NodeRecord>( nodeRecords.spilledValues() )
+            {
+                @Override
+                protected Command underlyingObjectToObject( NodeRecord record )
+                {
+                    if ( !record.inUse() && ( record.getNextRel() !=
+                        Record.NO_NEXT_RELATIONSHIP.intValue() || record.isDense() ) )
+                    {
+                        throw new InvalidRecordException( "Node record " + record
+                            + " still has relationships" );
+                    }
+                    return new Command.NodeCommand( neoStore.getNodeStore(), record );
+                }
+            } ) );
     }
 
     protected void intercept( List<Command> commands )
@@ -247,6 +375,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         {
             relCommands.add( (Command.RelationshipCommand) xaCommand );
         }
+        else if ( xaCommand instanceof Command.RelationshipGroupCommand )
+        {
+            relGroupCommands.add( (Command.RelationshipGroupCommand) xaCommand );
+        }
         else if ( xaCommand instanceof Command.PropertyCommand )
         {
             propCommands.add( (Command.PropertyCommand) xaCommand );
@@ -316,6 +448,13 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 }
                 removeRelationshipFromCache( record.getId() );
             }
+            for ( RelationshipGroupRecord record : relGroupRecords.values() )
+            {
+                if ( freeIds && record.isCreated() )
+                {
+                    neoStore.getRelationshipGroupStore().freeId( record.getId() );
+                }
+            }
             if ( neoStoreRecord != null )
             {
                 removeGraphPropertiesFromCache();
@@ -462,11 +601,13 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             // primitives
             java.util.Collections.sort( nodeCommands, sorter );
             java.util.Collections.sort( relCommands, sorter );
+            java.util.Collections.sort( relGroupCommands, sorter );
             java.util.Collections.sort( propCommands, sorter );
-            executeCreated( propCommands, relCommands, nodeCommands );
-            executeModified( propCommands, relCommands, nodeCommands );
+            Iterable<Command> spilled = spilledCommands();
+            executeCreated( propCommands, relCommands, relGroupCommands, nodeCommands, spilled );
+            executeModified( propCommands, relCommands, relGroupCommands, nodeCommands, spilled );
             if ( neoStoreCommand != null ) neoStoreCommand.execute();
-            executeDeleted( propCommands, relCommands, nodeCommands );
+            executeDeleted( propCommands, relCommands, relGroupCommands, nodeCommands, spilled );
             updateFirstRelationships();
             lockReleaser.commitCows(); // updates the cached primitives
             neoStore.setLastCommittedTx( getCommitTxId() );
@@ -487,13 +628,13 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     private void updateFirstRelationships()
     {
         for ( NodeRecord record : nodeRecords.values() )
-            lockReleaser.setFirstIds( record.getId(), record.getNextRel(), record.getNextProp() );
+            lockReleaser.setFirstIds( record.getId(), record.getNextRel(), record.getNextProp(), record.isDense() );
     }
 
     private static void executeCreated(
-            ArrayList<? extends Command>... commands )
+            Iterable<? extends Command>... commands )
     {
-        for ( ArrayList<? extends Command> c : commands ) for ( Command command : c )
+        for ( Iterable<? extends Command> c : commands ) for ( Command command : c )
         {
             if ( command.isCreated() && !command.isDeleted() )
             {
@@ -503,9 +644,9 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     }
 
     private static void executeModified(
-            ArrayList<? extends Command>... commands )
+            Iterable<? extends Command>... commands )
     {
-        for ( ArrayList<? extends Command> c : commands ) for ( Command command : c )
+        for ( Iterable<? extends Command> c : commands ) for ( Command command : c )
         {
             if ( !command.isCreated() && !command.isDeleted() )
             {
@@ -515,9 +656,9 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     }
 
     private static void executeDeleted(
-            ArrayList<? extends Command>... commands )
+            Iterable<? extends Command>... commands )
     {
-        for ( ArrayList<? extends Command> c : commands ) for ( Command command : c )
+        for ( Iterable<? extends Command> c : commands ) for ( Command command : c )
         {
             if ( command.isDeleted() )
             {
@@ -528,6 +669,8 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
 
     private void commitRecovered()
     {
+        // transactions left prepared are committed after the applier is closed, those are applied here
+        RecoveryApplier applier = recoveryApplier != null && recoveryApplier.isOpen() ? recoveryApplier : null;
         try
         {
             committed = true;
@@ -535,6 +678,8 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             // property index
             if ( propIndexCommands != null )
             {
+                // the property lane may be writing to the index store
+                if ( applier != null ) applier.awaitApplied();
                 java.util.Collections.sort( propIndexCommands, sorter );
                 for ( Command.PropertyIndexCommand command : propIndexCommands )
                 {
@@ -546,7 +691,8 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             java.util.Collections.sort( propCommands, sorter );
             for ( Command.PropertyCommand command : propCommands )
             {
-                command.execute();
+                if ( applier != null ) applier.apply( command );
+                else command.execute();
                 removePropertyFromCache( command );
             }
             // reltypes
@@ -563,7 +709,8 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             java.util.Collections.sort( relCommands, sorter );
             for ( Command.RelationshipCommand command : relCommands )
             {
-                command.execute();
+                if ( applier != null ) applier.apply( command );
+                else command.execute();
                 removeRelationshipFromCache( command.getKey() );
                 if ( true /* doesn't work: command.isRemove(), the log doesn't contain the nodes */)
                 {
@@ -571,11 +718,19 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                     removeNodeFromCache( command.getSecondNode() );
                 }
             }
+            // relationship groups
+            java.util.Collections.sort( relGroupCommands, sorter );
+            for ( Command.RelationshipGroupCommand command : relGroupCommands )
+            {
+                if ( applier != null ) applier.apply( command );
+                else command.execute();
+            }
             // nodes
             java.util.Collections.sort( nodeCommands, sorter );
             for ( Command.NodeCommand command : nodeCommands )
             {
-                command.execute();
+                if ( applier != null ) applier.apply( command );
+                else command.execute();
                 removeNodeFromCache( command.getKey() );
             }
             neoStore.setRecoveredStatus( true );
@@ -592,7 +747,11 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             {
                 neoStore.setRecoveredStatus( false );
             }
-            neoStore.updateIdGenerators( );
+            if ( applier == null )
+            {
+                // otherwise done once the applier is drained
+                neoStore.updateIdGenerators( );
+            }
         }
         finally
         {
@@ -605,6 +764,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         nodeRecords.clear();
         propertyRecords.clear();
         relRecords.clear();
+        relGroupRecords.clear();
         if ( relTypeRecords != null ) relTypeRecords.clear();
         if ( propIndexRecords != null ) propIndexRecords.clear();
         neoStoreRecord = null;
@@ -613,8 +773,42 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         propCommands.clear();
         if ( propIndexCommands != null ) propIndexCommands.clear();
         relCommands.clear();
+        relGroupCommands.clear();
         if ( relTypeCommands != null ) relTypeCommands.clear();
         neoStoreCommand = null;
+
+        if ( nodeIds != null ) nodeIds.returnUnused();
+        if ( relIds != null ) relIds.returnUnused();
+        if ( propertyIds != null ) propertyIds.returnUnused();
+        if ( relGroupIds != null ) relGroupIds.returnUnused();
+    }
+
+    @Override
+    public long nextId( Class<?> clazz )
+    {
+        if ( clazz == Node.class )
+        {
+            if ( nodeIds == null ) nodeIds = new IdBatch( getNodeStore() );
+            return nodeIds.nextId();
+        }
+        if ( clazz == Relationship.class )
+        {
+            if ( relIds == null ) relIds = new IdBatch( getRelationshipStore() );
+            return relIds.nextId();
+        }
+        throw new IdGenerationFailedException( "No IdGenerator for: " + clazz );
+    }
+
+    private long nextPropertyId()
+    {
+        if ( propertyIds == null ) propertyIds = new IdBatch( getPropertyStore() );
+        return propertyIds.nextId();
+    }
+
+    private long nextRelationshipGroupId()
+    {
+        if ( relGroupIds == null ) relGroupIds = new IdBatch( neoStore.getRelationshipGroupStore() );
+        return relGroupIds.nextId();
     }
 
 
@@ -690,6 +884,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public ArrayMap<Integer,PropertyData> nodeDelete( long nodeId )
     {
+        spillRecordsIfNeeded();
         NodeRecord nodeRecord = getNodeRecord( nodeId );
         if ( nodeRecord == null )
         {
@@ -709,6 +904,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public ArrayMap<Integer,PropertyData> relDelete( long id )
     {
+        spillRecordsIfNeeded();
         RelationshipRecord record = getRelationshipRecord( id );
         if ( record == null )
         {
@@ -913,42 +1109,142 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         {
             return Record.NO_NEXT_RELATIONSHIP.intValue();
         }
-        return getNodeStore().getRecord( nodeId ).getNextRel();
+        return ReadTransaction.getRelationshipChainPosition( getNodeStore().getRecord( nodeId ), neoStore );
     }
 
     public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships( long nodeId,
         long position )
     {
-        return ReadTransaction.getMoreRelationships( nodeId, position, getRelGrabSize(), getRelationshipStore() );
+        return ReadTransaction.getMoreRelationships( nodeId, position, getRelGrabSize(), neoStore );
+    }
+
+    public long getRelationshipChainPosition( long nodeId, int type, DirectionWrapper direction )
+    {
+        NodeRecord nodeRecord = getNodeRecord( nodeId );
+        if ( nodeRecord != null && nodeRecord.isCreated() )
+        {
+            return Record.NO_NEXT_RELATIONSHIP.intValue();
+        }
+        return ReadTransaction.getRelationshipChainPosition( getNodeStore().getRecord( nodeId ), type, direction,
+                neoStore );
+    }
+
+    public int getRelationshipCount( long nodeId, int type, DirectionWrapper direction )
+    {
+        NodeRecord node = getNodeRecord( nodeId );
+        if ( node == null )
+        {
+            node = getNodeStore().loadLightNode( nodeId );
+        }
+        if ( node == null || !node.inUse() || !node.isDense() )
+        {
+            return -1;
+        }
+        if ( type < 0 && direction == DirectionWrapper.BOTH )
+        {
+            return node.getRelCount();
+        }
+        // the groups as changed by this transaction
+        int count = 0;
+        long groupId = node.getFirstGroup();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = getRelationshipGroupRecord( groupId );
+            if ( type >= 0 && group.getType() > type )
+            {
+                break;
+            }
+            if ( type < 0 || group.getType() == type )
+            {
+                count += ReadTransaction.getRelationshipCount( group, direction );
+            }
+            groupId = group.getNext();
+        }
+        return count;
+    }
+
+    public Pair<Iterable<RelationshipRecord>, Long> getMoreRelationships( long nodeId, long position, int type,
+            DirectionWrapper direction )
+    {
+        return ReadTransaction.getMoreRelationships( nodeId, position, type, direction, getRelGrabSize(),
+                getRelationshipStore() );
     }
 
     private void updateNodes( RelationshipRecord rel )
     {
-        if ( rel.getFirstPrevRel() == Record.NO_PREV_RELATIONSHIP.intValue() )
+        updateNode( rel, rel.getFirstNode(), rel.getFirstPrevRel(), rel.getFirstNextRel() );
+        if ( rel.getSecondNode() != rel.getFirstNode() )
         {
-            NodeRecord firstNode = getNodeRecord( rel.getFirstNode() );
-            if ( firstNode == null )
+            updateNode( rel, rel.getSecondNode(), rel.getSecondPrevRel(), rel.getSecondNextRel() );
+        }
+    }
+
+    private void updateNode( RelationshipRecord rel, long nodeId, long prevRel, long nextRel )
+    {
+        boolean first = prevRel == Record.NO_PREV_RELATIONSHIP.intValue();
+        NodeRecord node = getNodeRecord( nodeId );
+        if ( node == null )
+        {
+            node = getNodeStore().getRecord( nodeId );
+            if ( !first && node.getRelCount() == NodeRecord.UNKNOWN_REL_COUNT )
             {
-                firstNode = getNodeStore().getRecord( rel.getFirstNode() );
-                addNodeRecord( firstNode );
+                // neither the chain start nor the count changes
+                return;
             }
-            firstNode.setNextRel( rel.getFirstNextRel() );
+            addNodeRecord( node );
+        }
+        if ( node.getRelCount() != NodeRecord.UNKNOWN_REL_COUNT )
+        {
+            node.setRelCount( node.getRelCount() - 1 );
         }
-        if ( rel.getSecondPrevRel() == Record.NO_PREV_RELATIONSHIP.intValue() )
+        if ( !node.isDense() )
         {
-            NodeRecord secondNode = getNodeRecord( rel.getSecondNode() );
-            if ( secondNode == null )
+            if ( first )
             {
-                secondNode = getNodeStore().getRecord( rel.getSecondNode() );
-                addNodeRecord( secondNode );
+                node.setNextRel( nextRel );
             }
-            secondNode.setNextRel( rel.getSecondNextRel() );
+            return;
         }
+        RelationshipGroupRecord previous = null;
+        long groupId = node.getFirstGroup();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = getRelationshipGroupRecord( groupId );
+            if ( group.getType() == rel.getType() )
+            {
+                addRelationshipGroupRecord( group );
+                DirectionWrapper direction = ReadTransaction.directionOf( rel, nodeId );
+                group.setCount( direction, group.getCount( direction ) - 1 );
+                if ( !first )
+                {
+                    return;
+                }
+                group.setFirst( direction, nextRel );
+                if ( group.isEmpty() )
+                {
+                    if ( previous == null )
+                    {
+                        node.setFirstGroup( group.getNext() );
+                    }
+                    else
+                    {
+                        addRelationshipGroupRecord( previous );
+                        previous.setNext( group.getNext() );
+                    }
+                    group.setInUse( false );
+                }
+                return;
+            }
+            previous = group;
+            groupId = group.getNext();
+        }
+        throw new InvalidRecordException( node + " has no group for " + rel );
     }
 
     @Override
     public void relRemoveProperty( long relId, PropertyData propertyData )
     {
+        spillRecordsIfNeeded();
         RelationshipRecord relRecord = getRelationshipRecord( relId );
         if ( relRecord == null )
         {
@@ -1011,6 +1307,28 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         return ReadTransaction.loadProperties( getPropertyStore(), nodeRecord.getNextProp() );
     }
 
+    @Override
+    public PropertyData nodeLoadProperty( long nodeId, int keyId )
+    {
+        NodeRecord nodeRecord = getNodeRecord( nodeId );
+        if ( nodeRecord != null && nodeRecord.isCreated() )
+        {
+            return null;
+        }
+        if ( nodeRecord != null && !nodeRecord.inUse() )
+        {
+            throw new IllegalStateException( "Node[" + nodeId +
+                    "] has been deleted in this tx" );
+        }
+        nodeRecord = getNodeStore().getRecord( nodeId );
+        if ( !nodeRecord.inUse() )
+        {
+            throw new InvalidRecordException( "Node[" + nodeId +
+                "] not in use" );
+        }
+        return getPropertyStore().findLightProperty( nodeRecord.getNextProp(), keyId );
+    }
+
     public Object propertyGetValueOrNull( PropertyBlock block )
     {
         return block.getType().getValue( block,
@@ -1043,6 +1361,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public void nodeRemoveProperty( long nodeId, PropertyData propertyData )
     {
+        spillRecordsIfNeeded();
         NodeRecord nodeRecord = getNodeRecord( nodeId );
         if ( nodeRecord == null )
         {
@@ -1157,6 +1476,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     public PropertyData relChangeProperty( long relId,
             PropertyData propertyData, Object value )
     {
+        spillRecordsIfNeeded();
         RelationshipRecord relRecord = getRelationshipRecord( relId );
         if ( relRecord == null )
         {
@@ -1174,6 +1494,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     public PropertyData nodeChangeProperty( long nodeId,
             PropertyData propertyData, Object value )
     {
+        spillRecordsIfNeeded();
         NodeRecord nodeRecord = getNodeRecord( nodeId );
         if ( nodeRecord == null )
         {
@@ -1244,6 +1565,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     public PropertyData relAddProperty( long relId,
             PropertyIndex index, Object value )
     {
+        spillRecordsIfNeeded();
         RelationshipRecord relRecord = getRelationshipRecord( relId );
         if ( relRecord == null )
         {
@@ -1268,6 +1590,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     public PropertyData nodeAddProperty( long nodeId, PropertyIndex index,
         Object value )
     {
+        spillRecordsIfNeeded();
         NodeRecord nodeRecord = getNodeRecord( nodeId );
         if ( nodeRecord == null )
         {
@@ -1327,7 +1650,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         if ( host == null )
         {
             // First record in chain didn't fit, make new one
-            host = new PropertyRecord( getPropertyStore().nextId(), primitive );
+            host = new PropertyRecord( nextPropertyId(), primitive );
             if ( primitive.getNextProp() != Record.NO_NEXT_PROPERTY.intValue() )
             {
                 PropertyRecord prevProp = getPropertyRecord(
@@ -1351,6 +1674,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public void relationshipCreate( long id, int type, long firstNodeId, long secondNodeId )
     {
+        spillRecordsIfNeeded();
         NodeRecord firstNode = getNodeRecord( firstNodeId );
         if ( firstNode == null )
         {
@@ -1386,50 +1710,216 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     {
         assert firstNode.getNextRel() != rel.getId();
         assert secondNode.getNextRel() != rel.getId();
-        rel.setFirstNextRel( firstNode.getNextRel() );
-        rel.setSecondNextRel( secondNode.getNextRel() );
         connect( firstNode, rel );
-        connect( secondNode, rel );
-        firstNode.setNextRel( rel.getId() );
-        secondNode.setNextRel( rel.getId() );
+        if ( secondNode != firstNode )
+        {
+            connect( secondNode, rel );
+        }
     }
 
+    /**
+     * Puts <CODE>rel</CODE> first in the chain of <CODE>node</CODE> it belongs
+     * to, grouping the relationships of the node first if it has reached the
+     * dense node threshold.
+     */
     private void connect( NodeRecord node, RelationshipRecord rel )
     {
-        if ( node.getNextRel() != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        if ( !node.isDense() && denseNodesSupported() )
+        {
+            ensureRelCount( node );
+            if ( node.getRelCount() >= neoStore.getDenseNodeThreshold() )
+            {
+                convertToDense( node );
+            }
+        }
+        if ( node.isDense() )
+        {
+            RelationshipGroupRecord group = getOrCreateRelationshipGroup( node, rel.getType() );
+            DirectionWrapper direction = ReadTransaction.directionOf( rel, node.getId() );
+            long first = group.getFirst( direction );
+            setNextRel( rel, node.getId(), first );
+            connect( node.getId(), first, rel );
+            group.setFirst( direction, rel.getId() );
+            group.setCount( direction, group.getCount( direction ) + 1 );
+        }
+        else
+        {
+            setNextRel( rel, node.getId(), node.getNextRel() );
+            connect( node.getId(), node.getNextRel(), rel );
+            node.setNextRel( rel.getId() );
+        }
+        if ( node.getRelCount() != NodeRecord.UNKNOWN_REL_COUNT )
+        {
+            node.setRelCount( node.getRelCount() + 1 );
+        }
+    }
+
+    private void connect( long nodeId, long firstRel, RelationshipRecord rel )
+    {
+        if ( firstRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
         {
-            Relationship lockableRel = new LockableRelationship( node.getNextRel() );
+            Relationship lockableRel = new LockableRelationship( firstRel );
             getWriteLock( lockableRel );
-            RelationshipRecord nextRel = getRelationshipRecord( node.getNextRel() );
+            RelationshipRecord nextRel = getRelationshipRecord( firstRel );
             if ( nextRel == null )
             {
-                nextRel = getRelationshipStore().getRecord( node.getNextRel() );
+                nextRel = getRelationshipStore().getRecord( firstRel );
                 addRelationshipRecord( nextRel );
             }
-            boolean changed = false;
-            if ( nextRel.getFirstNode() == node.getId() )
+            if ( !setPrevRel( nextRel, nodeId, rel.getId() ) )
             {
-                nextRel.setFirstPrevRel( rel.getId() );
-                changed = true;
+                throw new InvalidRecordException( "Node[" + nodeId + "] dont match " + nextRel );
+            }
+        }
+    }
+
+    private static boolean setNextRel( RelationshipRecord rel, long nodeId, long nextRel )
+    {
+        boolean changed = false;
+        if ( rel.getFirstNode() == nodeId )
+        {
+            rel.setFirstNextRel( nextRel );
+            changed = true;
+        }
+        if ( rel.getSecondNode() == nodeId )
+        {
+            rel.setSecondNextRel( nextRel );
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean setPrevRel( RelationshipRecord rel, long nodeId, long prevRel )
+    {
+        boolean changed = false;
+        if ( rel.getFirstNode() == nodeId )
+        {
+            rel.setFirstPrevRel( prevRel );
+            changed = true;
+        }
+        if ( rel.getSecondNode() == nodeId )
+        {
+            rel.setSecondPrevRel( prevRel );
+            changed = true;
+        }
+        return changed;
+    }
+
+    private boolean denseNodesSupported()
+    {
+        return neoStore.getRelationshipGroupStore() != null && getNodeStore().getExtensionStore() != null;
+    }
+
+    /**
+     * Counts the relationships of a node stored before relationship counts
+     * were, which can only be a node without relationship groups.
+     */
+    private void ensureRelCount( NodeRecord node )
+    {
+        if ( node.getRelCount() != NodeRecord.UNKNOWN_REL_COUNT )
+        {
+            return;
+        }
+        int count = 0;
+        long relId = node.getNextRel();
+        while ( relId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipRecord rel = getRelationshipRecord( relId );
+            if ( rel == null )
+            {
+                rel = getRelationshipStore().getRecord( relId );
+            }
+            count++;
+            relId = ReadTransaction.nextRelOf( rel, node.getId() );
+        }
+        node.setRelCount( count );
+    }
+
+    /**
+     * Moves the relationships of a node from its single chain into one chain
+     * per type and direction, keeping their order.
+     */
+    private void convertToDense( NodeRecord node )
+    {
+        List<RelationshipRecord> chain = new ArrayList<RelationshipRecord>();
+        long relId = node.getNextRel();
+        while ( relId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            getWriteLock( new LockableRelationship( relId ) );
+            RelationshipRecord rel = getRelationshipRecord( relId );
+            if ( rel == null )
+            {
+                rel = getRelationshipStore().getRecord( relId );
+                addRelationshipRecord( rel );
             }
-            if ( nextRel.getSecondNode() == node.getId() )
+            chain.add( rel );
+            relId = ReadTransaction.nextRelOf( rel, node.getId() );
+        }
+        node.setNextRel( Record.NO_NEXT_RELATIONSHIP.intValue() );
+        for ( int i = chain.size() - 1; i >= 0; i-- )
+        {
+            RelationshipRecord rel = chain.get( i );
+            RelationshipGroupRecord group = getOrCreateRelationshipGroup( node, rel.getType() );
+            DirectionWrapper direction = ReadTransaction.directionOf( rel, node.getId() );
+            long first = group.getFirst( direction );
+            setNextRel( rel, node.getId(), first );
+            setPrevRel( rel, node.getId(), Record.NO_PREV_RELATIONSHIP.intValue() );
+            if ( first != Record.NO_NEXT_RELATIONSHIP.intValue() )
             {
-                nextRel.setSecondPrevRel( rel.getId() );
-                changed = true;
+                setPrevRel( getRelationshipRecord( first ), node.getId(), rel.getId() );
             }
-            if ( !changed )
+            group.setFirst( direction, rel.getId() );
+            group.setCount( direction, group.getCount( direction ) + 1 );
+        }
+    }
+
+    private RelationshipGroupRecord getOrCreateRelationshipGroup( NodeRecord node, int type )
+    {
+        RelationshipGroupRecord previous = null;
+        long groupId = node.getFirstGroup();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = getRelationshipGroupRecord( groupId );
+            if ( group.getType() == type )
+            {
+                addRelationshipGroupRecord( group );
+                return group;
+            }
+            if ( group.getType() > type )
             {
-                throw new InvalidRecordException( node + " dont match " + nextRel );
+                break;
             }
+            previous = group;
+            groupId = group.getNext();
         }
+        RelationshipGroupRecord group = new RelationshipGroupRecord( nextRelationshipGroupId(), type, node.getId() );
+        group.setInUse( true );
+        group.setCreated();
+        group.setNext( groupId );
+        addRelationshipGroupRecord( group );
+        if ( previous == null )
+        {
+            node.setFirstGroup( group.getId() );
+        }
+        else
+        {
+            addRelationshipGroupRecord( previous );
+            previous.setNext( group.getId() );
+        }
+        return group;
     }
 
     @Override
     public void nodeCreate( long nodeId )
     {
+        spillRecordsIfNeeded();
         NodeRecord nodeRecord = new NodeRecord( nodeId, Record.NO_NEXT_RELATIONSHIP.intValue(), Record.NO_NEXT_PROPERTY.intValue() );
         nodeRecord.setInUse( true );
         nodeRecord.setCreated();
+        if ( denseNodesSupported() )
+        {
+            nodeRecord.setRelCount( 0 );
+        }
         addNodeRecord( nodeRecord );
     }
 
@@ -1534,7 +2024,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
 
     void addNodeRecord( NodeRecord record )
     {
-        nodeRecords.put( record.getId(), record );
+        nodeRecords.put( record );
     }
 
     NodeRecord getNodeRecord( long nodeId )
@@ -1544,7 +2034,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
 
     void addRelationshipRecord( RelationshipRecord record )
     {
-        relRecords.put( record.getId(), record );
+        relRecords.put( record );
     }
 
     RelationshipRecord getRelationshipRecord( long relId )
@@ -1552,9 +2042,21 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         return relRecords.get( relId );
     }
 
+    void addRelationshipGroupRecord( RelationshipGroupRecord record )
+    {
+        relGroupRecords.put( record );
+    }
+
+    // the group as changed in this transaction, or else as stored
+    RelationshipGroupRecord getRelationshipGroupRecord( long groupId )
+    {
+        RelationshipGroupRecord record = relGroupRecords.get( groupId );
+        return record != null ? record : neoStore.getRelationshipGroupStore().getRecord( groupId );
+    }
+
     void addPropertyRecord( PropertyRecord record )
     {
-        propertyRecords.put( record.getId(), record );
+        propertyRecords.put( record );
     }
 
     PropertyRecord getPropertyRecord( long propertyId, boolean light,
@@ -1742,7 +2244,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public boolean isNodeCreated( long nodeId )
     {
-        NodeRecord record = nodeRecords.get( nodeId );
+        NodeRecord record = getNodeRecord( nodeId );
         if ( record != null )
         {
             return record.isCreated();
@@ -1753,7 +2255,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public boolean isRelationshipCreated( long relId )
     {
-        RelationshipRecord record = relRecords.get( relId );
+        RelationshipRecord record = getRelationshipRecord( relId );
         if ( record != null )
         {
             return record.isCreated();
@@ -1845,6 +2347,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public PropertyData graphAddProperty( PropertyIndex index, Object value )
     {
+        spillRecordsIfNeeded();
         PropertyBlock block = new PropertyBlock();
         block.setCreated();
         /*
@@ -1862,12 +2365,14 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public PropertyData graphChangeProperty( PropertyData propertyData, Object value )
     {
+        spillRecordsIfNeeded();
         return primitiveChangeProperty( getOrLoadNeoStoreRecord(), propertyData, value, RecordAdded.GRAPH );
     }
 
     @Override
     public void graphRemoveProperty( PropertyData propertyData )
     {
+        spillRecordsIfNeeded();
         removeProperty( getOrLoadNeoStoreRecord(), propertyData, RecordAdded.GRAPH );
     }
 
@@ -240,6 +240,29 @@ public interface NeoStoreTransaction
      */
     public ArrayMap<Integer,PropertyData> nodeLoadProperties( long nodeId, boolean light );
 
+    /**
+     * Looks up a single property of the given node, walking its property
+     * chain only as far as needed and leaving the value of strings and
+     * arrays unloaded.
+     *
+     * @param nodeId The id of the node whose property to load.
+     * @param keyId The property index id of the property to load.
+     * @return The property data, or <code>null</code> if the node has no
+     *         such property.
+     */
+    public PropertyData nodeLoadProperty( long nodeId, int keyId );
+
+    /**
+     * Returns an id for a node or relationship to be created in this
+     * transaction. Ids are claimed from the store in batches for the
+     * transaction, the ones left unused are given back when it ends.
+     *
+     * @param clazz {@link org.neo4j.graphdb.Node} or
+     *            {@link org.neo4j.graphdb.Relationship}.
+     * @return The id for the new entity.
+     */
+    public long nextId( Class<?> clazz );
+
     /**
      * Loads the complete property chain for the given relationship and returns
      * it as a map from property index id to property data.
@@ -299,6 +322,30 @@ public interface NeoStoreTransaction
     public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
             long nodeId, long position );
 
+    /**
+     * Returns the start of the chain holding the relationships of the given
+     * type and direction, {@link DirectionWrapper#BOTH} meaning loops. For a
+     * node without relationship groups that is its whole relationship chain.
+     */
+    public long getRelationshipChainPosition( long nodeId, int type, DirectionWrapper direction );
+
+    /*
+     * Reads the next batch of relationships of the given type and direction
+     * from a chain started by getRelationshipChainPosition( nodeId, type,
+     * direction ). Long is the chain position after the batch.
+     */
+    public Pair<Iterable<RelationshipRecord>, Long> getMoreRelationships( long nodeId, long position, int type,
+            DirectionWrapper direction );
+
+    /*
+     * Returns the number of relationships of a node with relationship groups
+     * of the given type, or of any type if type is negative, in the given
+     * direction, as seen by this transaction. Loops count for both
+     * directions. Returns -1 for a node without relationship groups, whose
+     * relationships have to be counted.
+     */
+    public int getRelationshipCount( long nodeId, int type, DirectionWrapper direction );
+
     /**
      * Returns an array view of the ids of the nodes that have been created in
      * this transaction.
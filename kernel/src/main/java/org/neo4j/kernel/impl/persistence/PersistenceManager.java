@@ -108,11 +108,37 @@ public class PersistenceManager
         return getReadOnlyResource().getMoreRelationships( nodeId, position );
     }
 
+    public long getRelationshipChainPosition( long nodeId, int type, DirectionWrapper direction )
+    {
+        return getReadOnlyResourceIfPossible().getRelationshipChainPosition( nodeId, type, direction );
+    }
+
+    public Pair<Iterable<RelationshipRecord>, Long> getMoreRelationships( long nodeId, long position, int type,
+            DirectionWrapper direction )
+    {
+        return getReadOnlyResource().getMoreRelationships( nodeId, position, type, direction );
+    }
+
+    public int getRelationshipCount( long nodeId, int type, DirectionWrapper direction )
+    {
+        return getReadOnlyResourceIfPossible().getRelationshipCount( nodeId, type, direction );
+    }
+
     public ArrayMap<Integer,PropertyData> loadNodeProperties( long nodeId, boolean light )
     {
         return getReadOnlyResourceIfPossible().nodeLoadProperties( nodeId, light );
     }
 
+    public long nextId( Class<?> clazz )
+    {
+        return getResource( true ).nextId( clazz );
+    }
+
+    public PropertyData loadNodeProperty( long nodeId, int keyId )
+    {
+        return getReadOnlyResourceIfPossible().nodeLoadProperty( nodeId, keyId );
+    }
+
     public ArrayMap<Integer,PropertyData> loadRelProperties( long relId,
             boolean light )
     {
@@ -19,7 +19,7 @@
  */
 package org.neo4j.kernel.impl.storemigration;
 
-import static org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore.buildTypeDescriptorAndVersion;
+import static org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore.ALL_STORES_VERSION;
 
 import java.io.File;
 import java.io.IOException;
@@ -58,10 +58,15 @@ public class CurrentDatabase
     }
 
     public boolean storeFilesAtCurrentVersion( File storeDirectory )
+    {
+        return storeFilesAtVersion( storeDirectory, ALL_STORES_VERSION );
+    }
+
+    public boolean storeFilesAtVersion( File storeDirectory, String version )
     {
         for ( String fileName : fileNamesToTypeDescriptors.keySet() )
         {
-            String expectedVersion = buildTypeDescriptorAndVersion( fileNamesToTypeDescriptors.get( fileName ) );
+            String expectedVersion = fileNamesToTypeDescriptors.get( fileName ) + " " + version;
             FileChannel fileChannel = null;
             byte[] expectedVersionBytes = UTF8.encode( expectedVersion );
             try
@@ -101,4 +106,33 @@ public class CurrentDatabase
         }
         return true;
     }
+
+    /**
+     * Sets the version in the trailer of each store file to the current one,
+     * for store files of <CODE>version</CODE> whose record format is the same
+     * as the current one.
+     */
+    public void setStoreFilesToCurrentVersion( File storeDirectory, String version ) throws IOException
+    {
+        byte[] currentVersionBytes = UTF8.encode( ALL_STORES_VERSION );
+        if ( UTF8.encode( version ).length != currentVersionBytes.length )
+        {
+            throw new IllegalArgumentException( "Version " + version + " can't be replaced by "
+                    + ALL_STORES_VERSION + " in place" );
+        }
+        for ( String fileName : fileNamesToTypeDescriptors.keySet() )
+        {
+            FileChannel fileChannel = new RandomAccessFile( new File( storeDirectory, fileName ), "rw" ).getChannel();
+            try
+            {
+                fileChannel.write( ByteBuffer.wrap( currentVersionBytes ),
+                        fileChannel.size() - currentVersionBytes.length );
+                fileChannel.force( false );
+            }
+            finally
+            {
+                fileChannel.close();
+            }
+        }
+    }
 }
@@ -40,6 +40,15 @@ public class StoreFiles
             "neostore.relationshiptypestore.db.names",
     };
 
+    /**
+     * Store files added when relationships of dense nodes were grouped,
+     * stores of earlier versions lack them.
+     */
+    public static final String[] optionalFileNames = {
+            "neostore.nodestore.db.extensions",
+            "neostore.relationshipgroupstore.db",
+    };
+
     /**
      * Moves a database's store files from one directory
      * to another. Since it just renames files (the standard way of moving with
@@ -58,6 +67,32 @@ public class StoreFiles
             moveFile( fileName, fromDirectory, toDirectory );
             moveFile( fileName + ".id", fromDirectory, toDirectory );
         }
+        for ( String fileName : optionalFileNames )
+        {
+            if ( new File( fromDirectory, fileName ).exists() )
+            {
+                moveFile( fileName, fromDirectory, toDirectory );
+                moveFile( fileName + ".id", fromDirectory, toDirectory );
+            }
+        }
+    }
+
+    /**
+     * Copies a database's store files, the ones of earlier versions too, from
+     * one directory to another.
+     *
+     * @param fromDirectory The directory that hosts the database files.
+     * @param toDirectory The directory to copy the database files to.
+     * @throws IOException If any of the copy operations fail for any reason.
+     */
+    public static void copy( File fromDirectory, File toDirectory )
+            throws IOException
+    {
+        for ( String fileName : fileNames )
+        {
+            FileUtils.copyFile( new File( fromDirectory, fileName ), new File( toDirectory, fileName ) );
+            FileUtils.copyFile( new File( fromDirectory, fileName + ".id" ), new File( toDirectory, fileName + ".id" ) );
+        }
     }
 
     /**
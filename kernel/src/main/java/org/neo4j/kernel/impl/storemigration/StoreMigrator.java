@@ -34,6 +34,7 @@ import org.neo4j.kernel.impl.nioneo.store.NodeStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexStore;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGrouper;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
@@ -64,6 +65,47 @@ public class StoreMigrator
         progressMonitor.finished();
     }
 
+    /**
+     * Upgrades a store from before relationships of dense nodes were grouped,
+     * which has the group and node extension stores but no groups yet.
+     */
+    public void groupRelationships( NeoStore neoStore )
+    {
+        progressMonitor.started();
+        groupRelationships( neoStore.getNodeStore(), new RelationshipGrouper( neoStore ), progressMonitor );
+        progressMonitor.finished();
+    }
+
+    /*
+     * Counts the relationships of each node, grouping them by type and
+     * direction for nodes above the dense node threshold.
+     */
+    private static void groupRelationships( NodeStore nodeStore, RelationshipGrouper grouper,
+            MigrationProgressMonitor progressMonitor )
+    {
+        if ( !grouper.isSupported() )
+        {
+            return;
+        }
+        long highId = nodeStore.getHighId();
+        int percentComplete = 0;
+        for ( long id = 0; id < highId; id++ )
+        {
+            NodeRecord nodeRecord = nodeStore.loadLightNode( id );
+            if ( nodeRecord != null )
+            {
+                grouper.update( nodeRecord );
+                nodeStore.updateRecord( nodeRecord );
+            }
+            int newPercent = (int) ((id + 1) * 100 / highId);
+            if ( progressMonitor != null && newPercent > percentComplete )
+            {
+                percentComplete = newPercent;
+                progressMonitor.percentComplete( percentComplete );
+            }
+        }
+    }
+
     protected class Migration
     {
         private LegacyStore legacyStore;
@@ -83,6 +125,7 @@ public class StoreMigrator
             migrateNeoStore( neoStore );
             migrateNodes( neoStore.getNodeStore(), new PropertyWriter( neoStore.getPropertyStore() ) );
             migrateRelationships( neoStore.getRelationshipStore(), new PropertyWriter( neoStore.getPropertyStore() ) );
+            groupRelationships( neoStore.getNodeStore(), new RelationshipGrouper( neoStore ), null );
             migratePropertyIndexes( neoStore.getPropertyStore().getIndexStore() );
             legacyStore.getPropertyStoreReader().close();
             migrateRelationshipTypes( neoStore.getRelationshipTypeStore() );
@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
 import org.neo4j.kernel.impl.nioneo.store.StoreFactory;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
@@ -64,7 +65,14 @@ public class StoreUpgrader
         File upgradeDirectory = new File( workingDirectory, "upgrade" );
         File backupDirectory = new File( workingDirectory, "upgrade_backup" );
 
-        migrateToIsolatedDirectory( storageFileName, upgradeDirectory );
+        if ( upgradableDatabase.storeFilesUngrouped( new File( storageFileName ) ) )
+        {
+            groupInIsolatedDirectory( workingDirectory, upgradeDirectory );
+        }
+        else
+        {
+            migrateToIsolatedDirectory( storageFileName, upgradeDirectory );
+        }
 
         databaseFiles.moveToBackupDirectory( workingDirectory, backupDirectory );
         backupMessagesLogLeavingInPlaceForNewDatabaseMessages( workingDirectory, backupDirectory );
@@ -86,23 +94,10 @@ public class StoreUpgrader
 
     private void migrateToIsolatedDirectory( String storageFileName, File upgradeDirectory )
     {
-        if (upgradeDirectory.exists()) {
-            try
-            {
-                FileUtils.deleteRecursively( upgradeDirectory );
-            }
-            catch ( IOException e )
-            {
-                throw new UnableToUpgradeException( e );
-            }
-        }
-        upgradeDirectory.mkdir();
+        prepareIsolatedDirectory( upgradeDirectory );
 
         String upgradeFileName = new File( upgradeDirectory, NeoStore.DEFAULT_NAME ).getPath();
-        Map<String, String> upgradeConfig = new HashMap<String, String>( originalConfig );
-        upgradeConfig.put( "neo_store", upgradeFileName );
-
-        NeoStore neoStore = new StoreFactory(upgradeConfig, idGeneratorFactory, fileSystemAbstraction, null, StringLogger.DEV_NULL, null).createNeoStore(upgradeFileName);
+        NeoStore neoStore = newStoreFactory( upgradeFileName ).createNeoStore( upgradeFileName );
         try
         {
             storeMigrator.migrate( new LegacyStore( storageFileName ), neoStore );
@@ -117,6 +112,57 @@ public class StoreUpgrader
         }
     }
 
+    private void groupInIsolatedDirectory( File workingDirectory, File upgradeDirectory )
+    {
+        prepareIsolatedDirectory( upgradeDirectory );
+
+        try
+        {
+            StoreFiles.copy( workingDirectory, upgradeDirectory );
+            new CurrentDatabase().setStoreFilesToCurrentVersion( upgradeDirectory, UpgradableDatabase.UNGROUPED_VERSION );
+        }
+        catch ( IOException e )
+        {
+            throw new UnableToUpgradeException( e );
+        }
+
+        String upgradeFileName = new File( upgradeDirectory, NeoStore.DEFAULT_NAME ).getPath();
+        StoreFactory storeFactory = newStoreFactory( upgradeFileName );
+        storeFactory.createRelationshipGroupStores( upgradeFileName );
+        NeoStore neoStore = storeFactory.newNeoStore( upgradeFileName );
+        try
+        {
+            storeMigrator.groupRelationships( neoStore );
+            neoStore.setStoreVersion( NeoStore.versionStringToLong( CommonAbstractStore.ALL_STORES_VERSION ) );
+        }
+        finally
+        {
+            neoStore.close();
+        }
+    }
+
+    private StoreFactory newStoreFactory( String upgradeFileName )
+    {
+        Map<String, String> upgradeConfig = new HashMap<String, String>( originalConfig );
+        upgradeConfig.put( "neo_store", upgradeFileName );
+        return new StoreFactory( upgradeConfig, idGeneratorFactory, fileSystemAbstraction, null, StringLogger.DEV_NULL, null );
+    }
+
+    private void prepareIsolatedDirectory( File upgradeDirectory )
+    {
+        if (upgradeDirectory.exists()) {
+            try
+            {
+                FileUtils.deleteRecursively( upgradeDirectory );
+            }
+            catch ( IOException e )
+            {
+                throw new UnableToUpgradeException( e );
+            }
+        }
+        upgradeDirectory.mkdir();
+    }
+
     public static class UnableToUpgradeException extends RuntimeException
     {
         public UnableToUpgradeException( Exception cause )
@@ -40,6 +40,13 @@ import org.neo4j.kernel.impl.storemigration.legacystore.LegacyStore;
 
 public class UpgradableDatabase
 {
+    /**
+     * Version of stores written before relationships of dense nodes were
+     * grouped. Their records are in the current format, they are upgraded
+     * by grouping the relationships of their dense nodes.
+     */
+    public static final String UNGROUPED_VERSION = "v0.A.0";
+
     /*
      * Initialized by the static block below.
      */
@@ -71,12 +78,17 @@ public class UpgradableDatabase
 
     public void checkUpgradeable( File neoStoreFile )
     {
-        if (!storeFilesUpgradeable( neoStoreFile ))
+        if ( !storeFilesUpgradeable( neoStoreFile ) && !storeFilesUngrouped( neoStoreFile ) )
         {
             throw new StoreUpgrader.UnableToUpgradeException( "Not all store files match the version required for successful upgrade" );
         }
     }
 
+    public boolean storeFilesUngrouped( File neoStoreFile )
+    {
+        return new CurrentDatabase().storeFilesAtVersion( neoStoreFile.getParentFile(), UNGROUPED_VERSION );
+    }
+
     public boolean storeFilesUpgradeable( File neoStoreFile )
     {
         File storeDirectory = neoStoreFile.getParentFile();
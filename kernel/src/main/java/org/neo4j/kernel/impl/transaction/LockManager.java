@@ -47,18 +47,43 @@ import org.neo4j.kernel.info.WaitingThread;
  * must invoke <CODE>releaseReadLock</CODE> x times to release all the locks.
  * <p>
  * LockManager just maps locks to resources and they do all the hard work
- * together with a resource allocation graph.
+ * together with a resource allocation graph. The resource to lock map is
+ * split up in a number of stripes, each guarded by its own monitor, so that
+ * transactions locking different resources seldom contend with each other.
  */
 public class LockManager
 {
-    private final Map<Object,RWLock> resourceLockMap =
-        new HashMap<Object,RWLock>();
+    private static final int DEFAULT_STRIPE_COUNT = 64;
+
+    private final LockStripe[] stripes;
 
     private final RagManager ragManager;
 
     public LockManager( RagManager ragManager)
     {
+        this( ragManager, DEFAULT_STRIPE_COUNT );
+    }
+
+    LockManager( RagManager ragManager, int stripeCount )
+    {
+        if ( stripeCount < 1 )
+        {
+            throw new IllegalArgumentException( "Stripe count must be positive, was " + stripeCount );
+        }
         this.ragManager = ragManager;
+        this.stripes = new LockStripe[stripeCount];
+        for ( int i = 0; i < stripeCount; i++ )
+        {
+            stripes[i] = new LockStripe();
+        }
+    }
+
+    private LockStripe stripeFor( Object resource )
+    {
+        int hash = resource.hashCode();
+        hash ^= ( hash >>> 20 ) ^ ( hash >>> 12 );
+        hash ^= ( hash >>> 7 ) ^ ( hash >>> 4 );
+        return stripes[( hash & 0x7fffffff ) % stripes.length];
     }
 
     public long getDetectedDeadlockCount()
@@ -87,13 +112,14 @@ public class LockManager
         }
 
         RWLock lock = null;
-        synchronized ( resourceLockMap )
+        LockStripe stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            lock = resourceLockMap.get( resource );
+            lock = stripe.locks.get( resource );
             if ( lock == null )
             {
                 lock = new RWLock( resource, ragManager );
-                resourceLockMap.put( resource, lock );
+                stripe.locks.put( resource, lock );
             }
             lock.mark();
         }
@@ -121,13 +147,14 @@ public class LockManager
         }
 
         RWLock lock = null;
-        synchronized ( resourceLockMap )
+        LockStripe stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            lock = resourceLockMap.get( resource );
+            lock = stripe.locks.get( resource );
             if ( lock == null )
             {
                 lock = new RWLock( resource, ragManager );
-                resourceLockMap.put( resource, lock );
+                stripe.locks.put( resource, lock );
             }
             lock.mark();
         }
@@ -153,9 +180,10 @@ public class LockManager
         }
 
         RWLock lock = null;
-        synchronized ( resourceLockMap )
+        LockStripe stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            lock = resourceLockMap.get( resource );
+            lock = stripe.locks.get( resource );
             if ( lock == null )
             {
                 throw new LockNotFoundException( "Lock not found for: "
@@ -165,7 +193,7 @@ public class LockManager
                 lock.getWriteCount() == 0 &&
                 lock.getWaitingThreadsCount() == 0 )
             {
-                resourceLockMap.remove( resource );
+                stripe.locks.remove( resource );
             }
             lock.releaseReadLock(tx);
         }
@@ -190,9 +218,10 @@ public class LockManager
         }
 
         RWLock lock = null;
-        synchronized ( resourceLockMap )
+        LockStripe stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            lock = resourceLockMap.get( resource );
+            lock = stripe.locks.get( resource );
             if ( lock == null )
             {
                 throw new LockNotFoundException( "Lock not found for: "
@@ -202,7 +231,7 @@ public class LockManager
                 lock.getWriteCount() == 1 &&
                 lock.getWaitingThreadsCount() == 0 )
             {
-                resourceLockMap.remove( resource );
+                stripe.locks.remove( resource );
             }
             lock.releaseWriteLock(tx);
         }
@@ -218,14 +247,15 @@ public class LockManager
     public void dumpLocksOnResource( Object resource )
     {
         RWLock lock = null;
-        synchronized ( resourceLockMap )
+        LockStripe stripe = stripeFor( resource );
+        synchronized ( stripe )
         {
-            if ( !resourceLockMap.containsKey( resource ) )
+            if ( !stripe.locks.containsKey( resource ) )
             {
                 System.out.println( "No locks on " + resource );
                 return;
             }
-            lock = resourceLockMap.get( resource );
+            lock = stripe.locks.get( resource );
         }
         lock.dumpStack();
     }
@@ -243,17 +273,21 @@ public class LockManager
     /**
      * Visit all locks.
      * 
-     * The supplied visitor may not block.
+     * The supplied visitor may not block. Stripes are visited one at a time,
+     * so the visited locks are not a snapshot of a single point in time.
      * 
      * @param visitor visitor for visiting each lock.
      */
     private <V extends Visitor<LockInfo>> V eachLock( V visitor )
     {
-        synchronized ( resourceLockMap )
+        for ( LockStripe stripe : stripes )
         {
-            for ( RWLock lock : resourceLockMap.values() )
+            synchronized ( stripe )
             {
-                if ( visitor.visit( lock.info() ) ) break;
+                for ( RWLock lock : stripe.locks.values() )
+                {
+                    if ( visitor.visit( lock.info() ) ) return visitor;
+                }
             }
         }
         return visitor;
@@ -273,11 +307,14 @@ public class LockManager
     private <V extends Visitor<LockInfo>> V eachAwaitedLock( V visitor, long minWaitTime )
     {
         long waitStart = System.currentTimeMillis() - minWaitTime;
-        synchronized ( resourceLockMap )
+        for ( LockStripe stripe : stripes )
         {
-            for ( RWLock lock : resourceLockMap.values() )
+            synchronized ( stripe )
             {
-                if ( lock.acceptVisitorIfWaitedSinceBefore( visitor, waitStart ) ) break;
+                for ( RWLock lock : stripe.locks.values() )
+                {
+                    if ( lock.acceptVisitorIfWaitedSinceBefore( visitor, waitStart ) ) return visitor;
+                }
             }
         }
         return visitor;
@@ -302,6 +339,11 @@ public class LockManager
         dump.done();
     }
 
+    private static class LockStripe
+    {
+        final Map<Object,RWLock> locks = new HashMap<Object,RWLock>();
+    }
+
     private static class ListAppendingVisitor implements Visitor<LockInfo>
     {
         private final List<LockInfo> result = new ArrayList<LockInfo>();
@@ -26,12 +26,14 @@ import org.neo4j.kernel.impl.util.ArrayMap;
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -71,9 +73,15 @@ public class RagManager
     // in a DeadlockDetectedException the transaction must wait
     // o When the transaction wakes up from waiting on a resource the
     // stopWaitOn( resource ) method must be invoked
+    //
+    // lockAcquired and lockReleased are invoked by the RWLock while holding its
+    // monitor, which serializes them per resource. They therefore only guard
+    // the locking tx list of that one resource, so that uncontended locking
+    // doesn't go through the RagManager monitor. Only transactions that are
+    // about to wait (checkWaitOn, stopWaitOn) synchronize on the RagManager.
 
-    private final Map<Object,List<Transaction>> resourceMap =
-        new HashMap<Object,List<Transaction>>();
+    private final ConcurrentMap<Object,List<Transaction>> resourceMap =
+        new ConcurrentHashMap<Object,List<Transaction>>();
 
     private final ArrayMap<Transaction,Object> waitingTxMap =
         new ArrayMap<Transaction,Object>( (byte)5, false, true );
@@ -92,13 +100,16 @@ public class RagManager
         return deadlockCount.longValue();
     }
 
-    synchronized void lockAcquired( Object resource, Transaction tx )
+    void lockAcquired( Object resource, Transaction tx )
     {
         List<Transaction> lockingTxList = resourceMap.get( resource );
         if ( lockingTxList != null )
         {
-            assert !lockingTxList.contains( tx );
-            lockingTxList.add( tx );
+            synchronized ( lockingTxList )
+            {
+                assert !lockingTxList.contains( tx );
+                lockingTxList.add( tx );
+            }
         }
         else
         {
@@ -108,7 +119,7 @@ public class RagManager
         }
     }
 
-    synchronized void lockReleased( Object resource, Transaction tx )
+    void lockReleased( Object resource, Transaction tx )
     {
         List<Transaction> lockingTxList = resourceMap.get( resource );
         if ( lockingTxList == null )
@@ -116,13 +127,33 @@ public class RagManager
             throw new LockException( resource + " not found in resource map" );
         }
 
-        if ( !lockingTxList.remove( tx ) )
+        synchronized ( lockingTxList )
         {
-            throw new LockException( tx + "not found in locking tx list" );
+            if ( !lockingTxList.remove( tx ) )
+            {
+                throw new LockException( tx + "not found in locking tx list" );
+            }
+            if ( lockingTxList.size() == 0 )
+            {
+                resourceMap.remove( resource );
+            }
         }
-        if ( lockingTxList.size() == 0 )
+    }
+
+    /**
+     * @return a copy of the transactions currently holding a lock on
+     *         <CODE>resource</CODE>, or <CODE>null</CODE> if there are none.
+     */
+    private List<Transaction> lockingTransactions( Object resource )
+    {
+        List<Transaction> lockingTxList = resourceMap.get( resource );
+        if ( lockingTxList == null )
         {
-            resourceMap.remove( resource );
+            return null;
+        }
+        synchronized ( lockingTxList )
+        {
+            return new ArrayList<Transaction>( lockingTxList );
         }
     }
 
@@ -138,7 +169,7 @@ public class RagManager
     synchronized void checkWaitOn( Object resource, Transaction tx )
         throws DeadlockDetectedException
     {
-        List<Transaction> lockingTxList = resourceMap.get( resource );
+        List<Transaction> lockingTxList = lockingTransactions( resource );
         if ( lockingTxList == null )
         {
             throw new LockException( "Illegal resource[" + resource
@@ -232,7 +263,7 @@ public class RagManager
             // this is ok since current tx or any other tx will wake
             // in the synchronized block and will be forced to do the deadlock
             // check once more if lock cannot be acquired
-            List<Transaction> lockingTxList = resourceMap.get( resource );
+            List<Transaction> lockingTxList = lockingTransactions( resource );
             if ( lockingTxList != null )
             {
                 Iterator<Transaction> itr = lockingTxList.iterator();
@@ -284,7 +315,9 @@ public class RagManager
         {
             Object resource = resources.next();
             System.out.print( "" + resource + "->" );
-            Iterator<Transaction> itr = resourceMap.get( resource ).iterator();
+            List<Transaction> lockingTxList = lockingTransactions( resource );
+            Iterator<Transaction> itr = lockingTxList != null ? lockingTxList.iterator()
+                : new LinkedList<Transaction>().iterator();
             if ( !itr.hasNext() )
             {
                 System.out.println( " Error empty list found" );
@@ -21,6 +21,7 @@ package org.neo4j.kernel.impl.transaction;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -37,12 +38,12 @@ import org.neo4j.helpers.UTF8;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.transaction.xaframework.DirectMappedLogBuffer;
 import org.neo4j.kernel.impl.transaction.xaframework.ForceMode;
+import org.neo4j.kernel.impl.transaction.xaframework.GroupCommit;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
 import org.neo4j.kernel.impl.util.StringLogger;
 
 // TODO: fixed sized logs (pre-initialize them)
 // keep dangling records in memory for log switch
-// batch disk forces
 /**
  * This class is made public for testing purposes only, do not use.
  * <p>
@@ -62,6 +63,7 @@ public class TxLog
     public static final byte TX_DONE = 4;
     private final FileSystemAbstraction fileSystem;
     private final StringLogger msgLog;
+    private final GroupCommit groupCommit = new GroupCommit();
 
     /**
      * Initializes a transaction log using <CODE>filename</CODE>. If the file
@@ -111,6 +113,7 @@ public class TxLog
     public void close() throws IOException
     {
         logBuffer.force();
+        groupCommit.appendedForced();
         logBuffer.getFileChannel().close();
     }
 
@@ -181,7 +184,8 @@ public class TxLog
 
     /**
      * Writes a <CODE>MARK_COMMIT</CODE> record to the file and forces the
-     * file to disk.
+     * file to disk. Transactions marking themselves as committing at the
+     * same time share one force, see {@link GroupCommit}.
      * 
      * @param globalId
      *            The global id of the transaction
@@ -190,13 +194,69 @@ public class TxLog
      */
     // mark_committing(byte)|gid_length(byte)|globalId
     // forces
-    public synchronized void markAsCommitting( byte globalId[], ForceMode forceMode )
+    public void markAsCommitting( byte globalId[], ForceMode forceMode )
+        throws IOException
+    {
+        long ticket = writeMarkAsCommitting( globalId, forceMode );
+        if ( ticket != NO_TICKET )
+        {
+            groupCommit.awaitForced( ticket, forcer );
+        }
+    }
+
+    private static final long NO_TICKET = -1;
+
+    private synchronized long writeMarkAsCommitting( byte globalId[], ForceMode forceMode )
         throws IOException
     {
         assertNotNull( globalId, "global id" );
         logBuffer.put( MARK_COMMIT ).put( (byte) globalId.length ).put( globalId );
-        forceMode.force( logBuffer );
         recordCount++;
+        if ( forceMode == ForceMode.forced )
+        {
+            logBuffer.writeOut();
+            return groupCommit.append();
+        }
+        forceMode.force( logBuffer );
+        return NO_TICKET;
+    }
+
+    private final GroupCommit.Forcer forcer = new GroupCommit.Forcer()
+    {
+        public long force() throws IOException
+        {
+            FileChannel channel;
+            long covered;
+            synchronized ( TxLog.this )
+            {
+                // everything up to the last ticket has been written out to the channel
+                covered = groupCommit.lastAppended();
+                channel = logBuffer.getFileChannel();
+            }
+            try
+            {
+                channel.force( false );
+            }
+            catch ( ClosedChannelException e )
+            {
+                // switched to the other log meanwhile, which forces this one before closing it
+                if ( !groupCommit.isForced( covered ) )
+                {
+                    throw e;
+                }
+            }
+            return covered;
+        }
+    };
+
+    /**
+     * @return statistics over the forces done for transactions marked as
+     *         committing. Transactions with a single resource enlisted
+     *         commit in one phase and don't force this log at all.
+     */
+    public GroupCommit getGroupCommit()
+    {
+        return groupCommit;
     }
 
     /**
@@ -294,7 +354,7 @@ public class TxLog
         }
     }
 
-    void writeRecord( Record record, ForceMode forceMode ) throws IOException
+    void writeRecord( Record record ) throws IOException
     {
         if ( record.getType() == TX_START )
         {
@@ -306,7 +366,8 @@ public class TxLog
         }
         else if ( record.getType() == MARK_COMMIT )
         {
-            markAsCommitting( record.getGlobalId(), forceMode );
+            // switchToLogFile forces the log once all records are copied
+            writeMarkAsCommitting( record.getGlobalId(), ForceMode.unforced );
         }
         else
         {
@@ -497,7 +558,7 @@ public class TxLog
         while ( recordItr.hasNext() )
         {
             Record record = recordItr.next();
-            writeRecord( record, ForceMode.forced );
+            writeRecord( record );
         }
         force();
         msgLog.logMessage( "Rotated " + name + " to, file channel now at " + fileChannel.position(), true );
@@ -819,4 +819,15 @@ public class TxManager extends AbstractTransactionManager
     {
         return peakConcurrentTransactions;
     }
+
+    /**
+     * @return the number of times the transaction log has been forced for
+     *         transactions committing in two phases. Those with a single
+     *         resource enlisted commit in one phase and only force the log of
+     *         that resource.
+     */
+    public long getTxLogForceCount()
+    {
+        return txLog == null ? 0 : txLog.getGroupCommit().getForceCount();
+    }
 }
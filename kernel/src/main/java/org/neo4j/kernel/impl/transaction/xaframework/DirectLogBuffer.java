@@ -97,6 +97,15 @@ class DirectLogBuffer implements LogBuffer
         return this;
     }
 
+    public LogBuffer put( ByteBuffer bytes ) throws IOException
+    {
+        while ( bytes.hasRemaining() )
+        {
+            fileChannel.write( bytes );
+        }
+        return this;
+    }
+
     public LogBuffer put( char[] chars ) throws IOException
     {
         int position = 0;
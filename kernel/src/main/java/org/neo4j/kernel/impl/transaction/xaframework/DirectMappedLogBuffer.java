@@ -147,6 +147,23 @@ public class DirectMappedLogBuffer implements LogBuffer
         }
     }
 
+    public LogBuffer put( ByteBuffer bytes ) throws IOException
+    {
+        ensureCapacity( Math.min( bytes.remaining(), BUFFER_SIZE ) );
+        if ( bytes.remaining() > BUFFER_SIZE )
+        {   // the buffer is empty at this point, so this goes right after what's written
+            while ( bytes.hasRemaining() )
+            {
+                bufferStartPosition += fileChannel.write( bytes, bufferStartPosition );
+            }
+        }
+        else
+        {
+            byteBuffer.put( bytes );
+        }
+        return this;
+    }
+
     @Override
     public void writeOut() throws IOException
     {
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+
+/**
+ * Lets transactions committing concurrently share one force of a log, the
+ * logical log of a data source or the transaction manager's log. Each commit
+ * entry written out to the log gets a ticket, and a committer waits in
+ * {@link #awaitForced(long, Forcer)} until its ticket is covered by a force.
+ * The first waiter to find no force in progress does the force itself,
+ * covering every ticket handed out up to when it started, while the others
+ * wait for it to finish.
+ * <p>
+ * Also keeps count of the number of forces, the number of transactions they
+ * covered and the time spent forcing.
+ */
+public class GroupCommit
+{
+    /**
+     * Forces everything written out to the log so far.
+     */
+    public interface Forcer
+    {
+        /**
+         * @return the last ticket covered by the force.
+         */
+        long force() throws IOException;
+    }
+
+    private long appended;
+    private long forced;
+    private boolean forcing;
+
+    private long forceCount;
+    private long forcedTransactions;
+    private long maxBatchSize;
+    private long forceTimeNanos;
+
+    /**
+     * Called once the commit entry of a transaction has been written out to
+     * the log channel, with the log monitor held.
+     *
+     * @return the ticket to wait for with {@link #awaitForced(long, Forcer)}.
+     */
+    public synchronized long append()
+    {
+        return ++appended;
+    }
+
+    public synchronized long lastAppended()
+    {
+        return appended;
+    }
+
+    /**
+     * Called when the log has been forced by some other means than through
+     * {@link #awaitForced(long, Forcer)}, f.ex. before the log channel is
+     * closed on rotation, with the log monitor held.
+     */
+    public synchronized void appendedForced()
+    {
+        forced = appended;
+        notifyAll();
+    }
+
+    public synchronized boolean isForced( long ticket )
+    {
+        return forced >= ticket;
+    }
+
+    public void awaitForced( long ticket, Forcer forcer ) throws IOException
+    {
+        synchronized ( this )
+        {
+            boolean interrupted = false;
+            while ( forced < ticket && forcing )
+            {
+                try
+                {
+                    wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    // the commit entry is already written, we can't back out now
+                    interrupted = true;
+                }
+            }
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+            if ( forced >= ticket )
+            {
+                return;
+            }
+            forcing = true;
+        }
+
+        long startTime = System.nanoTime();
+        long covered = -1;
+        try
+        {
+            covered = forcer.force();
+        }
+        finally
+        {
+            long time = System.nanoTime() - startTime;
+            synchronized ( this )
+            {
+                forcing = false;
+                if ( covered > forced )
+                {
+                    long batchSize = covered - forced;
+                    forced = covered;
+                    forceCount++;
+                    forcedTransactions += batchSize;
+                    maxBatchSize = Math.max( maxBatchSize, batchSize );
+                    forceTimeNanos += time;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the number of forces done for committing transactions.
+     */
+    public synchronized long getForceCount()
+    {
+        return forceCount;
+    }
+
+    /**
+     * @return the number of transactions committed by those forces.
+     */
+    public synchronized long getForcedTransactionCount()
+    {
+        return forcedTransactions;
+    }
+
+    public synchronized double getAverageBatchSize()
+    {
+        return forceCount == 0 ? 0 : (double) forcedTransactions / forceCount;
+    }
+
+    public synchronized long getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    /**
+     * @return the average time, in microseconds, a force took.
+     */
+    public synchronized long getAverageForceTimeMicros()
+    {
+        return forceCount == 0 ? 0 : forceTimeNanos / forceCount / 1000;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "GroupCommit[forces=" + forceCount + ", transactions=" + forcedTransactions +
+                ", maxBatchSize=" + maxBatchSize + ", averageForceTime=" + getAverageForceTimeMicros() + "us]";
+    }
+}
@@ -104,6 +104,15 @@ public class InMemoryLogBuffer implements LogBuffer, ReadableByteChannel
         return this;
     }
 
+    public LogBuffer put( ByteBuffer bytes ) throws IOException
+    {
+        int length = bytes.remaining();
+        ensureArrayCapacityPlus( length );
+        bytes.get( this.bytes, writeIndex, length );
+        writeIndex += length;
+        return this;
+    }
+
     public LogBuffer put( char[] chars ) throws IOException
     {
         ensureConversionBufferCapacity( chars.length*2 );
@@ -20,6 +20,7 @@
 package org.neo4j.kernel.impl.transaction.xaframework;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 public interface LogBuffer
@@ -40,6 +41,12 @@ public interface LogBuffer
 
     public LogBuffer put( char[] chars ) throws IOException;
 
+    /**
+     * Puts the remaining bytes of <CODE>bytes</CODE>, leaving its position
+     * at its limit.
+     */
+    public LogBuffer put( ByteBuffer bytes ) throws IOException;
+
     /**
      * Makes sure the data added to this buffer is written out to the underlying
      * file. Makes sure that readers of the channel will see the content of the
@@ -20,6 +20,7 @@
 package org.neo4j.kernel.impl.transaction.xaframework;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 public class NullLogBuffer implements LogBuffer
@@ -36,6 +37,7 @@ public class NullLogBuffer implements LogBuffer
     @Override public LogBuffer putDouble( double d ) throws IOException { return this; }
     @Override public LogBuffer put( byte[] bytes ) throws IOException { return this; }
     @Override public LogBuffer put( char[] chars ) throws IOException { return this; }
+    @Override public LogBuffer put( ByteBuffer bytes ) throws IOException { bytes.position( bytes.limit() ); return this; }
     @Override public void writeOut() throws IOException {}
     @Override public void force() throws IOException {}
 
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link LogBuffer} that only collects what is put into it, in a direct
+ * buffer that grows as needed, so that an entry can be serialized without
+ * holding the log and then be appended to it with {@link #appendTo(LogBuffer)}
+ * in one copy.
+ */
+class StagingLogBuffer implements LogBuffer
+{
+    static final int INITIAL_SIZE = 1024 * 16;
+    // a buffer grown past this is dropped once appended rather than kept around
+    static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect( INITIAL_SIZE );
+
+    private void ensureCapacity( int plusSize )
+    {
+        if ( buffer.remaining() < plusSize )
+        {
+            int size = buffer.capacity() * 2;
+            while ( size - buffer.position() < plusSize )
+            {
+                size *= 2;
+            }
+            ByteBuffer larger = ByteBuffer.allocateDirect( size );
+            buffer.flip();
+            larger.put( buffer );
+            buffer = larger;
+        }
+    }
+
+    public LogBuffer put( byte b ) throws IOException
+    {
+        ensureCapacity( 1 );
+        buffer.put( b );
+        return this;
+    }
+
+    public LogBuffer putShort( short s ) throws IOException
+    {
+        ensureCapacity( 2 );
+        buffer.putShort( s );
+        return this;
+    }
+
+    public LogBuffer putInt( int i ) throws IOException
+    {
+        ensureCapacity( 4 );
+        buffer.putInt( i );
+        return this;
+    }
+
+    public LogBuffer putLong( long l ) throws IOException
+    {
+        ensureCapacity( 8 );
+        buffer.putLong( l );
+        return this;
+    }
+
+    public LogBuffer putFloat( float f ) throws IOException
+    {
+        ensureCapacity( 4 );
+        buffer.putFloat( f );
+        return this;
+    }
+
+    public LogBuffer putDouble( double d ) throws IOException
+    {
+        ensureCapacity( 8 );
+        buffer.putDouble( d );
+        return this;
+    }
+
+    public LogBuffer put( byte[] bytes ) throws IOException
+    {
+        ensureCapacity( bytes.length );
+        buffer.put( bytes );
+        return this;
+    }
+
+    public LogBuffer put( char[] chars ) throws IOException
+    {
+        ensureCapacity( chars.length * 2 );
+        int oldPos = buffer.position();
+        buffer.asCharBuffer().put( chars );
+        buffer.position( oldPos + chars.length * 2 );
+        return this;
+    }
+
+    public LogBuffer put( ByteBuffer bytes ) throws IOException
+    {
+        ensureCapacity( bytes.remaining() );
+        buffer.put( bytes );
+        return this;
+    }
+
+    /**
+     * Puts everything put into this buffer so far into <CODE>target</CODE>
+     * and empties this buffer.
+     */
+    void appendTo( LogBuffer target ) throws IOException
+    {
+        buffer.flip();
+        try
+        {
+            target.put( buffer );
+        }
+        finally
+        {
+            clear();
+        }
+    }
+
+    void clear()
+    {
+        if ( buffer.capacity() > MAX_RETAINED_SIZE )
+        {
+            buffer = ByteBuffer.allocateDirect( INITIAL_SIZE );
+        }
+        else
+        {
+            buffer.clear();
+        }
+    }
+
+    int size()
+    {
+        return buffer.position();
+    }
+
+    @Override
+    public void writeOut() throws IOException
+    {
+        // Nothing to do, the content is only written when appended to another buffer
+    }
+
+    public void force() throws IOException
+    {
+    }
+
+    public long getFileChannelPosition() throws IOException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public FileChannel getFileChannel()
+    {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -80,6 +80,18 @@ public class XaFactory
             log = new XaLogicalLog( logicalLog, rm, cf, tf, logBufferFactory, fileSystemAbstraction, stringLogger );
         }
 
+        // Group commit hands out tx ids ahead of the data source, which only works
+        // with the default generator
+        if ( "true".equalsIgnoreCase( (String) config.get( Config.GROUP_COMMIT ) )
+                && txIdGenerator == TxIdGenerator.DEFAULT )
+        {
+            log.setGroupCommit( true );
+        }
+        if ( "true".equalsIgnoreCase( (String) config.get( Config.BACKGROUND_LOG_ROTATION ) ) )
+        {
+            log.setBackgroundRotation( true );
+        }
+
         // TODO These setters should be removed somehow
         rm.setLogicalLog( log );
         tf.setLogicalLog( log );
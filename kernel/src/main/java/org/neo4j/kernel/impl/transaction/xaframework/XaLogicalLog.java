@@ -22,6 +22,7 @@ package org.neo4j.kernel.impl.transaction.xaframework;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.HashMap;
@@ -80,6 +81,19 @@ public class XaLogicalLog implements LogLoader
     private static final char LOG1 = '1';
     private static final char LOG2 = '2';
 
+    // percent of the log between progress messages during recovery
+    private static final int RECOVERY_PROGRESS_STEP = 10;
+
+    // commands are serialized into these before the log is locked
+    private static final ThreadLocal<StagingLogBuffer> commandBuffers = new ThreadLocal<StagingLogBuffer>()
+    {
+        @Override
+        protected StagingLogBuffer initialValue()
+        {
+            return new StagingLogBuffer();
+        }
+    };
+
     private FileChannel fileChannel = null;
     private final ByteBuffer sharedBuffer;
     private LogBuffer writeBuffer = null;
@@ -112,6 +126,15 @@ public class XaLogicalLog implements LogLoader
     private final LogPositionCache positionCache = new LogPositionCache();
     private final FileSystemAbstraction fileSystem;
 
+    static final long NO_TICKET = -1;
+    private GroupCommit groupCommit;
+
+    private boolean backgroundRotation;
+    private volatile Thread rotator;
+    private long rotationCount;
+    private long rotationStallNanos;
+    private long maxRotationStallNanos;
+
     public XaLogicalLog( String fileName, XaResourceManager xaRm, XaCommandFactory cf,
             XaTransactionFactory xaTf, LogBufferFactory logBufferFactory, FileSystemAbstraction fileSystem, StringLogger stringLogger )
     {
@@ -346,7 +369,23 @@ public class XaLogicalLog implements LogLoader
     }
 
     // [TX_1P_COMMIT][identifier]
-    public synchronized void commitOnePhase( int identifier, long txId, ForceMode forceMode )
+    public void commitOnePhase( int identifier, long txId, ForceMode forceMode )
+        throws XAException
+    {
+        awaitForced( appendCommit( false, identifier, txId, forceMode ), identifier );
+    }
+
+    /**
+     * Writes the commit entry of a transaction. Unless group commit is enabled
+     * the log is also forced according to <CODE>forceMode</CODE>, otherwise
+     * the entry is only written out and the returned ticket has to be passed
+     * to {@link #awaitForced(long, int)} before the transaction is considered
+     * committed.
+     *
+     * @return the ticket to wait for, or {@link #NO_TICKET} if the entry
+     * needs no further forcing.
+     */
+    synchronized long appendCommit( boolean twoPhase, int identifier, long txId, ForceMode forceMode )
         throws XAException
     {
         LogEntry.Start startEntry = xidIdentMap.get( identifier );
@@ -355,16 +394,97 @@ public class XaLogicalLog implements LogLoader
         try
         {
             cacheTxStartPosition( txId, startEntry );
-            LogIoUtils.writeCommit( false, writeBuffer, identifier, txId, System.currentTimeMillis() );
+            LogIoUtils.writeCommit( twoPhase, writeBuffer, identifier, txId, System.currentTimeMillis() );
+            if ( groupCommit != null && forceMode == ForceMode.forced )
+            {
+                writeBuffer.writeOut();
+                return groupCommit.append();
+            }
             forceMode.force( writeBuffer );
+            return NO_TICKET;
+        }
+        catch ( IOException e )
+        {
+            throw Exceptions.withCause( new XAException( twoPhase ?
+                    "Logical log unable to mark 2PC [" + identifier + "] " :
+                    "Logical log unable to mark 1P-commit [" + identifier + "] " ), e );
+        }
+    }
+
+    /**
+     * Waits for a commit entry written by {@link #appendCommit} to be forced,
+     * possibly forcing the log for it and other committing transactions.
+     * Must not be called holding the monitor of this log, or no other
+     * commit entries can be written meanwhile.
+     */
+    void awaitForced( long ticket, int identifier ) throws XAException
+    {
+        if ( ticket == NO_TICKET )
+        {
+            return;
+        }
+        try
+        {
+            groupCommit.awaitForced( ticket, forcer );
         }
         catch ( IOException e )
         {
             throw Exceptions.withCause(
-                    new XAException( "Logical log unable to mark 1P-commit [" + identifier + "] " ), e );
+                    new XAException( "Logical log unable to force commit [" + identifier + "] " ), e );
         }
     }
 
+    private final GroupCommit.Forcer forcer = new GroupCommit.Forcer()
+    {
+        public long force() throws IOException
+        {
+            FileChannel channel;
+            long covered;
+            synchronized ( XaLogicalLog.this )
+            {
+                // everything up to the last ticket has been written out to the channel
+                covered = groupCommit.lastAppended();
+                channel = writeBuffer.getFileChannel();
+            }
+            try
+            {
+                channel.force( false );
+            }
+            catch ( ClosedChannelException e )
+            {
+                // rotated or closed meanwhile, which forces the log before closing it
+                if ( !groupCommit.isForced( covered ) )
+                {
+                    throw e;
+                }
+            }
+            return covered;
+        }
+    };
+
+    public boolean isGroupCommit()
+    {
+        return groupCommit != null;
+    }
+
+    /**
+     * @return statistics over forces done for committing transactions, or
+     * <CODE>null</CODE> if group commit isn't enabled.
+     */
+    public GroupCommit getGroupCommit()
+    {
+        return groupCommit;
+    }
+
+    /**
+     * Enables or disables group commit, see {@link GroupCommit}. Must be set
+     * before the log is opened.
+     */
+    public void setGroupCommit( boolean enabled )
+    {
+        this.groupCommit = enabled ? new GroupCommit() : null;
+    }
+
     private synchronized void cacheTxStartPosition( long txId, LogEntry.Start startEntry )
     {
         cacheTxStartPosition( txId, startEntry, logVersion );
@@ -421,31 +541,25 @@ public class XaLogicalLog implements LogLoader
     }
 
     // [TX_2P_COMMIT][identifier]
-    public synchronized void commitTwoPhase( int identifier, long txId, ForceMode forceMode )
+    public void commitTwoPhase( int identifier, long txId, ForceMode forceMode )
         throws XAException
     {
-        LogEntry.Start startEntry = xidIdentMap.get( identifier );
-        assert startEntry != null;
-        assert txId != -1;
-        try
-        {
-            cacheTxStartPosition( txId, startEntry );
-            LogIoUtils.writeCommit( true, writeBuffer, identifier, txId, System.currentTimeMillis() );
-            forceMode.force( writeBuffer );
-        }
-        catch ( IOException e )
-        {
-            throw Exceptions.withCause( new XAException( "Logical log unable to mark 2PC [" + identifier + "] " ), e );
-        }
+        awaitForced( appendCommit( true, identifier, txId, forceMode ), identifier );
     }
 
     // [COMMAND][identifier][COMMAND_DATA]
-    public synchronized void writeCommand( XaCommand command, int identifier )
+    public void writeCommand( XaCommand command, int identifier )
         throws IOException
     {
-        checkLogRotation();
-        assert xidIdentMap.get( identifier ) != null;
-        LogIoUtils.writeCommand( writeBuffer, identifier, command );
+        StagingLogBuffer commandBuffer = commandBuffers.get();
+        commandBuffer.clear();
+        LogIoUtils.writeCommand( commandBuffer, identifier, command );
+        synchronized ( this )
+        {
+            checkLogRotation();
+            assert xidIdentMap.get( identifier ) != null;
+            commandBuffer.appendTo( writeBuffer );
+        }
     }
 
     private void applyEntry( LogEntry entry ) throws IOException
@@ -617,6 +731,21 @@ public class XaLogicalLog implements LogLoader
     }
 
     private void checkLogRotation() throws IOException
+    {
+        if ( shouldRotate() )
+        {
+            if ( backgroundRotation )
+            {
+                startRotator();
+            }
+            else
+            {
+                rotate();
+            }
+        }
+    }
+
+    private boolean shouldRotate() throws IOException
     {
         if ( autoRotate &&
             writeBuffer.getFileChannelPosition() >= rotateAtSize )
@@ -624,13 +753,112 @@ public class XaLogicalLog implements LogLoader
             long currentPos = writeBuffer.getFileChannelPosition();
             long firstStartEntry = getFirstStartEntry( currentPos );
             // only rotate if no huge tx is running
-            if ( ( currentPos - firstStartEntry ) < rotateAtSize / 2 )
+            return ( currentPos - firstStartEntry ) < rotateAtSize / 2;
+        }
+        return false;
+    }
+
+    private void startRotator()
+    {
+        if ( rotator != null )
+        {
+            return;
+        }
+        rotator = new Thread( "Logical log rotation [" + fileName + "]" )
+        {
+            @Override
+            public void run()
             {
-                rotate();
+                try
+                {
+                    /*
+                     * Flush the stores before taking the log monitor so that the
+                     * flush done by rotate() only has to write out what has been
+                     * committed since. Committers keep appending to the current
+                     * log meanwhile.
+                     */
+                    xaTf.flushAll();
+                    synchronized ( XaLogicalLog.this )
+                    {
+                        if ( fileChannel != null && fileChannel.isOpen() && shouldRotate() )
+                        {
+                            rotate();
+                        }
+                    }
+                }
+                catch ( Throwable e )
+                {
+                    msgLog.logMessage( "Background rotation of " + fileName + " failed", e, true );
+                }
+                finally
+                {
+                    rotator = null;
+                }
+            }
+        };
+        rotator.setDaemon( true );
+        rotator.start();
+    }
+
+    private void awaitRotator()
+    {
+        Thread thread = rotator;
+        if ( thread != null && thread != Thread.currentThread() )
+        {
+            try
+            {
+                thread.join();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
             }
         }
     }
 
+    /**
+     * Makes rotations triggered by the log reaching its target size happen
+     * in a thread of their own, see {@link #setLogicalLogTargetSize(long)}.
+     * That thread flushes the data source before taking the log monitor, so
+     * committers are only held up for the time it takes to flush what has
+     * been committed meanwhile and to switch over to the new log.
+     */
+    public synchronized void setBackgroundRotation( boolean enabled )
+    {
+        this.backgroundRotation = enabled;
+    }
+
+    public synchronized boolean isBackgroundRotation()
+    {
+        return backgroundRotation;
+    }
+
+    /**
+     * @return the number of times this log has been rotated.
+     */
+    public synchronized long getRotationCount()
+    {
+        return rotationCount;
+    }
+
+    /**
+     * @return the total time, in milliseconds, that rotations have kept
+     *         transactions from writing to the log.
+     */
+    public synchronized long getRotationStallMillis()
+    {
+        return rotationStallNanos / 1000000;
+    }
+
+    /**
+     * @return the longest time, in milliseconds, a single rotation has kept
+     *         transactions from writing to the log.
+     */
+    public synchronized long getMaxRotationStallMillis()
+    {
+        return maxRotationStallNanos / 1000000;
+    }
+
     private void fixDualLogFiles( String activeLog, String oldLog ) throws IOException
     {
         FileChannel activeLogChannel = fileSystem.open( activeLog, "r" );
@@ -721,12 +949,30 @@ public class XaLogicalLog implements LogLoader
         if ( writeBuffer != null )
         {
             writeBuffer.force();
+            markAppendedForced();
         }
         fileChannel.close();
         fileChannel = null;
     }
 
-    public synchronized void close() throws IOException
+    private void markAppendedForced()
+    {
+        if ( groupCommit != null )
+        {
+            groupCommit.appendedForced();
+        }
+    }
+
+    public void close() throws IOException
+    {
+        awaitRotator();
+        synchronized ( this )
+        {
+            doClose();
+        }
+    }
+
+    private void doClose() throws IOException
     {
         if ( fileChannel == null || !fileChannel.isOpen() )
         {
@@ -739,6 +985,7 @@ public class XaLogicalLog implements LogLoader
             log.info( "Close invoked with " + xidIdentMap.size() +
                 " running transaction(s). " );
             writeBuffer.force();
+            markAppendedForced();
             fileChannel.close();
             log.info( "Dirty log: " + fileName + "." + currentLog +
                 " now closed. Recovery will be started automatically next " +
@@ -820,6 +1067,8 @@ public class XaLogicalLog implements LogLoader
                 " with committed tx=" + lastCommittedTx, true );
         long logEntriesFound = 0;
         long lastEntryPos = fileChannel.position();
+        long logSize = fileChannel.size();
+        int reportedPercent = 0;
         fileChannel = new BufferedFileChannel( fileChannel );
         LogEntry entry;
         while ( (entry = readEntry()) != null )
@@ -827,6 +1076,13 @@ public class XaLogicalLog implements LogLoader
             applyEntry( entry );
             logEntriesFound++;
             lastEntryPos = fileChannel.position();
+            int percent = (int) (lastEntryPos * 100 / logSize);
+            if ( percent >= reportedPercent + RECOVERY_PROGRESS_STEP )
+            {
+                reportedPercent = percent - percent % RECOVERY_PROGRESS_STEP;
+                msgLog.logMessage( "[" + logFileName + "] recovery " + reportedPercent + "% done, "
+                        + logEntriesFound + " entries, " + recoveredTxCount + " transactions", true );
+            }
         }
         // make sure we overwrite any broken records
         fileChannel = ((BufferedFileChannel)fileChannel).getSource();
@@ -1395,6 +1651,22 @@ public class XaLogicalLog implements LogLoader
      * @throws IOException I/O error.
      */
     public synchronized long rotate() throws IOException
+    {
+        long startTime = System.nanoTime();
+        try
+        {
+            return doRotate();
+        }
+        finally
+        {
+            long stall = System.nanoTime() - startTime;
+            rotationCount++;
+            rotationStallNanos += stall;
+            maxRotationStallNanos = Math.max( maxRotationStallNanos, stall );
+        }
+    }
+
+    private long doRotate() throws IOException
     {
 //        if ( writeBuffer.getFileChannelPosition() == LogIoUtils.LOG_HEADER_SIZE ) return xaTf.getLastCommittedTx();
         xaTf.flushAll();
@@ -61,6 +61,11 @@ public class XaResourceManager
     private final AbstractTransactionManager transactionManager;
     private final RecoveryVerifier recoveryVerifier;
 
+    // guarded by this, used with group commit only
+    private long writtenCommits;
+    private long completedCommits;
+    private long lastWrittenTxId;
+
     public XaResourceManager( XaDataSource dataSource, XaTransactionFactory tf,
             TxIdGenerator txIdGenerator, AbstractTransactionManager transactionManager,
             RecoveryVerifier recoveryVerifier, String name )
@@ -414,7 +419,73 @@ public class XaResourceManager
         return xaTransaction;
     }
 
-    synchronized XaTransaction commit( Xid xid, boolean onePhase )
+    XaTransaction commit( Xid xid, boolean onePhase )
+        throws XAException
+    {
+        if ( !log.isGroupCommit() )
+        {
+            synchronized ( this )
+            {
+                return completeCommit( writeCommit( xid, onePhase ) );
+            }
+        }
+
+        /*
+         * With group commit the commit entry is forced without holding this
+         * monitor, so that other transactions can write theirs meanwhile and
+         * share the force. Transactions are then completed, i.e. applied and
+         * marked as done, in the order their commit entries were written.
+         */
+        PendingCommit pending;
+        synchronized ( this )
+        {
+            pending = writeCommit( xid, onePhase );
+            pending.sequence = ++writtenCommits;
+        }
+        XAException forceFailure = null;
+        try
+        {
+            log.awaitForced( pending.ticket, pending.xaTransaction.getIdentifier() );
+        }
+        catch ( XAException e )
+        {
+            forceFailure = e;
+        }
+        synchronized ( this )
+        {
+            boolean interrupted = false;
+            while ( completedCommits != pending.sequence - 1 )
+            {
+                try
+                {
+                    wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    interrupted = true;
+                }
+            }
+            try
+            {
+                if ( forceFailure != null )
+                {
+                    throw forceFailure;
+                }
+                return completeCommit( pending );
+            }
+            finally
+            {
+                completedCommits = pending.sequence;
+                notifyAll();
+                if ( interrupted )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private PendingCommit writeCommit( Xid xid, boolean onePhase )
         throws XAException
     {
         XidStatus status = xidMap.get( xid );
@@ -424,6 +495,7 @@ public class XaResourceManager
         }
         TransactionStatus txStatus = status.getTransactionStatus();
         XaTransaction xaTransaction = txStatus.getTransaction();
+        long ticket = XaLogicalLog.NO_TICKET;
         checkStartWritten( txStatus, xaTransaction );
         if ( onePhase )
         {
@@ -434,10 +506,9 @@ public class XaResourceManager
                 {
                     xaTransaction.prepare();
 
-                    long txId = txIdGenerator.generate( dataSource,
-                            xaTransaction.getIdentifier() );
+                    long txId = generateTxId( xaTransaction.getIdentifier() );
                     xaTransaction.setCommitTxId( txId );
-                    log.commitOnePhase( xaTransaction.getIdentifier(),
+                    ticket = log.appendCommit( false, xaTransaction.getIdentifier(),
                             xaTransaction.getCommitTxId(), getForceMode() );
                 }
             }
@@ -453,13 +524,39 @@ public class XaResourceManager
             {
                 if ( !onePhase )
                 {
-                    long txId = txIdGenerator.generate( dataSource,
-                            xaTransaction.getIdentifier() );
+                    long txId = generateTxId( xaTransaction.getIdentifier() );
                     xaTransaction.setCommitTxId( txId );
-                    log.commitTwoPhase( xaTransaction.getIdentifier(),
+                    ticket = log.appendCommit( true, xaTransaction.getIdentifier(),
                             xaTransaction.getCommitTxId(), getForceMode() );
                 }
             }
+        }
+        return new PendingCommit( xid, onePhase, txStatus, xaTransaction, ticket );
+    }
+
+    private long generateTxId( int identifier )
+    {
+        if ( writtenCommits != completedCommits )
+        {
+            /*
+             * Commits are in flight waiting for their force, not yet applied
+             * to the data source. Group commit is only enabled together with
+             * the default generator, which would hand out the same id again.
+             */
+            return lastWrittenTxId = lastWrittenTxId + 1;
+        }
+        return lastWrittenTxId = txIdGenerator.generate( dataSource, identifier );
+    }
+
+    private XaTransaction completeCommit( PendingCommit pending )
+        throws XAException
+    {
+        Xid xid = pending.xid;
+        boolean onePhase = pending.onePhase;
+        TransactionStatus txStatus = pending.txStatus;
+        XaTransaction xaTransaction = pending.xaTransaction;
+        if ( !xaTransaction.isReadOnly() )
+        {
             txStatus.markCommitStarted();
             if ( xaTransaction.isRecovered() && xaTransaction.getCommitTxId() == -1 )
             {
@@ -495,6 +592,30 @@ public class XaResourceManager
         return xaTransaction;
     }
 
+    /**
+     * A transaction whose commit entry has been written to the logical log,
+     * but which isn't yet applied.
+     */
+    private static class PendingCommit
+    {
+        private final Xid xid;
+        private final boolean onePhase;
+        private final TransactionStatus txStatus;
+        private final XaTransaction xaTransaction;
+        private final long ticket;
+        private long sequence;
+
+        PendingCommit( Xid xid, boolean onePhase, TransactionStatus txStatus,
+                XaTransaction xaTransaction, long ticket )
+        {
+            this.xid = xid;
+            this.onePhase = onePhase;
+            this.txStatus = txStatus;
+            this.xaTransaction = xaTransaction;
+            this.ticket = ticket;
+        }
+    }
+
     private ForceMode getForceMode()
     {
         return transactionManager.getForceMode();
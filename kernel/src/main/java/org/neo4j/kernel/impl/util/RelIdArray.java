@@ -252,6 +252,15 @@ public class RelIdArray
     {
         return direction.iterator( this );
     }
+
+    /**
+     * Iterates over the ids added with exactly the given direction, where
+     * {@link DirectionWrapper#BOTH} means loops only.
+     */
+    public RelIdIterator iteratorOfAddedDirection( DirectionWrapper direction )
+    {
+        return new RelIdIteratorImpl( this, new DirectionWrapper[] { direction } );
+    }
     
     public RelIdArray newSimilarInstance()
     {
@@ -0,0 +1,408 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.batchinsert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.MapUtil.map;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.core.Degrees;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
+
+public class TestParallelBatchImporter
+{
+    private static final RelationshipType KNOWS = DynamicRelationshipType.withName( "KNOWS" );
+    private static final RelationshipType LIKES = DynamicRelationshipType.withName( "LIKES" );
+
+    private final String storePath = AbstractNeo4jTestCase.getStorePath( "neo-parallel-batch" );
+
+    @Before
+    public void deleteStore()
+    {
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( storePath ) );
+    }
+
+    @Test
+    public void importedGraphCanBeReadAndModified()
+    {
+        int nodeCount = 3000;
+        int relationshipCount = 25000;
+        Random random = new Random( 42 );
+
+        BatchInserterImpl inserter = new BatchInserterImpl( storePath );
+        // nodes and a relationship there before the import
+        long existing = inserter.createNode( map( "name", "existing" ) );
+        long existingRelationship = inserter.createRelationship( existing, inserter.getReferenceNode(), KNOWS,
+            null );
+        long firstId = existing + 1;
+
+        List<ImportNode> nodes = new ArrayList<ImportNode>();
+        for ( int i = 0; i < nodeCount; i++ )
+        {
+            nodes.add( new ImportNode( firstId + i, nodeProperties( i ) ) );
+        }
+        List<ImportRelationship> relationships = new ArrayList<ImportRelationship>();
+        Map<Long,Integer> degrees = new HashMap<Long,Integer>();
+        Map<Long,Integer> degreesWithoutExisting = new HashMap<Long,Integer>();
+        degrees.put( existing, 1 );
+        degrees.put( inserter.getReferenceNode(), 1 );
+        for ( int i = 0; i < relationshipCount; i++ )
+        {
+            long start = i % 100 == 0 ? existing : firstId + random.nextInt( nodeCount );
+            long end = i % 50 == 0 ? start : firstId + random.nextInt( nodeCount );
+            relationships.add( new ImportRelationship( start, end, i % 2 == 0 ? KNOWS : LIKES,
+                i % 3 == 0 ? map( "index", i ) : null ) );
+            increment( degrees, start );
+            if ( end != start )
+            {
+                increment( degrees, end );
+            }
+            if ( start != existing )
+            {
+                increment( degreesWithoutExisting, start );
+                if ( end != start )
+                {
+                    increment( degreesWithoutExisting, end );
+                }
+            }
+        }
+
+        ParallelBatchImporter importer = new ParallelBatchImporter( inserter, 3 );
+        importer.importNodes( nodes.iterator() );
+        importer.importRelationships( relationships.iterator() );
+        inserter.shutdown();
+
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( storePath );
+        try
+        {
+            for ( int i = 0; i < nodeCount; i++ )
+            {
+                Node node = db.getNodeById( firstId + i );
+                assertProperties( nodeProperties( i ), node );
+            }
+            for ( Map.Entry<Long,Integer> degree : degrees.entrySet() )
+            {
+                assertEquals( degree.getValue().intValue(),
+                    IteratorUtil.count( db.getNodeById( degree.getKey() ).getRelationships() ) );
+                assertEquals( degree.getValue().intValue(), Degrees.getDegree( db.getNodeById( degree.getKey() ) ) );
+            }
+            assertEquals( db.getReferenceNode(), db.getRelationshipById( existingRelationship ).getEndNode() );
+            for ( Relationship relationship : db.getNodeById( existing ).getRelationships( Direction.OUTGOING ) )
+            {
+                if ( relationship.hasProperty( "index" ) )
+                {
+                    assertEquals( 0, (Integer) relationship.getProperty( "index" ) % 3 );
+                }
+            }
+
+            // deleting relationships depends on the pointers to the previous relationship
+            Transaction tx = db.beginTx();
+            for ( Relationship relationship : db.getNodeById( existing ).getRelationships() )
+            {
+                relationship.delete();
+            }
+            tx.success();
+            tx.finish();
+            db.getNodeManager().clearCache();
+            assertEquals( 0, IteratorUtil.count( db.getNodeById( existing ).getRelationships() ) );
+            for ( int i = 0; i < nodeCount; i++ )
+            {
+                Integer degree = degreesWithoutExisting.get( firstId + i );
+                assertEquals( degree == null ? 0 : degree.intValue(),
+                    IteratorUtil.count( db.getNodeById( firstId + i ).getRelationships() ) );
+            }
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void relationshipsOfDenseNodesAreGrouped()
+    {
+        Map<String,String> config = stringMap( "dense_node_threshold", "10" );
+        BatchInserterImpl inserter = new BatchInserterImpl( storePath, config );
+        NodeStore nodeStore = inserter.getNeoStore().getNodeStore();
+        // dense before the import
+        long existing = inserter.createNode( null );
+        for ( int i = 0; i < 12; i++ )
+        {
+            inserter.createRelationship( existing, inserter.createNode( null ), KNOWS, null );
+        }
+        assertTrue( nodeStore.getRecord( existing ).isDense() );
+        long hub = nodeStore.getHighId();
+        List<ImportNode> nodes = new ArrayList<ImportNode>();
+        for ( int i = 0; i < 50; i++ )
+        {
+            nodes.add( new ImportNode( hub + i, null ) );
+        }
+        List<ImportRelationship> relationships = new ArrayList<ImportRelationship>();
+        for ( int i = 1; i < 50; i++ )
+        {
+            // dense during the import
+            relationships.add( new ImportRelationship( hub, hub + i, i % 3 == 0 ? LIKES : KNOWS, null ) );
+            if ( i % 2 == 0 )
+            {
+                relationships.add( new ImportRelationship( hub + i, hub, KNOWS, null ) );
+            }
+            relationships.add( new ImportRelationship( hub + i, existing, LIKES, null ) );
+        }
+        relationships.add( new ImportRelationship( hub, hub, LIKES, null ) );
+        relationships.add( new ImportRelationship( existing, existing, KNOWS, null ) );
+
+        ParallelBatchImporter importer = new ParallelBatchImporter( inserter, 2 );
+        importer.importNodes( nodes.iterator() );
+        importer.importRelationships( relationships.iterator() );
+        assertTrue( nodeStore.getRecord( hub ).isDense() );
+        assertFalse( nodeStore.getRecord( hub + 1 ).isDense() );
+        assertEquals( 2, nodeStore.getRecord( hub + 1 ).getRelCount() );
+        inserter.shutdown();
+
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( storePath, config );
+        try
+        {
+            for ( int pass = 0; pass < 2; pass++ )
+            {
+                Node hubNode = db.getNodeById( hub );
+                assertEquals( 33, IteratorUtil.count( hubNode.getRelationships( KNOWS, Direction.OUTGOING ) ) );
+                assertEquals( 24, IteratorUtil.count( hubNode.getRelationships( KNOWS, Direction.INCOMING ) ) );
+                assertEquals( 16 + 1, IteratorUtil.count( hubNode.getRelationships( LIKES, Direction.OUTGOING ) ) );
+                assertEquals( 1, IteratorUtil.count( hubNode.getRelationships( LIKES, Direction.INCOMING ) ) );
+                assertEquals( 49 + 24 + 1, IteratorUtil.count( hubNode.getRelationships() ) );
+
+                Node existingNode = db.getNodeById( existing );
+                assertEquals( 12 + 1, IteratorUtil.count( existingNode.getRelationships( KNOWS, Direction.OUTGOING ) ) );
+                assertEquals( 49, IteratorUtil.count( existingNode.getRelationships( LIKES, Direction.INCOMING ) ) );
+                assertEquals( 0, IteratorUtil.count( existingNode.getRelationships( LIKES, Direction.OUTGOING ) ) );
+                assertEquals( 12 + 49 + 1, IteratorUtil.count( existingNode.getRelationships() ) );
+
+                assertEquals( 3, IteratorUtil.count( db.getNodeById( hub + 2 ).getRelationships() ) );
+
+                assertEquals( 74, Degrees.getDegree( hubNode ) );
+                assertEquals( 57, Degrees.getDegree( hubNode, KNOWS ) );
+                assertEquals( 25, Degrees.getDegree( hubNode, Direction.INCOMING ) );
+                assertEquals( 62, Degrees.getDegree( existingNode ) );
+                assertEquals( 49, Degrees.getDegree( existingNode, LIKES, Direction.INCOMING ) );
+                assertEquals( 13, Degrees.getDegree( existingNode, Direction.OUTGOING ) );
+                db.getNodeManager().clearCache();
+            }
+
+            // deleting relationships depends on the pointers to the previous relationship
+            Transaction tx = db.beginTx();
+            for ( Relationship relationship : db.getNodeById( hub ).getRelationships( KNOWS ) )
+            {
+                relationship.delete();
+            }
+            tx.success();
+            tx.finish();
+            db.getNodeManager().clearCache();
+            assertEquals( 17, IteratorUtil.count( db.getNodeById( hub ).getRelationships() ) );
+            assertEquals( 1, IteratorUtil.count( db.getNodeById( hub + 2 ).getRelationships() ) );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void importingNodeWithIdInUseFails()
+    {
+        BatchInserterImpl inserter = new BatchInserterImpl( storePath );
+        try
+        {
+            long id = inserter.createNode( null );
+            new ParallelBatchImporter( inserter, 2 ).importNodes(
+                Arrays.asList( new ImportNode( id, null ) ).iterator() );
+            fail( "Should not import a node with an id in use" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        finally
+        {
+            inserter.shutdown();
+        }
+    }
+
+    @Test
+    public void importingNodeWithIdBelowHighIdFails()
+    {
+        BatchInserterImpl inserter = new BatchInserterImpl( storePath );
+        try
+        {
+            NodeStore nodeStore = inserter.getNeoStore().getNodeStore();
+            long id = inserter.createNode( null );
+            inserter.createNode( null );
+            // a deleted node, its id is free for reuse
+            NodeRecord deleted = nodeStore.getRecord( id );
+            deleted.setInUse( false );
+            nodeStore.updateRecord( deleted );
+            nodeStore.freeId( id );
+            new ParallelBatchImporter( inserter, 2 ).importNodes(
+                Arrays.asList( new ImportNode( id, null ) ).iterator() );
+            fail( "Should not import a node with an id the id generator may hand out" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        finally
+        {
+            inserter.shutdown();
+        }
+    }
+
+    @Test
+    public void importingSameIdTwiceFails()
+    {
+        BatchInserterImpl inserter = new BatchInserterImpl( storePath );
+        try
+        {
+            long firstId = inserter.getNeoStore().getNodeStore().getHighId();
+            List<ImportNode> nodes = new ArrayList<ImportNode>();
+            for ( int i = 0; i < 25000; i++ )
+            {
+                nodes.add( new ImportNode( firstId + 30000 - i, null ) );
+            }
+            nodes.add( new ImportNode( firstId + 20000, null ) );
+            new ParallelBatchImporter( inserter, 2 ).importNodes( nodes.iterator() );
+            fail( "Should not import two nodes with the same id" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        finally
+        {
+            inserter.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectedBatchLeavesNothingBehind()
+    {
+        BatchInserterImpl inserter = new BatchInserterImpl( storePath );
+        try
+        {
+            NodeStore nodeStore = inserter.getNeoStore().getNodeStore();
+            PropertyStore propStore = inserter.getNeoStore().getPropertyStore();
+            long firstId = nodeStore.getHighId();
+            long firstPropertyId = propStore.getHighId();
+            try
+            {
+                new ParallelBatchImporter( inserter, 2 ).importNodes( Arrays.asList(
+                    new ImportNode( firstId, nodeProperties( 1 ) ), new ImportNode( firstId + 1, nodeProperties( 2 ) ),
+                    new ImportNode( firstId, null ) ).iterator() );
+                fail( "Should not import two nodes with the same id" );
+            }
+            catch ( IllegalArgumentException e )
+            { // good
+            }
+            assertNull( nodeStore.loadLightNode( firstId ) );
+            assertNull( nodeStore.loadLightNode( firstId + 1 ) );
+            for ( long id = firstPropertyId; id < propStore.getHighId(); id++ )
+            {
+                assertFalse( propStore.forceGetRecord( id ).inUse() );
+            }
+        }
+        finally
+        {
+            inserter.shutdown();
+        }
+    }
+
+    @Test
+    public void importingRelationshipToMissingNodeFails()
+    {
+        BatchInserterImpl inserter = new BatchInserterImpl( storePath );
+        try
+        {
+            new ParallelBatchImporter( inserter, 2 ).importRelationships( Arrays.asList(
+                new ImportRelationship( inserter.getReferenceNode(), 1000, KNOWS, null ) ).iterator() );
+            fail( "Should not import a relationship to a missing node" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        finally
+        {
+            inserter.shutdown();
+        }
+    }
+
+    private static Map<String,Object> nodeProperties( int i )
+    {
+        if ( i % 7 == 0 )
+        {
+            return null;
+        }
+        Map<String,Object> properties = new HashMap<String,Object>();
+        properties.put( "id", i );
+        properties.put( "name", "a name long enough not to fit in a property block, number " + i );
+        properties.put( "scores", new long[] { i, i * 1000000000000L, -i } );
+        properties.put( "weight", i / 3.0 );
+        return properties;
+    }
+
+    private static void assertProperties( Map<String,Object> expected, Node node )
+    {
+        if ( expected == null )
+        {
+            assertEquals( 0, IteratorUtil.count( node.getPropertyKeys() ) );
+            return;
+        }
+        assertEquals( expected.size(), IteratorUtil.count( node.getPropertyKeys() ) );
+        assertEquals( expected.get( "id" ), node.getProperty( "id" ) );
+        assertEquals( expected.get( "name" ), node.getProperty( "name" ) );
+        assertTrue( Arrays.equals( (long[]) expected.get( "scores" ), (long[]) node.getProperty( "scores" ) ) );
+        assertEquals( expected.get( "weight" ), node.getProperty( "weight" ) );
+    }
+
+    private static void increment( Map<Long,Integer> degrees, long node )
+    {
+        Integer degree = degrees.get( node );
+        degrees.put( node, degree == null ? 1 : degree + 1 );
+    }
+}
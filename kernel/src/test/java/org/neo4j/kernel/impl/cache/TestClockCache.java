@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestClockCache
+{
+    @Test
+    public void testCreate()
+    {
+        try
+        {
+            new ClockCache<Object,Object>( "TestCache", 0, null );
+            fail( "Illegal maxSize should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        ClockCache<Object,Object> cache = new ClockCache<Object,Object>(
+            "TestCache", 70, null );
+        try
+        {
+            cache.put( null, new Object() );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            cache.put( new Object(), null );
+            fail( "Null element should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            cache.get( null );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            cache.remove( null );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        cache.put( new Object(), new Object() );
+        cache.clear();
+    }
+
+    private static class ClockCacheTest<K,E> extends ClockCache<K,E>
+    {
+        private Object cleanedElement = null;
+        private final AtomicInteger cleanedCount = new AtomicInteger();
+
+        ClockCacheTest( String name, int maxSize )
+        {
+            super( name, maxSize, null );
+        }
+
+        @Override
+        public void elementCleaned( E element )
+        {
+            cleanedElement = element;
+            cleanedCount.incrementAndGet();
+        }
+
+        Object getLastCleanedElement()
+        {
+            return cleanedElement;
+        }
+
+        int getCleanedCount()
+        {
+            return cleanedCount.get();
+        }
+    }
+
+    @Test
+    public void testSimple()
+    {
+        ClockCacheTest<Object,Object> cache = new ClockCacheTest<Object,Object>(
+            "TestCache", 3 );
+        String s1 = new String( "1" );
+        Integer key1 = new Integer( 1 );
+        String s2 = new String( "2" );
+        Integer key2 = new Integer( 2 );
+        String s3 = new String( "3" );
+        Integer key3 = new Integer( 3 );
+        String s4 = new String( "4" );
+        Integer key4 = new Integer( 4 );
+        String s5 = new String( "5" );
+        Integer key5 = new Integer( 5 );
+        cache.put( key1, s1 );
+        cache.put( key2, s2 );
+        cache.put( key3, s3 );
+        cache.get( key2 );
+        assertEquals( null, cache.getLastCleanedElement() );
+        cache.put( key4, s4 );
+        assertEquals( s1, cache.getLastCleanedElement() );
+        // key2 was referenced so it gets a second chance
+        cache.put( key5, s5 );
+        assertEquals( s3, cache.getLastCleanedElement() );
+        int size = cache.size();
+        assertEquals( 3, size );
+        assertEquals( null, cache.get( key1 ) );
+        assertEquals( s2, cache.get( key2 ) );
+        assertEquals( null, cache.get( key3 ) );
+        assertEquals( s4, cache.get( key4 ) );
+        assertEquals( s5, cache.get( key5 ) );
+        cache.clear();
+        assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void testResize()
+    {
+        ClockCacheTest<Object,Object> cache = new ClockCacheTest<Object,Object>(
+            "TestCache", 3 );
+        String s1 = new String( "1" );
+        Integer key1 = new Integer( 1 );
+        String s2 = new String( "2" );
+        Integer key2 = new Integer( 2 );
+        String s3 = new String( "3" );
+        Integer key3 = new Integer( 3 );
+        String s4 = new String( "4" );
+        Integer key4 = new Integer( 4 );
+        String s5 = new String( "5" );
+        Integer key5 = new Integer( 5 );
+        cache.put( key1, s1 );
+        cache.put( key2, s2 );
+        cache.put( key3, s3 );
+        cache.get( key2 );
+        assertEquals( null, cache.getLastCleanedElement() );
+        assertEquals( cache.maxSize(), cache.size() );
+        cache.resize( 5 );
+        assertEquals( 5, cache.maxSize() );
+        assertEquals( 3, cache.size() );
+        cache.put( key4, s4 );
+        assertEquals( null, cache.getLastCleanedElement() );
+        cache.put( key5, s5 );
+        assertEquals( null, cache.getLastCleanedElement() );
+        assertEquals( cache.maxSize(), cache.size() );
+        cache.resize( 4 );
+        assertEquals( s1, cache.getLastCleanedElement() );
+        assertEquals( cache.maxSize(), cache.size() );
+        cache.resize( 3 );
+        assertEquals( s3, cache.getLastCleanedElement() );
+        assertEquals( 3, cache.maxSize() );
+        assertEquals( 3, cache.size() );
+    }
+
+    @Test
+    public void testRemoveAndReplace()
+    {
+        ClockCacheTest<Object,Object> cache = new ClockCacheTest<Object,Object>(
+            "TestCache", 3 );
+        cache.put( 1, "1" );
+        cache.put( 2, "2" );
+        assertEquals( "1", cache.remove( 1 ) );
+        assertEquals( null, cache.remove( 1 ) );
+        cache.put( 2, "two" );
+        cache.put( 3, "3" );
+        assertEquals( 0, cache.getCleanedCount() );
+        assertEquals( "two", cache.get( 2 ) );
+        assertEquals( "3", cache.get( 3 ) );
+        for ( int i = 0; i < 1000; i++ )
+        {
+            cache.put( 4, "4" );
+            cache.remove( 4 );
+        }
+        assertEquals( 0, cache.getCleanedCount() );
+        assertEquals( 2, cache.size() );
+        cache.put( 5, "5" );
+        cache.put( 6, "6" );
+        assertEquals( 1, cache.getCleanedCount() );
+        assertEquals( 3, cache.size() );
+    }
+
+    @Test
+    public void testHitAndMissCount()
+    {
+        ClockCache<Object,Object> cache = new ClockCache<Object,Object>(
+            "TestCache", 10, null );
+        cache.put( 1, "1" );
+        cache.get( 1 );
+        cache.get( 1 );
+        cache.get( 2 );
+        assertEquals( 2, cache.hitCount() );
+        assertEquals( 1, cache.missCount() );
+    }
+
+    @Test
+    public void concurrentPutsStayWithinMaxSize() throws Exception
+    {
+        final int maxSize = 100;
+        final ClockCacheTest<Integer,Integer> cache = new ClockCacheTest<Integer,Integer>(
+            "TestCache", maxSize );
+        final int perThread = 10000;
+        List<Thread> threads = new ArrayList<Thread>();
+        for ( int t = 0; t < 4; t++ )
+        {
+            final int offset = t * perThread;
+            threads.add( new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int i = 0; i < perThread; i++ )
+                    {
+                        cache.put( offset + i, i );
+                        cache.get( offset + i / 2 );
+                    }
+                }
+            } );
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        cache.resize( maxSize );
+        assertTrue( "size " + cache.size(), cache.size() <= maxSize );
+        assertEquals( 4 * perThread - cache.size(), cache.getCleanedCount() );
+    }
+}
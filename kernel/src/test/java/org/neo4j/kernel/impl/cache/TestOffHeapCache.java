@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestOffHeapCache
+{
+    @Test
+    public void storeReturnsRecordOnceTaken()
+    {
+        OffHeapStore store = new OffHeapStore( 1024 * 1024, 2 );
+        assertTrue( store.put( 5, record( 5, 100 ) ) );
+        assertTrue( store.containsKey( 5 ) );
+        assertEquals( 1, store.size() );
+
+        ByteBuffer taken = store.take( 5 );
+        assertRecord( 5, 100, taken );
+        assertNull( store.take( 5 ) );
+        assertFalse( store.containsKey( 5 ) );
+        assertEquals( 0, store.size() );
+    }
+
+    @Test
+    public void storeReplacesAndRemovesRecords()
+    {
+        OffHeapStore store = new OffHeapStore( 1024 * 1024, 1 );
+        store.put( 1, record( 1, 10 ) );
+        store.put( 1, record( 2, 20 ) );
+        assertEquals( 1, store.size() );
+        assertTrue( store.remove( 1 ) );
+        assertFalse( store.remove( 1 ) );
+        store.put( 2, record( 2, 10 ) );
+        store.clear();
+        assertEquals( 0, store.size() );
+        assertNull( store.take( 2 ) );
+    }
+
+    @Test
+    public void storeRejectsTooLargeRecords()
+    {
+        OffHeapStore store = new OffHeapStore( 1024 * 1024, 1 );
+        assertFalse( store.put( 1, ByteBuffer.allocate( store.maxRecordSize() + 1 ) ) );
+        assertTrue( store.put( 1, ByteBuffer.allocate( store.maxRecordSize() ) ) );
+    }
+
+    @Test
+    public void storeEvictsOldestRecordsWhenFull()
+    {
+        OffHeapStore store = new OffHeapStore( 1024 * 1024, 1 );
+        int recordSize = 1000;
+        int count = (int) ( 3 * store.capacity() / recordSize );
+        for ( int i = 0; i < count; i++ )
+        {
+            assertTrue( store.put( i, record( i, recordSize ) ) );
+        }
+        assertTrue( store.evictionCount() > 0 );
+        assertTrue( store.size() < count );
+        assertNull( store.take( 0 ) );
+        // the most recently stored records are still there and intact
+        for ( int i = count - 10; i < count; i++ )
+        {
+            assertRecord( i, recordSize, store.take( i ) );
+        }
+    }
+
+    @Test
+    public void indexKeepsEntriesThroughRemovesAndRehashes()
+    {
+        OffHeapStore.LongLongIndex index = new OffHeapStore.LongLongIndex();
+        Map<Long,Long> expected = new HashMap<Long,Long>();
+        Random random = new Random( 1234 );
+        for ( int i = 0; i < 100000; i++ )
+        {
+            long key = random.nextInt( 2000 );
+            if ( random.nextInt( 3 ) == 0 )
+            {
+                Long value = expected.remove( key );
+                assertEquals( value == null ? OffHeapStore.LongLongIndex.NO_VALUE : value.longValue(),
+                        index.remove( key ) );
+            }
+            else
+            {
+                expected.put( key, (long) i );
+                index.put( key, i );
+            }
+        }
+        for ( long key = 0; key < 2000; key++ )
+        {
+            Long value = expected.get( key );
+            assertEquals( value == null ? OffHeapStore.LongLongIndex.NO_VALUE : value.longValue(),
+                    index.get( key ) );
+        }
+    }
+
+    @Test
+    public void evictedElementsAreDecodedFromOffHeap()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 10, 1024 * 1024,
+                new StringCodec(), null );
+        for ( long i = 0; i < 100; i++ )
+        {
+            cache.put( i, "value" + i );
+        }
+        assertTrue( cache.size() <= 10 );
+        assertEquals( 100, cache.size() + cache.offHeapSize() );
+        for ( long i = 0; i < 100; i++ )
+        {
+            assertEquals( "value" + i, cache.get( i ) );
+        }
+        assertEquals( 100, cache.hitCount() );
+        assertNull( cache.get( 100L ) );
+        assertEquals( 1, cache.missCount() );
+    }
+
+    @Test
+    public void removedAndReplacedElementsAreNotDecoded()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 2, 1024 * 1024,
+                new StringCodec(), null );
+        for ( long i = 0; i < 10; i++ )
+        {
+            cache.put( i, "value" + i );
+        }
+        cache.remove( 0L );
+        cache.put( 1L, "replaced" );
+        assertNull( cache.get( 0L ) );
+        assertEquals( "replaced", cache.get( 1L ) );
+
+        cache.clear();
+        assertEquals( 0, cache.size() );
+        assertEquals( 0, cache.offHeapSize() );
+        assertNull( cache.get( 5L ) );
+    }
+
+    @Test
+    public void peekLeavesElementsAndCountsAsTheyAre()
+    {
+        OffHeapCache<String> cache = new OffHeapCache<String>( "TestCache", 10, 1024 * 1024,
+                new StringCodec(), null );
+        for ( long i = 0; i < 100; i++ )
+        {
+            cache.put( i, "value" + i );
+        }
+        long offHeap = cache.offHeapSize();
+        for ( long i = 0; i < 100; i++ )
+        {
+            String element = cache.peek( i );
+            assertTrue( element == null || element.equals( "value" + i ) );
+        }
+        assertNull( cache.peek( 100L ) );
+        assertEquals( offHeap, cache.offHeapSize() );
+        assertEquals( 0, cache.hitCount() );
+        assertEquals( 0, cache.missCount() );
+    }
+
+    private static ByteBuffer record( long seed, int size )
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( size );
+        for ( int i = 0; i < size; i++ )
+        {
+            buffer.put( (byte) ( seed + i ) );
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void assertRecord( long seed, int size, ByteBuffer buffer )
+    {
+        assertEquals( size, buffer.remaining() );
+        for ( int i = 0; i < size; i++ )
+        {
+            assertEquals( (byte) ( seed + i ), buffer.get() );
+        }
+    }
+
+    private static class StringCodec implements ElementCodec<String>
+    {
+        public void encode( String element, ByteBuffer target )
+        {
+            target.putInt( element.length() );
+            for ( int i = 0; i < element.length(); i++ )
+            {
+                target.putChar( element.charAt( i ) );
+            }
+        }
+
+        public String decode( long key, ByteBuffer source )
+        {
+            char[] chars = new char[source.getInt()];
+            for ( int i = 0; i < chars.length; i++ )
+            {
+                chars[i] = source.getChar();
+            }
+            return new String( chars );
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.util.FileUtils;
+
+/**
+ * Threads creating small graphs, a node with a property and a relationship
+ * to the previous one per node, in transactions of their own. Run it with
+ * different thread counts to see how creation scales with the number of
+ * writers.
+ *
+ * Usage: ConcurrentCreationBenchmark [store dir] [threads] [seconds]
+ * [nodes per transaction]
+ */
+public class ConcurrentCreationBenchmark
+{
+    private static final RelationshipType NEXT = DynamicRelationshipType.withName( "NEXT" );
+
+    public static void main( String[] args ) throws Exception
+    {
+        File storeDir = new File( args.length > 0 ? args[0] : "target/creation-benchmark" );
+        int threadCount = args.length > 1 ? Integer.parseInt( args[1] ) :
+            Runtime.getRuntime().availableProcessors();
+        long seconds = args.length > 2 ? Long.parseLong( args[2] ) : 30;
+        final int nodesPerTx = args.length > 3 ? Integer.parseInt( args[3] ) : 100;
+
+        FileUtils.deleteRecursively( storeDir );
+        final EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( storeDir.getPath() );
+        try
+        {
+            final AtomicLong created = new AtomicLong();
+            final long end = System.currentTimeMillis() + seconds * 1000;
+            final CountDownLatch done = new CountDownLatch( threadCount );
+            for ( int i = 0; i < threadCount; i++ )
+            {
+                new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        long count = 0;
+                        while ( System.currentTimeMillis() < end )
+                        {
+                            Transaction tx = db.beginTx();
+                            try
+                            {
+                                Node previous = db.createNode();
+                                for ( int j = 1; j < nodesPerTx; j++ )
+                                {
+                                    Node node = db.createNode();
+                                    node.setProperty( "index", j );
+                                    previous.createRelationshipTo( node, NEXT );
+                                    previous = node;
+                                }
+                                tx.success();
+                            }
+                            finally
+                            {
+                                tx.finish();
+                            }
+                            count += nodesPerTx;
+                        }
+                        created.addAndGet( count );
+                        done.countDown();
+                    }
+                }.start();
+            }
+            done.await();
+            System.out.println( threadCount + " threads: " + created.get() / seconds + " nodes/s" );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+}
@@ -101,7 +101,18 @@ public class JumpingIdGeneratorFactory implements IdGeneratorFactory
         @Override
         public IdRange nextIdBatch( int size )
         {
-            throw new UnsupportedOperationException();
+            // hand them out one by one so that the jumps are kept
+            long[] ids = new long[size];
+            for ( int i = 0; i < size; i++ )
+            {
+                ids[i] = nextId();
+            }
+            return new IdRange( ids, 0, 0 );
+        }
+
+        @Override
+        public void returnIdBatch( IdRange ids )
+        {
         }
 
         @Override
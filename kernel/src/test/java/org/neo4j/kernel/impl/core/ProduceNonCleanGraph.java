@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import org.junit.Ignore;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.MyRelTypes;
+
+/**
+ * Leaves a store with a chain of nodes that have had their long string
+ * properties rewritten over many transactions, so that recovery has to apply
+ * writes to the same dynamic records in order, and a node dense enough to
+ * have its relationships grouped.
+ */
+@Ignore( "Not a test" )
+public class ProduceNonCleanGraph
+{
+    static final int CHAIN_LENGTH = 200;
+    static final int HUB_DEGREE = 120;
+
+    public static void main( String[] args )
+    {
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( args[0] );
+        Node hub;
+        Transaction tx = db.beginTx();
+        try
+        {
+            hub = db.createNode();
+            hub.setProperty( "name", "hub" );
+            db.getReferenceNode().createRelationshipTo( hub, MyRelTypes.TEST2 );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+
+        Node previous = hub;
+        for ( int i = 0; i < CHAIN_LENGTH; i++ )
+        {
+            tx = db.beginTx();
+            try
+            {
+                Node node = db.createNode();
+                node.setProperty( "name", name( i, false ) );
+                previous.createRelationshipTo( node, MyRelTypes.TEST );
+                if ( previous != hub )
+                {
+                    // frees the dynamic records of the previous name for the next node to reuse
+                    previous.setProperty( "name", name( i - 1, true ) );
+                }
+                if ( i < HUB_DEGREE )
+                {
+                    hub.createRelationshipTo( node, MyRelTypes.TEST_TRAVERSAL );
+                }
+                previous = node;
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+        }
+
+        // Non-clean "shutdown"
+        System.exit( 0 );
+    }
+
+    static String name( int i, boolean renamed )
+    {
+        StringBuilder name = new StringBuilder( renamed ? "renamed " : "node " );
+        for ( int j = 0; j < 10; j++ )
+        {
+            name.append( i ).append( " looooooooooooooooooooooong" );
+        }
+        return name.toString();
+    }
+}
@@ -20,11 +20,20 @@
 package org.neo4j.kernel.impl.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.Arrays;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
 import org.neo4j.helpers.collection.MapUtil;
 import org.neo4j.kernel.Config;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
@@ -34,6 +43,7 @@ import org.neo4j.kernel.impl.core.NodeManager.CacheType;
 public class TestCacheTypes extends AbstractNeo4jTestCase
 {
     private static final String PATH = getStorePath( "cache-db" );
+    private static final RelationshipType TYPE = DynamicRelationshipType.withName( "NEXT" );
     
     @BeforeClass
     public static void clear()
@@ -94,6 +104,57 @@ public class TestCacheTypes extends AbstractNeo4jTestCase
         db.shutdown();
     }
 
+    @Test
+    public void testOffHeapCache()
+    {
+        EmbeddedGraphDatabase db = newDb( "offheap" );
+        assertEquals( CacheType.offheap, db.getNodeManager().getCacheType() );
+        int count = 5000;
+        long[] ids = new long[count];
+        Transaction tx = db.beginTx();
+        Node previous = db.createNode();
+        for ( int i = 0; i < count; i++ )
+        {
+            Node node = db.createNode();
+            node.setProperty( "number", i );
+            node.setProperty( "name", "node" + i );
+            node.setProperty( "array", new int[] { i, i + 1 } );
+            previous.createRelationshipTo( node, TYPE ).setProperty( "since", (long) i );
+            ids[i] = node.getId();
+            previous = node;
+        }
+        tx.success();
+        tx.finish();
+
+        // more nodes and relationships than fit in the on-heap part of the cache
+        for ( int round = 0; round < 2; round++ )
+        {
+            for ( int i = 0; i < count; i++ )
+            {
+                Node node = db.getNodeById( ids[i] );
+                assertEquals( i, node.getProperty( "number" ) );
+                assertEquals( "node" + i, node.getProperty( "name" ) );
+                assertTrue( Arrays.equals( new int[] { i, i + 1 }, (int[]) node.getProperty( "array" ) ) );
+                Relationship relationship = node.getSingleRelationship( TYPE, Direction.INCOMING );
+                assertEquals( (long) i, relationship.getProperty( "since" ) );
+                assertEquals( 1 + ( i < count - 1 ? 1 : 0 ), IteratorUtil.count( node.getRelationships() ) );
+            }
+        }
+
+        tx = db.beginTx();
+        db.getNodeById( ids[0] ).setProperty( "number", -1 );
+        db.getNodeById( ids[0] ).createRelationshipTo( db.createNode(), TYPE );
+        tx.success();
+        tx.finish();
+        for ( int i = 1; i < count; i++ )
+        {
+            db.getNodeById( ids[i] ).getProperty( "number" );
+        }
+        assertEquals( -1, db.getNodeById( ids[0] ).getProperty( "number" ) );
+        assertEquals( 3, IteratorUtil.count( db.getNodeById( ids[0] ).getRelationships() ) );
+        db.shutdown();
+    }
+
     @Test
     public void testInvalidCache()
     {
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+import org.neo4j.test.ImpermanentGraphDatabase;
+import org.neo4j.test.TargetDirectory;
+
+public class TestCacheWarmup
+{
+    private static final int NODES = 100;
+
+    private String dir;
+    private EmbeddedGraphDatabase db;
+
+    @Before
+    public void createDirectory()
+    {
+        dir = TargetDirectory.forTest( getClass() ).directory( "warmup", true ).getAbsolutePath();
+    }
+
+    @After
+    public void stopDb()
+    {
+        if ( db != null )
+        {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void cachedNodesArePreloadedAfterRestart() throws Exception
+    {
+        db = new EmbeddedGraphDatabase( dir );
+        long[] ids = createNodes();
+        db.shutdown();
+        assertTrue( new File( dir, CacheWarmup.SNAPSHOT_FILE_NAME ).exists() );
+
+        db = new EmbeddedGraphDatabase( dir );
+        NodeManager nodeManager = db.getNodeManager();
+        long timeout = System.currentTimeMillis() + 10000;
+        while ( !allCached( nodeManager, ids ) && System.currentTimeMillis() < timeout )
+        {
+            Thread.sleep( 10 );
+        }
+        assertTrue( "Nodes from the hot set snapshot should be cached", allCached( nodeManager, ids ) );
+        assertEquals( "value 0", db.getNodeById( ids[0] ).getProperty( "key" ) );
+    }
+
+    @Test
+    public void noSnapshotIsWrittenIfDisabled()
+    {
+        db = new EmbeddedGraphDatabase( dir, stringMap( Config.CACHE_WARMUP, "false" ) );
+        createNodes();
+        db.shutdown();
+        db = null;
+        assertFalse( new File( dir, CacheWarmup.SNAPSHOT_FILE_NAME ).exists() );
+    }
+
+    @Test
+    public void snapshotIsWrittenThroughTheFileSystemOfTheDatabase() throws Exception
+    {
+        final FileSystemAbstraction[] ephemeral = new FileSystemAbstraction[1];
+        db = new ImpermanentGraphDatabase( stringMap( Config.CACHE_WARMUP_SNAPSHOT_INTERVAL, "1" ) )
+        {
+            @Override
+            protected FileSystemAbstraction createFileSystemAbstraction()
+            {
+                return ephemeral[0] = super.createFileSystemAbstraction();
+            }
+        };
+        createNodes();
+        File snapshot = new File( db.getStoreDir(), CacheWarmup.SNAPSHOT_FILE_NAME );
+        long timeout = System.currentTimeMillis() + 10000;
+        while ( !ephemeral[0].fileExists( snapshot.getPath() ) && System.currentTimeMillis() < timeout )
+        {
+            Thread.sleep( 10 );
+        }
+        assertTrue( ephemeral[0].fileExists( snapshot.getPath() ) );
+        assertFalse( snapshot.exists() );
+    }
+
+    private long[] createNodes()
+    {
+        long[] ids = new long[NODES];
+        Transaction tx = db.beginTx();
+        try
+        {
+            for ( int i = 0; i < NODES; i++ )
+            {
+                Node node = db.createNode();
+                node.setProperty( "key", "value " + i );
+                ids[i] = node.getId();
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        return ids;
+    }
+
+    private static boolean allCached( NodeManager nodeManager, long[] ids )
+    {
+        for ( long id : ids )
+        {
+            if ( nodeManager.getNodeIfCached( id ) == null )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
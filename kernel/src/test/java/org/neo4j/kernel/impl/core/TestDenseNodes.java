@@ -0,0 +1,389 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.Pair;
+import org.neo4j.helpers.UTF8;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.CommonFactories;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.StoreFactory;
+import org.neo4j.kernel.impl.storemigration.StoreFiles;
+import org.neo4j.kernel.impl.storemigration.UpgradableDatabase;
+import org.neo4j.kernel.impl.storemigration.UpgradeNotAllowedByConfigurationException;
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.test.TargetDirectory;
+
+public class TestDenseNodes
+{
+    private static final int THRESHOLD = 5;
+    private static final RelationshipType A = DynamicRelationshipType.withName( "A" );
+    private static final RelationshipType B = DynamicRelationshipType.withName( "B" );
+    private static final RelationshipType C = DynamicRelationshipType.withName( "C" );
+
+    private final String path = TargetDirectory.forTest( TestDenseNodes.class ).graphDbDir( true ).getAbsolutePath();
+    private final Map<String, String> config = stringMap( "dense_node_threshold", String.valueOf( THRESHOLD ),
+            "relationship_grab_size", "3" );
+    private AbstractGraphDatabase db;
+
+    @Before
+    public void startDb()
+    {
+        db = new EmbeddedGraphDatabase( path, config );
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    private void restart()
+    {
+        db.shutdown();
+        db = new EmbeddedGraphDatabase( path, config );
+    }
+
+    private void clearCache()
+    {
+        db.getNodeManager().clearCache();
+    }
+
+    private Node createDenseNode()
+    {
+        Transaction tx = db.beginTx();
+        try
+        {
+            Node node = db.createNode();
+            for ( int i = 0; i < 4; i++ )
+            {
+                node.createRelationshipTo( db.createNode(), A );
+            }
+            for ( int i = 0; i < 3; i++ )
+            {
+                db.createNode().createRelationshipTo( node, B );
+            }
+            node.createRelationshipTo( node, A );
+            node.createRelationshipTo( db.createNode(), C );
+            tx.success();
+            return node;
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    private void assertCounts( Node node )
+    {
+        assertEquals( 9, count( node.getRelationships() ) );
+        assertEquals( 5, count( node.getRelationships( A ) ) );
+        assertEquals( 5, count( node.getRelationships( A, Direction.OUTGOING ) ) );
+        assertEquals( 1, count( node.getRelationships( A, Direction.INCOMING ) ) );
+        assertEquals( 3, count( node.getRelationships( B ) ) );
+        assertEquals( 0, count( node.getRelationships( B, Direction.OUTGOING ) ) );
+        assertEquals( 3, count( node.getRelationships( Direction.INCOMING, B ) ) );
+        assertEquals( 6, count( node.getRelationships( A, C ) ) );
+        assertEquals( 1, count( node.getRelationships( C, Direction.OUTGOING ) ) );
+    }
+
+    private void assertDegrees( Node node )
+    {
+        assertEquals( 9, Degrees.getDegree( node ) );
+        assertEquals( 6, Degrees.getDegree( node, Direction.OUTGOING ) );
+        assertEquals( 4, Degrees.getDegree( node, Direction.INCOMING ) );
+        assertEquals( 5, Degrees.getDegree( node, A ) );
+        assertEquals( 5, Degrees.getDegree( node, A, Direction.OUTGOING ) );
+        assertEquals( 1, Degrees.getDegree( node, A, Direction.INCOMING ) );
+        assertEquals( 0, Degrees.getDegree( node, B, Direction.OUTGOING ) );
+        assertEquals( 3, Degrees.getDegree( node, B, Direction.INCOMING ) );
+        assertEquals( 0, Degrees.getDegree( node, DynamicRelationshipType.withName( "UNKNOWN" ) ) );
+    }
+
+    @Test
+    public void denseNodeReturnsRelationshipsByTypeAndDirection() throws Exception
+    {
+        Node node = createDenseNode();
+        assertCounts( node );
+        clearCache();
+        assertCounts( node );
+        assertNull( node.getSingleRelationship( B, Direction.OUTGOING ) );
+        assertEquals( node, node.getSingleRelationship( C, Direction.OUTGOING ).getStartNode() );
+        assertTrue( node.hasRelationship( C ) );
+
+        long nodeId = node.getId();
+        restart();
+        assertCounts( db.getNodeById( nodeId ) );
+    }
+
+    @Test
+    public void relationshipsAddedToDenseNodeAreVisible() throws Exception
+    {
+        Node node = createDenseNode();
+        clearCache();
+        Transaction tx = db.beginTx();
+        try
+        {
+            node.createRelationshipTo( db.createNode(), C );
+            db.createNode().createRelationshipTo( node, A );
+            assertEquals( 2, count( node.getRelationships( C ) ) );
+            assertEquals( 2, count( node.getRelationships( A, Direction.INCOMING ) ) );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        assertEquals( 11, count( node.getRelationships() ) );
+        clearCache();
+        assertEquals( 2, count( node.getRelationships( C ) ) );
+        assertEquals( 6, count( node.getRelationships( A ) ) );
+        assertEquals( 11, count( node.getRelationships() ) );
+    }
+
+    @Test
+    public void degreeIsReadFromStoredCounts() throws Exception
+    {
+        Node node = createDenseNode();
+        assertDegrees( node );
+        clearCache();
+        assertDegrees( node );
+
+        Transaction tx = db.beginTx();
+        try
+        {
+            node.createRelationshipTo( db.createNode(), B );
+            node.getSingleRelationship( C, Direction.OUTGOING ).delete();
+            assertEquals( 9, Degrees.getDegree( node ) );
+            assertEquals( 1, Degrees.getDegree( node, B, Direction.OUTGOING ) );
+            assertEquals( 0, Degrees.getDegree( node, C ) );
+            tx.failure();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        assertDegrees( node );
+
+        long nodeId = node.getId();
+        restart();
+        assertDegrees( db.getNodeById( nodeId ) );
+    }
+
+    @Test
+    public void degreeOfSparseNodeCountsItsRelationships() throws Exception
+    {
+        Transaction tx = db.beginTx();
+        Node node;
+        try
+        {
+            node = db.createNode();
+            node.createRelationshipTo( db.createNode(), A );
+            db.createNode().createRelationshipTo( node, B );
+            node.createRelationshipTo( node, A );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        clearCache();
+        assertEquals( 3, Degrees.getDegree( node ) );
+        assertEquals( 2, Degrees.getDegree( node, A, Direction.OUTGOING ) );
+        assertEquals( 2, Degrees.getDegree( node, Direction.INCOMING ) );
+        assertEquals( 1, Degrees.getDegree( node, B ) );
+    }
+
+    @Test
+    public void storedDegreesAreReadWithoutCachingTheNode() throws Exception
+    {
+        long denseId = createDenseNode().getId();
+        Transaction tx = db.beginTx();
+        long sparseId;
+        try
+        {
+            Node sparse = db.createNode();
+            sparse.createRelationshipTo( db.createNode(), A );
+            db.createNode().createRelationshipTo( sparse, B );
+            sparse.createRelationshipTo( sparse, A );
+            sparseId = sparse.getId();
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        clearCache();
+
+        Map<Pair<String, Direction>, Integer> dense = db.getNodeManager().getStoredDegrees( denseId );
+        assertEquals( Integer.valueOf( 5 ), dense.get( Pair.of( "A", Direction.OUTGOING ) ) );
+        assertEquals( Integer.valueOf( 1 ), dense.get( Pair.of( "A", Direction.INCOMING ) ) );
+        assertEquals( Integer.valueOf( 3 ), dense.get( Pair.of( "B", Direction.INCOMING ) ) );
+        assertNull( dense.get( Pair.of( "B", Direction.OUTGOING ) ) );
+
+        Map<Pair<String, Direction>, Integer> sparse = db.getNodeManager().getStoredDegrees( sparseId );
+        assertEquals( Integer.valueOf( 2 ), sparse.get( Pair.of( "A", Direction.OUTGOING ) ) );
+        assertEquals( Integer.valueOf( 1 ), sparse.get( Pair.of( "A", Direction.INCOMING ) ) );
+        assertEquals( Integer.valueOf( 1 ), sparse.get( Pair.of( "B", Direction.INCOMING ) ) );
+
+        assertNull( db.getNodeManager().getNodeIfCached( denseId ) );
+        assertNull( db.getNodeManager().getNodeIfCached( sparseId ) );
+        assertNull( db.getNodeManager().getStoredDegrees( sparseId + 1000 ) );
+    }
+
+    @Test
+    public void canDeleteAllRelationshipsAndThenTheDenseNode() throws Exception
+    {
+        Node node = createDenseNode();
+        clearCache();
+        Transaction tx = db.beginTx();
+        try
+        {
+            for ( Relationship rel : node.getRelationships( A ) )
+            {
+                rel.delete();
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        clearCache();
+        assertFalse( node.hasRelationship( A ) );
+        assertEquals( 4, count( node.getRelationships() ) );
+
+        tx = db.beginTx();
+        try
+        {
+            for ( Relationship rel : node.getRelationships() )
+            {
+                rel.getOtherNode( node ).delete();
+                rel.delete();
+            }
+            node.delete();
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    @Test
+    public void storeFromBeforeRelationshipsWereGroupedIsGroupedByAnUpgrade() throws Exception
+    {
+        db.shutdown();
+        db = new EmbeddedGraphDatabase( path, stringMap( "dense_node_threshold", String.valueOf( Integer.MAX_VALUE ) ) );
+        long nodeId = createDenseNode().getId();
+        db.shutdown();
+        makeUngrouped();
+
+        try
+        {
+            new EmbeddedGraphDatabase( path, config );
+            fail( "Should not open an ungrouped store without an upgrade" );
+        }
+        catch ( Exception e )
+        {
+            assertTrue( hasCause( e, UpgradeNotAllowedByConfigurationException.class ) );
+        }
+
+        Map<String, String> upgradeConfig = new HashMap<String, String>( config );
+        upgradeConfig.put( Config.ALLOW_STORE_UPGRADE, "true" );
+        db = new EmbeddedGraphDatabase( path, upgradeConfig );
+        assertCounts( db.getNodeById( nodeId ) );
+        assertDegrees( db.getNodeById( nodeId ) );
+        db.shutdown();
+
+        String storeFileName = new File( path, NeoStore.DEFAULT_NAME ).getPath();
+        Map<String, String> storeConfig = stringMap( "neo_store", storeFileName );
+        NeoStore neoStore = new StoreFactory( storeConfig, CommonFactories.defaultIdGeneratorFactory(),
+                CommonFactories.defaultFileSystemAbstraction(), null, StringLogger.DEV_NULL, null ).newNeoStore( storeFileName );
+        try
+        {
+            assertTrue( neoStore.getNodeStore().loadLightNode( nodeId ).isDense() );
+        }
+        finally
+        {
+            neoStore.close();
+        }
+        db = new EmbeddedGraphDatabase( path, config );
+    }
+
+    private void makeUngrouped() throws Exception
+    {
+        for ( String fileName : StoreFiles.optionalFileNames )
+        {
+            assertTrue( new File( path, fileName ).delete() );
+            assertTrue( new File( path, fileName + ".id" ).delete() );
+        }
+        byte[] version = UTF8.encode( UpgradableDatabase.UNGROUPED_VERSION );
+        for ( String fileName : StoreFiles.fileNames )
+        {
+            RandomAccessFile file = new RandomAccessFile( new File( path, fileName ), "rw" );
+            try
+            {
+                file.seek( file.length() - version.length );
+                file.write( version );
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+    }
+
+    private static boolean hasCause( Throwable e, Class<? extends Throwable> type )
+    {
+        for ( Throwable cause = e; cause != null; cause = cause.getCause() )
+        {
+            if ( type.isInstance( cause ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
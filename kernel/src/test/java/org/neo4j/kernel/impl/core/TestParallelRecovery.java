@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.MyRelTypes;
+import org.neo4j.test.TargetDirectory;
+
+public class TestParallelRecovery
+{
+    @Test
+    public void recoverInParallel() throws Exception
+    {
+        recoverAndVerify( "parallel", "true" );
+    }
+
+    @Test
+    public void recoverOneTransactionAtATime() throws Exception
+    {
+        recoverAndVerify( "serial", "false" );
+    }
+
+    private void recoverAndVerify( String name, String parallel ) throws Exception
+    {
+        String dir = TargetDirectory.forTest( getClass() ).directory( name, true ).getAbsolutePath();
+        assertEquals( 0, Runtime.getRuntime().exec( new String[] { "java", "-cp", System.getProperty( "java.class.path" ),
+                ProduceNonCleanGraph.class.getName(), dir } ).waitFor() );
+
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( dir, stringMap( Config.PARALLEL_RECOVERY, parallel ) );
+        try
+        {
+            verifyChain( db );
+
+            // the id generators must have been brought up to date by recovery
+            Transaction tx = db.beginTx();
+            try
+            {
+                Node node = db.createNode();
+                node.setProperty( "name", ProduceNonCleanGraph.name( -1, false ) );
+                db.getReferenceNode().createRelationshipTo( node, MyRelTypes.TEST2 );
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+            verifyChain( db );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    private void verifyChain( EmbeddedGraphDatabase db )
+    {
+        Node hub = db.getReferenceNode().getRelationships( MyRelTypes.TEST2, Direction.OUTGOING ).iterator().next().getEndNode();
+        assertEquals( "hub", hub.getProperty( "name" ) );
+        assertEquals( ProduceNonCleanGraph.HUB_DEGREE, Degrees.getDegree( hub, MyRelTypes.TEST_TRAVERSAL, Direction.OUTGOING ) );
+
+        Node node = hub;
+        for ( int i = 0; i < ProduceNonCleanGraph.CHAIN_LENGTH; i++ )
+        {
+            node = node.getSingleRelationship( MyRelTypes.TEST, Direction.OUTGOING ).getEndNode();
+            boolean last = i == ProduceNonCleanGraph.CHAIN_LENGTH - 1;
+            assertEquals( ProduceNonCleanGraph.name( i, !last ), node.getProperty( "name" ) );
+            assertEquals( i < ProduceNonCleanGraph.HUB_DEGREE ? 1 : 0,
+                    Degrees.getDegree( node, MyRelTypes.TEST_TRAVERSAL, Direction.INCOMING ) );
+        }
+        Relationship next = node.getSingleRelationship( MyRelTypes.TEST, Direction.OUTGOING );
+        assertNull( next );
+    }
+}
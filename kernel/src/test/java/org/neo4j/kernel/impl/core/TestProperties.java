@@ -23,6 +23,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
 
 import org.junit.Test;
 import org.neo4j.graphdb.Node;
@@ -261,4 +262,46 @@ public class TestProperties extends AbstractNeo4jTestCase
         clearCache();
         assertEquals( "value", node.getProperty( "property 0" ) );
     }
+
+    @Test
+    public void readSinglePropertiesBeforeAllAreLoaded() throws Exception
+    {
+        Node node = getGraphDb().createNode();
+        for ( int i = 0; i < 50; i++ )
+        {
+            node.setProperty( "property " + i, i );
+        }
+        String text = longString( 5000 );
+        node.setProperty( "text", text );
+        node.setProperty( "array", new long[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17 } );
+        newTransaction();
+        clearCache();
+
+        assertEquals( 25, node.getProperty( "property 25" ) );
+        assertEquals( text, node.getProperty( "text" ) );
+        assertEquals( 17, ( (long[]) node.getProperty( "array" ) ).length );
+        assertEquals( 25, node.getProperty( "property 25" ) );
+        assertNull( node.getProperty( "missing", null ) );
+        assertEquals( 49, node.getProperty( "property 49" ) );
+
+        clearCache();
+        assertEquals( 10, node.getProperty( "property 10" ) );
+        node.setProperty( "property 10", 100 );
+        node.removeProperty( "property 11" );
+        assertEquals( 100, node.getProperty( "property 10" ) );
+        newTransaction();
+        assertEquals( 100, node.getProperty( "property 10" ) );
+        assertNull( node.getProperty( "property 11", null ) );
+        assertEquals( 51, count( node.getPropertyKeys() ) );
+    }
+
+    private String longString( int length )
+    {
+        StringBuilder builder = new StringBuilder();
+        for ( int i = 0; i < length; i++ )
+        {
+            builder.append( (char) ( 'a' + i % 26 ) );
+        }
+        return builder.toString();
+    }
 }
@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.MyRelTypes;
+import org.neo4j.test.ImpermanentGraphDatabase;
+import org.neo4j.test.TargetDirectory;
+
+public class TestTxStateSpilling
+{
+    private static final int NODES = 300;
+
+    private String dir;
+    private EmbeddedGraphDatabase db;
+
+    @Before
+    public void startDb()
+    {
+        dir = TargetDirectory.forTest( getClass() ).directory( "spilling", true ).getAbsolutePath();
+        startDb( dir );
+    }
+
+    private void startDb( String dir )
+    {
+        db = new EmbeddedGraphDatabase( dir, stringMap( Config.TX_STATE_SPILL_THRESHOLD, "10" ) );
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    @Test
+    public void bigTransactionIsCommittedAsWritten()
+    {
+        long[] ids = new long[NODES];
+        Node hub;
+        Transaction tx = db.beginTx();
+        try
+        {
+            hub = db.createNode();
+            Node previous = db.getReferenceNode();
+            for ( int i = 0; i < NODES; i++ )
+            {
+                Node node = db.createNode();
+                ids[i] = node.getId();
+                node.setProperty( "name", name( i ) );
+                node.setProperty( "values", new long[] { i, i + 1, i + 2 } );
+                previous.createRelationshipTo( node, MyRelTypes.TEST ).setProperty( "index", i );
+                hub.createRelationshipTo( node, MyRelTypes.TEST_TRAVERSAL );
+                previous = node;
+            }
+            // changes to records that were spilled earlier in this transaction
+            for ( int i = 0; i < NODES; i += 3 )
+            {
+                Node node = db.getNodeById( ids[i] );
+                node.setProperty( "name", name( i ) + " changed" );
+                node.removeProperty( "values" );
+            }
+            Node last = db.getNodeById( ids[NODES - 1] );
+            for ( Relationship rel : last.getRelationships() )
+            {
+                rel.delete();
+            }
+            last.delete();
+            assertEquals( name( 1 ), db.getNodeById( ids[1] ).getProperty( "name" ) );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+
+        verify( hub.getId(), ids );
+        db.shutdown();
+        startDb( dir );
+        verify( hub.getId(), ids );
+    }
+
+    private void verify( long hubId, long[] ids )
+    {
+        Node hub = db.getNodeById( hubId );
+        assertEquals( NODES - 1, Degrees.getDegree( hub, MyRelTypes.TEST_TRAVERSAL, Direction.OUTGOING ) );
+        Node node = db.getReferenceNode();
+        for ( int i = 0; i < NODES - 1; i++ )
+        {
+            Relationship rel = node.getSingleRelationship( MyRelTypes.TEST, Direction.OUTGOING );
+            assertEquals( i, rel.getProperty( "index" ) );
+            node = rel.getEndNode();
+            assertEquals( ids[i], node.getId() );
+            if ( i % 3 == 0 )
+            {
+                assertEquals( name( i ) + " changed", node.getProperty( "name" ) );
+                assertFalse( node.hasProperty( "values" ) );
+            }
+            else
+            {
+                assertEquals( name( i ), node.getProperty( "name" ) );
+                assertArrayEquals( new long[] { i, i + 1, i + 2 }, (long[]) node.getProperty( "values" ) );
+            }
+        }
+        assertEquals( null, node.getSingleRelationship( MyRelTypes.TEST, Direction.OUTGOING ) );
+        try
+        {
+            db.getNodeById( ids[NODES - 1] );
+            fail( "Node deleted in the transaction should not exist" );
+        }
+        catch ( NotFoundException e )
+        {   // good
+        }
+    }
+
+    @Test
+    public void bigTransactionIsRolledBack()
+    {
+        long lastNode;
+        Transaction tx = db.beginTx();
+        try
+        {
+            Node node = null;
+            for ( int i = 0; i < NODES; i++ )
+            {
+                node = db.createNode();
+                node.setProperty( "name", name( i ) );
+                db.getReferenceNode().createRelationshipTo( node, MyRelTypes.TEST );
+            }
+            lastNode = node.getId();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        assertFalse( db.getReferenceNode().hasRelationship() );
+        try
+        {
+            db.getNodeById( lastNode );
+            fail( "Node created in the rolled back transaction should not exist" );
+        }
+        catch ( NotFoundException e )
+        {   // good
+        }
+    }
+
+    @Test
+    public void spillFilesAreKeptInTheStoreDirectoryWithoutGrowingAndDeleted()
+    {
+        Transaction tx = db.beginTx();
+        try
+        {
+            long[] ids = new long[NODES];
+            for ( int i = 0; i < NODES; i++ )
+            {
+                ids[i] = db.createNode().getId();
+            }
+            // the same records read back and spilled again, over and over
+            long sizeAfterFirstRound = 0;
+            for ( int round = 0; round < 20; round++ )
+            {
+                for ( long id : ids )
+                {
+                    db.getNodeById( id ).setProperty( "round", round );
+                }
+                if ( round == 0 )
+                {
+                    sizeAfterFirstRound = spillFileSize();
+                    assertTrue( sizeAfterFirstRound > 0 );
+                }
+                else
+                {
+                    assertTrue( spillFileSize() <= 3 * sizeAfterFirstRound );
+                }
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        assertEquals( 0, spillFileSize() );
+    }
+
+    @Test
+    public void spillFilesAreWrittenThroughTheFileSystemOfTheDatabase()
+    {
+        ImpermanentGraphDatabase impermanent = new ImpermanentGraphDatabase(
+            stringMap( Config.TX_STATE_SPILL_THRESHOLD, "10" ) );
+        try
+        {
+            Transaction tx = impermanent.beginTx();
+            long[] ids = new long[NODES];
+            try
+            {
+                for ( int i = 0; i < NODES; i++ )
+                {
+                    Node node = impermanent.createNode();
+                    node.setProperty( "name", name( i ) );
+                    ids[i] = node.getId();
+                }
+                assertEquals( 0, spillFileSize( impermanent.getStoreDir() ) );
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+            for ( int i = 0; i < NODES; i++ )
+            {
+                assertEquals( name( i ), impermanent.getNodeById( ids[i] ).getProperty( "name" ) );
+            }
+        }
+        finally
+        {
+            impermanent.shutdown();
+        }
+    }
+
+    private long spillFileSize()
+    {
+        return spillFileSize( dir );
+    }
+
+    private static long spillFileSize( String dir )
+    {
+        long size = 0;
+        File[] files = new File( dir ).listFiles();
+        for ( File file : files != null ? files : new File[0] )
+        {
+            if ( file.getName().startsWith( "tx-state-" ) )
+            {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    // long enough to need string records of its own
+    private static String name( int i )
+    {
+        return "node number " + i + " in a transaction too big to be kept in memory";
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent random reads through a {@link PersistenceWindowPool}, on a
+ * (sparse) file as large as a big relationship store.
+ *
+ * Usage: PersistenceWindowPoolReadBenchmark [file] [file size in MB]
+ * [mapped memory in MB] [threads] [seconds]
+ */
+public class PersistenceWindowPoolReadBenchmark
+{
+    private static final int RECORD_SIZE = 33;
+
+    public static void main( String[] args ) throws Exception
+    {
+        File file = new File( args.length > 0 ? args[0] : "target/window-pool-benchmark" );
+        long fileSize = ( args.length > 1 ? Long.parseLong( args[1] ) : 4096 ) * 1024 * 1024;
+        long mappedMem = ( args.length > 2 ? Long.parseLong( args[2] ) : 1024 ) * 1024 * 1024;
+        int threadCount = args.length > 3 ? Integer.parseInt( args[3] ) :
+            Runtime.getRuntime().availableProcessors();
+        long seconds = args.length > 4 ? Long.parseLong( args[4] ) : 30;
+
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try
+        {
+            raf.setLength( fileSize );
+            final long recordCount = fileSize / RECORD_SIZE;
+            final PersistenceWindowPool pool = new PersistenceWindowPool( file.getName(), RECORD_SIZE,
+                raf.getChannel(), mappedMem, true, false );
+            final AtomicLong reads = new AtomicLong();
+            final long end = System.currentTimeMillis() + seconds * 1000;
+            final CountDownLatch done = new CountDownLatch( threadCount );
+            for ( int i = 0; i < threadCount; i++ )
+            {
+                final Random random = new Random( i );
+                new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        long count = 0;
+                        while ( System.currentTimeMillis() < end )
+                        {
+                            for ( int j = 0; j < 1000; j++ )
+                            {
+                                long id = (long) ( random.nextDouble() * recordCount );
+                                PersistenceWindow window = pool.acquire( id, OperationType.READ );
+                                try
+                                {
+                                    window.getOffsettedBuffer( id ).getLong();
+                                }
+                                finally
+                                {
+                                    pool.release( window );
+                                }
+                            }
+                            count += 1000;
+                        }
+                        reads.addAndGet( count );
+                        done.countDown();
+                    }
+                }.start();
+            }
+            done.await();
+            WindowPoolStats stats = pool.getStats();
+            System.out.println( threadCount + " threads: " + reads.get() / seconds + " reads/s, hit="
+                + stats.getHitCount() + " miss=" + stats.getMissCount() + " mapped="
+                + stats.getMemUsed() / 1024 / 1024 + "MB of " + stats.getMemAvail() / 1024 / 1024 + "MB" );
+            pool.close();
+        }
+        finally
+        {
+            raf.close();
+            file.delete();
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -587,6 +588,22 @@ public class TestIdGenerator
         closeIdGenerator( idGenerator );
     }
 
+    @Test
+    public void batchCrossingMagicMinusOneKeepsTheIdsBeforeIt() throws Exception
+    {
+        IdGeneratorImpl.createGenerator( fs, idGeneratorFile() );
+        IdGeneratorImpl idGenerator = new IdGeneratorImpl( fs, idGeneratorFile(), 1, IdType.NODE.getMaxValue(),
+                false );
+        long magicMinusOne = (long) Math.pow( 2, 32 )-1;
+        idGenerator.setHighId( magicMinusOne-2 );
+        IdRange range = idGenerator.nextIdBatch( 5 );
+        assertTrue( Arrays.equals( new long[] { magicMinusOne-2, magicMinusOne-1 }, range.getDefragIds() ) );
+        assertEquals( magicMinusOne+1, range.getRangeStart() );
+        assertEquals( 3, range.getRangeLength() );
+        assertEquals( magicMinusOne+4, idGenerator.nextId() );
+        closeIdGenerator( idGenerator );
+    }
+
     @Test
     public void makeSureMagicMinusOneCannotBeReturnedEvenIfFreed() throws Exception
     {
@@ -686,4 +703,108 @@ public class TestIdGenerator
         assertEquals( id, idGenerator.nextId() );
         idGenerator.close( true );
     }
+
+    @Test
+    public void returnedIdsAreHandedOutAgain() throws Exception
+    {
+        IdGeneratorImpl.createGenerator( fs, idGeneratorFile() );
+        IdGeneratorImpl idGenerator = new IdGeneratorImpl( fs, idGeneratorFile(), 10, 1000, false );
+        IdRange range = idGenerator.nextIdBatch( 10 );
+        assertEquals( 0, range.getRangeStart() );
+        idGenerator.returnIdBatch( new IdRange( new long[0], 5, 5 ) );
+        assertEquals( 5, idGenerator.getHighId() );
+        assertEquals( 5, idGenerator.nextId() );
+
+        idGenerator.nextIdBatch( 5 );
+        assertEquals( 11, idGenerator.nextId() );
+        idGenerator.returnIdBatch( new IdRange( new long[] { 6 }, 9, 2 ) );
+        assertEquals( 12, idGenerator.getHighId() );
+        assertEquals( 9, idGenerator.getNumberOfIdsInUse() );
+        Set<Long> ids = new HashSet<Long>();
+        for ( int i = 0; i < 3; i++ )
+        {
+            ids.add( idGenerator.nextId() );
+        }
+        assertEquals( new HashSet<Long>( Arrays.asList( 6L, 9L, 10L ) ), ids );
+        assertEquals( 12, idGenerator.nextId() );
+        idGenerator.close( true );
+    }
+
+    @Test
+    public void concurrentlyHandedOutIdsAreUnique() throws Exception
+    {
+        IdGeneratorImpl.createGenerator( fs, idGeneratorFile() );
+        final IdGeneratorImpl idGenerator = new IdGeneratorImpl( fs, idGeneratorFile(), 10,
+                IdType.NODE.getMaxValue(), true );
+        final List<List<Long>> handedOut = new ArrayList<List<Long>>();
+        Thread[] threads = new Thread[8];
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            final List<Long> ids = new ArrayList<Long>();
+            handedOut.add( ids );
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int i = 0; i < 10000; i++ )
+                    {
+                        long id = idGenerator.nextId();
+                        if ( i % 3 == 0 )
+                        {
+                            idGenerator.freeId( id );
+                        }
+                        else
+                        {
+                            ids.add( id );
+                        }
+                        if ( i % 100 == 0 )
+                        {
+                            IdRange range = idGenerator.nextIdBatch( 5 );
+                            for ( long defragId : range.getDefragIds() )
+                            {
+                                ids.add( defragId );
+                            }
+                            ids.add( range.getRangeStart() );
+                            idGenerator.returnIdBatch( new IdRange( new long[0], range.getRangeStart() + 1,
+                                    range.getRangeLength() - 1 ) );
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        Set<Long> allIds = new HashSet<Long>();
+        int count = 0;
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            threads[t].join();
+            allIds.addAll( handedOut.get( t ) );
+            count += handedOut.get( t ).size();
+        }
+        assertEquals( count, allIds.size() );
+        idGenerator.close( true );
+    }
+
+    @Test
+    public void idsNotUsedByATransactionAreGivenBack() throws Exception
+    {
+        String storeDir = "target/var/unused-ids";
+        deleteRecursively( new File( storeDir ) );
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( storeDir );
+        Transaction tx = db.beginTx();
+        long highestId = -1;
+        for ( int i = 0; i < 10; i++ )
+        {
+            highestId = Math.max( highestId, db.createNode().getId() );
+        }
+        tx.success();
+        tx.finish();
+
+        tx = db.beginTx();
+        assertEquals( highestId + 1, db.createNode().getId() );
+        tx.success();
+        tx.finish();
+        db.shutdown();
+    }
 }
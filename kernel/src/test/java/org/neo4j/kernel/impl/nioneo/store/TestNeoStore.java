@@ -200,6 +200,10 @@ public class TestNeoStore extends AbstractNeo4jTestCase
         file.delete();
         file = new File( file( "neo.nodestore.db.id" ) );
         file.delete();
+        file = new File( file( "neo.nodestore.db.extensions" ) );
+        file.delete();
+        file = new File( file( "neo.nodestore.db.extensions.id" ) );
+        file.delete();
         file = new File( file( "neo.propertystore.db" ) );
         file.delete();
         file = new File( file( "neo.propertystore.db.id" ) );
@@ -224,6 +228,10 @@ public class TestNeoStore extends AbstractNeo4jTestCase
         file.delete();
         file = new File( file( "neo.relationshipstore.db.id" ) );
         file.delete();
+        file = new File( file( "neo.relationshipgroupstore.db" ) );
+        file.delete();
+        file = new File( file( "neo.relationshipgroupstore.db.id" ) );
+        file.delete();
         file = new File( file( "neo.relationshiptypestore.db" ) );
         file.delete();
         file = new File( file( "neo.relationshiptypestore.db.id" ) );
@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+public class TestPersistenceWindowPool
+{
+    private static final int RECORD_SIZE = 8;
+    private static final int RECORD_COUNT = 100000;
+
+    private File file;
+    private RandomAccessFile raf;
+
+    @Before
+    public void createFile() throws Exception
+    {
+        String path = AbstractNeo4jTestCase.getStorePath( "windowpool" );
+        new File( path ).mkdirs();
+        file = new File( path, "records" );
+        file.delete();
+        raf = new RandomAccessFile( file, "rw" );
+        raf.setLength( (long) RECORD_SIZE * RECORD_COUNT );
+    }
+
+    @After
+    public void deleteFile() throws Exception
+    {
+        raf.close();
+        file.delete();
+    }
+
+    @Test
+    public void concurrentReadersAndWritersSeeTheirOwnWrites() throws Exception
+    {
+        assertConcurrentAccess( true );
+    }
+
+    @Test
+    public void concurrentReadersAndWritersSeeTheirOwnWritesWithoutMemoryMapping() throws Exception
+    {
+        assertConcurrentAccess( false );
+    }
+
+    @Test
+    public void closingThePoolStopsItsRefresher() throws Exception
+    {
+        PersistenceWindowPool pool = new PersistenceWindowPool( "closing", RECORD_SIZE, raf.getChannel(),
+                RECORD_SIZE * RECORD_COUNT / 4, true, false );
+        // nothing is mapped up front, enough misses to have bricks refreshed
+        for ( long id = 0; id < RECORD_COUNT; id++ )
+        {
+            read( pool, id );
+        }
+        Thread refresher = refresherThread( "closing" );
+        assertTrue( refresher != null );
+        pool.close();
+        refresher.join( 10000 );
+        assertFalse( refresher.isAlive() );
+    }
+
+    private static Thread refresherThread( String storeName )
+    {
+        Thread[] threads = new Thread[Thread.activeCount() * 2];
+        int count = Thread.enumerate( threads );
+        for ( int i = 0; i < count; i++ )
+        {
+            if ( threads[i].getName().contains( "brick refresher [" + storeName + "]" ) )
+            {
+                return threads[i];
+            }
+        }
+        return null;
+    }
+
+    private void assertConcurrentAccess( boolean memoryMapped ) throws Exception
+    {
+        FileChannel channel = raf.getChannel();
+        // a quarter of the file fits, so bricks get switched by the refresher
+        final PersistenceWindowPool pool = new PersistenceWindowPool( "test", RECORD_SIZE, channel,
+                RECORD_SIZE * RECORD_COUNT / 4, memoryMapped, false );
+        final int threadCount = 4;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for ( int t = 0; t < threadCount; t++ )
+        {
+            final int owner = t;
+            threads.add( new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        // each thread writes to the records id % threadCount == owner
+                        long[] written = new long[RECORD_COUNT / threadCount];
+                        Random random = new Random( owner );
+                        for ( int i = 0; i < 60000; i++ )
+                        {
+                            int slot = skewed( random, written.length );
+                            long id = (long) slot * threadCount + owner;
+                            if ( random.nextBoolean() )
+                            {
+                                long value = ( (long) owner << 32 ) | i;
+                                write( pool, id, value );
+                                written[slot] = value;
+                            }
+                            else
+                            {
+                                assertEquals( written[slot], read( pool, id ) );
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure.compareAndSet( null, e );
+                    }
+                }
+            } );
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        if ( failure.get() != null )
+        {
+            throw new AssertionError( failure.get() );
+        }
+        WindowPoolStats stats = pool.getStats();
+        assertTrue( stats.getMemUsed() <= stats.getMemAvail() );
+        pool.close();
+    }
+
+    private static int skewed( Random random, int bound )
+    {
+        // favour the start of the file, so there are bricks worth mapping
+        return random.nextInt( 4 ) == 0 ? random.nextInt( bound ) : random.nextInt( bound / 8 );
+    }
+
+    private static void write( PersistenceWindowPool pool, long id, long value )
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.WRITE );
+        try
+        {
+            window.getOffsettedBuffer( id ).putLong( value );
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+
+    private static long read( PersistenceWindowPool pool, long id )
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.READ );
+        try
+        {
+            return window.getOffsettedBuffer( id ).getLong();
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+}
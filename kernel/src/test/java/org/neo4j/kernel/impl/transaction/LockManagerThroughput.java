@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many write lock acquire/release pairs per second the
+ * {@link LockManager} manages with an increasing number of threads, each
+ * locking random resources out of a large set so that contention on the
+ * resources themselves is rare. Run with optional arguments
+ * [seconds per round] [max threads].
+ */
+public class LockManagerThroughput
+{
+    private static final int RESOURCE_COUNT = 1000000;
+
+    public static void main( String[] args ) throws Exception
+    {
+        int seconds = args.length > 0 ? Integer.parseInt( args[0] ) : 5;
+        int maxThreads = args.length > 1 ? Integer.parseInt( args[1] ) :
+            Runtime.getRuntime().availableProcessors();
+
+        LockManager lm = new LockManager( new RagManager( new PlaceboTm() ) );
+        Long[] resources = new Long[RESOURCE_COUNT];
+        for ( int i = 0; i < resources.length; i++ )
+        {
+            resources[i] = Long.valueOf( i );
+        }
+
+        // warm up
+        measure( lm, resources, 1, 1 );
+        for ( int threads = 1; threads <= maxThreads; threads *= 2 )
+        {
+            long ops = measure( lm, resources, threads, seconds );
+            System.out.println( threads + " thread(s): " + ( ops / seconds ) + " lock/unlock per second" );
+        }
+    }
+
+    private static long measure( final LockManager lm, final Long[] resources, int threadCount, int seconds )
+        throws InterruptedException
+    {
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicLong total = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch( 1 );
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    Random random = new Random();
+                    long count = 0;
+                    try
+                    {
+                        start.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        return;
+                    }
+                    while ( !done.get() )
+                    {
+                        Long resource = resources[random.nextInt( resources.length )];
+                        lm.getWriteLock( resource );
+                        lm.releaseWriteLock( resource, null );
+                        count++;
+                    }
+                    total.addAndGet( count );
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        Thread.sleep( seconds * 1000L );
+        done.set( true );
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        return total.get();
+    }
+}
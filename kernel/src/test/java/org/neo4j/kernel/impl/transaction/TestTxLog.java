@@ -190,6 +190,63 @@ public class TestTxLog
         }
     }
 
+    @Test
+    public void concurrentlyCommittingTransactionsShareForces() throws Exception
+    {
+        File file = new File( txFile() );
+        if ( file.exists() )
+        {
+            file.delete();
+        }
+        final TxLog txLog = new TxLog( txFile(), CommonFactories.defaultFileSystemAbstraction(), StringLogger.DEV_NULL );
+        final int threadCount = 8;
+        final int txPerThread = 25;
+        try
+        {
+            List<Thread> threads = new ArrayList<Thread>();
+            for ( int i = 0; i < threadCount; i++ )
+            {
+                final byte threadId = (byte) i;
+                threads.add( new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            for ( int t = 0; t < txPerThread; t++ )
+                            {
+                                byte globalId[] = new byte[] { threadId, (byte) t };
+                                txLog.txStart( globalId );
+                                txLog.markAsCommitting( globalId, ForceMode.forced );
+                                txLog.txDone( globalId );
+                            }
+                        }
+                        catch ( IOException e )
+                        {
+                            throw new RuntimeException( e );
+                        }
+                    }
+                } );
+            }
+            for ( Thread thread : threads )
+            {
+                thread.start();
+            }
+            for ( Thread thread : threads )
+            {
+                thread.join();
+            }
+            assertEquals( threadCount * txPerThread, txLog.getGroupCommit().getForcedTransactionCount() );
+            assertTrue( txLog.getGroupCommit().getForceCount() <= threadCount * txPerThread );
+            assertEquals( threadCount * txPerThread * 3, txLog.getRecordCount() );
+        }
+        finally
+        {
+            txLog.close();
+        }
+    }
+
     @Test
     public void testTxRecovery()
     {
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+import static org.neo4j.kernel.Config.BACKGROUND_LOG_ROTATION;
+import static org.neo4j.kernel.Config.KEEP_LOGICAL_LOGS;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.kernel.impl.util.FileUtils;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+public class TestBackgroundLogRotation
+{
+    @Test
+    public void logIsRotatedInTheBackgroundOnceItReachesItsTargetSize() throws Exception
+    {
+        File storeDir = new File( "target/test-data/background-rotation" );
+        FileUtils.deleteRecursively( storeDir );
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( storeDir.getAbsolutePath(),
+                stringMap( BACKGROUND_LOG_ROTATION, "true", KEEP_LOGICAL_LOGS, "true" ) );
+        int nodeCount = 200;
+        XaLogicalLog log;
+        try
+        {
+            NeoStoreXaDataSource dataSource = db.getXaDataSourceManager().getNeoStoreDataSource();
+            log = dataSource.getXaContainer().getLogicalLog();
+            assertTrue( log.isBackgroundRotation() );
+            dataSource.setLogicalLogTargetSize( 4 * 1024 );
+            for ( int i = 0; i < nodeCount; i++ )
+            {
+                Transaction tx = db.beginTx();
+                try
+                {
+                    db.createNode().setProperty( "name", "node " + i );
+                    tx.success();
+                }
+                finally
+                {
+                    tx.finish();
+                }
+            }
+            long endTime = System.currentTimeMillis() + 10000;
+            while ( log.getRotationCount() == 0 && System.currentTimeMillis() < endTime )
+            {
+                Thread.sleep( 10 );
+            }
+        }
+        finally
+        {
+            db.shutdown();
+        }
+
+        assertTrue( log.getRotationCount() > 0 );
+        assertTrue( log.getMaxRotationStallMillis() <= log.getRotationStallMillis() );
+        assertTrue( new File( storeDir, NeoStoreXaDataSource.LOGICAL_LOG_DEFAULT_NAME + ".v0" ).exists() );
+
+        EmbeddedGraphDatabase reopened = new EmbeddedGraphDatabase( storeDir.getAbsolutePath() );
+        try
+        {
+            // the reference node as well
+            assertEquals( nodeCount + 1, count( GlobalGraphOperations.at( reopened ).getAllNodes() ) );
+        }
+        finally
+        {
+            reopened.shutdown();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+import static org.neo4j.kernel.Config.GROUP_COMMIT;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.kernel.impl.util.FileUtils;
+
+public class TestGroupCommit
+{
+    @Test
+    public void concurrentCommittersShareForces() throws Exception
+    {
+        final GroupCommit groupCommit = new GroupCommit();
+        final AtomicInteger forces = new AtomicInteger();
+        final GroupCommit.Forcer forcer = new GroupCommit.Forcer()
+        {
+            public long force() throws IOException
+            {
+                long covered = groupCommit.lastAppended();
+                forces.incrementAndGet();
+                try
+                {
+                    Thread.sleep( 10 );
+                }
+                catch ( InterruptedException e )
+                {
+                    throw new IOException( e );
+                }
+                return covered;
+            }
+        };
+        List<Thread> threads = new ArrayList<Thread>();
+        final int commitsPerThread = 20;
+        for ( int i = 0; i < 8; i++ )
+        {
+            threads.add( new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int c = 0; c < commitsPerThread; c++ )
+                    {
+                        long ticket = groupCommit.append();
+                        try
+                        {
+                            groupCommit.awaitForced( ticket, forcer );
+                        }
+                        catch ( IOException e )
+                        {
+                            throw new RuntimeException( e );
+                        }
+                        assertTrue( groupCommit.isForced( ticket ) );
+                    }
+                }
+            } );
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        assertEquals( 8 * commitsPerThread, groupCommit.getForcedTransactionCount() );
+        assertEquals( forces.get(), groupCommit.getForceCount() );
+        assertTrue( "forces " + forces.get(), forces.get() < 8 * commitsPerThread );
+        assertTrue( groupCommit.getMaxBatchSize() > 1 );
+    }
+
+    @Test
+    public void failedForceIsRetriedByNextWaiter() throws Exception
+    {
+        final GroupCommit groupCommit = new GroupCommit();
+        final AtomicInteger attempts = new AtomicInteger();
+        GroupCommit.Forcer forcer = new GroupCommit.Forcer()
+        {
+            public long force() throws IOException
+            {
+                if ( attempts.incrementAndGet() == 1 )
+                {
+                    throw new IOException( "first force fails" );
+                }
+                return groupCommit.lastAppended();
+            }
+        };
+        long ticket = groupCommit.append();
+        try
+        {
+            groupCommit.awaitForced( ticket, forcer );
+        }
+        catch ( IOException e )
+        { // good
+        }
+        assertEquals( 0, groupCommit.getForceCount() );
+        groupCommit.awaitForced( ticket, forcer );
+        assertTrue( groupCommit.isForced( ticket ) );
+        assertEquals( 1, groupCommit.getForceCount() );
+    }
+
+    @Test
+    public void concurrentTransactionsWithGroupCommit() throws Exception
+    {
+        File storeDir = new File( "target/test-data/group-commit" );
+        FileUtils.deleteRecursively( storeDir );
+        final EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( storeDir.getAbsolutePath(),
+                stringMap( GROUP_COMMIT, "true" ) );
+        final int txPerThread = 25;
+        final int threadCount = 4;
+        long lastTxBefore;
+        long lastTxAfter;
+        GroupCommit groupCommit;
+        try
+        {
+            NeoStoreXaDataSource dataSource = db.getXaDataSourceManager().getNeoStoreDataSource();
+            groupCommit = dataSource.getXaContainer().getLogicalLog().getGroupCommit();
+            assertNotNull( groupCommit );
+            lastTxBefore = dataSource.getLastCommittedTxId();
+            List<Thread> threads = new ArrayList<Thread>();
+            for ( int i = 0; i < threadCount; i++ )
+            {
+                threads.add( new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        for ( int t = 0; t < txPerThread; t++ )
+                        {
+                            Transaction tx = db.beginTx();
+                            try
+                            {
+                                db.createNode().setProperty( "thread", getName() );
+                                tx.success();
+                            }
+                            finally
+                            {
+                                tx.finish();
+                            }
+                        }
+                    }
+                } );
+            }
+            for ( Thread thread : threads )
+            {
+                thread.start();
+            }
+            for ( Thread thread : threads )
+            {
+                thread.join();
+            }
+            lastTxAfter = dataSource.getLastCommittedTxId();
+        }
+        finally
+        {
+            db.shutdown();
+        }
+
+        assertEquals( lastTxBefore + threadCount * txPerThread, lastTxAfter );
+        assertEquals( threadCount * txPerThread, groupCommit.getForcedTransactionCount() );
+        assertTrue( groupCommit.getForceCount() <= threadCount * txPerThread );
+
+        EmbeddedGraphDatabase reopened = new EmbeddedGraphDatabase( storeDir.getAbsolutePath() );
+        try
+        {
+            assertEquals( lastTxAfter, reopened.getXaDataSourceManager().getNeoStoreDataSource()
+                    .getLastCommittedTxId() );
+        }
+        finally
+        {
+            reopened.shutdown();
+        }
+    }
+}
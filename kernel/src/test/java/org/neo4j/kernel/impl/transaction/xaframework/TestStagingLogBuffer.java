@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStagingLogBuffer
+{
+    private File testFileObject;
+    private RandomAccessFile testRAFile;
+
+    @Before
+    public void createFiles() throws Exception
+    {
+        File testDirectory = new File( "target" + File.separator + "var" );
+        if ( !testDirectory.exists() )
+        {
+            testDirectory.mkdirs();
+        }
+        testFileObject = new File( testDirectory, "stagingLogBufferTest" );
+        testRAFile = new RandomAccessFile( testFileObject, "rw" );
+    }
+
+    @After
+    public void deleteFiles() throws Exception
+    {
+        testRAFile.close();
+        testFileObject.delete();
+    }
+
+    @Test
+    public void appendsWhatWasPutInto() throws Exception
+    {
+        StagingLogBuffer staging = new StagingLogBuffer();
+        InMemoryLogBuffer expected = new InMemoryLogBuffer();
+        putSome( staging, 0 );
+        putSome( expected, 0 );
+
+        InMemoryLogBuffer target = new InMemoryLogBuffer();
+        staging.appendTo( target );
+        assertEquals( 0, staging.size() );
+        assertArrayEquals( contentOf( expected ), contentOf( target ) );
+    }
+
+    @Test
+    public void growsPastItsInitialSize() throws Exception
+    {
+        StagingLogBuffer staging = new StagingLogBuffer();
+        InMemoryLogBuffer expected = new InMemoryLogBuffer();
+        for ( int round = 0; round < 2; round++ )
+        {
+            int i = 0;
+            while ( staging.size() < StagingLogBuffer.MAX_RETAINED_SIZE * 2 )
+            {
+                putSome( staging, i );
+                putSome( expected, i++ );
+            }
+            InMemoryLogBuffer target = new InMemoryLogBuffer();
+            staging.appendTo( target );
+            assertArrayEquals( contentOf( expected ), contentOf( target ) );
+            expected.reset();
+        }
+    }
+
+    @Test
+    public void appendsMoreThanTheMappedBufferHolds() throws Exception
+    {
+        FileChannel channel = testRAFile.getChannel();
+        DirectMappedLogBuffer target = new DirectMappedLogBuffer( channel );
+        target.putLong( 42 );
+        StagingLogBuffer staging = new StagingLogBuffer();
+        byte[] bytes = new byte[DirectMappedLogBuffer.BUFFER_SIZE + 100];
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            bytes[i] = (byte) i;
+        }
+        staging.put( bytes );
+        staging.appendTo( target );
+        target.putLong( 4711 );
+        target.force();
+
+        ByteBuffer read = ByteBuffer.allocate( bytes.length + 16 );
+        channel.read( read, 0 );
+        read.flip();
+        assertEquals( 42, read.getLong() );
+        byte[] readBytes = new byte[bytes.length];
+        read.get( readBytes );
+        assertArrayEquals( bytes, readBytes );
+        assertEquals( 4711, read.getLong() );
+        assertEquals( bytes.length + 16, target.getFileChannelPosition() );
+    }
+
+    private void putSome( LogBuffer buffer, int i ) throws IOException
+    {
+        buffer.put( (byte) i ).putShort( (short) i ).putInt( i ).putLong( i ).putFloat( i ).putDouble( i );
+        buffer.put( new byte[] { 1, 2, 3 } ).put( ( "value" + i ).toCharArray() );
+        buffer.put( ByteBuffer.wrap( new byte[] { 4, 5, 6, 7 }, 1, 2 ) );
+    }
+
+    private byte[] contentOf( InMemoryLogBuffer buffer ) throws IOException
+    {
+        ByteBuffer content = ByteBuffer.allocate( 1024 * 1024 * 4 );
+        while ( buffer.read( content ) > 0 )
+        {   // keep reading
+        }
+        byte[] result = new byte[content.position()];
+        content.flip();
+        content.get( result );
+        return result;
+    }
+}
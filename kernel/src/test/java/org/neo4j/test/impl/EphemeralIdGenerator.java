@@ -66,6 +66,7 @@ public class EphemeralIdGenerator implements IdGenerator
     private final IdType idType;
     private final Queue<Long> freeList;
     private final AtomicInteger freedButNotReturnableIdCount = new AtomicInteger();
+    private final Queue<Long> returnedList = new ConcurrentLinkedQueue<Long>();
 
     public EphemeralIdGenerator( IdType idType )
     {
@@ -82,6 +83,8 @@ public class EphemeralIdGenerator implements IdGenerator
     @Override
     public long nextId()
     {
+        Long returned = returnedList.poll();
+        if ( returned != null ) return returned.longValue();
         if ( freeList != null )
         {
             Long id = freeList.poll();
@@ -93,7 +96,26 @@ public class EphemeralIdGenerator implements IdGenerator
     @Override
     public IdRange nextIdBatch( int size )
     {
-        throw new UnsupportedOperationException();
+        long[] reused = new long[size];
+        int count = 0;
+        Long id;
+        while ( count < size && ( id = returnedList.poll() ) != null ) reused[count++] = id.longValue();
+        while ( freeList != null && count < size && ( id = freeList.poll() ) != null ) reused[count++] = id.longValue();
+        long[] defragIds = new long[count];
+        System.arraycopy( reused, 0, defragIds, 0, count );
+        return new IdRange( defragIds, nextId.getAndAdd( size-count ), size-count );
+    }
+
+    @Override
+    public void returnIdBatch( IdRange ids )
+    {
+        for ( long id : ids.getDefragIds() ) returnedList.add( id );
+        long start = ids.getRangeStart();
+        int length = ids.getRangeLength();
+        if ( length > 0 && !nextId.compareAndSet( start+length, start ) )
+        {
+            for ( long id = start; id < start+length; id++ ) returnedList.add( id );
+        }
     }
 
     @Override
@@ -124,6 +146,7 @@ public class EphemeralIdGenerator implements IdGenerator
     public long getNumberOfIdsInUse()
     {
         long result = freeList == null ? nextId.get() : nextId.get() - freeList.size();
+        result -= returnedList.size();
         return result-freedButNotReturnableIdCount.get();
     }
 
@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * Publishes the {@link IndexSearcherRef} of one index and reopens it, near
+ * real time, as transactions commit to the index.
+ *
+ * Queries pick up the published searcher without taking any lock. Commits
+ * only count the changes not yet visible to it and schedule a reopen on the
+ * data source's background reopener: right away once
+ * <CODE>reopenCommits</CODE> commits are pending, otherwise once the oldest
+ * of them is half of <CODE>maxStaleness</CODE> milliseconds old. A query
+ * only reopens the searcher itself if the published one is older than
+ * <CODE>maxStaleness</CODE>, which, with the default of zero, means every
+ * query sees all committed changes just like before.
+ */
+class IndexSearcherManager
+{
+    private final IndexIdentifier identifier;
+    private final LuceneDataSource dataSource;
+    private volatile IndexSearcherRef current;
+    private volatile boolean closed;
+
+    private final AtomicLong changes = new AtomicLong();
+    private volatile long publishedChanges;
+    private volatile long oldestUnpublishedChange;
+    private final AtomicBoolean reopenScheduled = new AtomicBoolean();
+
+    IndexSearcherManager( IndexIdentifier identifier, IndexSearcherRef searcher,
+            LuceneDataSource dataSource )
+    {
+        this.identifier = identifier;
+        this.current = searcher;
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Returns the published searcher, reopening it first if it's missing
+     * changes committed longer ago than <CODE>maxStaleness</CODE>
+     * milliseconds, or any changes at all if <CODE>fresh</CODE> is set.
+     *
+     * @return the searcher or {@code null} if this manager has been closed.
+     */
+    IndexSearcherRef acquire( boolean incRef, boolean fresh, long maxStaleness )
+    {
+        while ( !closed )
+        {
+            if ( changes.get() != publishedChanges &&
+                    ( fresh || System.currentTimeMillis() - oldestUnpublishedChange >= maxStaleness ) )
+            {
+                reopen();
+            }
+            IndexSearcherRef searcher = current;
+            if ( !incRef || searcher.tryIncRef() )
+            {
+                return searcher;
+            }
+            // Replaced and closed since we read it, go get the new one
+        }
+        return null;
+    }
+
+    /**
+     * Called after a transaction has committed changes to the index. Commits
+     * to an index are serialized by the data source write lock.
+     */
+    void changed( ScheduledExecutorService reopener, long maxStaleness, int reopenCommits )
+    {
+        if ( changes.get() == publishedChanges )
+        {
+            oldestUnpublishedChange = System.currentTimeMillis();
+        }
+        long pending = changes.incrementAndGet() - publishedChanges;
+        if ( pending == reopenCommits )
+        {
+            reopener.execute( new Reopen( false ) );
+        }
+        else if ( pending == 1 && reopenScheduled.compareAndSet( false, true ) )
+        {
+            reopener.schedule( new Reopen( true ), maxStaleness / 2, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    /**
+     * Publishes a searcher seeing all changes committed so far, if the current
+     * one doesn't. Concurrent reopens wait for each other, queries going for
+     * the current searcher meanwhile don't.
+     */
+    synchronized void reopen()
+    {
+        long covered = changes.get();
+        if ( closed || covered == publishedChanges )
+        {
+            return;
+        }
+        long startTime = System.nanoTime();
+        try
+        {
+            IndexSearcherRef searcher = current;
+            IndexReader reopened = IndexReader.openIfChanged( searcher.getSearcher().getIndexReader(),
+                    dataSource.getIndexWriter( identifier ), true );
+            if ( reopened != null )
+            {
+                current = new IndexSearcherRef( identifier, new IndexSearcher( reopened ) );
+                searcher.detachOrClose();
+                if ( closed )
+                {
+                    // Closed while we were reopening, don't leave this one open
+                    current.dispose();
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+        publishedChanges = covered;
+        dataSource.searcherReopened( System.nanoTime() - startTime );
+    }
+
+    /**
+     * Closes the published searcher, even if queries are still using it.
+     * Doesn't wait for an ongoing reopen, since that may be waiting for the
+     * data source monitor held by the caller.
+     */
+    void close() throws IOException
+    {
+        closed = true;
+        current.dispose();
+    }
+
+    boolean isClosed()
+    {
+        return closed;
+    }
+
+    private class Reopen implements Runnable
+    {
+        private final boolean scheduled;
+
+        Reopen( boolean scheduled )
+        {
+            this.scheduled = scheduled;
+        }
+
+        public void run()
+        {
+            if ( scheduled )
+            {
+                reopenScheduled.set( false );
+            }
+            // Keeps us from closing a searcher used by a commit in progress
+            dataSource.getReadLock();
+            try
+            {
+                reopen();
+            }
+            catch ( RuntimeException e )
+            {
+                // Queries reopen it themselves once it gets too stale
+            }
+            finally
+            {
+                dataSource.releaseReadLock();
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package org.neo4j.index.impl.lucene;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.search.IndexSearcher;
@@ -28,16 +29,16 @@ class IndexSearcherRef
 {
     private final IndexIdentifier identifier;
     private final IndexSearcher searcher;
-    private final AtomicInteger refCount = new AtomicInteger( 0 );
-    private volatile boolean isClosed;
-    
     /**
-     * We need this because we only want to close the reader/searcher if
-     * it has been detached... i.e. the {@link LuceneDataSource} no longer
-     * has any reference to it, only an iterator out in the client has a ref.
-     * And when that client calls close() it should be closed.
+     * One reference is held by the {@link IndexSearcherManager} publishing
+     * this searcher, released when it is replaced by a reopened one, and one
+     * by each query still iterating over it. The searcher is closed when the
+     * count reaches zero and once it has, no new references can be taken, so
+     * that readers picking it up without a lock never get a closed searcher.
      */
-    private volatile boolean detached;
+    private final AtomicInteger refCount = new AtomicInteger( 1 );
+    private final AtomicBoolean detached = new AtomicBoolean();
+    private volatile boolean isClosed;
     
     public IndexSearcherRef( IndexIdentifier identifier, IndexSearcher searcher )
     {
@@ -55,47 +56,66 @@ class IndexSearcherRef
         return identifier;
     }
 
-    void incRef()
+    /**
+     * @return {@code true} if a reference was taken, or {@code false} if this
+     * searcher has been replaced and already closed.
+     */
+    boolean tryIncRef()
     {
-        this.refCount.incrementAndGet();
+        while ( true )
+        {
+            int count = this.refCount.get();
+            if ( count <= 0 || this.isClosed )
+            {
+                return false;
+            }
+            if ( this.refCount.compareAndSet( count, count + 1 ) )
+            {
+                return true;
+            }
+        }
     }
     
-    public void dispose() throws IOException
+    public synchronized void dispose() throws IOException
     {
         if ( !this.isClosed )
         {
+            this.isClosed = true;
             this.searcher.close();
             this.searcher.getIndexReader().close();
-            this.isClosed = true;
         }
     }
     
+    /**
+     * Releases the reference held by the {@link LuceneDataSource}, closing
+     * the searcher unless there are queries still using it, in which case
+     * the last of them closes it.
+     */
     public void detachOrClose() throws IOException
     {
-        if ( this.refCount.get() == 0 )
-        {
-            dispose();
-        }
-        else
+        if ( this.detached.compareAndSet( false, true ) )
         {
-            this.detached = true;
+            decRef();
         }
     }
     
     public boolean close() throws IOException
     {
-        if ( this.isClosed || this.refCount.get() == 0 )
+        if ( this.isClosed )
         {
             return true;
         }
-        
-        boolean reallyClosed = false;
-        if ( this.refCount.decrementAndGet() <= 0 && this.detached )
+        return decRef();
+    }
+
+    private boolean decRef() throws IOException
+    {
+        if ( this.refCount.decrementAndGet() == 0 )
         {
             dispose();
-            reallyClosed = true;
+            return true;
         }
-        return reallyClosed;
+        return false;
     }
     
     boolean closeStrict()
@@ -33,7 +33,11 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.lucene.analysis.Analyzer;
@@ -67,6 +71,7 @@ import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexManager;
 import org.neo4j.graphdb.index.RelationshipIndex;
+import org.neo4j.helpers.DaemonThreadFactory;
 import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.UTF8;
 import org.neo4j.helpers.collection.ClosableIterable;
@@ -98,6 +103,10 @@ public class LuceneDataSource extends LogBackedXaDataSource
 
         int lucene_writer_cache_size(int def);
 
+        long lucene_searcher_max_staleness(long def);
+
+        int lucene_searcher_reopen_commits(int def, int min, int max);
+
         boolean ephemeral(boolean def);
 
         boolean read_only(boolean def);
@@ -150,6 +159,14 @@ public class LuceneDataSource extends LogBackedXaDataSource
 
     private final IndexWriterLruCache indexWriters;
     private final IndexSearcherLruCache indexSearchers;
+    private final ConcurrentMap<IndexIdentifier, IndexSearcherManager> searcherManagers =
+            new ConcurrentHashMap<IndexIdentifier, IndexSearcherManager>();
+    private final ScheduledExecutorService searcherReopener;
+    private final long searcherMaxStaleness;
+    private final int searcherReopenCommits;
+    private final AtomicLong searcherReopenCount = new AtomicLong();
+    private final AtomicLong searcherReopenTotalTime = new AtomicLong();
+    private final AtomicLong searcherReopenMaxTime = new AtomicLong();
 
     private final XaContainer xaContainer;
     private final String baseStorePath;
@@ -176,6 +193,10 @@ public class LuceneDataSource extends LogBackedXaDataSource
         super( DEFAULT_BRANCH_ID, DEFAULT_NAME );
         indexSearchers = new IndexSearcherLruCache( config.lucene_searcher_cache_size(Integer.MAX_VALUE) );
         indexWriters = new IndexWriterLruCache( config.lucene_writer_cache_size(Integer.MAX_VALUE) );
+        searcherMaxStaleness = config.lucene_searcher_max_staleness(0);
+        searcherReopenCommits = config.lucene_searcher_reopen_commits(1, 1, Integer.MAX_VALUE);
+        searcherReopener = Executors.newSingleThreadScheduledExecutor(
+                new DaemonThreadFactory( "Lucene searcher reopener" ) );
         caching = new Cache();
         String storeDir = config.store_dir();
         this.baseStorePath = getStoreDir( storeDir ).first();
@@ -297,11 +318,12 @@ public class LuceneDataSource extends LogBackedXaDataSource
                 return;
             }
             closed = true;
-            for ( Pair<IndexSearcherRef, AtomicBoolean> searcher : indexSearchers.values() )
+            searcherReopener.shutdownNow();
+            for ( IndexSearcherManager searcher : indexSearchers.values() )
             {
                 try
                 {
-                    searcher.first().dispose();
+                    searcher.close();
                 }
                 catch ( IOException e )
                 {
@@ -309,6 +331,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
                 }
             }
             indexSearchers.clear();
+            searcherManagers.clear();
 
             for ( Map.Entry<IndexIdentifier, IndexWriter> entry : indexWriters.entrySet() )
             {
@@ -458,39 +481,6 @@ public class LuceneDataSource extends LogBackedXaDataSource
         lock.writeLock().unlock();
     }
 
-    /**
-     * If nothing has changed underneath (since the searcher was last created
-     * or refreshed) {@code searcher} is returned. But if something has changed a
-     * refreshed searcher is returned. It makes use if the
-     * {@link IndexReader#openIfChanged(IndexReader, IndexWriter, boolean)} which faster than opening an index from
-     * scratch.
-     *
-     * @param searcher the {@link IndexSearcher} to refresh.
-     * @param writer 
-     * @return a refreshed version of the searcher or, if nothing has changed,
-     * {@code null}.
-     * @throws IOException if there's a problem with the index.
-     */
-    private Pair<IndexSearcherRef, AtomicBoolean> refreshSearcher( Pair<IndexSearcherRef, AtomicBoolean> searcher, IndexWriter writer )
-    {
-        try
-        {
-            IndexReader reader = searcher.first().getSearcher().getIndexReader();
-            IndexReader reopened = IndexReader.openIfChanged( reader, writer, true );
-            if ( reopened != null )
-            {
-                IndexSearcher newSearcher = new IndexSearcher( reopened );
-                searcher.first().detachOrClose();
-                return Pair.of( new IndexSearcherRef( searcher.first().getIdentifier(), newSearcher ), new AtomicBoolean() );
-            }
-            return searcher;
-        }
-        catch ( IOException e )
-        {
-            throw new RuntimeException( e );
-        }
-    }
-
     static File getFileDirectory( String storeDir, byte entityType )
     {
         File path = new File( storeDir, "lucene" );
@@ -527,54 +517,109 @@ public class LuceneDataSource extends LogBackedXaDataSource
         return TopFieldCollector.create( sorting, n, false, true, false, true );
     }
 
-    synchronized IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef )
+    IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef )
     {
-        try
+        return getIndexSearcher( identifier, incRef, false );
+    }
+
+    /**
+     * Returns the searcher for an index, without locking unless it has to be
+     * opened or reopened first. It may be missing changes committed up to
+     * <CODE>lucene_searcher_max_staleness</CODE> milliseconds ago, unless
+     * {@code fresh} is set.
+     */
+    IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef, boolean fresh )
+    {
+        while ( true )
         {
-            Pair<IndexSearcherRef, AtomicBoolean> searcher = indexSearchers.get( identifier );
-            IndexWriter writer = getIndexWriter( identifier );
-            if ( searcher == null )
+            IndexSearcherManager manager = searcherManagers.get( identifier );
+            if ( manager == null || manager.isClosed() )
             {
-                IndexReader reader = IndexReader.open( writer, true );
-                IndexSearcher indexSearcher = new IndexSearcher( reader );
-                searcher = Pair.of( new IndexSearcherRef( identifier, indexSearcher ), new AtomicBoolean() );
-                indexSearchers.put( identifier, searcher );
+                manager = getIndexSearcherManager( identifier );
             }
-            else
+            // Outside of the monitor, a reopen may need it for the writer
+            IndexSearcherRef searcher = manager.acquire( incRef, fresh, searcherMaxStaleness );
+            if ( searcher != null )
             {
-                if ( searcher.other().compareAndSet( true, false ) )
-                {
-                    searcher = refreshSearcher( searcher, writer );
-                    if ( searcher != null )
-                    {
-                        indexSearchers.put( identifier, searcher );
-                    }
-                }
+                return searcher;
             }
-            if ( incRef )
+        }
+    }
+
+    private synchronized IndexSearcherManager getIndexSearcherManager( IndexIdentifier identifier )
+    {
+        IndexSearcherManager manager = indexSearchers.get( identifier );
+        if ( manager == null || manager.isClosed() )
+        {
+            try
             {
-                searcher.first().incRef();
+                IndexReader reader = IndexReader.open( getIndexWriter( identifier ), true );
+                IndexSearcherRef searcher = new IndexSearcherRef( identifier, new IndexSearcher( reader ) );
+                manager = new IndexSearcherManager( identifier, searcher, this );
             }
-            return searcher.first();
+            catch ( IOException e )
+            {
+                throw new RuntimeException( e );
+            }
+            indexSearchers.put( identifier, manager );
+            searcherManagers.put( identifier, manager );
         }
-        catch ( IOException e )
+        return manager;
+    }
+
+    /**
+     * Called by {@link IndexSearcherManager} after each reopen.
+     */
+    void searcherReopened( long nanos )
+    {
+        searcherReopenCount.incrementAndGet();
+        searcherReopenTotalTime.addAndGet( nanos );
+        long max;
+        while ( nanos > ( max = searcherReopenMaxTime.get() ) &&
+                !searcherReopenMaxTime.compareAndSet( max, nanos ) )
         {
-            throw new RuntimeException( e );
+            // Lost to another reopen, try again
         }
     }
 
+    /**
+     * @return the number of times index searchers have been reopened to see
+     * newly committed changes.
+     */
+    public long getSearcherReopenCount()
+    {
+        return searcherReopenCount.get();
+    }
+
+    /**
+     * @return the average time, in microseconds, a searcher reopen has taken.
+     */
+    public long getAverageSearcherReopenTime()
+    {
+        long count = searcherReopenCount.get();
+        return count == 0 ? 0 : searcherReopenTotalTime.get() / count / 1000;
+    }
+
+    /**
+     * @return the longest time, in microseconds, a searcher reopen has taken.
+     */
+    public long getMaxSearcherReopenTime()
+    {
+        return searcherReopenMaxTime.get() / 1000;
+    }
+
     XaTransaction createTransaction( int identifier,
         XaLogicalLog logicalLog )
     {
         return new LuceneTransaction( identifier, logicalLog, this );
     }
 
-    synchronized void invalidateIndexSearcher( IndexIdentifier identifier )
+    void invalidateIndexSearcher( IndexIdentifier identifier )
     {
-        Pair<IndexSearcherRef, AtomicBoolean> searcher = indexSearchers.get( identifier );
-        if ( searcher != null )
+        IndexSearcherManager manager = searcherManagers.get( identifier );
+        if ( manager != null )
         {
-            searcher.other().set( true );
+            manager.changed( searcherReopener, searcherMaxStaleness, searcherReopenCommits );
         }
     }
 
@@ -713,11 +758,12 @@ public class LuceneDataSource extends LogBackedXaDataSource
     {
         try
         {
-            Pair<IndexSearcherRef, AtomicBoolean> searcher = indexSearchers.remove( identifier );
+            IndexSearcherManager searcher = indexSearchers.remove( identifier );
+            searcherManagers.remove( identifier );
             IndexWriter writer = indexWriters.remove( identifier );
             if ( searcher != null )
             {
-                searcher.first().dispose();
+                searcher.close();
             }
             if ( writer != null )
             {
@@ -19,6 +19,7 @@
  */
 package org.neo4j.index.impl.lucene;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
@@ -179,6 +180,46 @@ public class TestLuceneDataSource
         assertFalse( IndexWriterAccessor.isClosed( newFooIndexWriter ) );
     }
 
+    @Test
+    public void testSearcherMissingChangesIsReturnedWithinMaxStaleness() throws IOException
+    {
+        Map<String,String> config = config();
+        config.put( Config.LUCENE_SEARCHER_MAX_STALENESS, "600000" );
+        config.put( Config.LUCENE_SEARCHER_REOPEN_COMMITS, "1000" );
+        dataSource = new LuceneDataSource( ConfigProxy.config(config, LuceneDataSource.Configuration.class), indexStore, CommonFactories.defaultFileSystemAbstraction(), new XaFactory(config, TxIdGenerator.DEFAULT, new PlaceboTm(), CommonFactories.defaultLogBufferFactory(), CommonFactories.defaultFileSystemAbstraction(), StringLogger.DEV_NULL, CommonFactories.defaultRecoveryVerifier()) );
+        IndexIdentifier identifier = identifier( "foo" );
+        IndexSearcherRef oldSearcher = dataSource.getIndexSearcher( identifier, false );
+        dataSource.getIndexWriter( identifier ).addDocument( IndexType.newBaseDocument( 1L ) );
+        dataSource.invalidateIndexSearcher( identifier );
+        assertSame( oldSearcher, dataSource.getIndexSearcher( identifier, false ) );
+
+        IndexSearcherRef freshSearcher = dataSource.getIndexSearcher( identifier, false, true );
+        assertNotSame( oldSearcher, freshSearcher );
+        assertTrue( oldSearcher.isClosed() );
+        assertEquals( 1, freshSearcher.getSearcher().getIndexReader().numDocs() );
+        assertSame( freshSearcher, dataSource.getIndexSearcher( identifier, false ) );
+        assertEquals( 1, dataSource.getSearcherReopenCount() );
+    }
+
+    @Test
+    public void testReopenedSearcherIsClosedWhenLastQueryReleasesIt() throws IOException
+    {
+        dataSource = new LuceneDataSource( ConfigProxy.config(config(), LuceneDataSource.Configuration.class), indexStore, CommonFactories.defaultFileSystemAbstraction(), new XaFactory(config(), TxIdGenerator.DEFAULT, new PlaceboTm(), CommonFactories.defaultLogBufferFactory(), CommonFactories.defaultFileSystemAbstraction(), StringLogger.DEV_NULL, CommonFactories.defaultRecoveryVerifier()) );
+        IndexIdentifier identifier = identifier( "foo" );
+        IndexSearcherRef oldSearcher = dataSource.getIndexSearcher( identifier, true );
+        dataSource.getIndexWriter( identifier ).addDocument( IndexType.newBaseDocument( 1L ) );
+        dataSource.invalidateIndexSearcher( identifier );
+
+        IndexSearcherRef newSearcher = dataSource.getIndexSearcher( identifier, true );
+        assertNotSame( oldSearcher, newSearcher );
+        assertEquals( 1, newSearcher.getSearcher().getIndexReader().numDocs() );
+        assertFalse( oldSearcher.isClosed() );
+        assertTrue( oldSearcher.close() );
+        assertTrue( oldSearcher.isClosed() );
+        assertFalse( newSearcher.close() );
+        assertFalse( newSearcher.isClosed() );
+    }
+
     @Ignore( "No longer valid since Lucene 3.5" )
     @Test
     public void testInvalidatingSearcherCreatesANewOne() throws InstantiationException
@@ -36,6 +36,11 @@ import org.neo4j.server.rest.web.RelationshipNotFoundException;
  * Implementations of this class must be stateless. Implementations of this
  * class must have a public no arguments constructor.
  *
+ * The one exception are formats that write straight to the stream of a single
+ * response, such as the streaming JSON format. Those hold the state of that
+ * response, so they are created for it by the output format and are never
+ * registered as services or shared between responses.
+ *
  * @author Tobias Ivarsson <tobias.ivarsson@neotechnology.com>
  * @author Andres Taylor <andres.taylor@neotechnology.com>
  */
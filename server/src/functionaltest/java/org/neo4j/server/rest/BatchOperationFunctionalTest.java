@@ -25,16 +25,21 @@ import static org.junit.Assert.assertTrue;
 import java.util.List;
 import java.util.Map;
 
+import javax.ws.rs.core.MediaType;
+
 import org.json.JSONException;
 import org.junit.Test;
 import org.neo4j.graphdb.Node;
 import org.neo4j.kernel.impl.annotations.Documented;
 import org.neo4j.server.rest.domain.JsonHelper;
 import org.neo4j.server.rest.domain.JsonParseException;
+import org.neo4j.server.rest.repr.formats.StreamingJsonFormat;
 import org.neo4j.server.rest.web.PropertyValueException;
 import org.neo4j.test.GraphDescription.Graph;
 
+import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.UniformInterfaceException;
 
 public class BatchOperationFunctionalTest extends AbstractRestFunctionalTestBase
@@ -470,6 +475,104 @@ public class BatchOperationFunctionalTest extends AbstractRestFunctionalTestBase
 
     }
     
+    @Test
+    public void shouldStreamResultsWhenAskedTo() throws Exception {
+        String jsonString = new PrettyJSON()
+            .array()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("/node")
+                    .key("id")      .value(0)
+                    .key("body")
+                        .object()
+                            .key("name").value("bob")
+                        .endObject()
+                .endObject()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("/node")
+                    .key("id")      .value(1)
+                .endObject()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("{0}/relationships")
+                    .key("id")      .value(2)
+                    .key("body")
+                        .object()
+                            .key("to").value("{1}")
+                            .key("type").value("KNOWS")
+                        .endObject()
+                .endObject()
+                .object()
+                    .key("method")  .value("GET")
+                    .key("to")      .value("{2}")
+                    .key("id")      .value(3)
+                .endObject()
+            .endArray().toString();
+
+        ClientResponse response = streamingPost( jsonString );
+
+        assertEquals(200, response.getStatus());
+        List<Map<String, Object>> results = JsonHelper.jsonToList(response.getEntity(String.class));
+
+        assertEquals(4, results.size());
+        Map<String, Object> bob = results.get(0);
+        assertEquals(0, bob.get("id"));
+        assertEquals("/node", bob.get("from"));
+        assertEquals("bob", ((Map<?, ?>) ((Map<?, ?>) bob.get("body")).get("data")).get("name"));
+
+        String knowsLocation = (String) results.get(2).get("location");
+        assertTrue(knowsLocation.contains("/relationship/"));
+        assertEquals(knowsLocation, results.get(3).get("from"));
+        assertEquals("KNOWS", ((Map<?, ?>) results.get(3).get("body")).get("type"));
+    }
+
+    @Test
+    public void shouldEndStreamedResultsWithTheFailureAndRollBack() throws Exception {
+        String jsonString = new PrettyJSON()
+            .array()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("/node")
+                    .key("id")      .value(0)
+                .endObject()
+                .object()
+                    .key("method")  .value("POST")
+                    .key("to")      .value("/node/123456789/relationships")
+                    .key("id")      .value(1)
+                    .key("body")
+                        .object()
+                            .key("to").value("{0}")
+                            .key("type").value("KNOWS")
+                        .endObject()
+                .endObject()
+            .endArray().toString();
+
+        int originalNodeCount = countNodes();
+
+        ClientResponse response = streamingPost( jsonString );
+
+        assertEquals(200, response.getStatus());
+        List<Map<String, Object>> results = JsonHelper.jsonToList(response.getEntity(String.class));
+
+        assertEquals(2, results.size());
+        Map<String, Object> failure = results.get(1);
+        assertEquals(1, failure.get("id"));
+        assertEquals(404, failure.get("status"));
+        assertEquals("/node/123456789/relationships", failure.get("from"));
+        assertTrue(((Map<?, ?>) failure.get("body")).containsKey("exception"));
+        assertEquals(originalNodeCount, countNodes());
+    }
+
+    private ClientResponse streamingPost( String jsonString )
+    {
+        return Client.create().resource( batchUri() )
+                .accept( MediaType.APPLICATION_JSON_TYPE )
+                .header( StreamingJsonFormat.STREAM_HEADER, "true" )
+                .entity( jsonString, MediaType.APPLICATION_JSON_TYPE )
+                .post( ClientResponse.class );
+    }
+
     private int countNodes()
     {
         int count = 0;
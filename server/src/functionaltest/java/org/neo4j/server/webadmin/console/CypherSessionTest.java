@@ -43,6 +43,7 @@ import static org.hamcrest.text.StringContains.containsString;
 import static org.junit.Assert.assertThat;
 
 import org.junit.Test;
+import org.neo4j.cypher.javacompat.ExecutionEngine;
 import org.neo4j.helpers.Pair;
 import org.neo4j.test.ImpermanentGraphDatabase;
 
@@ -54,7 +55,7 @@ public class CypherSessionTest
         ImpermanentGraphDatabase graphdb = new ImpermanentGraphDatabase();
         try
         {
-            CypherSession session = new CypherSession( graphdb );
+            CypherSession session = new CypherSession( new ExecutionEngine( graphdb ) );
             Pair<String, String> result = session.evaluate( "start a=node(0) return a" );
             assertThat( result.first(), containsString( "Node[0]" ) );
         }
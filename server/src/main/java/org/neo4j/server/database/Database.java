@@ -22,6 +22,7 @@ package org.neo4j.server.database;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.neo4j.cypher.javacompat.ExecutionEngine;
 import org.neo4j.ext.udc.UdcProperties;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
@@ -42,6 +43,7 @@ public class Database
     private final String databaseStoreDirectory;
     private RrdDb rrdDb;
     private final StatisticCollector statisticCollector = new StatisticCollector();
+    private ExecutionEngine executionEngine;
 
     public Database( GraphDatabaseSPI db )
     {
@@ -163,6 +165,20 @@ public class Database
         return graph.index();
     }
 
+    /**
+     * The Cypher execution engine shared by everything in the server that runs
+     * queries against this database, so that parsed and planned queries are
+     * cached across requests.
+     */
+    public synchronized ExecutionEngine executionEngine()
+    {
+        if ( executionEngine == null )
+        {
+            executionEngine = new ExecutionEngine( graph );
+        }
+        return executionEngine;
+    }
+
     public StatisticCollector statisticCollector()
     {
         return statisticCollector;
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Collects the results of the operations in a batch, and the locations of the
+ * entities they created so that later operations can refer to them.
+ */
+public abstract class AbstractBatchOperationResults
+{
+    private final Map<Integer, String> locations = new HashMap<Integer, String>();
+
+    /**
+     * Called before an operation is performed, so that a failure can be
+     * reported against it.
+     */
+    public void operationStarted( String from, Integer id )
+    {
+    }
+
+    public abstract void addOperationResult( String from, Integer id, String body, String location );
+
+    public Map<Integer, String> getLocations()
+    {
+        return locations;
+    }
+
+    protected void addLocation( Integer id, String location )
+    {
+        locations.put( id, location );
+    }
+}
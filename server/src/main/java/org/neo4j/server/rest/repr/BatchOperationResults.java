@@ -20,8 +20,6 @@
 package org.neo4j.server.rest.repr;
 
 import java.io.StringWriter;
-import java.util.HashMap;
-import java.util.Map;
 
 import org.neo4j.server.rest.domain.JsonHelper;
 
@@ -34,7 +32,7 @@ import org.neo4j.server.rest.domain.JsonHelper;
  * each operation, and we would have to extend our current type safe serialization
  * system to incorporate arbitrary responses.
  */
-public class BatchOperationResults
+public class BatchOperationResults extends AbstractBatchOperationResults
 {
     private static final String CLOSING_BRACKET = "]";
     private static final String OPENING_BRACKET = "[";
@@ -44,12 +42,12 @@ public class BatchOperationResults
 
     private StringWriter results = new StringWriter();
     private boolean firstResult = true;
-    private Map<Integer, String> locations = new HashMap<Integer, String>();
 
     public BatchOperationResults() {
         results.append(OPENING_BRACKET);
     }
 
+    @Override
     public void addOperationResult( String from, Integer id, String body, String location )
     {
         if(firstResult)
@@ -68,7 +66,7 @@ public class BatchOperationResults
 
         if ( location != null )
         {
-            locations.put( id, location );
+            addLocation( id, location );
             results.append( "\"location\":" )
                     .append( JsonHelper.createJsonFrom( location ) )
                     .append( COMMA );
@@ -87,11 +85,6 @@ public class BatchOperationResults
         results.append( CLOSING_CURLY );
     }
 
-    public Map<Integer, String> getLocations()
-    {
-        return locations;
-    }
-
     public String toJSON()
     {
         results.append(CLOSING_BRACKET);
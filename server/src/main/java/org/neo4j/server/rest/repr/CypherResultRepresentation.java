@@ -23,6 +23,7 @@ import org.neo4j.cypher.javacompat.ExecutionResult;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.helpers.collection.IterableWrapper;
 import org.neo4j.server.webadmin.rest.representations.JmxAttributeRepresentationDispatcher;
 
 import java.util.ArrayList;
@@ -48,19 +49,23 @@ public class CypherResultRepresentation extends ObjectRepresentation
     @Mapping( "data" )
     public Representation data()
     {
-        // rows
-        List<Representation> rows = new ArrayList<Representation>();
-        for ( Map<String, Object> row : queryResult )
+        // rows are converted as they are serialized, so that a streaming
+        // output format never has to hold the whole result
+        final List<String> columns = queryResult.columns();
+        Iterable<Representation> rows = new IterableWrapper<Representation, Map<String, Object>>( queryResult )
         {
-            List<Representation> fields = new ArrayList<Representation>();
-            // columns
-            for ( String column : queryResult.columns() )
+            @Override
+            protected Representation underlyingObjectToObject( Map<String, Object> row )
             {
-                Representation rowRep = getRepresentation( row.get( column ) );
-                fields.add( rowRep );
+                List<Representation> fields = new ArrayList<Representation>( columns.size() );
+                // columns
+                for ( String column : columns )
+                {
+                    fields.add( getRepresentation( row.get( column ) ) );
+                }
+                return new ListRepresentation( "row", fields );
             }
-            rows.add( new ListRepresentation( "row", fields ) );
-        }
+        };
         return new ListRepresentation( "data", rows );
     }
 
@@ -19,6 +19,8 @@
  */
 package org.neo4j.server.rest.repr;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 
@@ -27,6 +29,9 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.neo4j.server.rest.repr.formats.StreamingJsonFormat;
 
 public class OutputFormat
 {
@@ -34,12 +39,25 @@ public class OutputFormat
     private final RepresentationFormat format;
     private final ExtensionInjector extensions;
     private final URI baseUri;
+    private final boolean streaming;
 
     public OutputFormat( RepresentationFormat format, URI baseUri, ExtensionInjector extensions )
+    {
+        this( format, baseUri, extensions, false );
+    }
+
+    /**
+     * @param streaming if {@code true} response entities are written to the
+     *            client as JSON while they are being serialized, rather than
+     *            being rendered to a string first. Only the JSON format can be
+     *            streamed.
+     */
+    public OutputFormat( RepresentationFormat format, URI baseUri, ExtensionInjector extensions, boolean streaming )
     {
         this.format = format;
         this.baseUri = baseUri;
         this.extensions = extensions;
+        this.streaming = streaming;
     }
 
     public final Response ok( Representation representation )
@@ -97,6 +115,10 @@ public class OutputFormat
 
     protected Response response( ResponseBuilder response, Representation representation )
     {
+        if ( streaming )
+        {
+            return streamingResponse( response, representation );
+        }
         String entity = format( representation );
         byte[] entityAsBytes;
         try
@@ -113,6 +135,49 @@ public class OutputFormat
                 .build();
     }
 
+    private Response streamingResponse( ResponseBuilder response, final Representation representation )
+    {
+        StreamingOutput entity = new StreamingOutput()
+        {
+            @Override
+            public void write( OutputStream output ) throws IOException
+            {
+                // Lists and mappings are written by the format itself, plain
+                // values are still rendered as a string and written here.
+                StreamingJsonFormat json = new StreamingJsonFormat( output );
+                String rest;
+                try
+                {
+                    rest = representation.serialize( json, baseUri, extensions );
+                }
+                catch ( RuntimeException e )
+                {
+                    // Once part of the response is written its status can't be
+                    // changed any more, so the failure ends the content instead
+                    if ( !json.fail( e ) )
+                    {
+                        throw e;
+                    }
+                    rest = null;
+                }
+                if ( rest != null && rest.length() > 0 )
+                {
+                    output.write( rest.getBytes( UTF8 ) );
+                }
+                output.flush();
+            }
+        };
+        return response.entity( entity )
+                .header( HttpHeaders.CONTENT_ENCODING, UTF8 )
+                .type( getMediaType() )
+                .build();
+    }
+
+    public boolean isStreaming()
+    {
+        return streaming;
+    }
+
     public MediaType getMediaType()
     {
         return format.mediaType;
@@ -24,6 +24,7 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
 import org.neo4j.server.database.AbstractInjectableProvider;
+import org.neo4j.server.rest.repr.formats.StreamingJsonFormat;
 
 import com.sun.jersey.api.core.HttpContext;
 
@@ -43,7 +44,7 @@ public final class OutputFormatProvider extends AbstractInjectableProvider<Outpu
         try
         {
             return repository.outputFormat( context.getRequest()
-                    .getAcceptableMediaTypes(), context.getRequest().getBaseUri() );
+                    .getAcceptableMediaTypes(), context.getRequest().getBaseUri(), isStreamingRequested( context ) );
         }
         catch ( MediaTypeNotSupportedException e )
         {
@@ -52,4 +53,10 @@ public final class OutputFormatProvider extends AbstractInjectableProvider<Outpu
                     .build() );
         }
     }
+
+    private boolean isStreamingRequested( HttpContext context )
+    {
+        String header = context.getRequest().getHeaderValue( StreamingJsonFormat.STREAM_HEADER );
+        return header != null && Boolean.parseBoolean( header.trim() );
+    }
 }
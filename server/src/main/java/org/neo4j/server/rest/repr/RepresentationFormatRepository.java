@@ -45,19 +45,33 @@ public final class RepresentationFormatRepository
     }
 
     public OutputFormat outputFormat( List<MediaType> acceptable, URI baseUri )
+    {
+        return outputFormat( acceptable, baseUri, false );
+    }
+
+    /**
+     * @param streamingRequested whether the client asked for a streamed
+     *            response, which is honoured if the chosen format is plain JSON.
+     */
+    public OutputFormat outputFormat( List<MediaType> acceptable, URI baseUri, boolean streamingRequested )
     {
         for ( MediaType type : acceptable )
         {
             RepresentationFormat format = formats.get( type );
             if ( format != null )
             {
-                return new OutputFormat( format, baseUri, injector );
+                return new OutputFormat( format, baseUri, injector, streamingRequested && canStream( format ) );
             }
         }
 
         return new OutputFormat( useDefault( acceptable ), baseUri, injector );
     }
 
+    private boolean canStream( RepresentationFormat format )
+    {
+        return format.getClass() == JsonFormat.class;
+    }
+
     public InputFormat inputFormat( MediaType type )
     {
         if ( type == null )
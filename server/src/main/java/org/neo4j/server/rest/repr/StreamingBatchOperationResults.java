@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.neo4j.server.rest.domain.JsonBuildRuntimeException;
+import org.neo4j.server.rest.repr.formats.StreamingJsonUtils;
+
+/*
+ * Writes each batch operation result to the client as soon as the
+ * operation has completed, instead of collecting them all into a
+ * string like BatchOperationResults does.
+ */
+public class StreamingBatchOperationResults extends AbstractBatchOperationResults
+{
+    private final JsonGenerator gen;
+    private String currentFrom;
+    private Integer currentId;
+
+    public StreamingBatchOperationResults( JsonGenerator gen ) throws IOException
+    {
+        this.gen = gen;
+        gen.writeStartArray();
+    }
+
+    @Override
+    public void operationStarted( String from, Integer id )
+    {
+        this.currentFrom = from;
+        this.currentId = id;
+    }
+
+    @Override
+    public void addOperationResult( String from, Integer id, String body, String location )
+    {
+        // The operation is done, anything failing after this isn't part of it
+        currentFrom = null;
+        currentId = null;
+        try
+        {
+            gen.writeStartObject();
+            if ( id != null )
+            {
+                gen.writeNumberField( "id", id );
+            }
+            if ( location != null )
+            {
+                addLocation( id, location );
+                gen.writeStringField( "location", location );
+            }
+            if ( body != null && body.length() != 0 )
+            {
+                gen.writeFieldName( "body" );
+                gen.writeRawValue( body );
+            }
+            gen.writeStringField( "from", from );
+            gen.writeEndObject();
+            gen.flush();
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    /**
+     * Once results have started streaming the response status can no longer
+     * be changed, so a failing operation is reported as the last element. It
+     * has the same fields as a result, with a status, and the failure as its
+     * body in the shape of an {@link ExceptionRepresentation}.
+     */
+    public void addError( int status, Throwable cause ) throws IOException
+    {
+        gen.writeStartObject();
+        if ( currentId != null )
+        {
+            gen.writeNumberField( "id", currentId );
+        }
+        gen.writeNumberField( "status", status );
+        gen.writeFieldName( "body" );
+        StreamingJsonUtils.writeException( gen, cause );
+        if ( currentFrom != null )
+        {
+            gen.writeStringField( "from", currentFrom );
+        }
+        gen.writeEndObject();
+    }
+
+    public void close() throws IOException
+    {
+        gen.writeEndArray();
+        gen.flush();
+    }
+}
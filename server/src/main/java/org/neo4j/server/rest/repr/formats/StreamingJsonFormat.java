@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonStreamContext;
+import org.neo4j.server.rest.domain.JsonBuildRuntimeException;
+import org.neo4j.server.rest.repr.ListWriter;
+import org.neo4j.server.rest.repr.MappingWriter;
+
+/**
+ * A {@link JsonFormat} that writes lists and mappings directly to an output
+ * stream while they are being serialized, instead of building them up in
+ * memory first. Since it is bound to a single stream it is created per
+ * response, see {@link org.neo4j.server.rest.repr.OutputFormat}, and is not
+ * registered as a service.
+ *
+ * The status of a streamed response has been sent by the time its content
+ * is serialized, so a failure part way through is reported by
+ * {@link #fail(Throwable)} as an {@value #ERROR_FIELD} entry at the end of
+ * the response instead.
+ */
+public class StreamingJsonFormat extends JsonFormat
+{
+    /**
+     * Request header used by clients to ask for a streamed response.
+     */
+    public static final String STREAM_HEADER = "X-Stream";
+
+    /**
+     * The entry that ends a streamed response whose serialization failed.
+     */
+    public static final String ERROR_FIELD = "exception";
+
+    private final JsonGenerator gen;
+
+    public StreamingJsonFormat( OutputStream output ) throws IOException
+    {
+        this.gen = StreamingJsonUtils.createJsonGenerator( output );
+    }
+
+    @Override
+    protected ListWriter serializeList( String type )
+    {
+        return new StreamingListWriter( gen );
+    }
+
+    @Override
+    protected String complete( ListWriter serializer )
+    {
+        flush();
+        return "";
+    }
+
+    @Override
+    protected MappingWriter serializeMapping( String type )
+    {
+        return new StreamingMapWriter( gen );
+    }
+
+    @Override
+    protected String complete( MappingWriter serializer )
+    {
+        flush();
+        return "";
+    }
+
+    /**
+     * Ends a response whose serialization failed. Everything still open is
+     * closed, and the failure is added as an {@value #ERROR_FIELD} entry to
+     * the outermost object, or as an object holding that entry at the end of
+     * the outermost list. Its value has the same shape as an
+     * {@link org.neo4j.server.rest.repr.ExceptionRepresentation}.
+     *
+     * @return {@code false} if nothing had been written yet, in which case
+     *         the failure can still be reported through the response status.
+     */
+    public boolean fail( Throwable failure )
+    {
+        try
+        {
+            JsonStreamContext context = gen.getOutputContext();
+            if ( context.inRoot() )
+            {
+                return false;
+            }
+            while ( !context.getParent().inRoot() )
+            {
+                endContext( context );
+                context = gen.getOutputContext();
+            }
+
+            if ( context.inArray() )
+            {
+                gen.writeStartObject();
+                writeError( failure );
+                gen.writeEndObject();
+                gen.writeEndArray();
+            }
+            else
+            {
+                writeError( failure );
+                gen.writeEndObject();
+            }
+            gen.flush();
+            return true;
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    private void writeError( Throwable failure ) throws IOException
+    {
+        gen.writeFieldName( ERROR_FIELD );
+        StreamingJsonUtils.writeException( gen, failure );
+    }
+
+    private void endContext( JsonStreamContext context ) throws IOException
+    {
+        if ( context.inArray() )
+        {
+            gen.writeEndArray();
+        }
+        else
+        {
+            gen.writeEndObject();
+        }
+    }
+
+    private void flush()
+    {
+        try
+        {
+            gen.flush();
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+}
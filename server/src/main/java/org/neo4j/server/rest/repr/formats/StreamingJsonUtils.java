@@ -20,13 +20,63 @@
 package org.neo4j.server.rest.repr.formats;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
 
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.io.JsonStringEncoder;
+import org.codehaus.jackson.map.ObjectMapper;
 
 public class StreamingJsonUtils {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * Creates a generator writing UTF-8 encoded JSON straight to the given
+     * stream. Closing the generator does not close the stream.
+     */
+    public static JsonGenerator createJsonGenerator(OutputStream out) throws IOException {
+        JsonGenerator gen = OBJECT_MAPPER.getJsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+        gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return gen;
+    }
+
+    /**
+     * Writes a single value the same way {@link org.neo4j.server.rest.domain.JsonHelper}
+     * would have rendered it, URIs being written as plain strings.
+     */
+    public static void writeValue(JsonGenerator gen, Object value) throws IOException {
+        if( value == null ) {
+            gen.writeNull();
+        } else if( value instanceof URI ) {
+            gen.writeString(value.toString());
+        } else {
+            gen.writeObject(value);
+        }
+    }
     
+    /**
+     * Writes a failure as an object of the same shape as
+     * {@link org.neo4j.server.rest.repr.ExceptionRepresentation}.
+     */
+    public static void writeException(JsonGenerator gen, Throwable failure) throws IOException {
+        gen.writeStartObject();
+        if( failure.getMessage() != null ) {
+            gen.writeStringField("message", failure.getMessage());
+        }
+        gen.writeStringField("exception", failure.toString());
+        gen.writeArrayFieldStart("stacktrace");
+        for( StackTraceElement element : failure.getStackTrace() ) {
+            gen.writeString(element.toString());
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
     public static String readCurrentValueAsString(JsonParser jp, JsonToken token) throws JsonParseException, IOException {
         return readCurrentValueInto(jp, token, new StringBuilder()).toString();
     }
@@ -41,9 +91,7 @@ public class StreamingJsonUtils {
                 else
                     first = false;
                 
-                b.append('"');
-                b.append(jp.getText());
-                b.append('"');
+                appendQuoted(jp.getText(), b);
                 b.append(':');
                 
                 readCurrentValueInto(jp, jp.nextToken(), b);
@@ -62,9 +110,7 @@ public class StreamingJsonUtils {
             }
             b.append(']');
         } else if ( token == JsonToken.VALUE_STRING ) {
-            b.append('"');
-            b.append(jp.getText());
-            b.append('"');
+            appendQuoted(jp.getText(), b);
         } else if ( token == JsonToken.VALUE_FALSE ) {
             b.append("false");
         } else if ( token == JsonToken.VALUE_TRUE ) {
@@ -76,5 +122,11 @@ public class StreamingJsonUtils {
         }
         return b;
     }
+
+    private static void appendQuoted(String text, StringBuilder b) {
+        b.append('"');
+        b.append(JsonStringEncoder.getInstance().quoteAsString(text));
+        b.append('"');
+    }
     
 }
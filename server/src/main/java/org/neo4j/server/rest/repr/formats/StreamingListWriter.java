@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.neo4j.server.rest.domain.JsonBuildRuntimeException;
+import org.neo4j.server.rest.repr.ListWriter;
+import org.neo4j.server.rest.repr.MappingWriter;
+
+/**
+ * The streaming counterpart of {@link ListWrappingWriter}, writing each
+ * element to the generator as soon as it is added instead of collecting it.
+ */
+public class StreamingListWriter extends ListWriter
+{
+    private final JsonGenerator gen;
+
+    StreamingListWriter( JsonGenerator gen )
+    {
+        this.gen = gen;
+        try
+        {
+            gen.writeStartArray();
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    @Override
+    protected ListWriter newList( String type )
+    {
+        return new StreamingListWriter( gen );
+    }
+
+    @Override
+    protected MappingWriter newMapping( String type )
+    {
+        return new StreamingMapWriter( gen );
+    }
+
+    @Override
+    protected void writeValue( String type, Object value )
+    {
+        try
+        {
+            StreamingJsonUtils.writeValue( gen, value );
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+
+    @Override
+    protected void done()
+    {
+        try
+        {
+            gen.writeEndArray();
+        }
+        catch ( IOException e )
+        {
+            throw new JsonBuildRuntimeException( e );
+        }
+    }
+}
@@ -21,10 +21,15 @@ package org.neo4j.server.rest.web;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.io.OutputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.servlet.ServletException;
 import javax.ws.rs.POST;
@@ -33,21 +38,33 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.codehaus.jackson.JsonFactory;
-import org.codehaus.jackson.JsonGenerator;
-import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.kernel.GraphDatabaseSPI;
+import org.neo4j.kernel.impl.transaction.xaframework.ForceMode;
 import org.neo4j.server.database.Database;
 import org.neo4j.server.rest.domain.BatchOperationFailedException;
+import org.neo4j.server.rest.domain.EndNodeNotFoundException;
+import org.neo4j.server.rest.domain.JsonHelper;
+import org.neo4j.server.rest.domain.StartNodeNotFoundException;
+import org.neo4j.server.rest.paging.LeaseManager;
+import org.neo4j.server.rest.repr.AbstractBatchOperationResults;
 import org.neo4j.server.rest.repr.BadInputException;
 import org.neo4j.server.rest.repr.BatchOperationResults;
+import org.neo4j.server.rest.repr.ExceptionRepresentation;
+import org.neo4j.server.rest.repr.NodeRepresentation;
 import org.neo4j.server.rest.repr.OutputFormat;
+import org.neo4j.server.rest.repr.RelationshipRepresentation;
+import org.neo4j.server.rest.repr.StreamingBatchOperationResults;
+import org.neo4j.server.rest.repr.formats.StreamingJsonFormat;
+import org.neo4j.server.rest.repr.formats.StreamingJsonUtils;
 import org.neo4j.server.web.WebServer;
 
 @Path( "/batch" )
@@ -59,68 +76,42 @@ public class BatchOperationService
     private static final String BODY_KEY = "body";
     private static final String TO_KEY = "to";
 
+    private static final Pattern NODE_RELATIONSHIPS = Pattern.compile( "/node/(\\d+)/relationships" );
+
     private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final ObjectMapper objectMapper = new ObjectMapper();
 
     private final OutputFormat output;
     private final WebServer webServer;
     private final Database database;
+    private final DatabaseActions actions;
 
-    public BatchOperationService(@Context Database database, @Context WebServer webServer, @Context OutputFormat output)
+    public BatchOperationService(@Context Database database, @Context WebServer webServer, @Context OutputFormat output,
+                                 @Context LeaseManager leaseManager)
     {
         this.output = output;
         this.webServer = webServer;
         this.database = database;
+        this.actions = new DatabaseActions( database, leaseManager, ForceMode.forced );
     }
 
     @POST
     public Response performBatchOperations( @Context UriInfo uriInfo, @Context HttpHeaders httpHeaders,
                                             InputStream body ) throws BadInputException
     {
+        if ( isStreamingRequested( httpHeaders ) )
+        {
+            return performStreamingBatchOperations( uriInfo, httpHeaders, body );
+        }
+
         GraphDatabaseSPI db = database.graph;
 
         Transaction tx = db.beginTx();
         try
         {
-            JsonParser jp = jsonFactory.createJsonParser(body);
-            ObjectMapper mapper = new ObjectMapper();
-
             BatchOperationResults results = new BatchOperationResults();
 
-            JsonToken token;
-            String field;
-            String jobMethod, jobPath, jobBody;
-            Integer jobId;
-
-            // TODO: Perhaps introduce a simple DSL for
-            // deserializing streamed JSON?
-            while( (token = jp.nextToken()) != null) {
-                 if(token == JsonToken.START_OBJECT) {
-                     jobMethod = jobPath = jobBody = "";
-                     jobId = null;
-                     while( (token = jp.nextToken()) != JsonToken.END_OBJECT && token != null) {
-                         field = jp.getText();
-                         token = jp.nextToken();
-                         if(field.equals(METHOD_KEY)) {
-                             jobMethod = jp.getText().toUpperCase();
-                         } else if(field.equals(TO_KEY)) {
-                             jobPath = jp.getText();
-                         } else if(field.equals(ID_KEY)) {
-                             jobId = jp.getIntValue();
-                         } else if(field.equals(BODY_KEY)) {
-                            JsonNode node = mapper.readTree(jp);
-                            StringWriter out = new StringWriter();
-                            JsonGenerator gen = jsonFactory.createJsonGenerator(out);
-                            mapper.writeTree(gen, node);
-                            gen.flush();
-                            gen.close();
-                            jobBody = out.toString();
-                         }
-                     }
-
-                     // Read one job description. Execute it.
-                     performJob(results, uriInfo, jobMethod, jobPath, jobBody, jobId, httpHeaders);
-                 }
-            }
+            performJobs( results, uriInfo, httpHeaders, body );
 
             Response res = Response.ok()
                     .entity( results.toJSON() )
@@ -142,18 +133,117 @@ public class BatchOperationService
         }
     }
 
-    private void performJob( BatchOperationResults results, UriInfo uriInfo, String method, String path, String body,
-                             Integer id, HttpHeaders httpHeaders )
+    /*
+     * Runs the jobs while the response is being written, so that each result
+     * reaches the client as soon as its job has completed and nothing but
+     * the created locations is kept around for the whole batch.
+     */
+    private Response performStreamingBatchOperations( final UriInfo uriInfo, final HttpHeaders httpHeaders,
+                                                      final InputStream body )
+    {
+        StreamingOutput entity = new StreamingOutput()
+        {
+            @Override
+            public void write( OutputStream out ) throws IOException
+            {
+                StreamingBatchOperationResults results = new StreamingBatchOperationResults(
+                        StreamingJsonUtils.createJsonGenerator( out ) );
+                Transaction tx = database.graph.beginTx();
+                try
+                {
+                    performJobs( results, uriInfo, httpHeaders, body );
+                    tx.success();
+                }
+                catch ( BatchOperationFailedException e )
+                {
+                    tx.failure();
+                    results.addError( e.getStatus(), e );
+                }
+                catch ( Exception e )
+                {
+                    tx.failure();
+                    results.addError( Status.INTERNAL_SERVER_ERROR.getStatusCode(), e );
+                }
+                finally
+                {
+                    tx.finish();
+                }
+                results.close();
+            }
+        };
+        return Response.ok()
+                .entity( entity )
+                .header( HttpHeaders.CONTENT_ENCODING, "UTF-8" )
+                .type( MediaType.APPLICATION_JSON )
+                .build();
+    }
+
+    private void performJobs( AbstractBatchOperationResults results, UriInfo uriInfo, HttpHeaders httpHeaders,
+                              InputStream body ) throws IOException, ServletException
+    {
+        JsonParser jp = jsonFactory.createJsonParser(body);
+
+        JsonToken token;
+        String field;
+        String jobMethod, jobPath;
+        Object jobBody;
+        Integer jobId;
+
+        // TODO: Perhaps introduce a simple DSL for
+        // deserializing streamed JSON?
+        while( (token = jp.nextToken()) != null) {
+             if(token == JsonToken.START_OBJECT) {
+                 jobMethod = jobPath = "";
+                 jobBody = null;
+                 jobId = null;
+                 while( (token = jp.nextToken()) != JsonToken.END_OBJECT && token != null) {
+                     field = jp.getText();
+                     token = jp.nextToken();
+                     if(field.equals(METHOD_KEY)) {
+                         jobMethod = jp.getText().toUpperCase();
+                     } else if(field.equals(TO_KEY)) {
+                         jobPath = jp.getText();
+                     } else if(field.equals(ID_KEY)) {
+                         jobId = jp.getIntValue();
+                     } else if(field.equals(BODY_KEY)) {
+                         // Read as plain maps, lists and values, which is what
+                         // the node and relationship creation jobs work on
+                         jobBody = objectMapper.readValue(jp, Object.class);
+                     }
+                 }
+
+                 // Read one job description. Execute it.
+                 performJob(results, uriInfo, jobMethod, jobPath, jobBody, jobId, httpHeaders);
+             }
+        }
+    }
+
+    private boolean isStreamingRequested( HttpHeaders httpHeaders )
+    {
+        List<String> header = httpHeaders.getRequestHeader( StreamingJsonFormat.STREAM_HEADER );
+        return header != null && !header.isEmpty() && Boolean.parseBoolean( header.get( 0 ).trim() );
+    }
+
+    private void performJob( AbstractBatchOperationResults results, UriInfo uriInfo, String method, String path,
+                             Object body, Integer id, HttpHeaders httpHeaders )
             throws IOException, ServletException
     {
         // Replace {[ID]} placeholders with location values
         Map<Integer, String> locations = results.getLocations();
         path = replaceLocationPlaceholders( path, locations );
-        body = replaceLocationPlaceholders( body, locations );
 
         URI targetUri = calculateTargetUri( uriInfo, path );
+        results.operationStarted( path, id );
+
+        if ( performDirectly( results, uriInfo, method, targetUri, path, body, id ) )
+        {
+            return;
+        }
 
-        InternalJettyServletRequest req = new InternalJettyServletRequest(method, targetUri.toString(), body );
+        String jobBody = body == null ? "" : JsonHelper.createJsonFrom( body );
+        jobBody = replaceLocationPlaceholders( jobBody, locations );
+
+        InternalJettyServletRequest req = new InternalJettyServletRequest(method, targetUri.toString(), jobBody );
         InternalJettyServletResponse res = new InternalJettyServletResponse();
         addHeaders(req, httpHeaders);
 
@@ -171,6 +261,100 @@ public class BatchOperationService
         }
     }
 
+    /*
+     * Creating nodes and relationships are the jobs that big batches consist
+     * of, so those are performed against the database directly instead of
+     * through an internal request. Their results and errors are the same as
+     * RestfulGraphDatabase would give. Jobs whose body doesn't have the
+     * expected shape are left to the regular route, so that they fail the
+     * same way they always have.
+     */
+    @SuppressWarnings( "unchecked" )
+    private boolean performDirectly( AbstractBatchOperationResults results, UriInfo uriInfo, String method,
+                                     URI targetUri, String path, Object body, Integer id )
+    {
+        if ( !method.equals( "POST" ) || targetUri.getQuery() != null
+             || !MediaType.APPLICATION_JSON_TYPE.equals( output.getMediaType() ) )
+        {
+            return false;
+        }
+        String target = "/" + uriInfo.getBaseUri().relativize( targetUri ).getPath();
+
+        if ( target.equals( "/node" ) && ( body == null || body instanceof Map ) )
+        {
+            Map<String, Object> properties = body == null ? Collections.<String, Object>emptyMap()
+                    : (Map<String, Object>) replaceLocationPlaceholders( body, results.getLocations() );
+            try
+            {
+                NodeRepresentation node = actions.createNode( properties );
+                results.addOperationResult( path, id, output.format( node ),
+                        calculateTargetUri( uriInfo, "node/" + node.getId() ).toString() );
+            }
+            catch ( ArrayStoreException e )
+            {
+                throw new BatchOperationFailedException( Status.BAD_REQUEST.getStatusCode(),
+                        "Invalid JSON array in POST body: " + JsonHelper.createJsonFrom( properties ) );
+            }
+            catch ( BadInputException e )
+            {
+                throw failed( Status.BAD_REQUEST, e );
+            }
+            return true;
+        }
+
+        Matcher relationships = NODE_RELATIONSHIPS.matcher( target );
+        if ( relationships.matches() && body instanceof Map )
+        {
+            Map<String, Object> data = (Map<String, Object>) replaceLocationPlaceholders( body,
+                    results.getLocations() );
+            Object to = data.get( "to" );
+            Object type = data.get( "type" );
+            Object properties = data.get( "data" );
+            if ( !( to instanceof String ) || !( type instanceof String )
+                 || !( properties == null || properties instanceof Map ) )
+            {
+                return false;
+            }
+            long startNodeId, endNodeId;
+            try
+            {
+                startNodeId = Long.parseLong( relationships.group( 1 ) );
+                endNodeId = Long.parseLong( ( (String) to ).substring( ( (String) to ).lastIndexOf( "/" ) + 1 ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                return false;
+            }
+            try
+            {
+                RelationshipRepresentation relationship = actions.createRelationship( startNodeId, endNodeId,
+                        (String) type, (Map<String, Object>) properties );
+                results.addOperationResult( path, id, output.format( relationship ),
+                        calculateTargetUri( uriInfo, "relationship/" + relationship.getId() ).toString() );
+            }
+            catch ( StartNodeNotFoundException e )
+            {
+                throw failed( Status.NOT_FOUND, e );
+            }
+            catch ( EndNodeNotFoundException e )
+            {
+                throw failed( Status.BAD_REQUEST, e );
+            }
+            catch ( BadInputException e )
+            {
+                throw failed( Status.BAD_REQUEST, e );
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private BatchOperationFailedException failed( Status status, Throwable cause )
+    {
+        return new BatchOperationFailedException( status.getStatusCode(),
+                output.format( new ExceptionRepresentation( cause ) ) );
+    }
+
     private void addHeaders(final InternalJettyServletRequest res, final HttpHeaders httpHeaders)
     {
         for ( Map.Entry<String, List<String>> header : httpHeaders.getRequestHeaders().entrySet() )
@@ -185,6 +369,10 @@ public class BatchOperationService
             {
                 continue; // We add them explicitly
             }
+            else if ( key.equalsIgnoreCase( StreamingJsonFormat.STREAM_HEADER ) )
+            {
+                continue; // Results of the individual jobs are buffered anyway
+            }
             else
             {
                 res.addHeader( key, value.get( 0 ) );
@@ -225,6 +413,34 @@ public class BatchOperationService
         return str;
     }
 
+    @SuppressWarnings( "unchecked" )
+    private Object replaceLocationPlaceholders( Object value, Map<Integer, String> locations )
+    {
+        if ( value instanceof String )
+        {
+            return replaceLocationPlaceholders( (String) value, locations );
+        }
+        if ( value instanceof Map )
+        {
+            Map<String, Object> replaced = new LinkedHashMap<String, Object>();
+            for ( Map.Entry<String, Object> entry : ( (Map<String, Object>) value ).entrySet() )
+            {
+                replaced.put( entry.getKey(), replaceLocationPlaceholders( entry.getValue(), locations ) );
+            }
+            return replaced;
+        }
+        if ( value instanceof List )
+        {
+            List<Object> replaced = new ArrayList<Object>();
+            for ( Object item : (List<Object>) value )
+            {
+                replaced.add( replaceLocationPlaceholders( item, locations ) );
+            }
+            return replaced;
+        }
+        return value;
+    }
+
     private boolean is2XXStatusCode( int statusCode )
     {
         return statusCode >= 200 && statusCode < 300;
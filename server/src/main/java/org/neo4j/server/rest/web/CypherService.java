@@ -29,7 +29,6 @@ import javax.ws.rs.core.Response;
 
 import org.neo4j.cypher.javacompat.ExecutionEngine;
 import org.neo4j.cypher.javacompat.ExecutionResult;
-import org.neo4j.server.database.Database;
 import org.neo4j.server.rest.repr.BadInputException;
 import org.neo4j.server.rest.repr.CypherResultRepresentation;
 import org.neo4j.server.rest.repr.InputFormat;
@@ -45,9 +44,9 @@ public class CypherService {
     private OutputFormat output;
     private InputFormat input;
 
-    public CypherService(@Context Database database, @Context InputFormat input,
+    public CypherService(@Context ExecutionEngine executionEngine, @Context InputFormat input,
             @Context OutputFormat output) {
-        this.executionEngine = new ExecutionEngine(database.graph);
+        this.executionEngine = executionEngine;
         this.input = input;
         this.output = output;
     }
@@ -27,6 +27,7 @@ import org.neo4j.server.NeoServerProvider;
 import org.neo4j.server.NeoServerWithEmbeddedWebServer;
 import org.neo4j.server.configuration.ConfigurationProvider;
 import org.neo4j.server.database.AbstractInjectableProvider;
+import org.neo4j.server.database.CypherExecutorProvider;
 import org.neo4j.server.database.DatabaseProvider;
 import org.neo4j.server.database.GraphDatabaseServiceProvider;
 import org.neo4j.server.plugins.Injectable;
@@ -64,6 +65,7 @@ public class NeoServletContainer extends ServletContainer
         singletons.add( new LeaseManagerProvider() );
         singletons.add( new DatabaseProvider( server.getDatabase() ) );
         singletons.add( new GraphDatabaseServiceProvider( server.getDatabase().graph ) );
+        singletons.add( new CypherExecutorProvider( server.getDatabase().executionEngine() ) );
         singletons.add( new NeoServerProvider( server ) );
         singletons.add( new ConfigurationProvider( server.getConfiguration() ) );
 
@@ -41,7 +41,6 @@ package org.neo4j.server.webadmin.console;
 import org.neo4j.cypher.SyntaxException;
 import org.neo4j.cypher.javacompat.ExecutionEngine;
 import org.neo4j.cypher.javacompat.ExecutionResult;
-import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.helpers.Pair;
 import org.neo4j.server.logging.Logger;
 
@@ -50,9 +49,9 @@ public class CypherSession implements ScriptSession
     private final ExecutionEngine engine;
     private static Logger log = Logger.getLogger( CypherSession.class );
 
-    public CypherSession( GraphDatabaseService graph )
+    public CypherSession( ExecutionEngine engine )
     {
-        engine = new ExecutionEngine( graph );
+        this.engine = engine;
     }
 
     @Override
@@ -40,7 +40,7 @@ public class SessionFactoryImpl implements SessionFactory
     {
         if ( engineName.equals( "shell" ) )
         {
-//            return new CypherSession( database.graph );
+//            return new CypherSession( database.executionEngine() );
             return getOrInstantiateSession( database, "shellSession", SessionCreator.SHELL );
         }
         else
@@ -75,7 +75,7 @@ public class SessionFactoryImpl implements SessionFactory
             @Override
             ScriptSession newSession( Database database )
             {
-                return new CypherSession( database.graph );
+                return new CypherSession( database.executionEngine() );
             }
         },
         SHELL
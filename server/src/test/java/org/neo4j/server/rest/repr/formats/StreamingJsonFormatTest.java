@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.helpers.collection.IterableWrapper;
+import org.neo4j.server.rest.domain.JsonHelper;
+import org.neo4j.server.rest.repr.ListRepresentation;
+import org.neo4j.server.rest.repr.MappingRepresentation;
+import org.neo4j.server.rest.repr.MappingSerializer;
+import org.neo4j.server.rest.repr.OutputFormat;
+import org.neo4j.server.rest.repr.Representation;
+import org.neo4j.server.rest.repr.ValueRepresentation;
+
+public class StreamingJsonFormatTest
+{
+    private OutputFormat json;
+
+    @Before
+    public void createOutputFormat() throws Exception
+    {
+        json = new OutputFormat( new JsonFormat(), new URI( "http://localhost/" ), null, true );
+    }
+
+    @Test
+    public void shouldUseStreamingEntity() throws Exception
+    {
+        Response response = json.ok( ListRepresentation.strings( "hello" ) );
+        assertTrue( response.getEntity() instanceof StreamingOutput );
+    }
+
+    @Test
+    public void canStreamString() throws Exception
+    {
+        assertEquals( "\"expected value\"", stream( ValueRepresentation.string( "expected value" ) ) );
+    }
+
+    @Test
+    public void canStreamListOfStrings() throws Exception
+    {
+        assertEquals( Arrays.asList( "hello", "world" ),
+                JsonHelper.readJson( stream( ListRepresentation.strings( "hello", "world" ) ) ) );
+    }
+
+    @Test
+    public void canStreamObjectWithUriField() throws Exception
+    {
+        String entity = stream( new MappingRepresentation( "uri" )
+        {
+            @Override
+            protected void serialize( MappingSerializer serializer )
+            {
+                serializer.putUri( "URL", "subpath" );
+            }
+        } );
+
+        assertEquals( Collections.singletonMap( "URL", "http://localhost/subpath" ), JsonHelper.jsonToMap( entity ) );
+    }
+
+    @Test
+    public void canStreamObjectWithNestedObjectAndList() throws Exception
+    {
+        String entity = stream( new MappingRepresentation( "nesting" )
+        {
+            @Override
+            protected void serialize( MappingSerializer serializer )
+            {
+                serializer.putMapping( "nested", new MappingRepresentation( "data" )
+                {
+                    @Override
+                    protected void serialize( MappingSerializer nested )
+                    {
+                        nested.putString( "data", "expected data" );
+                    }
+                } );
+                serializer.putList( "list", ListRepresentation.numbers( 1, 2 ) );
+            }
+        } );
+
+        Map<String, Object> result = JsonHelper.jsonToMap( entity );
+        assertEquals( Collections.singletonMap( "data", "expected data" ), result.get( "nested" ) );
+        assertEquals( Arrays.asList( 1, 2 ), result.get( "list" ) );
+    }
+
+    @Test
+    public void failureWhileStreamingEndsTheResponseWithTheException() throws Exception
+    {
+        String entity = stream( new MappingRepresentation( "result" )
+        {
+            @Override
+            protected void serialize( MappingSerializer serializer )
+            {
+                serializer.putList( "data", new ListRepresentation( "row", rowsFailingAtTheSecond() ) );
+            }
+        } );
+
+        Map<String, Object> result = JsonHelper.jsonToMap( entity );
+        assertEquals( Arrays.asList( 1 ), result.get( "data" ) );
+        Map<?, ?> exception = (Map<?, ?>) result.get( StreamingJsonFormat.ERROR_FIELD );
+        assertEquals( "expected failure", exception.get( "message" ) );
+        assertTrue( exception.containsKey( "stacktrace" ) );
+    }
+
+    @Test
+    public void failureWhileStreamingAListIsAddedAsTheLastElement() throws Exception
+    {
+        List<?> result = (List<?>) JsonHelper.readJson( stream( new ListRepresentation( "row",
+                rowsFailingAtTheSecond() ) ) );
+        assertEquals( 2, result.size() );
+        assertEquals( 1, result.get( 0 ) );
+        assertTrue( ( (Map<?, ?>) result.get( 1 ) ).containsKey( StreamingJsonFormat.ERROR_FIELD ) );
+    }
+
+    private Iterable<Representation> rowsFailingAtTheSecond()
+    {
+        return new IterableWrapper<Representation, Integer>( Arrays.asList( 1, 2 ) )
+        {
+            @Override
+            protected Representation underlyingObjectToObject( Integer row )
+            {
+                if ( row == 2 )
+                {
+                    throw new IllegalStateException( "expected failure" );
+                }
+                return ValueRepresentation.number( row );
+            }
+        };
+    }
+
+    private String stream( Representation representation ) throws Exception
+    {
+        Response response = json.ok( representation );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ( (StreamingOutput) response.getEntity() ).write( out );
+        return out.toString( "UTF-8" );
+    }
+}
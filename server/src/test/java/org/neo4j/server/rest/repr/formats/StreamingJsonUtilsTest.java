@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2002-2012 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.server.rest.repr.formats;
+
+import static org.junit.Assert.assertEquals;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.junit.Test;
+import org.neo4j.server.rest.domain.JsonHelper;
+
+public class StreamingJsonUtilsTest
+{
+    @Test
+    public void shouldReadNestedValueAsString() throws Exception
+    {
+        String json = "{\"name\":\"Joe\",\"age\":42,\"tags\":[true,null,1.5]}";
+
+        assertEquals( JsonHelper.readJson( json ), JsonHelper.readJson( readValue( json ) ) );
+    }
+
+    @Test
+    public void shouldEscapeStringsAndKeys() throws Exception
+    {
+        String json = "{\"a \\\"quoted\\\" key\":\"back\\\\slash and \\\"quotes\\\"\\n\"}";
+
+        assertEquals( JsonHelper.readJson( json ), JsonHelper.readJson( readValue( json ) ) );
+    }
+
+    private String readValue( String json ) throws Exception
+    {
+        JsonParser jp = new JsonFactory().createJsonParser( json );
+        return StreamingJsonUtils.readCurrentValueAsString( jp, jp.nextToken() );
+    }
+}
@@ -46,6 +46,8 @@ import org.neo4j.graphdb.index.RelationshipIndex;
 import org.neo4j.helpers.collection.IterableWrapper;
 import org.neo4j.kernel.PlaceboTransaction;
 import org.neo4j.kernel.TransactionBuilder;
+import org.neo4j.kernel.impl.core.Degrees;
+import org.neo4j.kernel.impl.core.HasDegree;
 import org.neo4j.kernel.impl.core.ReadOnlyDbException;
 import org.neo4j.kernel.impl.traversal.OldTraverserWrapper;
 
@@ -191,7 +193,7 @@ public class ReadOnlyGraphDatabaseProxy implements GraphDatabaseService, IndexMa
         return readOnly();
     }
 
-    private class ReadOnlyNodeProxy implements Node
+    private class ReadOnlyNodeProxy implements Node, HasDegree
     {
         private final Node actual;
 
@@ -289,6 +291,26 @@ public class ReadOnlyGraphDatabaseProxy implements GraphDatabaseService, IndexMa
             return actual.hasRelationship( type, dir );
         }
 
+        public int getDegree()
+        {
+            return Degrees.getDegree( actual );
+        }
+
+        public int getDegree( RelationshipType type )
+        {
+            return Degrees.getDegree( actual, type );
+        }
+
+        public int getDegree( Direction direction )
+        {
+            return Degrees.getDegree( actual, direction );
+        }
+
+        public int getDegree( RelationshipType type, Direction direction )
+        {
+            return Degrees.getDegree( actual, type, direction );
+        }
+
         public Traverser traverse( Order traversalOrder, StopEvaluator stopEvaluator,
                 ReturnableEvaluator returnableEvaluator, RelationshipType relationshipType,
                 Direction direction )